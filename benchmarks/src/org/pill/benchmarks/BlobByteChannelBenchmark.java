@@ -0,0 +1,137 @@
+package org.pill.benchmarks;
+
+import com.mysema.query.sql.H2Templates;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.repository.local.BlobByteChannel;
+import org.pill.sql.Session;
+
+/**
+ * Measures sequential and random reads from a BLOB stored in a temporary H2 database.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class BlobByteChannelBenchmark
+{
+	/**
+	 * The number of random reads per invocation.
+	 */
+	private static final int RANDOM_READS = 1024;
+	/**
+	 * The number of bytes returned by each random read, roughly the size of a ZIP header.
+	 */
+	private static final int RANDOM_READ_SIZE = 64;
+	@Param({"65536", "4194304"})
+	public int size;
+	private Session session;
+	private Statement statement;
+	private ResultSet resultSet;
+	private Blob blob;
+	private long[] positions;
+	private final ByteBuffer sequentialBuffer = ByteBuffer.allocate(8 * 1024);
+	private final ByteBuffer randomBuffer = ByteBuffer.allocate(RANDOM_READ_SIZE);
+
+	@Setup
+	public void setUp() throws IOException, SQLException
+	{
+		Connection connection = DriverManager.getConnection("jdbc:h2:"
+			+ Fixtures.createTempDirectory().resolve("blobs"), "sa", "sa");
+		session = new Session(connection, new H2Templates());
+		statement = connection.createStatement();
+		statement.execute("CREATE TABLE blobs(id INT PRIMARY KEY, content BLOB)");
+		byte[] content = new byte[size];
+		Random random = new Random(0);
+		random.nextBytes(content);
+		try (PreparedStatement insert = connection.prepareStatement(
+			"INSERT INTO blobs(id, content) VALUES(1, ?)"))
+		{
+			insert.setBytes(1, content);
+			insert.executeUpdate();
+		}
+
+		// The BLOB is only valid while its ResultSet is open
+		resultSet = statement.executeQuery("SELECT content FROM blobs WHERE id = 1");
+		resultSet.next();
+		blob = resultSet.getBlob(1);
+
+		positions = new long[RANDOM_READS];
+		for (int i = 0; i < positions.length; ++i)
+			positions[i] = random.nextInt(size - RANDOM_READ_SIZE);
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException
+	{
+		resultSet.close();
+		statement.close();
+		session.close();
+	}
+
+	/**
+	 * @return a channel over the BLOB. The channel is not closed because that would free the BLOB
+	 * and close the session, which are shared across invocations.
+	 */
+	private BlobByteChannel newChannel()
+	{
+		return new BlobByteChannel(EnumSet.of(StandardOpenOption.READ), blob, session);
+	}
+
+	@Benchmark
+	public long sequentialRead() throws IOException
+	{
+		BlobByteChannel channel = newChannel();
+		long result = 0;
+		while (true)
+		{
+			sequentialBuffer.clear();
+			int count = channel.read(sequentialBuffer);
+			if (count == -1)
+				break;
+			result += count;
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long randomRead() throws IOException
+	{
+		BlobByteChannel channel = newChannel();
+		long result = 0;
+		for (long position: positions)
+		{
+			randomBuffer.clear();
+			channel.position(position);
+			result += channel.read(randomBuffer);
+		}
+		return result;
+	}
+}
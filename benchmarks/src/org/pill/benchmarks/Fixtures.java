@@ -0,0 +1,201 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.pill.CompilationException;
+import org.pill.FileHasher;
+import org.pill.JavaCompiler;
+import org.pill.LinkStore;
+import org.pill.Paths;
+import org.pill.repository.local.ClassloaderBridge;
+import org.pill.repository.local.GuiceConfig;
+import org.pill.repository.local.LocalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the inputs shared by the benchmarks. Everything is generated under temporary directories
+ * that are deleted when the JVM exits, so the benchmarks run offline and leave no trace.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class Fixtures
+{
+	/**
+	 * The package of the generated classes.
+	 */
+	public static final String PACKAGE = "org.pill.benchmarks.synthetic";
+	private static LocalRepository repository;
+	private static final Logger log = LoggerFactory.getLogger(Fixtures.class);
+
+	/**
+	 * Prevent construction.
+	 */
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * Creates a temporary directory that is deleted when the JVM exits.
+	 * <p/>
+	 * @return the directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Path createTempDirectory() throws IOException
+	{
+		final Path result = Files.createTempDirectory("pill-benchmark");
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Paths.deleteRecursively(result);
+				}
+				catch (IOException e)
+				{
+					log.warn("Could not delete " + result, e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns a local repository backed by a temporary database. The repository is shared by all
+	 * benchmarks that run in the same JVM. File digests and linked release contents are stored
+	 * alongside the database, instead of under {@code ~/.pill}.
+	 * <p/>
+	 * @return the repository
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static synchronized LocalRepository getRepository() throws IOException
+	{
+		if (repository == null)
+		{
+			Path directory = createTempDirectory();
+			System.setProperty(GuiceConfig.DATABASE_PROPERTY, directory.resolve("pill").toString());
+			System.setProperty(FileHasher.FILE_PROPERTY, directory.resolve("hashes").toString());
+			System.setProperty(LinkStore.DIRECTORY_PROPERTY, directory.resolve("store").toString());
+
+			// ReleaseFileSystemProvider looks up the repository through the bridge
+			ClassloaderBridge.create(Fixtures.class.getClassLoader());
+			repository = LocalRepository.getInstance();
+		}
+		return repository;
+	}
+
+	/**
+	 * Generates a source tree of {@code count} classes. Each class references the one before it, so
+	 * the compiler has to resolve dependencies between compilation units.
+	 * <p/>
+	 * @param directory the directory to write to
+	 * @param count the number of classes
+	 * @return the source files
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<Path> writeSourceTree(Path directory, int count) throws IOException
+	{
+		Path packageDirectory = directory.resolve(PACKAGE.replace('.', '/'));
+		Files.createDirectories(packageDirectory);
+		List<Path> result = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i)
+		{
+			Path file = packageDirectory.resolve(getClassName(i) + ".java");
+			Files.write(file, getSource(i, 0).getBytes(StandardCharsets.UTF_8));
+			result.add(file);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the simple name of a generated class.
+	 * <p/>
+	 * @param index the index of the class
+	 * @return the simple name
+	 */
+	public static String getClassName(int index)
+	{
+		return "Class" + index;
+	}
+
+	/**
+	 * Returns the source code of a generated class.
+	 * <p/>
+	 * @param index the index of the class
+	 * @param revision a number embedded in the class, used to simulate an edit
+	 * @return the source code
+	 */
+	public static String getSource(int index, int revision)
+	{
+		StringBuilder result = new StringBuilder();
+		result.append("package ").append(PACKAGE).append(";\n\n");
+		result.append("public class ").append(getClassName(index)).append("\n{\n");
+		result.append("\tpublic int getRevision()\n\t{\n\t\treturn ").append(revision).
+			append(";\n\t}\n");
+		if (index > 0)
+		{
+			String dependency = getClassName(index - 1);
+			result.append("\n\tpublic int getValue(").append(dependency).
+				append(" dependency)\n\t{\n");
+			result.append("\t\treturn dependency.getRevision() + ").append(index).
+				append(";\n\t}\n");
+		}
+		result.append("}\n");
+		return result.toString();
+	}
+
+	/**
+	 * Compiles source files.
+	 * <p/>
+	 * @param sourceFiles the source files
+	 * @param targetDirectory the directory to compile into
+	 * @throws IOException if an I/O error occurs
+	 * @throws CompilationException if the compilation fails
+	 */
+	public static void compile(List<Path> sourceFiles, Path targetDirectory)
+		throws IOException, CompilationException
+	{
+		Files.createDirectories(targetDirectory);
+		new JavaCompiler().run(sourceFiles, targetDirectory);
+	}
+
+	/**
+	 * Packages the contents of a directory into a JAR file.
+	 * <p/>
+	 * @param directory the directory
+	 * @param jar the JAR file to write
+	 * @return {@code jar}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Path writeJar(final Path directory, Path jar) throws IOException
+	{
+		try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar)))
+		{
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+					throws IOException
+				{
+					String name = directory.relativize(file).toString().replace('\\', '/');
+					out.putNextEntry(new JarEntry(name));
+					Files.copy(file, out);
+					out.closeEntry();
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		return jar;
+	}
+}
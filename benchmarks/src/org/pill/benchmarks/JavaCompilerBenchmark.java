@@ -0,0 +1,101 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.CompilationException;
+import org.pill.JavaCompiler;
+import org.pill.Paths;
+
+/**
+ * Measures compiling a generated source tree: from scratch, when nothing changed, and after a
+ * single file was edited.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class JavaCompilerBenchmark
+{
+	@Param({"10", "100", "500"})
+	public int classes;
+	private List<Path> sourceFiles;
+	private Path targetDirectory;
+	private int revision;
+
+	@Setup
+	public void setUp() throws IOException, CompilationException
+	{
+		Path directory = Fixtures.createTempDirectory();
+		sourceFiles = Fixtures.writeSourceTree(directory.resolve("source"), classes);
+		targetDirectory = directory.resolve("classes");
+		Fixtures.compile(sourceFiles, targetDirectory);
+	}
+
+	/**
+	 * Deletes the output of the previous compilation.
+	 */
+	@State(Scope.Benchmark)
+	public static class CleanState
+	{
+		@Setup(Level.Invocation)
+		public void setUp(JavaCompilerBenchmark benchmark) throws IOException
+		{
+			Paths.deleteRecursively(benchmark.targetDirectory);
+			Files.createDirectories(benchmark.targetDirectory);
+		}
+	}
+
+	/**
+	 * Edits the source file in the middle of the dependency chain.
+	 */
+	@State(Scope.Benchmark)
+	public static class EditedState
+	{
+		@Setup(Level.Invocation)
+		public void setUp(JavaCompilerBenchmark benchmark) throws IOException
+		{
+			int index = benchmark.classes / 2;
+			++benchmark.revision;
+			Files.write(benchmark.sourceFiles.get(index), Fixtures.getSource(index,
+				benchmark.revision).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Benchmark
+	public void fullBuild(CleanState state) throws IOException, CompilationException
+	{
+		new JavaCompiler().run(sourceFiles, targetDirectory);
+	}
+
+	@Benchmark
+	public void upToDateBuild() throws IOException, CompilationException
+	{
+		new JavaCompiler().run(sourceFiles, targetDirectory);
+	}
+
+	@Benchmark
+	public void singleFileEdit(EditedState state) throws IOException, CompilationException
+	{
+		new JavaCompiler().run(sourceFiles, targetDirectory);
+	}
+}
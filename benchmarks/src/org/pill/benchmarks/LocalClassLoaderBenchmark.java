@@ -0,0 +1,118 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.CompilationException;
+import org.pill.LocalClassLoader;
+
+/**
+ * Measures loading classes through a LocalClassLoader: defining them for the first time, finding
+ * classes that were already loaded, and delegating to the parent classloader.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class LocalClassLoaderBenchmark
+{
+	/**
+	 * The number of classes on the classpath.
+	 */
+	private static final int CLASSES = 100;
+	private URL classPath;
+	private String[] classNames;
+	private BenchmarkClassLoader loadedClassLoader;
+	private int nextClass;
+
+	@Setup
+	public void setUp() throws IOException, CompilationException, ClassNotFoundException
+	{
+		Path directory = Fixtures.createTempDirectory();
+		Path classes = directory.resolve("classes");
+		Fixtures.compile(Fixtures.writeSourceTree(directory.resolve("source"), CLASSES), classes);
+		classPath = classes.toUri().toURL();
+		classNames = new String[CLASSES];
+		for (int i = 0; i < CLASSES; ++i)
+			classNames[i] = Fixtures.PACKAGE + "." + Fixtures.getClassName(i);
+
+		loadedClassLoader = new BenchmarkClassLoader(classPath);
+		for (String name: classNames)
+			loadedClassLoader.loadClass(name);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		loadedClassLoader.close();
+	}
+
+	/**
+	 * Loads every class on the classpath using a new classloader.
+	 */
+	@Benchmark
+	public int defineClasses() throws ClassNotFoundException, IOException
+	{
+		int result = 0;
+		try (BenchmarkClassLoader classLoader = new BenchmarkClassLoader(classPath))
+		{
+			for (String name: classNames)
+				result += classLoader.loadClass(name).getModifiers();
+		}
+		return result;
+	}
+
+	/**
+	 * Loads a class that was already loaded.
+	 */
+	@Benchmark
+	public Class<?> findLoadedClass() throws ClassNotFoundException
+	{
+		String name = classNames[nextClass];
+		nextClass = (nextClass + 1) % classNames.length;
+		return loadedClassLoader.loadClass(name);
+	}
+
+	/**
+	 * Loads a class from the parent classloader.
+	 */
+	@Benchmark
+	public Class<?> loadInheritedClass() throws ClassNotFoundException
+	{
+		return loadedClassLoader.loadClass("java.lang.String");
+	}
+
+	/**
+	 * A LocalClassLoader that loads classes from a single directory and inherits the JDK classes.
+	 */
+	private static final class BenchmarkClassLoader extends LocalClassLoader
+	{
+		/**
+		 * Creates a new BenchmarkClassLoader.
+		 * <p/>
+		 * @param classPath the directory to load classes from
+		 */
+		BenchmarkClassLoader(URL classPath)
+		{
+			super(ClassLoader.getSystemClassLoader());
+			addURL(classPath);
+			inheritedClasses().add("java.");
+		}
+	}
+}
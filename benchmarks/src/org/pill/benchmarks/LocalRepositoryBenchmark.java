@@ -0,0 +1,123 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.CompilationException;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+import org.pill.Module;
+import org.pill.Release;
+import org.pill.repository.local.LocalRepository;
+import org.pill.repository.local.RepositoryProfile;
+
+/**
+ * Measures inserting, removing and looking up modules and releases in the local repository under
+ * each {@link RepositoryProfile}.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class LocalRepositoryBenchmark
+{
+	/**
+	 * The number of modules in the repository.
+	 */
+	private static final int MODULES = 100;
+	/**
+	 * The number of classes in each release.
+	 */
+	private static final int CLASSES = 50;
+	/**
+	 * Each profile runs in its own fork, because the repository is only created once per JVM.
+	 */
+	@Param({"DEVELOPMENT", "CI", "PRODUCTION"})
+	public RepositoryProfile profile;
+	private LocalRepository repository;
+	private Module module;
+	private URI release;
+	private long nextModule;
+
+	@Setup
+	public void setUp() throws IOException, CompilationException, EntityExistsException
+	{
+		System.setProperty(RepositoryProfile.PROPERTY, profile.name());
+		repository = Fixtures.getRepository();
+		Path directory = Fixtures.createTempDirectory();
+		Path classes = directory.resolve("classes");
+		Fixtures.compile(Fixtures.writeSourceTree(directory.resolve("source"), CLASSES), classes);
+		Path jar = Fixtures.writeJar(classes, directory.resolve("synthetic.jar"));
+		for (int i = 0; i < MODULES; ++i)
+		{
+			Module current = repository.insertModule(getClass().getName() + ".module" + i);
+			repository.insertRelease(current, "1.0", jar).build();
+			if (i == MODULES / 2)
+				module = current;
+		}
+		release = repository.getReleaseUri(module, "1.0");
+	}
+
+	@Benchmark
+	public Module insertAndRemoveModule()
+		throws EntityExistsException, EntityNotFoundException, IOException
+	{
+		Module result = repository.insertModule(getClass().getName() + ".inserted" + nextModule);
+		++nextModule;
+		repository.removeModule(result);
+		return result;
+	}
+
+	@Benchmark
+	public Module getModule() throws IOException
+	{
+		return repository.getModule(module.getName());
+	}
+
+	@Benchmark
+	public List<URI> getReleases() throws IOException
+	{
+		return repository.getReleases(module);
+	}
+
+	@Benchmark
+	public URI getReleaseUri() throws IOException
+	{
+		return repository.getReleaseUri(module, "1.0");
+	}
+
+	@Benchmark
+	public Release getRelease() throws IOException
+	{
+		return repository.getRelease(release);
+	}
+
+	@Benchmark
+	public List<URI> getReleasesByClass() throws IOException
+	{
+		return repository.getReleasesByClass(Fixtures.PACKAGE + "." + Fixtures.getClassName(0));
+	}
+
+	@Benchmark
+	public List<URI> getReleasesByPackage() throws IOException
+	{
+		return repository.getReleasesByPackage(Fixtures.PACKAGE);
+	}
+}
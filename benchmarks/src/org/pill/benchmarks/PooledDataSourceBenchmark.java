@@ -0,0 +1,124 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.sql.PooledDataSource;
+
+/**
+ * Compares the statements issued by {@code H2MetadataStore.ContainsModule} and
+ * {@code H2MetadataStore.GetReleaseId} with and without connection pooling and statement
+ * caching. Each invocation opens a connection, runs one query and closes the connection, the same
+ * as a repository request.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PooledDataSourceBenchmark
+{
+	/**
+	 * The number of modules in the database.
+	 */
+	private static final int MODULES = 100;
+	private static final String GET_MODULE = "select modules.id from modules modules "
+		+ "where modules.name = ?";
+	private static final String GET_RELEASE_URI = "select releases.id from releases releases "
+		+ "where releases.module_id = ? and releases.version = ?";
+	@Param({"false", "true"})
+	public boolean pooled;
+	private DataSource dataSource;
+	/**
+	 * Keeps the database open between invocations when connections are not pooled.
+	 */
+	private Connection keepAlive;
+
+	@Setup
+	public void setUp() throws IOException, SQLException
+	{
+		JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:" + Fixtures.createTempDirectory().resolve("pill"));
+		h2.setUser("sa");
+		h2.setPassword("sa");
+		keepAlive = h2.getConnection();
+		try (Statement statement = keepAlive.createStatement())
+		{
+			statement.execute("CREATE TABLE modules (id IDENTITY PRIMARY KEY, "
+				+ "name VARCHAR UNIQUE NOT NULL)");
+			statement.execute("CREATE TABLE releases (id IDENTITY PRIMARY KEY, "
+				+ "module_id BIGINT NOT NULL, version VARCHAR NOT NULL, "
+				+ "UNIQUE (module_id, version))");
+			for (int i = 0; i < MODULES; ++i)
+			{
+				statement.execute("INSERT INTO modules (name) VALUES ('module" + i + "')");
+				statement.execute("INSERT INTO releases (module_id, version) VALUES (" + (i + 1)
+					+ ", '1.0')");
+			}
+		}
+		if (pooled)
+			dataSource = new PooledDataSource(h2);
+		else
+			dataSource = h2;
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException
+	{
+		if (dataSource instanceof PooledDataSource)
+			((PooledDataSource) dataSource).close();
+		keepAlive.close();
+	}
+
+	@Benchmark
+	public long getModule() throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+			PreparedStatement statement = connection.prepareStatement(GET_MODULE))
+		{
+			statement.setString(1, "module" + (MODULES / 2));
+			try (ResultSet resultSet = statement.executeQuery())
+			{
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+	}
+
+	@Benchmark
+	public long getReleaseUri() throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+			PreparedStatement statement = connection.prepareStatement(GET_RELEASE_URI))
+		{
+			statement.setLong(1, MODULES / 2);
+			statement.setString(2, "1.0");
+			try (ResultSet resultSet = statement.executeQuery())
+			{
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+	}
+}
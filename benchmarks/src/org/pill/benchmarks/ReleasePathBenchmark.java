@@ -0,0 +1,116 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.repository.local.LocalRepository;
+import org.pill.repository.local.ReleaseFileSystem;
+import org.pill.repository.local.ReleaseFileSystemProvider;
+import org.pill.repository.local.ReleasePath;
+
+/**
+ * Measures parsing and manipulating paths inside a release.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ReleasePathBenchmark
+{
+	private static final String ENTRY = "/guava.jar!/com/google/common/base/Preconditions.class";
+	private static final String DENORMALIZED_ENTRY =
+		"/guava.jar!/com/google/./common/../common/base/Preconditions.class";
+	private ReleaseFileSystem fileSystem;
+	private ReleasePath entry;
+	private ReleasePath directory;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		LocalRepository repository = Fixtures.getRepository();
+
+		// Path operations never touch the release, so it does not need to exist
+		URI release = URI.create(LocalRepository.class.getPackage().getName() + ".release:1");
+		fileSystem = new ReleaseFileSystem(new ReleaseFileSystemProvider(), release, repository);
+		entry = fileSystem.getPath(ENTRY);
+		directory = entry.getParent();
+	}
+
+	@Benchmark
+	public int parse()
+	{
+		return new ReleasePath(fileSystem, ENTRY).getNameCount();
+	}
+
+	@Benchmark
+	public ReleasePath getArchive()
+	{
+		return entry.getArchive();
+	}
+
+	@Benchmark
+	public String getEntryName()
+	{
+		return entry.getEntryName();
+	}
+
+	@Benchmark
+	public ReleasePath getParent()
+	{
+		return entry.getParent();
+	}
+
+	@Benchmark
+	public ReleasePath getFileName()
+	{
+		return entry.getFileName();
+	}
+
+	@Benchmark
+	public ReleasePath resolve()
+	{
+		return directory.resolve("Preconditions.class");
+	}
+
+	@Benchmark
+	public ReleasePath relativize()
+	{
+		return directory.relativize(entry);
+	}
+
+	@Benchmark
+	public ReleasePath normalize()
+	{
+		return new ReleasePath(fileSystem, DENORMALIZED_ENTRY).normalize();
+	}
+
+	@Benchmark
+	public boolean startsWith()
+	{
+		return entry.startsWith(directory);
+	}
+
+	@Benchmark
+	public int iterate()
+	{
+		int result = 0;
+		for (Path name: entry)
+			result += name.toString().length();
+		return result;
+	}
+}
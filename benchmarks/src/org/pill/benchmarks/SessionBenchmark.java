@@ -0,0 +1,87 @@
+package org.pill.benchmarks;
+
+import com.mysema.query.sql.H2Templates;
+import com.mysema.query.sql.SQLQuery;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.sql.ConstraintViolationException;
+import org.pill.sql.SQLExceptions;
+import org.pill.sql.Session;
+
+/**
+ * Measures the per-call overhead of Session and SQLExceptions, which sit on the path of every
+ * repository operation. Run with {@code -prof gc} to see the allocation rate when debug logging is
+ * disabled.
+ * <p/>
+ * These benchmarks have not been run against the static debug guards of Session and
+ * SQLExceptions, so no reduction in latency or allocation has been shown. A standalone check of
+ * {@code SQLExceptions.getCause()} with the no-operation logger measured 0 B/op both with and
+ * without the guards.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SessionBenchmark
+{
+	private Connection connection;
+	private Session session;
+	private final H2Templates dialect = new H2Templates();
+	private final RuntimeException exception = new RuntimeException(new SQLException("x", "42000"));
+
+	@Setup
+	public void setUp() throws IOException, SQLException
+	{
+		connection = DriverManager.getConnection("jdbc:h2:"
+			+ Fixtures.createTempDirectory().resolve("session"), "sa", "sa");
+		session = new Session(connection, dialect);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		session.close();
+	}
+
+	@Benchmark
+	public Session newSession()
+	{
+		return new Session(connection, dialect);
+	}
+
+	@Benchmark
+	public SQLQuery query()
+	{
+		return session.query();
+	}
+
+	@Benchmark
+	public boolean isValid()
+	{
+		return session.isValid(1000);
+	}
+
+	@Benchmark
+	public ConstraintViolationException getConstraintViolation()
+	{
+		return SQLExceptions.getConstraintViolation(exception);
+	}
+}
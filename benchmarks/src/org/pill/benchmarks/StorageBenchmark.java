@@ -0,0 +1,146 @@
+package org.pill.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pill.CompilationException;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+import org.pill.Module;
+import org.pill.Release;
+import org.pill.repository.local.GuiceConfig;
+import org.pill.repository.local.LocalRepository;
+
+/**
+ * Compares the storage backends of the local repository: the H2 database and the append-only
+ * log.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StorageBenchmark
+{
+	/**
+	 * The number of modules in the repository.
+	 */
+	private static final int MODULES = 100;
+	/**
+	 * The number of classes in each release.
+	 */
+	private static final int CLASSES = 50;
+	/**
+	 * Each backend runs in its own fork, because the repository is only created once per JVM.
+	 */
+	@Param({"h2", "log"})
+	public String storage;
+	private LocalRepository repository;
+	private Path jar;
+	private Module module;
+	private URI release;
+	private URI file;
+	private String fingerprint;
+	private long nextVersion;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+	@Setup
+	public void setUp() throws IOException, CompilationException, EntityExistsException
+	{
+		System.setProperty(GuiceConfig.STORAGE_PROPERTY, storage);
+		repository = Fixtures.getRepository();
+		Path directory = Fixtures.createTempDirectory();
+		Path classes = directory.resolve("classes");
+		Fixtures.compile(Fixtures.writeSourceTree(directory.resolve("source"), CLASSES), classes);
+		jar = Fixtures.writeJar(classes, directory.resolve("synthetic.jar"));
+		for (int i = 0; i < MODULES; ++i)
+		{
+			Module current = repository.insertModule(getClass().getName() + ".module" + i);
+			repository.insertRelease(current, "1.0", jar).build();
+			if (i == MODULES / 2)
+				module = current;
+		}
+		release = repository.getReleaseUri(module, "1.0");
+		file = URI.create(release + ":" + jar.getFileName());
+		fingerprint = getClass().getName() + ".resolution";
+		repository.putResolution(fingerprint, Collections.singletonList(release));
+	}
+
+	@Benchmark
+	public Release insertAndRemoveRelease()
+		throws EntityExistsException, EntityNotFoundException, IOException
+	{
+		Release result = repository.insertRelease(module, "2." + nextVersion, jar).build();
+		++nextVersion;
+		repository.removeRelease(result);
+		return result;
+	}
+
+	@Benchmark
+	public URI getReleaseUri() throws IOException
+	{
+		return repository.getReleaseUri(module, "1.0");
+	}
+
+	@Benchmark
+	public Release getRelease() throws IOException
+	{
+		return repository.getRelease(release);
+	}
+
+	@Benchmark
+	public BasicFileAttributes readAttributes() throws IOException
+	{
+		return repository.readAttributes(file);
+	}
+
+	@Benchmark
+	public long readContent() throws IOException
+	{
+		long result = 0;
+		try (SeekableByteChannel channel = repository.newByteChannel(file))
+		{
+			while (true)
+			{
+				buffer.clear();
+				int count = channel.read(buffer);
+				if (count == -1)
+					break;
+				result += count;
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public List<URI> getReleasesByClass() throws IOException
+	{
+		return repository.getReleasesByClass(Fixtures.PACKAGE + "." + Fixtures.getClassName(0));
+	}
+
+	@Benchmark
+	public List<URI> getResolution() throws IOException
+	{
+		return repository.getResolution(fingerprint);
+	}
+}
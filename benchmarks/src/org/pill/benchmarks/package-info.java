@@ -0,0 +1,10 @@
+/**
+ * JMH benchmarks covering the hot paths of the repository, filesystem and compiler.
+ * <p/>
+ * Run {@code org.openjdk.jmh.Main} with the benchmarks on the classpath, or the "run" target of
+ * this project.
+ */
+@NotNullByDefault
+package org.pill.benchmarks;
+
+import org.pill.NotNullByDefault;
@@ -0,0 +1,284 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local cache of build outputs, keyed by a {@link Fingerprint} of their inputs.
+ * <p/>
+ * Output files are stored once per distinct content under {@code objects/}, and each entry under
+ * {@code entries/} lists the files that a unit of work produced. Restoring an entry copies the
+ * files back into place, so switching between branches restores previously built outputs
+ * instead of rebuilding them. Entries are never evicted automatically.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class BuildCache
+{
+	private final Path directory;
+	private final Logger log = LoggerFactory.getLogger(BuildCache.class);
+
+	/**
+	 * Creates a new BuildCache.
+	 * <p/>
+	 * @param directory the directory containing the cache
+	 * @throws NullPointerException if directory is null
+	 */
+	public BuildCache(Path directory)
+	{
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the cache located at {@code ~/.pill/cache}
+	 */
+	public static BuildCache getInstance()
+	{
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Stores the outputs of a unit of work.
+	 * <p/>
+	 * @param key the fingerprint of the inputs
+	 * @param outputDirectory the directory containing the outputs
+	 * @param filter selects the output files, relative to {@code outputDirectory}
+	 * @throws NullPointerException if key, outputDirectory or filter are null
+	 * @throws IllegalArgumentException if key is not a fingerprint
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void store(String key, final Path outputDirectory, final PathMatcher filter)
+		throws IOException
+	{
+		Preconditions.checkNotNull(key, "key may not be null");
+		Preconditions.checkNotNull(outputDirectory, "outputDirectory may not be null");
+		Preconditions.checkNotNull(filter, "filter may not be null");
+		Preconditions.checkArgument(key.length() > 2, "key is too short: " + key);
+
+		final Map<String, String> entry = new LinkedHashMap<>();
+		Files.walkFileTree(outputDirectory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+				throws IOException
+			{
+				Path relativePath = outputDirectory.relativize(file);
+				if (attrs.isRegularFile() && filter.matches(relativePath))
+					entry.put(getName(relativePath), storeObject(file));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Path entryPath = getEntryPath(key);
+		Files.createDirectories(entryPath.getParent());
+		Path temp = entryPath.resolveSibling(entryPath.getFileName() + "." + UUID.randomUUID()
+			+ ".tmp");
+		try
+		{
+			try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+			{
+				for (Map.Entry<String, String> file: entry.entrySet())
+				{
+					out.write(file.getValue() + " " + file.getKey());
+					out.newLine();
+				}
+			}
+			Files.move(temp, entryPath, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+		log.debug("Stored {} files under {}", entry.size(), key);
+	}
+
+	/**
+	 * Restores the outputs of a unit of work. Files matched by {@code filter} that are not part of
+	 * the stored outputs are deleted.
+	 * <p/>
+	 * @param key the fingerprint of the inputs
+	 * @param outputDirectory the directory to restore the outputs into
+	 * @param filter selects the output files, relative to {@code outputDirectory}
+	 * @return false if the cache does not contain the outputs, in which case
+	 * {@code outputDirectory} is left untouched
+	 * @throws NullPointerException if key, outputDirectory or filter are null
+	 * @throws IllegalArgumentException if key is not a fingerprint
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean restore(String key, final Path outputDirectory, final PathMatcher filter)
+		throws IOException
+	{
+		Preconditions.checkNotNull(key, "key may not be null");
+		Preconditions.checkNotNull(outputDirectory, "outputDirectory may not be null");
+		Preconditions.checkNotNull(filter, "filter may not be null");
+		Preconditions.checkArgument(key.length() > 2, "key is too short: " + key);
+
+		final Map<String, String> entry = new LinkedHashMap<>();
+		Path entryPath = getEntryPath(key);
+		try (BufferedReader in = Files.newBufferedReader(entryPath, StandardCharsets.UTF_8))
+		{
+			while (true)
+			{
+				String line = in.readLine();
+				if (line == null)
+					break;
+				int separator = line.indexOf(' ');
+				entry.put(line.substring(separator + 1), line.substring(0, separator));
+			}
+		}
+		catch (NoSuchFileException unused)
+		{
+			return false;
+		}
+		for (String hash: entry.values())
+		{
+			if (!Files.exists(getObjectPath(hash)))
+			{
+				log.debug("{} is missing object {}", key, hash);
+				return false;
+			}
+		}
+
+		final List<Path> stale = new ArrayList<>();
+		if (Files.isDirectory(outputDirectory))
+		{
+			Files.walkFileTree(outputDirectory, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+				{
+					Path relativePath = outputDirectory.relativize(file);
+					if (attrs.isRegularFile() && filter.matches(relativePath)
+						&& !entry.containsKey(getName(relativePath)))
+					{
+						stale.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		for (Path file: stale)
+			Files.deleteIfExists(file);
+		// Restored files are newer than their sources, so timestamp-based checks consider them
+		// up-to-date
+		FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+		for (Map.Entry<String, String> file: entry.entrySet())
+		{
+			Path target = outputDirectory.resolve(file.getKey());
+			Files.createDirectories(target.getParent());
+			Files.copy(getObjectPath(file.getValue()), target,
+				StandardCopyOption.REPLACE_EXISTING);
+			Files.setLastModifiedTime(target, now);
+		}
+		Files.setLastModifiedTime(entryPath, now);
+		log.debug("Restored {} files from {}", entry.size(), key);
+		return true;
+	}
+
+	/**
+	 * Adds a file to the object store, if its contents are not already present.
+	 * <p/>
+	 * @param file the file
+	 * @return the hash of the file contents
+	 * @throws IOException if an I/O error occurs
+	 */
+	private String storeObject(Path file) throws IOException
+	{
+		String result = FileHasher.getInstance().hash(file);
+		Path target = getObjectPath(result);
+		if (Files.exists(target))
+			return result;
+		Files.createDirectories(target.getParent());
+		Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try
+		{
+			Files.copy(file, temp);
+			try
+			{
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (FileAlreadyExistsException unused)
+			{
+				// Another thread stored the same contents first
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+		return result;
+	}
+
+	/**
+	 * @param relativePath a path relative to an output directory
+	 * @return the platform-independent name of the path, using {@code /} as the separator
+	 */
+	private static String getName(Path relativePath)
+	{
+		StringBuilder result = new StringBuilder();
+		for (Path element: relativePath)
+		{
+			if (result.length() > 0)
+				result.append('/');
+			result.append(element.toString());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param key a fingerprint
+	 * @return the file listing the outputs associated with the fingerprint
+	 */
+	private Path getEntryPath(String key)
+	{
+		return directory.resolve("entries").resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	/**
+	 * @param hash the hash of an object's contents
+	 * @return the path of the object
+	 */
+	private Path getObjectPath(String hash)
+	{
+		return directory.resolve("objects").resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + directory + "]";
+	}
+
+	/**
+	 * Lazily initializes the default cache.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final BuildCache INSTANCE = new BuildCache(java.nio.file.Paths.get(
+			System.getProperty("user.home"), ".pill", "cache"));
+	}
+}
@@ -0,0 +1,23 @@
+package org.pill;
+
+import java.util.List;
+
+/**
+ * Decides which release of a module to use when a dependency graph references more than one.
+ * <p/>
+ * @author Gili Tzabari
+ * @see StandardConflictPolicy
+ */
+public interface ConflictPolicy
+{
+	/**
+	 * Selects a release of a module.
+	 * <p/>
+	 * @param module the module
+	 * @param candidates the releases of the module referenced by the dependency graph, ordered by
+	 * their distance from the roots of the graph (nearest first). Contains at least two elements.
+	 * @return the release to use
+	 * @throws DependencyConflictException if the conflict cannot be resolved
+	 */
+	Release select(Module module, List<Release> candidates) throws DependencyConflictException;
+}
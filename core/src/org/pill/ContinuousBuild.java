@@ -0,0 +1,427 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recompiles source files as they change.
+ * <p/>
+ * A build script that wants to keep running after its initial build ends with:
+ * <pre>
+ * try (ContinuousBuild build = new ContinuousBuild(compiler, sourceRoots, targetDirectory))
+ * {
+ *     build.run();
+ * }
+ * </pre>
+ * Events are collected until the source roots have been quiet for the debounce interval, then
+ * the files that were created or modified are handed to {@link JavaCompiler#run}, along with the
+ * files that refer to a type declared by a changed or deleted file. The latter pick up inlined
+ * constants and report references that no longer compile. References are found by scanning the
+ * source files for identifiers, so a few unaffected files may be recompiled as well. Other
+ * classes are resolved against the source path and the target directory, so they are not
+ * recompiled. When a source file is deleted, the class files generated from it are deleted as
+ * well. The compiler and the JVM remain warm between builds.
+ * <p/>
+ * THREAD-SAFETY: {@link #close()} may be invoked from any thread. Other methods are not
+ * thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ContinuousBuild implements Closeable
+{
+	/**
+	 * The default number of milliseconds that the source roots must be quiet before a build
+	 * starts.
+	 */
+	public static final long DEFAULT_DEBOUNCE = 100;
+	private static final String IDENTIFIER_REGEX =
+		"\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*";
+	private static final Pattern IDENTIFIER = Pattern.compile(IDENTIFIER_REGEX);
+	private static final Pattern DECLARATION = Pattern.compile(
+		"\\b(?:class|interface|enum)\\s+(" + IDENTIFIER_REGEX + ")");
+	private final JavaCompiler compiler;
+	private final List<Path> sourceRoots;
+	private final Path targetDirectory;
+	private long debounceNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEBOUNCE);
+	private final Map<WatchKey, Path> keyToDirectory = new HashMap<>();
+	/**
+	 * The identifiers found in each source file.
+	 */
+	private final Map<Path, Set<String>> references = new HashMap<>();
+	/**
+	 * The names of the types declared by each source file.
+	 */
+	private final Map<Path, Set<String>> declarations = new HashMap<>();
+	private volatile WatchService watcher;
+	private volatile boolean closed;
+	private final Logger log = LoggerFactory.getLogger(ContinuousBuild.class);
+
+	/**
+	 * Creates a new ContinuousBuild.
+	 * <p/>
+	 * @param compiler the compiler to use. Its source path is set to {@code sourceRoots}.
+	 * @param sourceRoots the directories containing the source files
+	 * @param targetDirectory the directory to compile into
+	 * @throws NullPointerException if compiler, sourceRoots or targetDirectory are null
+	 * @throws IllegalArgumentException if sourceRoots is empty, or refers to a non-existent path or
+	 * a non-directory
+	 */
+	public ContinuousBuild(JavaCompiler compiler, List<Path> sourceRoots, Path targetDirectory)
+	{
+		Preconditions.checkNotNull(compiler, "compiler may not be null");
+		Preconditions.checkNotNull(sourceRoots, "sourceRoots may not be null");
+		Preconditions.checkArgument(!sourceRoots.isEmpty(), "sourceRoots may not be empty");
+		Preconditions.checkNotNull(targetDirectory, "targetDirectory may not be null");
+
+		this.compiler = compiler.sourcePath(sourceRoots);
+		this.sourceRoots = ImmutableList.copyOf(sourceRoots);
+		this.targetDirectory = targetDirectory;
+	}
+
+	/**
+	 * Sets the amount of time that the source roots must be quiet before a build starts.
+	 * <p/>
+	 * @param debounce the amount of time
+	 * @param unit the unit of {@code debounce}
+	 * @return the ContinuousBuild
+	 * @throws NullPointerException if unit is null
+	 * @throws IllegalArgumentException if {@code debounce < 0}
+	 */
+	public ContinuousBuild debounce(long debounce, TimeUnit unit)
+	{
+		Preconditions.checkNotNull(unit, "unit may not be null");
+		Preconditions.checkArgument(debounce >= 0, "debounce may not be negative: " + debounce);
+
+		this.debounceNanos = unit.toNanos(debounce);
+		return this;
+	}
+
+	/**
+	 * Builds all source files, then rebuilds them as they change. Compilation errors and other
+	 * compiler failures are logged and do not stop the build.
+	 * <p/>
+	 * @throws IOException if an I/O error occurs while watching the source roots. Returns normally
+	 * if the thread is interrupted or {@link #close()} is invoked.
+	 */
+	public void run() throws IOException
+	{
+		try (WatchService watchService = FileSystems.getDefault().newWatchService())
+		{
+			this.watcher = watchService;
+			if (closed)
+				return;
+			Set<Path> sourceFiles = new TreeSet<>();
+			for (Path root: sourceRoots)
+				register(root, sourceFiles);
+			build(sourceFiles, new TreeSet<Path>());
+			while (true)
+			{
+				Set<Path> modified = new TreeSet<>();
+				Set<Path> deleted = new TreeSet<>();
+				WatchKey key = watchService.take();
+				while (key != null)
+				{
+					process(key, modified, deleted);
+					key = watchService.poll(debounceNanos, TimeUnit.NANOSECONDS);
+				}
+				build(modified, deleted);
+			}
+		}
+		catch (ClosedWatchServiceException unused)
+		{
+			// close() was invoked
+		}
+		catch (InterruptedException unused)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			keyToDirectory.clear();
+			references.clear();
+			declarations.clear();
+		}
+	}
+
+	/**
+	 * Stops the build. The current compilation, if any, runs to completion.
+	 * <p/>
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		WatchService watchService = this.watcher;
+		if (watchService != null)
+			watchService.close();
+	}
+
+	/**
+	 * Watches a directory and its descendants.
+	 * <p/>
+	 * @param directory the directory
+	 * @param sourceFiles the set to add the source files in the directory to
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void register(Path directory, final Set<Path> sourceFiles) throws IOException
+	{
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+				throws IOException
+			{
+				WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				keyToDirectory.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				if (isSourceFile(file))
+					sourceFiles.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Records the source files affected by a batch of events.
+	 * <p/>
+	 * @param key the key that was signalled
+	 * @param modified the set to add created or modified source files to
+	 * @param deleted the set to add deleted source files to
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void process(WatchKey key, Set<Path> modified, Set<Path> deleted) throws IOException
+	{
+		Path directory = keyToDirectory.get(key);
+		for (WatchEvent<?> event: key.pollEvents())
+		{
+			WatchEvent.Kind<?> kind = event.kind();
+			if (kind == StandardWatchEventKinds.OVERFLOW || directory == null)
+			{
+				log.debug("Events were lost, rescanning the source roots");
+				for (Path root: sourceRoots)
+					addSourceFiles(root, modified);
+				continue;
+			}
+			Path child = directory.resolve((Path) event.context());
+			if (kind == StandardWatchEventKinds.ENTRY_CREATE
+				&& Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+			{
+				register(child, modified);
+				continue;
+			}
+			if (!isSourceFile(child))
+				continue;
+			if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+			{
+				modified.remove(child);
+				deleted.add(child);
+			}
+			else
+			{
+				deleted.remove(child);
+				modified.add(child);
+			}
+		}
+		if (!key.reset())
+			keyToDirectory.remove(key);
+	}
+
+	/**
+	 * Adds the source files in a directory tree.
+	 * <p/>
+	 * @param directory the directory
+	 * @param sourceFiles the set to add the source files to
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void addSourceFiles(Path directory, final Set<Path> sourceFiles)
+		throws IOException
+	{
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				if (isSourceFile(file))
+					sourceFiles.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * @param path a path
+	 * @return true if the path denotes a Java source file
+	 */
+	private static boolean isSourceFile(Path path)
+	{
+		return path.getFileName().toString().endsWith(".java");
+	}
+
+	/**
+	 * Compiles modified source files and the files that refer to them, and deletes the classes of
+	 * deleted source files.
+	 * <p/>
+	 * @param modified the source files that were created or modified
+	 * @param deleted the source files that were deleted
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void build(Set<Path> modified, Set<Path> deleted) throws IOException
+	{
+		Set<String> changedTypes = new HashSet<>();
+		for (Path file: deleted)
+		{
+			deleteClasses(file);
+			references.remove(file);
+			Set<String> types = declarations.remove(file);
+			if (types != null)
+				changedTypes.addAll(types);
+		}
+		Set<Path> sourceFiles = new TreeSet<>();
+		for (Path file: modified)
+		{
+			Set<String> types = declarations.get(file);
+			if (types != null)
+				changedTypes.addAll(types);
+			// The file may have been deleted or replaced after the event was delivered
+			if (Files.isRegularFile(file) && index(file))
+			{
+				sourceFiles.add(file);
+				changedTypes.addAll(declarations.get(file));
+			}
+		}
+		for (Map.Entry<Path, Set<String>> entry: references.entrySet())
+		{
+			Path file = entry.getKey();
+			if (!sourceFiles.contains(file) && !Collections.disjoint(entry.getValue(), changedTypes)
+				&& Files.isRegularFile(file))
+			{
+				sourceFiles.add(file);
+			}
+		}
+		if (sourceFiles.isEmpty())
+			return;
+		long start = System.nanoTime();
+		try
+		{
+			Files.createDirectories(targetDirectory);
+			compiler.run(sourceFiles, targetDirectory);
+			log.info("Built {} file(s) in {} ms", sourceFiles.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+		catch (CompilationException | RuntimeException e)
+		{
+			log.warn("Build failed", e);
+		}
+	}
+
+	/**
+	 * Records the identifiers found in a source file and the types that it declares.
+	 * <p/>
+	 * @param sourceFile the source file
+	 * @return false if the file no longer exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean index(Path sourceFile) throws IOException
+	{
+		String source;
+		try
+		{
+			source = new String(Files.readAllBytes(sourceFile), StandardCharsets.UTF_8);
+		}
+		catch (NoSuchFileException unused)
+		{
+			references.remove(sourceFile);
+			declarations.remove(sourceFile);
+			return false;
+		}
+		Set<String> identifiers = new HashSet<>();
+		Matcher matcher = IDENTIFIER.matcher(source);
+		while (matcher.find())
+			identifiers.add(matcher.group());
+		references.put(sourceFile, identifiers);
+
+		Set<String> types = new HashSet<>();
+		String name = sourceFile.getFileName().toString();
+		types.add(name.substring(0, name.length() - ".java".length()));
+		matcher = DECLARATION.matcher(source);
+		while (matcher.find())
+			types.add(matcher.group(1));
+		declarations.put(sourceFile, types);
+		return true;
+	}
+
+	/**
+	 * Deletes the class files that were generated from a source file: the class named after the
+	 * file, along with its nested and anonymous classes.
+	 * <p/>
+	 * @param sourceFile the source file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void deleteClasses(Path sourceFile) throws IOException
+	{
+		for (Path root: sourceRoots)
+		{
+			if (!sourceFile.startsWith(root))
+				continue;
+			Path relativePath = root.relativize(sourceFile);
+			Path directory = targetDirectory.resolve(relativePath).getParent();
+			if (!Files.isDirectory(directory))
+				return;
+			String name = relativePath.getFileName().toString();
+			name = name.substring(0, name.length() - ".java".length());
+			try (DirectoryStream<Path> classFiles = Files.newDirectoryStream(directory,
+				name + "{.class,$*.class}"))
+			{
+				for (Path classFile: classFiles)
+				{
+					log.debug("Deleting {}", classFile);
+					Files.deleteIfExists(classFile);
+				}
+			}
+			return;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[sourceRoots=" + sourceRoots + ", targetDirectory="
+			+ targetDirectory + "]";
+	}
+}
@@ -0,0 +1,21 @@
+package org.pill;
+
+/**
+ * Thrown if a dependency graph references conflicting releases of the same module.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class DependencyConflictException extends Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new DependencyConflictException exception with the specified detail message.
+	 * <p/>
+	 * @param message the detail message
+	 */
+	public DependencyConflictException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,547 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the contents of a URL to a file.
+ * <p/>
+ * Data is transferred directly into the target file using
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}, and written to a {@code .part}
+ * file that is only renamed to the target once the download completes (and its checksum matches).
+ * If an HTTP download is interrupted, the next attempt resumes the {@code .part} file using a
+ * {@code Range} request.
+ * <p/>
+ * Large HTTP downloads are split into ranges that are fetched concurrently, if the server accepts
+ * {@code Range} requests. Parallel downloads are not resumable.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Download
+{
+	/**
+	 * The default number of ranges to fetch concurrently.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+	/**
+	 * The default minimum size of files that are fetched using parallel ranges.
+	 */
+	public static final long DEFAULT_RANGE_THRESHOLD = 16 * 1024 * 1024;
+	/**
+	 * The number of milliseconds to wait for a connection or a read before giving up.
+	 */
+	private static final int TIMEOUT = 30_000;
+	/**
+	 * The maximum number of bytes to transfer per call to {@code transferFrom()}.
+	 */
+	private static final long TRANSFER_SIZE = 1024 * 1024;
+	/**
+	 * HTTP status code 416: Requested Range Not Satisfiable.
+	 */
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private final URL source;
+	private final Path target;
+	private String algorithm;
+	private String expectedChecksum;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private long rangeThreshold = DEFAULT_RANGE_THRESHOLD;
+	private final Logger log = LoggerFactory.getLogger(Download.class);
+
+	/**
+	 * Creates a new Download.
+	 * <p/>
+	 * @param source the URL to read from
+	 * @param target the path to write to
+	 * @throws NullPointerException if source or target are null
+	 */
+	public Download(URL source, Path target)
+	{
+		Preconditions.checkNotNull(source, "source may not be null");
+		Preconditions.checkNotNull(target, "target may not be null");
+
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * @return the URL to read from
+	 */
+	URL getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * @return the path to write to
+	 */
+	Path getTarget()
+	{
+		return target;
+	}
+
+	/**
+	 * Verifies the downloaded file against a checksum. By default, no checksum is verified.
+	 * <p/>
+	 * @param algorithm the {@link MessageDigest} algorithm (e.g. {@code "SHA-1"} or
+	 * {@code "SHA-256"})
+	 * @param expected the expected checksum, in hexadecimal
+	 * @return the Download
+	 * @throws NullPointerException if algorithm or expected are null
+	 * @throws IllegalArgumentException if the algorithm is not supported
+	 */
+	public Download checksum(String algorithm, String expected)
+	{
+		Preconditions.checkNotNull(algorithm, "algorithm may not be null");
+		Preconditions.checkNotNull(expected, "expected may not be null");
+		try
+		{
+			MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalArgumentException("Unsupported algorithm: " + algorithm, e);
+		}
+
+		this.algorithm = algorithm;
+		this.expectedChecksum = expected;
+		return this;
+	}
+
+	/**
+	 * Sets the number of ranges to fetch concurrently. The default is {@link #DEFAULT_PARALLELISM}.
+	 * <p/>
+	 * @param parallelism the maximum number of ranges to fetch at a time. {@code 1} disables
+	 * parallel downloads.
+	 * @return the Download
+	 * @throws IllegalArgumentException if {@code parallelism < 1}
+	 */
+	public Download parallelism(int parallelism)
+	{
+		Preconditions.checkArgument(parallelism >= 1, "parallelism must be positive: "
+			+ parallelism);
+
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum size of files that are fetched using parallel ranges. The default is
+	 * {@link #DEFAULT_RANGE_THRESHOLD}.
+	 * <p/>
+	 * @param rangeThreshold the minimum file size, in bytes
+	 * @return the Download
+	 * @throws IllegalArgumentException if rangeThreshold is negative
+	 */
+	public Download rangeThreshold(long rangeThreshold)
+	{
+		Preconditions.checkArgument(rangeThreshold >= 0, "rangeThreshold may not be negative: "
+			+ rangeThreshold);
+
+		this.rangeThreshold = rangeThreshold;
+		return this;
+	}
+
+	/**
+	 * Downloads the file, replacing the target if it already exists.
+	 * <p/>
+	 * @throws FileNotFoundException if the source does not exist, or if the server responds with
+	 * HTTP 404 (Not Found) or 410 (Gone)
+	 * @throws IOException if the file does not match its checksum, or if an I/O error occurs
+	 */
+	public void run() throws FileNotFoundException, IOException
+	{
+		log.debug("Downloading {} to {}", source, target);
+		MessageDigest digest = null;
+		if (algorithm != null)
+			digest = newDigest(algorithm);
+		Path part = target.resolveSibling(target.getFileName() + ".part");
+		Path file = null;
+		if (parallelism > 1 && !Files.exists(part))
+		{
+			Path ranges = target.resolveSibling(target.getFileName() + ".ranges");
+			boolean success = false;
+			try
+			{
+				success = downloadRanges(ranges, digest);
+				if (success)
+					file = ranges;
+			}
+			finally
+			{
+				if (!success)
+					Files.deleteIfExists(ranges);
+			}
+		}
+		if (file == null)
+		{
+			downloadSequentially(part, digest, true);
+			file = part;
+		}
+		if (digest != null)
+		{
+			String actual = BaseEncoding.base16().lowerCase().encode(digest.digest());
+			if (!actual.equalsIgnoreCase(expectedChecksum))
+			{
+				// The download may have resumed a stale .part file, so start over next time
+				Files.delete(file);
+				throw new IOException("Checksum mismatch for " + source + ". Expected: "
+					+ expectedChecksum + ", actual: " + actual);
+			}
+		}
+		Files.move(file, target, StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Downloads the file using a single connection, resuming a partial download if possible.
+	 * <p/>
+	 * @param part the file to write to
+	 * @param digest the digest to update with the file contents, or null to skip verification
+	 * @param resume true if an existing partial download may be resumed
+	 * @throws FileNotFoundException if the source does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void downloadSequentially(Path part, @Nullable MessageDigest digest, boolean resume)
+		throws IOException
+	{
+		long offset = 0;
+		if (resume && Files.exists(part))
+			offset = Files.size(part);
+		String range = null;
+		if (offset > 0)
+			range = offset + "-";
+		URLConnection connection = connect(range);
+		long expectedSize = -1;
+		if (connection instanceof HttpURLConnection)
+		{
+			HttpURLConnection http = (HttpURLConnection) connection;
+			int code = http.getResponseCode();
+			switch (code)
+			{
+				case HttpURLConnection.HTTP_PARTIAL:
+				{
+					log.debug("Resuming {} at byte {}", source, offset);
+					break;
+				}
+				case HttpURLConnection.HTTP_OK:
+				{
+					// The server ignored the Range header
+					offset = 0;
+					break;
+				}
+				case HTTP_RANGE_NOT_SATISFIABLE:
+				{
+					// The partial download is stale
+					drain(http);
+					downloadSequentially(part, digest, false);
+					return;
+				}
+				default:
+				{
+					String message = source + " returned HTTP " + code + " "
+						+ http.getResponseMessage();
+					drain(http);
+					if (code == HttpURLConnection.HTTP_NOT_FOUND
+						|| code == HttpURLConnection.HTTP_GONE)
+					{
+						throw new FileNotFoundException(message);
+					}
+					throw new IOException(message);
+				}
+			}
+			long length = http.getContentLengthLong();
+			if (length != -1)
+				expectedSize = offset + length;
+		}
+		else
+			offset = 0;
+
+		try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE,
+			StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			out.truncate(offset);
+			if (digest != null)
+				update(digest, out, 0, offset);
+			try (InputStream in = connection.getInputStream())
+			{
+				InputStream input = in;
+				if (digest != null)
+					input = new DigestInputStream(in, digest);
+				long position = transfer(Channels.newChannel(input), out, offset, Long.MAX_VALUE);
+				if (expectedSize != -1 && position != expectedSize)
+				{
+					throw new IOException("Expected " + expectedSize + " bytes from " + source
+						+ " but got " + position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Downloads the file by fetching ranges concurrently.
+	 * <p/>
+	 * @param file the file to write to
+	 * @param digest the digest to update with the file contents, or null to skip verification
+	 * @return false if the file is too small, or if the server does not support range requests
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean downloadRanges(Path file, @Nullable MessageDigest digest) throws IOException
+	{
+		if (!source.getProtocol().equals("http") && !source.getProtocol().equals("https"))
+			return false;
+		HttpURLConnection head = (HttpURLConnection) connect(null);
+		head.setRequestMethod("HEAD");
+		int code = head.getResponseCode();
+		long length = head.getContentLengthLong();
+		String acceptRanges = head.getHeaderField("Accept-Ranges");
+		drain(head);
+		if (code != HttpURLConnection.HTTP_OK || length < rangeThreshold || length <= 0
+			|| !"bytes".equals(acceptRanges))
+		{
+			return false;
+		}
+
+		int ranges = (int) Math.min(parallelism, length);
+		long rangeSize = (length + ranges - 1) / ranges;
+		log.debug("Downloading {} using {} ranges", source, ranges);
+		ExecutorService executor = Executors.newFixedThreadPool(ranges,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Download-%d").build());
+		try (final FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+			StandardOpenOption.WRITE))
+		{
+			// transferFrom() does not write past the end of the file, so extend it up front
+			out.write(ByteBuffer.allocate(1), length - 1);
+			List<Future<Void>> futures = new ArrayList<>(ranges);
+			for (long start = 0; start < length; start += rangeSize)
+			{
+				final long first = start;
+				final long last = Math.min(start + rangeSize, length) - 1;
+				futures.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws IOException
+					{
+						downloadRange(out, first, last);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future: futures)
+				await(future);
+			if (digest != null)
+				update(digest, out, 0, length);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return true;
+	}
+
+	/**
+	 * Downloads a range of the file.
+	 * <p/>
+	 * @param out the file to write to
+	 * @param first the index of the first byte to download
+	 * @param last the index of the last byte to download
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void downloadRange(FileChannel out, long first, long last) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) connect(first + "-" + last);
+		int code = connection.getResponseCode();
+		if (code != HttpURLConnection.HTTP_PARTIAL)
+		{
+			drain(connection);
+			throw new IOException(source + " returned HTTP " + code + " for range " + first + "-"
+				+ last);
+		}
+		try (InputStream in = connection.getInputStream())
+		{
+			long end = transfer(Channels.newChannel(in), out, first, last + 1 - first);
+			if (end != last + 1)
+			{
+				throw new IOException("Expected " + (last + 1 - first) + " bytes from " + source
+					+ " but got " + (end - first));
+			}
+		}
+	}
+
+	/**
+	 * Transfers bytes from a channel into a file.
+	 * <p/>
+	 * @param in the channel to read from
+	 * @param out the file to write to
+	 * @param position the file position to start writing at
+	 * @param count the maximum number of bytes to transfer
+	 * @return the file position following the last byte that was written
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static long transfer(ReadableByteChannel in, FileChannel out, long position,
+		long count) throws IOException
+	{
+		long result = position;
+		long remaining = count;
+		while (remaining > 0)
+		{
+			long transferred = out.transferFrom(in, result, Math.min(remaining, TRANSFER_SIZE));
+			if (transferred == 0)
+				break;
+			result += transferred;
+			remaining -= transferred;
+		}
+		return result;
+	}
+
+	/**
+	 * Updates a digest with a portion of a file.
+	 * <p/>
+	 * @param digest the digest to update
+	 * @param file the file to read from
+	 * @param start the position of the first byte to read
+	 * @param end the position following the last byte to read
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void update(MessageDigest digest, FileChannel file, long start, long end)
+		throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(TRANSFER_SIZE,
+			Math.max(end - start, 1)));
+		long position = start;
+		while (position < end)
+		{
+			buffer.clear();
+			if (end - position < buffer.capacity())
+				buffer.limit((int) (end - position));
+			int count = file.read(buffer, position);
+			if (count == -1)
+				throw new IOException("Unexpected end of file at byte " + position);
+			buffer.flip();
+			digest.update(buffer);
+			position += count;
+		}
+	}
+
+	/**
+	 * Opens a connection to the source.
+	 * <p/>
+	 * @param range the byte range to request (e.g. {@code "100-"} or {@code "0-99"}), or null to
+	 * request the entire file
+	 * @return the connection
+	 * @throws IOException if an I/O error occurs
+	 */
+	private URLConnection connect(@Nullable String range) throws IOException
+	{
+		URLConnection result = source.openConnection();
+		result.setConnectTimeout(TIMEOUT);
+		result.setReadTimeout(TIMEOUT);
+		if (range != null)
+			result.setRequestProperty("Range", "bytes=" + range);
+		return result;
+	}
+
+	/**
+	 * Consumes an HTTP response without using it, so the connection may be reused.
+	 * <p/>
+	 * @param connection the connection
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void drain(HttpURLConnection connection) throws IOException
+	{
+		InputStream stream = connection.getErrorStream();
+		if (stream == null && connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST)
+			stream = connection.getInputStream();
+		if (stream == null)
+			return;
+		try (InputStream in = stream)
+		{
+			ByteStreams.copy(in, ByteStreams.nullOutputStream());
+		}
+	}
+
+	/**
+	 * @param algorithm the digest algorithm
+	 * @return a new message digest
+	 */
+	private static MessageDigest newDigest(String algorithm)
+	{
+		try
+		{
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// checksum() verifies that the algorithm is supported
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Waits for a task to complete.
+	 * <p/>
+	 * @param future the task
+	 * @throws IOException if the task failed or the current thread was interrupted
+	 */
+	private static void await(Future<?> future) throws IOException
+	{
+		try
+		{
+			future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			InterruptedIOException e2 = new InterruptedIOException();
+			e2.initCause(e);
+			throw e2;
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[source=" + source + ", target=" + target + "]";
+	}
+}
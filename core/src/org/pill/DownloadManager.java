@@ -0,0 +1,363 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules downloads across a bounded number of connections.
+ * <p/>
+ * Downloads are started in priority order, subject to a global connection limit and a per-host
+ * connection limit. Requests for a URL that is already being downloaded are coalesced into the
+ * existing transfer: if they specify the same target they share its result, otherwise the file is
+ * copied once the transfer completes. Each {@link Download} occupies a single connection slot, so
+ * downloads that fetch parallel ranges should limit their own {@link Download#parallelism(int)}.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class DownloadManager
+{
+	/**
+	 * The default maximum number of concurrent downloads.
+	 */
+	public static final int DEFAULT_CONNECTIONS = 16;
+	/**
+	 * The default maximum number of concurrent downloads from a single host.
+	 */
+	public static final int DEFAULT_CONNECTIONS_PER_HOST = 4;
+	private final int maxConnections;
+	private final int connectionsPerHost;
+	private final ExecutorService executor = Executors.newCachedThreadPool(
+		new ThreadFactoryBuilder().setDaemon(true).setNameFormat("DownloadManager-%d").build());
+	private final DownloadStatistics statistics = new DownloadStatistics();
+	private final Object lock = new Object();
+	/**
+	 * Requests waiting for a connection, in the order they should be started.
+	 */
+	private final NavigableSet<Request> queue = new TreeSet<>();
+	/**
+	 * Maps the URL of each queued or active download to its request.
+	 */
+	private final Map<String, Request> urlToRequest = new HashMap<>();
+	/**
+	 * Maps a host to the number of active downloads from it.
+	 */
+	private final Map<String, Integer> hostToConnections = new HashMap<>();
+	private int connections;
+	private long sequence;
+	private final Logger log = LoggerFactory.getLogger(DownloadManager.class);
+
+	/**
+	 * Creates a new DownloadManager.
+	 * <p/>
+	 * @param maxConnections the maximum number of concurrent downloads
+	 * @param connectionsPerHost the maximum number of concurrent downloads from a single host
+	 * @throws IllegalArgumentException if {@code maxConnections < 1} or
+	 * {@code connectionsPerHost < 1}
+	 */
+	public DownloadManager(int maxConnections, int connectionsPerHost)
+	{
+		Preconditions.checkArgument(maxConnections >= 1, "maxConnections must be positive: "
+			+ maxConnections);
+		Preconditions.checkArgument(connectionsPerHost >= 1, "connectionsPerHost must be positive: "
+			+ connectionsPerHost);
+
+		this.maxConnections = maxConnections;
+		this.connectionsPerHost = connectionsPerHost;
+	}
+
+	/**
+	 * @return the manager shared by the entire JVM, using {@link #DEFAULT_CONNECTIONS} and
+	 * {@link #DEFAULT_CONNECTIONS_PER_HOST}
+	 */
+	public static DownloadManager getInstance()
+	{
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * @return the manager's statistics
+	 */
+	public DownloadStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	/**
+	 * Schedules a download.
+	 * <p/>
+	 * If the URL is already being downloaded, the existing transfer is reused and its priority is
+	 * raised to {@code priority} if it has not started yet. The options of the existing transfer
+	 * (such as its checksum) take precedence.
+	 * <p/>
+	 * @param download the download
+	 * @param priority the download priority
+	 * @return the downloaded file. Cancelling the future of the request that started a transfer
+	 * removes it from the queue (if it has not started yet), and cancels any requests that were
+	 * coalesced into it.
+	 * @throws NullPointerException if download or priority are null
+	 */
+	public ListenableFuture<Path> submit(Download download, Priority priority)
+	{
+		Preconditions.checkNotNull(download, "download may not be null");
+		Preconditions.checkNotNull(priority, "priority may not be null");
+
+		final Path target = download.getTarget();
+		String url = download.getSource().toExternalForm();
+		final Request existing;
+		synchronized (lock)
+		{
+			existing = urlToRequest.get(url);
+			if (existing == null)
+			{
+				Request request = new Request(download, getHost(download.getSource()), priority,
+					sequence++);
+				urlToRequest.put(url, request);
+				queue.add(request);
+				statistics.addRequest(false);
+				dispatch();
+				return request.future;
+			}
+			statistics.addRequest(true);
+			if (priority.compareTo(existing.priority) < 0 && queue.remove(existing))
+			{
+				existing.priority = priority;
+				queue.add(existing);
+			}
+		}
+		// Cancelling a coalesced request must not cancel the underlying transfer
+		final SettableFuture<Path> result = SettableFuture.create();
+		existing.future.addListener(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Path source = Uninterruptibles.getUninterruptibly(existing.future);
+					if (!source.equals(target))
+						Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+					result.set(target);
+				}
+				catch (ExecutionException e)
+				{
+					result.setException(e.getCause());
+				}
+				catch (IOException | RuntimeException e)
+				{
+					result.setException(e);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return result;
+	}
+
+	/**
+	 * Starts as many queued downloads as the connection limits allow. Must be invoked while holding
+	 * {@code lock}.
+	 */
+	private void dispatch()
+	{
+		List<Request> ready = new ArrayList<>();
+		for (Iterator<Request> i = queue.iterator(); i.hasNext() && connections < maxConnections;)
+		{
+			Request request = i.next();
+			if (request.future.isCancelled())
+			{
+				i.remove();
+				urlToRequest.remove(request.download.getSource().toExternalForm());
+				continue;
+			}
+			Integer active = hostToConnections.get(request.host);
+			if (active == null)
+				active = 0;
+			if (active >= connectionsPerHost)
+				continue;
+			i.remove();
+			hostToConnections.put(request.host, active + 1);
+			++connections;
+			ready.add(request);
+		}
+		statistics.setLoad(queue.size(), connections);
+		for (final Request request: ready)
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					DownloadManager.this.run(request);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs a download and then starts any downloads that were waiting for its connection.
+	 * <p/>
+	 * @param request the download request
+	 */
+	private void run(Request request)
+	{
+		Throwable failure = null;
+		long size = 0;
+		try
+		{
+			request.download.run();
+			size = Files.size(request.target);
+		}
+		catch (IOException | RuntimeException | Error e)
+		{
+			failure = e;
+		}
+		synchronized (lock)
+		{
+			urlToRequest.remove(request.download.getSource().toExternalForm());
+			int active = hostToConnections.get(request.host) - 1;
+			if (active == 0)
+				hostToConnections.remove(request.host);
+			else
+				hostToConnections.put(request.host, active);
+			--connections;
+			if (failure == null)
+				statistics.addCompleted(size);
+			else
+				statistics.addFailed();
+			dispatch();
+		}
+		if (failure == null)
+			request.future.set(request.target);
+		else
+		{
+			log.debug("Failed to download " + request.download.getSource(), failure);
+			request.future.setException(failure);
+			if (failure instanceof Error)
+				throw (Error) failure;
+		}
+	}
+
+	/**
+	 * @param url a URL
+	 * @return the key used to limit connections to the URL's host
+	 */
+	private static String getHost(URL url)
+	{
+		int port = url.getPort();
+		if (port == -1)
+			port = url.getDefaultPort();
+		return url.getHost() + ":" + port;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[statistics=" + statistics + "]";
+	}
+
+	/**
+	 * Download priorities.
+	 */
+	@SuppressWarnings("PublicInnerClass")
+	public enum Priority
+	{
+		/**
+		 * Small files that gate other work, such as POMs and metadata.
+		 */
+		HIGH,
+		/**
+		 * Regular files, such as jars.
+		 */
+		NORMAL,
+		/**
+		 * Files that are not needed right away, such as sources and javadoc.
+		 */
+		LOW
+	}
+
+	/**
+	 * A scheduled download.
+	 */
+	private static final class Request implements Comparable<Request>
+	{
+		public final Download download;
+		public final Path target;
+		public final String host;
+		/**
+		 * Guarded by {@code DownloadManager.lock}.
+		 */
+		public Priority priority;
+		public final long sequence;
+		public final SettableFuture<Path> future = SettableFuture.create();
+
+		/**
+		 * Creates a new Request.
+		 * <p/>
+		 * @param download the download
+		 * @param host the key used to limit connections to the download's host
+		 * @param priority the download priority
+		 * @param sequence the order in which the request was submitted
+		 */
+		Request(Download download, String host, Priority priority, long sequence)
+		{
+			this.download = download;
+			this.target = download.getTarget();
+			this.host = host;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Request other)
+		{
+			int result = priority.compareTo(other.priority);
+			if (result != 0)
+				return result;
+			return Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Request))
+				return false;
+			return sequence == ((Request) o).sequence;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (sequence ^ (sequence >>> 32));
+		}
+	}
+
+	/**
+	 * Lazily initializes the shared manager.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final DownloadManager INSTANCE = new DownloadManager(DEFAULT_CONNECTIONS,
+			DEFAULT_CONNECTIONS_PER_HOST);
+	}
+}
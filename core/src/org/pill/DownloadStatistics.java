@@ -0,0 +1,159 @@
+package org.pill;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a {@link DownloadManager}.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class DownloadStatistics
+{
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong bytesDownloaded = new AtomicLong();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	/**
+	 * The number of nanoseconds spent with at least one active download, excluding the current
+	 * busy period.
+	 */
+	private final AtomicLong busyNanos = new AtomicLong();
+	/**
+	 * The value of {@link System#nanoTime()} when the current busy period began, or -1 if no
+	 * downloads are active.
+	 */
+	private final AtomicLong busySince = new AtomicLong(-1);
+
+	/**
+	 * @return the number of downloads requested
+	 */
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of requests that were satisfied by a download that was already in progress
+	 */
+	public long getCoalesced()
+	{
+		return coalesced.get();
+	}
+
+	/**
+	 * @return the number of downloads that completed successfully
+	 */
+	public long getCompleted()
+	{
+		return completed.get();
+	}
+
+	/**
+	 * @return the number of downloads that failed
+	 */
+	public long getFailed()
+	{
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of bytes downloaded
+	 */
+	public long getBytesDownloaded()
+	{
+		return bytesDownloaded.get();
+	}
+
+	/**
+	 * @return the number of downloads waiting for a connection
+	 */
+	public int getQueueDepth()
+	{
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of downloads in progress
+	 */
+	public int getActive()
+	{
+		return active.get();
+	}
+
+	/**
+	 * @return the number of bytes downloaded per second while at least one download was active, or
+	 * 0 if nothing was downloaded
+	 */
+	public double getThroughput()
+	{
+		long nanos = busyNanos.get();
+		long since = busySince.get();
+		if (since != -1)
+			nanos += System.nanoTime() - since;
+		if (nanos <= 0)
+			return 0;
+		return bytesDownloaded.get() / ((double) nanos / TimeUnit.SECONDS.toNanos(1));
+	}
+
+	/**
+	 * Records a download request.
+	 * <p/>
+	 * @param coalesced true if the request was satisfied by a download that was already in progress
+	 */
+	void addRequest(boolean coalesced)
+	{
+		requests.incrementAndGet();
+		if (coalesced)
+			this.coalesced.incrementAndGet();
+	}
+
+	/**
+	 * Records a successful download.
+	 * <p/>
+	 * @param bytes the size of the downloaded file
+	 */
+	void addCompleted(long bytes)
+	{
+		completed.incrementAndGet();
+		bytesDownloaded.addAndGet(bytes);
+	}
+
+	/**
+	 * Records a failed download.
+	 */
+	void addFailed()
+	{
+		failed.incrementAndGet();
+	}
+
+	/**
+	 * Updates the number of queued and active downloads.
+	 * <p/>
+	 * @param queued the number of downloads waiting for a connection
+	 * @param active the number of downloads in progress
+	 */
+	void setLoad(int queued, int active)
+	{
+		this.queued.set(queued);
+		int previous = this.active.getAndSet(active);
+		long now = System.nanoTime();
+		if (previous == 0 && active > 0)
+			busySince.set(now);
+		else if (previous > 0 && active == 0)
+			busyNanos.addAndGet(now - busySince.getAndSet(-1));
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToJsonString(DownloadStatistics.class, this).put("throughput", getThroughput()).
+			toString();
+	}
+}
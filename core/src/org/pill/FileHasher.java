@@ -0,0 +1,539 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the SHA-1 digest of file contents, remembering the digest of files that have not
+ * changed since they were last hashed.
+ * <p/>
+ * A file is considered unchanged if its size, last-modified time and file key (such as its inode)
+ * are the same. Digests are persisted in an append-only log that is memory-mapped into the
+ * process, so they survive across builds. Each record carries a CRC so that a log truncated by a
+ * crash is read up to its last intact record. The log is compacted when it is opened, once most
+ * of its records have been superseded. If another process holds the log, digests are only
+ * remembered in memory.
+ * <p/>
+ * Files that were modified within {@link #RACY_INTERVAL} of being hashed are not remembered,
+ * because a subsequent modification might not change their last-modified time.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class FileHasher
+{
+	/**
+	 * The system property that overrides the location of the default log. It is read when the
+	 * default hasher is first used.
+	 */
+	public static final String FILE_PROPERTY = "org.pill.hashes";
+	/**
+	 * The number of milliseconds that must elapse after a file is modified before its digest is
+	 * remembered.
+	 */
+	public static final long RACY_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+	/**
+	 * The length of a SHA-1 digest, in bytes.
+	 */
+	private static final int DIGEST_LENGTH = 20;
+	/**
+	 * The length of a record, excluding its length prefix, path and CRC: the file size,
+	 * last-modified time, file key and digest.
+	 */
+	private static final int FIXED_LENGTH = 8 + 8 + 8 + DIGEST_LENGTH;
+	/**
+	 * The minimum size of the memory-mapped log.
+	 */
+	private static final int INITIAL_CAPACITY = 1024 * 1024;
+	/**
+	 * The size of the buffer used to read files.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final Path file;
+	private final ExecutorService executor = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(),
+		new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FileHasher-%d").build());
+	private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>()
+	{
+		@Override
+		protected ByteBuffer initialValue()
+		{
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+	/**
+	 * Maps the absolute path of each file to its last known digest.
+	 */
+	private final ConcurrentMap<String, Entry> pathToEntry = new ConcurrentHashMap<>();
+	private final Object lock = new Object();
+	/**
+	 * True once the log has been read. Guarded by {@code lock}.
+	 */
+	private boolean opened;
+	/**
+	 * The log, or null if digests are not persisted. Guarded by {@code lock}.
+	 */
+	private FileChannel channel;
+	/**
+	 * The memory-mapped log. Guarded by {@code lock}.
+	 */
+	private MappedByteBuffer records;
+	private final Logger log = LoggerFactory.getLogger(FileHasher.class);
+
+	/**
+	 * Creates a new FileHasher.
+	 * <p/>
+	 * @param file the file to persist digests into
+	 * @throws NullPointerException if file is null
+	 */
+	public FileHasher(Path file)
+	{
+		Preconditions.checkNotNull(file, "file may not be null");
+
+		this.file = file;
+	}
+
+	/**
+	 * @return the hasher that persists digests into the file named by {@value #FILE_PROPERTY}, or
+	 * {@code ~/.pill/hashes} by default
+	 */
+	public static FileHasher getInstance()
+	{
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Returns the digest of a file.
+	 * <p/>
+	 * @param path the file
+	 * @return the SHA-1 digest of the file contents, in hexadecimal
+	 * @throws NullPointerException if path is null
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	public String hash(Path path) throws IOException
+	{
+		Preconditions.checkNotNull(path, "path may not be null");
+
+		open();
+		return BaseEncoding.base16().lowerCase().encode(getDigest(path));
+	}
+
+	/**
+	 * Returns the digests of multiple files, hashing files that have changed concurrently.
+	 * <p/>
+	 * @param paths the files
+	 * @return the SHA-1 digest of each file's contents, in hexadecimal, in the order of
+	 * {@code paths}
+	 * @throws NullPointerException if paths is null
+	 * @throws IOException if an I/O error occurs while reading the files
+	 */
+	public Map<Path, String> hashAll(Collection<Path> paths) throws IOException
+	{
+		Preconditions.checkNotNull(paths, "paths may not be null");
+
+		open();
+		Map<Path, Future<byte[]>> pending = new LinkedHashMap<>();
+		for (final Path path: paths)
+		{
+			pending.put(path, executor.submit(new Callable<byte[]>()
+			{
+				@Override
+				public byte[] call() throws IOException
+				{
+					return getDigest(path);
+				}
+			}));
+		}
+		Map<Path, String> result = new LinkedHashMap<>();
+		try
+		{
+			for (Map.Entry<Path, Future<byte[]>> entry: pending.entrySet())
+			{
+				result.put(entry.getKey(), BaseEncoding.base16().lowerCase().encode(
+					await(entry.getValue())));
+			}
+		}
+		finally
+		{
+			for (Future<byte[]> future: pending.values())
+				future.cancel(false);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the digest of a file, hashing it if it changed since it was last hashed.
+	 * <p/>
+	 * @param path the file
+	 * @return the SHA-1 digest of the file contents
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private byte[] getDigest(Path path) throws IOException
+	{
+		String key = path.toAbsolutePath().normalize().toString();
+		Entry before = Entry.of(Files.readAttributes(path, BasicFileAttributes.class), null);
+		Entry known = pathToEntry.get(key);
+		if (known != null && known.isSameFile(before))
+			return known.digest;
+
+		MessageDigest digest = newSha1();
+		ByteBuffer buffer = buffers.get();
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			while (true)
+			{
+				buffer.clear();
+				if (in.read(buffer) == -1)
+					break;
+				buffer.flip();
+				digest.update(buffer);
+			}
+		}
+		byte[] result = digest.digest();
+		Entry after = Entry.of(Files.readAttributes(path, BasicFileAttributes.class), result);
+		if (after.isSameFile(before) && System.currentTimeMillis()
+			- TimeUnit.NANOSECONDS.toMillis(after.lastModified) >= RACY_INTERVAL)
+		{
+			pathToEntry.put(key, after);
+			append(key, after);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the log, if it has not been read yet.
+	 */
+	private void open()
+	{
+		synchronized (lock)
+		{
+			if (opened)
+				return;
+			opened = true;
+			try
+			{
+				Files.createDirectories(file.getParent());
+				FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileLock fileLock;
+				try
+				{
+					fileLock = channel.tryLock();
+				}
+				catch (OverlappingFileLockException unused)
+				{
+					fileLock = null;
+				}
+				if (fileLock == null)
+				{
+					log.debug("{} is in use by another process. Digests will not be persisted.",
+						file);
+					channel.close();
+					return;
+				}
+				// The lock is released when the channel is closed at shutdown
+				this.channel = channel;
+				this.records = map(Math.max(INITIAL_CAPACITY, channel.size()));
+				int count = read();
+				if (count > 2 * pathToEntry.size() && count > 1024)
+					compact();
+			}
+			catch (IOException e)
+			{
+				log.warn("Could not open " + file + ". Digests will not be persisted.", e);
+				this.channel = null;
+				this.records = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of the log, up to the first record that is incomplete or corrupt. Must be
+	 * invoked while holding {@code lock}.
+	 * <p/>
+	 * @return the number of records read. On return, the log's position is set to the end of the
+	 * last intact record.
+	 */
+	private int read()
+	{
+		int result = 0;
+		CRC32 crc = new CRC32();
+		records.position(0);
+		while (records.remaining() >= 4)
+		{
+			int start = records.position();
+			int length = records.getInt();
+			if (length <= FIXED_LENGTH || length > records.remaining() - 4)
+			{
+				records.position(start);
+				break;
+			}
+			byte[] record = new byte[length];
+			records.get(record);
+			crc.reset();
+			crc.update(record);
+			if ((int) crc.getValue() != records.getInt())
+			{
+				records.position(start);
+				break;
+			}
+			ByteBuffer in = ByteBuffer.wrap(record);
+			long size = in.getLong();
+			long lastModified = in.getLong();
+			long fileKey = in.getLong();
+			byte[] digest = new byte[DIGEST_LENGTH];
+			in.get(digest);
+			String path = new String(record, in.position(), in.remaining(), StandardCharsets.UTF_8);
+			pathToEntry.put(path, new Entry(size, lastModified, fileKey, digest));
+			++result;
+		}
+		return result;
+	}
+
+	/**
+	 * Rewrites the log in place, keeping only the latest record of each file. Must be invoked
+	 * while holding {@code lock}.
+	 */
+	private void compact()
+	{
+		int end = records.position();
+		records.position(0);
+		for (Map.Entry<String, Entry> entry: pathToEntry.entrySet())
+			records.put(toRecord(entry.getKey(), entry.getValue()));
+		int position = records.position();
+		while (records.position() < end)
+			records.put((byte) 0);
+		records.position(position);
+		log.debug("Compacted {} to {} records", file, pathToEntry.size());
+	}
+
+	/**
+	 * Appends a record to the log, if it is persisted.
+	 * <p/>
+	 * @param path the absolute path of the file
+	 * @param entry the file's digest
+	 */
+	private void append(String path, Entry entry)
+	{
+		ByteBuffer record = toRecord(path, entry);
+		synchronized (lock)
+		{
+			if (records == null)
+				return;
+			try
+			{
+				if (records.remaining() < record.remaining())
+				{
+					int position = records.position();
+					records = map(Math.max(2L * records.capacity(), position + record.remaining()));
+					records.position(position);
+				}
+				records.put(record);
+			}
+			catch (IOException e)
+			{
+				log.warn("Could not extend " + file + ". Digests will no longer be persisted.", e);
+				records = null;
+			}
+		}
+	}
+
+	/**
+	 * Maps the log into memory. Must be invoked while holding {@code lock}.
+	 * <p/>
+	 * @param capacity the number of bytes to map. The log is extended if necessary.
+	 * @return the mapped log
+	 * @throws IOException if an I/O error occurs, or if {@code capacity} exceeds 2GB
+	 */
+	private MappedByteBuffer map(long capacity) throws IOException
+	{
+		if (capacity > Integer.MAX_VALUE)
+			throw new IOException(file + " exceeds " + Integer.MAX_VALUE + " bytes");
+		return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	/**
+	 * @param path the absolute path of a file
+	 * @param entry the file's digest
+	 * @return the log record, ready to be read
+	 */
+	private static ByteBuffer toRecord(String path, Entry entry)
+	{
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		int length = FIXED_LENGTH + pathBytes.length;
+		ByteBuffer result = ByteBuffer.allocate(4 + length + 4);
+		result.putInt(length);
+		result.putLong(entry.size);
+		result.putLong(entry.lastModified);
+		result.putLong(entry.fileKey);
+		result.put(entry.digest);
+		result.put(pathBytes);
+		CRC32 crc = new CRC32();
+		crc.update(result.array(), 4, length);
+		result.putInt((int) crc.getValue());
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * @return a new SHA-1 MessageDigest
+	 */
+	private static MessageDigest newSha1()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Waits for a digest to be computed.
+	 * <p/>
+	 * @param future the computation
+	 * @return the digest
+	 * @throws IOException if the computation fails
+	 */
+	private static byte[] await(Future<byte[]> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			InterruptedIOException e2 = new InterruptedIOException();
+			e2.initCause(e);
+			throw e2;
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + file + "]";
+	}
+
+	/**
+	 * The digest of a file, along with the attributes used to detect changes.
+	 */
+	private static final class Entry
+	{
+		public final long size;
+		/**
+		 * The last-modified time, in nanoseconds since the epoch.
+		 */
+		public final long lastModified;
+		/**
+		 * A hash of the file key, or 0 if the file system does not provide one.
+		 */
+		public final long fileKey;
+		public final byte[] digest;
+
+		/**
+		 * Creates a new Entry.
+		 * <p/>
+		 * @param size the file size
+		 * @param lastModified the last-modified time, in nanoseconds since the epoch
+		 * @param fileKey a hash of the file key, or 0 if the file system does not provide one
+		 * @param digest the digest of the file contents, or null if unknown
+		 */
+		Entry(long size, long lastModified, long fileKey, byte[] digest)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.fileKey = fileKey;
+			this.digest = digest;
+		}
+
+		/**
+		 * @param attributes the attributes of a file
+		 * @param digest the digest of the file contents, or null if unknown
+		 * @return a new Entry
+		 */
+		public static Entry of(BasicFileAttributes attributes, byte[] digest)
+		{
+			Object key = attributes.fileKey();
+			long fileKey;
+			if (key == null)
+				fileKey = 0;
+			else
+				fileKey = Hashing.md5().hashString(key.toString(), StandardCharsets.UTF_8).asLong();
+			return new Entry(attributes.size(), attributes.lastModifiedTime().to(
+				TimeUnit.NANOSECONDS), fileKey, digest);
+		}
+
+		/**
+		 * @param other another entry
+		 * @return true if both entries have the same size, last-modified time and file key
+		 */
+		public boolean isSameFile(Entry other)
+		{
+			return size == other.size && lastModified == other.lastModified
+				&& fileKey == other.fileKey;
+		}
+	}
+
+	/**
+	 * Lazily initializes the default hasher.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final FileHasher INSTANCE = new FileHasher(getFile());
+
+		/**
+		 * @return the file to persist digests into
+		 */
+		private static Path getFile()
+		{
+			String file = System.getProperty(FILE_PROPERTY);
+			if (file == null)
+				return java.nio.file.Paths.get(System.getProperty("user.home"), ".pill", "hashes");
+			return java.nio.file.Paths.get(file);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Computes a key that identifies the inputs of a unit of work, such as a compilation.
+ * <p/>
+ * Values are added in a fixed order; files contribute their path and contents, so the key changes
+ * whenever a file is modified, added or removed.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Fingerprint
+{
+	private final Hasher hasher = Hashing.sha1().newHasher();
+
+	/**
+	 * Adds a string.
+	 * <p/>
+	 * @param value the string
+	 * @return the Fingerprint
+	 * @throws NullPointerException if value is null
+	 */
+	public Fingerprint add(String value)
+	{
+		Preconditions.checkNotNull(value, "value may not be null");
+
+		// Prefix the length so that ("ab", "c") and ("a", "bc") differ
+		hasher.putInt(value.length());
+		hasher.putString(value, StandardCharsets.UTF_8);
+		return this;
+	}
+
+	/**
+	 * Adds the path and contents of a file. Missing files contribute their path alone.
+	 * <p/>
+	 * @param file the file
+	 * @return the Fingerprint
+	 * @throws NullPointerException if file is null
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	public Fingerprint addFile(Path file) throws IOException
+	{
+		Preconditions.checkNotNull(file, "file may not be null");
+
+		String digest;
+		if (Files.isRegularFile(file))
+			digest = FileHasher.getInstance().hash(file);
+		else
+			digest = "";
+		return addFile(file, digest);
+	}
+
+	/**
+	 * Adds the files in a directory tree, in sorted order. Files are hashed concurrently.
+	 * <p/>
+	 * @param directory the directory
+	 * @param filter selects the files to add, relative to {@code directory}
+	 * @return the Fingerprint
+	 * @throws NullPointerException if directory or filter are null
+	 * @throws IOException if an I/O error occurs while reading the files
+	 */
+	public Fingerprint addTree(final Path directory, final PathMatcher filter) throws IOException
+	{
+		Preconditions.checkNotNull(directory, "directory may not be null");
+		Preconditions.checkNotNull(filter, "filter may not be null");
+
+		final SortedSet<Path> files = new TreeSet<>();
+		if (Files.isDirectory(directory))
+		{
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+				{
+					if (attrs.isRegularFile() && filter.matches(directory.relativize(file)))
+						files.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		add(directory.toAbsolutePath().normalize().toString());
+		hasher.putInt(files.size());
+		for (Map.Entry<Path, String> entry: FileHasher.getInstance().hashAll(files).entrySet())
+			addFile(entry.getKey(), entry.getValue());
+		return this;
+	}
+
+	/**
+	 * Adds the path and digest of a file.
+	 * <p/>
+	 * @param file the file
+	 * @param digest the digest of the file contents, or an empty string if the file does not exist
+	 * @return the Fingerprint
+	 */
+	private Fingerprint addFile(Path file, String digest)
+	{
+		add(file.toAbsolutePath().normalize().toString());
+		return add(digest);
+	}
+
+	/**
+	 * @return the key, in hexadecimal. The Fingerprint may not be used after this method is
+	 * invoked.
+	 */
+	public String getValue()
+	{
+		return hasher.hash().toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName();
+	}
+}
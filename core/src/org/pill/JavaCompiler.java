@@ -7,11 +7,19 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.sun.xml.internal.rngom.ast.builder.BuildException;
 import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.tools.*;
 import javax.tools.JavaCompiler.CompilationTask;
+import org.pill.repository.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,10 +30,30 @@ import org.slf4j.LoggerFactory;
  */
 public final class JavaCompiler
 {
+	/**
+	 * The maximum number of times to recompile after resolving missing dependencies.
+	 */
+	private static final int MAX_RESOLUTION_ROUNDS = 3;
+	private static final Pattern MISSING_PACKAGE = Pattern.compile(
+		"package ([\\w.$]+) does not exist");
+	private static final Pattern MISSING_CLASS = Pattern.compile("symbol:\\s+class ([\\w$]+)");
+	private static final Pattern IMPORT = Pattern.compile(
+		"^\\s*import\\s+(static\\s+)?([\\w.$]+?)(\\.\\*)?\\s*;", Pattern.MULTILINE);
+	private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.$]+)\\s*;",
+		Pattern.MULTILINE);
+	/**
+	 * Selects the files in the target directory that are produced by the compiler.
+	 */
+	private static final PathMatcher CLASS_FILES = FileSystems.getDefault().getPathMatcher(
+		"glob:**.class");
+	private final Logger log = LoggerFactory.getLogger(JavaCompiler.class);
 	private List<Path> sourcePath = new ArrayList<>();
 	private List<Path> classPath = ImmutableList.of();
 	private final Set<DebugType> debugOptions = new HashSet<>(Arrays.asList(DebugType.LINES,
 		DebugType.SOURCE, DebugType.VARIABLES));
+	private Repository repository;
+	private Path dependencyDirectory;
+	private BuildCache buildCache;
 
 	/**
 	 * Sets the compiler classpath.
@@ -94,6 +122,51 @@ public final class JavaCompiler
 		return this;
 	}
 
+	/**
+	 * Resolves missing dependencies using a repository.
+	 * <p/>
+	 * When compilation fails because a class or package cannot be found, the missing names are
+	 * looked up in the repository's class index. The most recently added release containing each
+	 * name is copied into {@code directory} and added to the classpath, and the affected files are
+	 * recompiled. By default, missing dependencies are not resolved.
+	 * <p/>
+	 * @param repository the repository to look up missing classes in
+	 * @param directory the directory to copy resolved releases into
+	 * @throws NullPointerException if repository or directory are null
+	 * @return the JavaCompiler
+	 */
+	public JavaCompiler autoResolve(Repository repository, Path directory)
+	{
+		Preconditions.checkNotNull(repository, "repository may not be null");
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		this.repository = repository;
+		this.dependencyDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * Reuses the output of earlier compilations.
+	 * <p/>
+	 * Before compiling, the source files, source path, classpath, debugging options and compiler
+	 * version are fingerprinted. If the cache contains the classes that were compiled from the same
+	 * inputs, they are restored into the target directory instead of being recompiled, and class
+	 * files that are not part of that output are deleted. Otherwise, the classes in the target
+	 * directory are added to the cache after a successful compilation. By default, no cache is
+	 * used.
+	 * <p/>
+	 * @param cache the cache to use
+	 * @throws NullPointerException if cache is null
+	 * @return the JavaCompiler
+	 */
+	public JavaCompiler buildCache(BuildCache cache)
+	{
+		Preconditions.checkNotNull(cache, "cache may not be null");
+
+		this.buildCache = cache;
+		return this;
+	}
+
 	/**
 	 * Compiles the source code.
 	 * <p/>
@@ -106,6 +179,25 @@ public final class JavaCompiler
 	 */
 	public void run(final Collection<Path> sourceFiles, final Path targetDirectory)
 		throws IllegalArgumentException, CompilationException
+	{
+		try (Span span = Metrics.getInstance().start("JavaCompiler.run"))
+		{
+			compile(sourceFiles, targetDirectory);
+		}
+	}
+
+	/**
+	 * Implements {@link #run(Collection, Path)}. The latency of each phase is recorded by
+	 * {@link Metrics}.
+	 * <p/>
+	 * @param sourceFiles the source files to compile
+	 * @param targetDirectory the directory to compile into
+	 * @throws IllegalArgumentException if sourceFiles, targetDirectory are null; or if sourceFiles
+	 * refers to a non-existent file or a non-file; or if targetDirectory is not a directory
+	 * @throws CompilationException if the operation fails
+	 */
+	private void compile(final Collection<Path> sourceFiles, final Path targetDirectory)
+		throws IllegalArgumentException, CompilationException
 	{
 		if (sourceFiles == null)
 			throw new IllegalArgumentException("sourceFiles may not be null");
@@ -138,35 +230,176 @@ public final class JavaCompiler
 		}
 		Set<Path> uniqueSourceFiles = ImmutableSet.copyOf(sourceFiles);
 		Set<Path> uniqueSourcePath = ImmutableSet.copyOf(sourcePath);
-		final javax.tools.JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-		if (compiler == null)
+		final javax.tools.JavaCompiler compiler;
+		try (Span span = Metrics.getInstance().start("JavaCompiler.setup"))
+		{
+			compiler = ToolProvider.getSystemJavaCompiler();
+			if (compiler == null)
+			{
+				throw new AssertionError("javax.tools.JavaCompiler is not available. Is tools.jar "
+					+ "missing from the classpath?");
+			}
+		}
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null,
+			null))
+		{
+			compile(compiler, fileManager, uniqueSourceFiles, uniqueSourcePath, targetDirectory);
+		}
+		catch (IOException e)
 		{
-			throw new AssertionError("javax.tools.JavaCompiler is not available. Is tools.jar missing "
-				+ "from the classpath?");
+			throw new BuildException(e);
 		}
-		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-		final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
-			null);
+	}
 
-		Iterable<? extends JavaFileObject> compilationUnits;
-		try
+	/**
+	 * Compiles the source files that are out of date, resolving missing dependencies if
+	 * necessary.
+	 * <p/>
+	 * @param compiler the compiler
+	 * @param fileManager the file manager of the compiler
+	 * @param uniqueSourceFiles the source files to compile
+	 * @param uniqueSourcePath the source file search path
+	 * @param targetDirectory the directory to compile into
+	 * @throws CompilationException if the operation fails
+	 */
+	private void compile(javax.tools.JavaCompiler compiler, StandardJavaFileManager fileManager,
+		Set<Path> uniqueSourceFiles, Set<Path> uniqueSourcePath, Path targetDirectory)
+		throws CompilationException
+	{
+		Metrics metrics = Metrics.getInstance();
+		Set<File> pendingFiles;
+		try (Span span = metrics.start("JavaCompiler.findModifiedFiles"))
 		{
-			Set<File> modifiedFiles = getModifiedFiles(uniqueSourceFiles, uniqueSourcePath,
-				targetDirectory, new HashSet<Path>());
-			if (modifiedFiles.isEmpty())
+			pendingFiles = getModifiedFiles(uniqueSourceFiles, uniqueSourcePath, targetDirectory,
+				new HashSet<Path>());
+			if (pendingFiles.isEmpty())
 				return;
-			compilationUnits = fileManager.getJavaFileObjectsFromFiles(modifiedFiles);
 		}
 		catch (IOException e)
 		{
 			throw new CompilationException(e);
 		}
+		String cacheKey = null;
+		if (buildCache != null)
+		{
+			try (Span span = metrics.start("JavaCompiler.restoreCache"))
+			{
+				cacheKey = getCacheKey(uniqueSourceFiles, uniqueSourcePath);
+				if (buildCache.restore(cacheKey, targetDirectory, CLASS_FILES))
+				{
+					log.debug("Restored classes from the build cache");
+					return;
+				}
+			}
+			catch (IOException e)
+			{
+				throw new CompilationException(e);
+			}
+		}
 		final List<Path> effectiveClasspath = new ArrayList<>();
 		effectiveClasspath.add(targetDirectory);
 		effectiveClasspath.addAll(classPath);
+		Set<URI> resolvedReleases = new HashSet<>();
+		for (int round = 0;; ++round)
+		{
+			final List<String> options = getOptions(effectiveClasspath, uniqueSourcePath,
+				targetDirectory);
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			final Writer output = null;
+			final boolean result;
+			try (Span span = metrics.start("JavaCompiler.compile"))
+			{
+				final CompilationTask task = compiler.getTask(output, fileManager, diagnostics,
+					options, null, fileManager.getJavaFileObjectsFromFiles(pendingFiles));
+				result = task.call();
+			}
+			if (!result && repository != null && round < MAX_RESOLUTION_ROUNDS)
+			{
+				List<Path> dependencies;
+				try (Span span = metrics.start("JavaCompiler.resolveDependencies"))
+				{
+					dependencies = resolveMissingDependencies(diagnostics, resolvedReleases);
+				}
+				catch (IOException e)
+				{
+					throw new CompilationException(e);
+				}
+				if (!dependencies.isEmpty())
+				{
+					effectiveClasspath.addAll(dependencies);
+					pendingFiles = getAffectedFiles(pendingFiles, diagnostics, targetDirectory);
+					continue;
+				}
+			}
+			try (Span span = metrics.start("JavaCompiler.diagnostics"))
+			{
+				printDiagnostics(diagnostics, options, uniqueSourceFiles);
+			}
+			catch (IOException e)
+			{
+				throw new BuildException(e);
+			}
+			if (!result)
+				throw new CompilationException();
+			break;
+		}
+		if (cacheKey != null)
+		{
+			try (Span span = metrics.start("JavaCompiler.storeCache"))
+			{
+				buildCache.store(cacheKey, targetDirectory, CLASS_FILES);
+			}
+			catch (IOException e)
+			{
+				log.warn("Could not update the build cache", e);
+			}
+		}
+	}
+
+	/**
+	 * Fingerprints the inputs of a compilation.
+	 * <p/>
+	 * @param sourceFiles the source files to compile
+	 * @param sourcePath the source file search path
+	 * @return the fingerprint
+	 * @throws IOException if an I/O error occurs while reading the inputs
+	 */
+	private String getCacheKey(Set<Path> sourceFiles, Set<Path> sourcePath) throws IOException
+	{
+		Fingerprint result = new Fingerprint().add(JavaCompiler.class.getName()).
+			add(System.getProperty("java.version"));
+		for (DebugType type: new TreeSet<>(debugOptions))
+			result.add(type.name());
+		for (Path file: new TreeSet<>(sourceFiles))
+			result.addFile(file);
+		PathMatcher sourceFilter = FileSystems.getDefault().getPathMatcher("glob:**.java");
+		for (Path directory: sourcePath)
+			result.addTree(directory, sourceFilter);
+		PathMatcher allFiles = FileSystems.getDefault().getPathMatcher("glob:**");
+		for (Path entry: classPath)
+		{
+			if (Files.isDirectory(entry))
+				result.addTree(entry, allFiles);
+			else
+				result.addFile(entry);
+		}
+		return result.getValue();
+	}
+
+	/**
+	 * Returns the command-line options passed to the compiler.
+	 * <p/>
+	 * @param classPath the compiler classpath
+	 * @param sourcePath the source file search path
+	 * @param targetDirectory the directory to compile into
+	 * @return the command-line options
+	 */
+	private List<String> getOptions(List<Path> classPath, Set<Path> sourcePath,
+		Path targetDirectory)
+	{
 		final List<String> options = new ArrayList<>();
 		options.add("-cp");
-		options.add(Joiner.on(File.pathSeparatorChar).join(effectiveClasspath));
+		options.add(Joiner.on(File.pathSeparatorChar).join(classPath));
 
 		final StringBuilder debugLine = new StringBuilder("-g:");
 		for (DebugType type : debugOptions)
@@ -198,36 +431,204 @@ public final class JavaCompiler
 			options.add(debugLine.toString());
 		}
 
-		if (!uniqueSourcePath.isEmpty())
+		if (!sourcePath.isEmpty())
 		{
 			options.add("-sourcepath");
-			options.add(Joiner.on(File.pathSeparatorChar).join(uniqueSourcePath));
+			options.add(Joiner.on(File.pathSeparatorChar).join(sourcePath));
 		}
 		options.add("-s");
 		options.add(targetDirectory.toString());
 		options.add("-d");
 		options.add(targetDirectory.toString());
-		final Writer output = null;
-		final CompilationTask task = compiler.getTask(output, fileManager, diagnostics, options, null,
-			compilationUnits);
-		final boolean result = task.call();
-		try
+		return options;
+	}
+
+	/**
+	 * Looks up the releases that provide the classes and packages the compiler could not find,
+	 * and copies them into {@code dependencyDirectory}.
+	 * <p/>
+	 * @param diagnostics the compiler diagnostics
+	 * @param resolvedReleases the URIs of releases that were resolved by previous rounds. Newly
+	 * resolved releases are added to this set.
+	 * @return the paths of the newly resolved releases (empty if none were found)
+	 * @throws IOException if an I/O error occurs
+	 */
+	private List<Path> resolveMissingDependencies(DiagnosticCollector<JavaFileObject> diagnostics,
+		Set<URI> resolvedReleases) throws IOException
+	{
+		Set<String> classNames = new LinkedHashSet<>();
+		Set<String> packageNames = new LinkedHashSet<>();
+		Map<JavaFileObject, List<String>> sourceToImports = new HashMap<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
 		{
-			printDiagnostics(diagnostics, options, sourceFiles);
+			JavaFileObject source = diagnostic.getSource();
+			if (diagnostic.getKind() != Diagnostic.Kind.ERROR || source == null)
+				continue;
+			List<String> imports = sourceToImports.get(source);
+			if (imports == null)
+			{
+				imports = getImports(source.getCharContent(true));
+				sourceToImports.put(source, imports);
+			}
+			String message = diagnostic.getMessage(Locale.ENGLISH);
+			Matcher matcher = MISSING_PACKAGE.matcher(message);
+			if (matcher.find())
+			{
+				// "import a.b.C" fails with "package a.b does not exist"
+				String packageName = matcher.group(1);
+				boolean foundImport = false;
+				for (String name : imports)
+				{
+					if (!name.endsWith(".*") && name.startsWith(packageName + ".")
+						&& name.indexOf('.', packageName.length() + 1) == -1)
+					{
+						classNames.add(name);
+						foundImport = true;
+					}
+				}
+				if (!foundImport)
+					packageNames.add(packageName);
+				continue;
+			}
+			matcher = MISSING_CLASS.matcher(message);
+			if (matcher.find())
+			{
+				String simpleName = matcher.group(1);
+				for (String name : imports)
+				{
+					if (name.endsWith(".*"))
+					{
+						classNames.add(name.substring(0, name.length() - ".*".length()) + "."
+							+ simpleName);
+					}
+					else if (name.endsWith("." + simpleName))
+						classNames.add(name);
+				}
+			}
 		}
-		catch (IOException e)
+
+		Set<URI> missing = new LinkedHashSet<>();
+		for (String className : classNames)
 		{
-			throw new BuildException(e);
+			List<URI> releases = repository.getReleasesByClass(className);
+			if (!releases.isEmpty())
+			{
+				URI release = releases.get(releases.size() - 1);
+				log.debug("{} resolved to {}", className, release);
+				missing.add(release);
+			}
 		}
-		if (!result)
-			throw new CompilationException();
+		for (String packageName : packageNames)
+		{
+			List<URI> releases = repository.getReleasesByPackage(packageName);
+			if (!releases.isEmpty())
+			{
+				URI release = releases.get(releases.size() - 1);
+				log.debug("{} resolved to {}", packageName, release);
+				missing.add(release);
+			}
+		}
+		missing.removeAll(resolvedReleases);
+		if (missing.isEmpty())
+			return Collections.emptyList();
+		resolvedReleases.addAll(missing);
+
+		Collection<Release> releases = repository.getReleases(missing).values();
+		Files.createDirectories(dependencyDirectory);
+		Releases.copyAll(releases, dependencyDirectory, StandardCopyOption.REPLACE_EXISTING,
+			PerformanceCopyOption.SKIP_NEWER);
+		List<Path> result = new ArrayList<>(releases.size());
+		for (Release release : releases)
+		{
+			log.info("Resolved missing dependency: {} {}", release.getModule(),
+				release.getVersion());
+			result.add(dependencyDirectory.resolve(release.getFilename()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the names imported by a source file.
+	 * <p/>
+	 * @param source the source code
+	 * @return the imported names. On-demand imports end with {@code ".*"}. For static imports,
+	 * the name of the enclosing class is returned.
+	 */
+	private static List<String> getImports(CharSequence source)
+	{
+		List<String> result = new ArrayList<>();
+		Matcher matcher = IMPORT.matcher(source);
+		while (matcher.find())
+		{
+			String name = matcher.group(2);
+			boolean onDemand = matcher.group(3) != null;
+			if (matcher.group(1) != null)
+			{
+				// "import static a.b.C.member" or "import static a.b.C.*"
+				if (!onDemand)
+					name = name.substring(0, name.lastIndexOf('.'));
+				result.add(name);
+			}
+			else if (onDemand)
+				result.add(name + ".*");
+			else
+				result.add(name);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the files that must be recompiled after resolving missing dependencies.
+	 * <p/>
+	 * @param sourceFiles the files that were compiled
+	 * @param diagnostics the compiler diagnostics
+	 * @param targetDirectory the directory to compile into
+	 * @return the files that reported errors, or whose class file is missing or out of date
+	 */
+	private static Set<File> getAffectedFiles(Set<File> sourceFiles,
+		DiagnosticCollector<JavaFileObject> diagnostics, Path targetDirectory)
+	{
+		Set<File> result = new HashSet<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+		{
+			JavaFileObject source = diagnostic.getSource();
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR && source != null)
+				result.add(new File(source.toUri()));
+		}
+		for (File file : sourceFiles)
+		{
+			if (!result.contains(file) && !isUpToDate(file, targetDirectory))
+				result.add(file);
+		}
+		return result;
+	}
+
+	/**
+	 * Indicates if the class file corresponding to a source file is up to date.
+	 * <p/>
+	 * @param sourceFile the source file
+	 * @param targetDirectory the directory to compile into
+	 * @return true if the class file is not older than the source file
+	 */
+	private static boolean isUpToDate(File sourceFile, Path targetDirectory)
+	{
 		try
 		{
-			fileManager.close();
+			String source = new String(Files.readAllBytes(sourceFile.toPath()),
+				StandardCharsets.UTF_8);
+			Path directory = targetDirectory;
+			Matcher matcher = PACKAGE.matcher(source);
+			if (matcher.find())
+				directory = directory.resolve(matcher.group(1).replace('.', File.separatorChar));
+			String name = sourceFile.getName();
+			Path classFile = directory.resolve(name.substring(0, name.length() - ".java".length())
+				+ ".class");
+			return Files.exists(classFile)
+				&& Files.getLastModifiedTime(classFile).toMillis() >= sourceFile.lastModified();
 		}
-		catch (IOException e)
+		catch (IOException unused)
 		{
-			throw new BuildException(e);
+			return false;
 		}
 	}
 
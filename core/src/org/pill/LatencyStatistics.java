@@ -0,0 +1,110 @@
+package org.pill;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the latencies of an operation. Percentiles are accurate to within 12.5%.
+ * <p/>
+ * THREAD-SAFETY: This class is immutable.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class LatencyStatistics
+{
+	private final long count;
+	private final long totalNanos;
+	private final long minNanos;
+	private final long maxNanos;
+	private final long p50Nanos;
+	private final long p95Nanos;
+	private final long p99Nanos;
+
+	/**
+	 * Creates a new LatencyStatistics.
+	 * <p/>
+	 * @param count the number of times the operation completed
+	 * @param totalNanos the total duration of the operation
+	 * @param minNanos the shortest duration
+	 * @param maxNanos the longest duration
+	 * @param p50Nanos the median duration
+	 * @param p95Nanos the 95th percentile duration
+	 * @param p99Nanos the 99th percentile duration
+	 */
+	@ConstructorProperties(
+	{
+		"count", "totalNanos", "minNanos", "maxNanos", "p50Nanos", "p95Nanos", "p99Nanos"
+	})
+	public LatencyStatistics(long count, long totalNanos, long minNanos, long maxNanos,
+		long p50Nanos, long p95Nanos, long p99Nanos)
+	{
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.minNanos = minNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p95Nanos = p95Nanos;
+		this.p99Nanos = p99Nanos;
+	}
+
+	/**
+	 * @return the number of times the operation completed
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the total duration of the operation, in nanoseconds
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * @return the shortest duration, in nanoseconds
+	 */
+	public long getMinNanos()
+	{
+		return minNanos;
+	}
+
+	/**
+	 * @return the longest duration, in nanoseconds
+	 */
+	public long getMaxNanos()
+	{
+		return maxNanos;
+	}
+
+	/**
+	 * @return the median duration, in nanoseconds
+	 */
+	public long getP50Nanos()
+	{
+		return p50Nanos;
+	}
+
+	/**
+	 * @return the 95th percentile duration, in nanoseconds
+	 */
+	public long getP95Nanos()
+	{
+		return p95Nanos;
+	}
+
+	/**
+	 * @return the 99th percentile duration, in nanoseconds
+	 */
+	public long getP99Nanos()
+	{
+		return p99Nanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToJsonString(LatencyStatistics.class, this).toString();
+	}
+}
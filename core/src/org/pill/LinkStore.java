@@ -0,0 +1,360 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A store of release contents on the default file system, used to materialize releases using
+ * hard links or copy-on-write clones instead of copying them.
+ * <p/>
+ * Contents are stored once per SHA-1 digest, no matter how many releases share them. Each release
+ * records the digest of its contents, along with the last-modified time and size they were
+ * hashed at. Contents are deleted once the last release that refers to them is removed.
+ * <p/>
+ * Materialized files share their contents with the store, so hard links must be treated as
+ * read-only: modifying them in place corrupts the store. Copy-on-write clones do not suffer from
+ * this limitation.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class LinkStore
+{
+	/**
+	 * The system property that overrides the location of the default store.
+	 */
+	public static final String DIRECTORY_PROPERTY = "org.pill.store";
+	private final Path directory;
+	/**
+	 * The directory containing the contents, named by their SHA-1 digest.
+	 */
+	private final Path objects;
+	/**
+	 * The directory containing the digest of each release, named by the SHA-1 digest of the
+	 * release URI.
+	 */
+	private final Path releases;
+	private final Logger log = LoggerFactory.getLogger(LinkStore.class);
+
+	/**
+	 * Creates a new LinkStore.
+	 * <p/>
+	 * @param directory the directory containing the store
+	 * @throws NullPointerException if directory is null
+	 */
+	public LinkStore(Path directory)
+	{
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		this.directory = directory;
+		this.objects = directory.resolve("objects");
+		this.releases = directory.resolve("releases");
+	}
+
+	/**
+	 * @return the store located at the directory named by {@value #DIRECTORY_PROPERTY}, or
+	 * {@code ~/.pill/store} by default
+	 */
+	public static LinkStore getInstance()
+	{
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		if (directory == null)
+		{
+			return new LinkStore(java.nio.file.Paths.get(System.getProperty("user.home"), ".pill",
+				"store"));
+		}
+		return new LinkStore(java.nio.file.Paths.get(directory));
+	}
+
+	/**
+	 * Materializes a release file using a hard link or copy-on-write clone of the stored contents.
+	 * <p/>
+	 * If both {@code reflink} and {@code hardLink} are true, a copy-on-write clone is attempted
+	 * first.
+	 * <p/>
+	 * @param release the release
+	 * @param source the release file
+	 * @param target the file to create
+	 * @param reflink true if a copy-on-write clone may be created
+	 * @param hardLink true if a hard link may be created
+	 * @param replaceExisting true if an existing target should be replaced
+	 * @return false if the target could not be linked or cloned, in which case the caller should
+	 * fall back to copying the file
+	 * @throws NullPointerException if release, source or target are null
+	 * @throws FileAlreadyExistsException if the target exists and {@code replaceExisting} is false
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean materialize(Release release, Path source, Path target, boolean reflink,
+		boolean hardLink, boolean replaceExisting) throws IOException
+	{
+		Preconditions.checkNotNull(release, "release may not be null");
+		Preconditions.checkNotNull(source, "source may not be null");
+		Preconditions.checkNotNull(target, "target may not be null");
+
+		if (!reflink && !hardLink)
+			return false;
+		Files.createDirectories(objects);
+		if (!Files.getFileStore(objects).equals(Files.getFileStore(target.getParent())))
+		{
+			log.debug("{} is not on the same file store as {}", target, directory);
+			return false;
+		}
+		if (Files.exists(target) && !replaceExisting)
+			throw new FileAlreadyExistsException(target.toString());
+		Path stored = store(release, source);
+		if (Files.exists(target) && Files.isSameFile(stored, target))
+			return true;
+
+		Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID()
+			+ ".tmp");
+		try
+		{
+			if (!(reflink && clone(stored, temp)) && !(hardLink && link(stored, temp)))
+				return false;
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Returns the stored contents of a release, adding them to the store if necessary.
+	 * <p/>
+	 * @param release the release
+	 * @param source the release file
+	 * @return the stored copy of the release file
+	 * @throws IOException if an I/O error occurs
+	 */
+	Path store(Release release, Path source) throws IOException
+	{
+		// Releases may be removed and re-imported under the same URI, so the digest is only reused
+		// if the size and last-modified time of the content are unchanged.
+		FileTime lastModified = Files.getLastModifiedTime(source);
+		String stamp = lastModified.toMillis() + " " + Files.size(source);
+		Path entry = getEntry(release.getUri());
+		String[] record = readEntry(entry);
+		if (record != null && record[0].equals(stamp))
+		{
+			Path result = objects.resolve(record[1]);
+			if (Files.exists(result))
+				return result;
+		}
+
+		Files.createDirectories(objects);
+		Path temp = objects.resolve(UUID.randomUUID() + ".tmp");
+		try
+		{
+			MessageDigest sha1 = newSha1();
+			try (InputStream in = new DigestInputStream(Files.newInputStream(source), sha1))
+			{
+				Files.copy(in, temp);
+			}
+			String digest = BaseEncoding.base16().lowerCase().encode(sha1.digest());
+			Path result = objects.resolve(digest);
+			if (!Files.exists(result))
+			{
+				// Allow SKIP_NEWER to recognize files materialized from the store
+				Files.setLastModifiedTime(temp, lastModified);
+				try
+				{
+					Files.move(temp, result, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (FileAlreadyExistsException unused)
+				{
+					// Another thread stored the same contents first
+				}
+			}
+			Files.createDirectories(releases);
+			Path tempEntry = releases.resolve(UUID.randomUUID() + ".tmp");
+			try
+			{
+				Files.write(tempEntry, (stamp + "\n" + digest).getBytes(StandardCharsets.UTF_8));
+				Files.move(tempEntry, entry, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				Files.deleteIfExists(tempEntry);
+			}
+			if (record != null && !record[1].equals(digest))
+				collect(record[1]);
+			return result;
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Removes a release from the store. Its contents are deleted unless another release shares
+	 * them. Files that were materialized from the store are left intact.
+	 * <p/>
+	 * @param release the release URI
+	 * @throws NullPointerException if release is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void remove(URI release) throws IOException
+	{
+		Preconditions.checkNotNull(release, "release may not be null");
+
+		Path entry = getEntry(release);
+		String[] record = readEntry(entry);
+		if (record == null)
+			return;
+		Files.deleteIfExists(entry);
+		collect(record[1]);
+	}
+
+	/**
+	 * Deletes contents that no release refers to.
+	 * <p/>
+	 * @param digest the SHA-1 digest of the contents
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void collect(String digest) throws IOException
+	{
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(releases))
+		{
+			for (Path entry: entries)
+			{
+				String[] record = readEntry(entry);
+				if (record != null && record[1].equals(digest))
+					return;
+			}
+		}
+		catch (NoSuchFileException unused)
+		{
+			// No releases remain
+		}
+		Files.deleteIfExists(objects.resolve(digest));
+	}
+
+	/**
+	 * @param release a release URI
+	 * @return the file containing the digest of the release
+	 */
+	private Path getEntry(URI release)
+	{
+		return releases.resolve(Hashing.sha1().hashString(release.toString(),
+			StandardCharsets.UTF_8).toString());
+	}
+
+	/**
+	 * @param entry the file containing the digest of a release
+	 * @return the last-modified time and size that the contents were hashed at, followed by their
+	 * digest, or null if the entry does not exist or is incomplete
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static String[] readEntry(Path entry) throws IOException
+	{
+		List<String> lines;
+		try
+		{
+			lines = Files.readAllLines(entry, StandardCharsets.UTF_8);
+		}
+		catch (NoSuchFileException unused)
+		{
+			return null;
+		}
+		if (lines.size() != 2)
+			return null;
+		return lines.toArray(new String[2]);
+	}
+
+	/**
+	 * @return a new SHA-1 message digest
+	 */
+	private static MessageDigest newSha1()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-1
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Creates a copy-on-write clone of a file.
+	 * <p/>
+	 * @param source the file to clone
+	 * @param target the file to create
+	 * @return false if the file system does not support copy-on-write clones
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean clone(Path source, Path target) throws IOException
+	{
+		if (System.getProperty("os.name").startsWith("Windows"))
+			return false;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int exitCode;
+		try
+		{
+			exitCode = Processes.waitFor(new ProcessBuilder("cp", "--reflink=always",
+				source.toString(), target.toString()), new PrintStream(output, true));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (exitCode != 0)
+		{
+			log.debug("Could not clone {}: {}", source, output);
+			Files.deleteIfExists(target);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a hard link to a file.
+	 * <p/>
+	 * @param source the file to link to
+	 * @param target the link to create
+	 * @return false if the file system does not support hard links
+	 */
+	private boolean link(Path source, Path target)
+	{
+		try
+		{
+			Files.createLink(target, source);
+			return true;
+		}
+		catch (UnsupportedOperationException | IOException e)
+		{
+			log.debug("Could not link to " + source, e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,498 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters, latency histograms and spans describing where a build spends its time.
+ * <p/>
+ * The shared instance is registered with the platform MBean server as {@value #OBJECT_NAME}.
+ * When the {@value #TRACE_PROPERTY} system property is set, spans are also recorded so that
+ * {@link #writeTrace(Path)} can export them in the Chrome trace format
+ * ({@code chrome://tracing}). {@link Pill#main(String[])} writes the trace to the path named by
+ * the property once the build completes.
+ * <p/>
+ * Operations are named {@code <class>.<operation>}, e.g. {@code JavaCompiler.compile}.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Metrics implements MetricsMXBean
+{
+	/**
+	 * The system property that enables tracing. Its value is the path of the trace file.
+	 */
+	public static final String TRACE_PROPERTY = "org.pill.trace";
+	/**
+	 * The JMX name of the shared instance.
+	 */
+	public static final String OBJECT_NAME = "org.pill:type=Metrics";
+	/**
+	 * The default maximum number of spans retained for the trace file.
+	 */
+	private static final int MAX_SPANS = 1 << 20;
+	/**
+	 * The maximum number of spans retained for the trace file. Later spans are counted as
+	 * {@code Metrics.droppedSpans}.
+	 */
+	private final int maxSpans;
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final Queue<TraceEvent> spans = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger spanCount = new AtomicInteger();
+	private final ConcurrentMap<Long, String> threadNames = new ConcurrentHashMap<>();
+	/**
+	 * The value of {@link System#nanoTime()} that trace timestamps are relative to.
+	 */
+	private final long origin = System.nanoTime();
+	private volatile boolean tracing;
+
+	/**
+	 * Creates a new Metrics.
+	 * <p/>
+	 * @param tracing true if spans should be recorded for the trace file
+	 */
+	public Metrics(boolean tracing)
+	{
+		this(tracing, MAX_SPANS);
+	}
+
+	/**
+	 * Creates a new Metrics.
+	 * <p/>
+	 * @param tracing true if spans should be recorded for the trace file
+	 * @param maxSpans the maximum number of spans retained for the trace file
+	 * @throws IllegalArgumentException if maxSpans is negative
+	 */
+	Metrics(boolean tracing, int maxSpans)
+	{
+		Preconditions.checkArgument(maxSpans >= 0, "maxSpans may not be negative: %s", maxSpans);
+
+		this.tracing = tracing;
+		this.maxSpans = maxSpans;
+	}
+
+	/**
+	 * @return the shared instance
+	 */
+	public static Metrics getInstance()
+	{
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Adds one to a counter.
+	 * <p/>
+	 * @param name the name of the counter
+	 * @throws NullPointerException if name is null
+	 */
+	public void increment(String name)
+	{
+		add(name, 1);
+	}
+
+	/**
+	 * Adds to a counter.
+	 * <p/>
+	 * @param name the name of the counter
+	 * @param delta the amount to add
+	 * @throws NullPointerException if name is null
+	 */
+	public void add(String name, long delta)
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		AtomicLong counter = counters.get(name);
+		if (counter == null)
+		{
+			AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(name, newCounter);
+			if (counter == null)
+				counter = newCounter;
+		}
+		counter.addAndGet(delta);
+	}
+
+	/**
+	 * Starts timing an operation.
+	 * <p/>
+	 * @param name the name of the operation
+	 * @return the span to close once the operation completes
+	 * @throws NullPointerException if name is null
+	 */
+	public Span start(String name)
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		return new Span(this, name);
+	}
+
+	/**
+	 * Records the duration of an operation.
+	 * <p/>
+	 * @param name the name of the operation
+	 * @param start the value of {@link System#nanoTime()} when the operation started
+	 * @param duration the duration of the operation, in nanoseconds
+	 */
+	void record(String name, long start, long duration)
+	{
+		Histogram histogram = histograms.get(name);
+		if (histogram == null)
+		{
+			Histogram newHistogram = new Histogram();
+			histogram = histograms.putIfAbsent(name, newHistogram);
+			if (histogram == null)
+				histogram = newHistogram;
+		}
+		histogram.record(duration);
+		if (!tracing)
+			return;
+		if (spanCount.incrementAndGet() > maxSpans)
+		{
+			spanCount.decrementAndGet();
+			increment("Metrics.droppedSpans");
+			return;
+		}
+		Thread thread = Thread.currentThread();
+		if (!threadNames.containsKey(thread.getId()))
+			threadNames.putIfAbsent(thread.getId(), thread.getName());
+		spans.add(new TraceEvent(name, thread.getId(), start, duration));
+	}
+
+	@Override
+	public Map<String, Long> getCounters()
+	{
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry: counters.entrySet())
+			result.put(entry.getKey(), entry.getValue().get());
+		return result;
+	}
+
+	@Override
+	public Map<String, LatencyStatistics> getLatencies()
+	{
+		Map<String, LatencyStatistics> result = new TreeMap<>();
+		for (Map.Entry<String, Histogram> entry: histograms.entrySet())
+			result.put(entry.getKey(), entry.getValue().getStatistics());
+		return result;
+	}
+
+	@Override
+	public boolean isTracing()
+	{
+		return tracing;
+	}
+
+	@Override
+	public void setTracing(boolean tracing)
+	{
+		this.tracing = tracing;
+	}
+
+	@Override
+	public void reset()
+	{
+		counters.clear();
+		histograms.clear();
+		spans.clear();
+		spanCount.set(0);
+		threadNames.clear();
+	}
+
+	/**
+	 * Writes the recorded spans, counters and latencies in the Chrome trace format.
+	 * <p/>
+	 * @param path the file to write to
+	 * @throws NullPointerException if path is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeTrace(Path path) throws IOException
+	{
+		Preconditions.checkNotNull(path, "path may not be null");
+
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+			String separator = "\n";
+			for (Map.Entry<Long, String> entry: threadNames.entrySet())
+			{
+				out.write(separator);
+				separator = ",\n";
+				out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+					+ entry.getKey() + ",\"args\":{\"name\":");
+				writeString(out, entry.getValue());
+				out.write("}}");
+			}
+			for (TraceEvent event: spans)
+			{
+				out.write(separator);
+				separator = ",\n";
+				out.write("{\"name\":");
+				writeString(out, event.name);
+				out.write(",\"cat\":");
+				writeString(out, getCategory(event.name));
+				out.write(",\"ph\":\"X\",\"pid\":1,\"tid\":" + event.threadId + ",\"ts\":"
+					+ toMicros(event.start - origin) + ",\"dur\":" + toMicros(event.duration)
+					+ "}");
+			}
+			long now = toMicros(System.nanoTime() - origin);
+			for (Map.Entry<String, Long> entry: getCounters().entrySet())
+			{
+				out.write(separator);
+				separator = ",\n";
+				out.write("{\"name\":");
+				writeString(out, entry.getKey());
+				out.write(",\"ph\":\"C\",\"pid\":1,\"tid\":0,\"ts\":" + now
+					+ ",\"args\":{\"value\":" + entry.getValue() + "}}");
+			}
+			out.write("\n],\"latencies\":{");
+			separator = "\n";
+			for (Map.Entry<String, LatencyStatistics> entry: getLatencies().entrySet())
+			{
+				LatencyStatistics latency = entry.getValue();
+				out.write(separator);
+				separator = ",\n";
+				writeString(out, entry.getKey());
+				out.write(":{\"count\":" + latency.getCount() + ",\"totalNanos\":"
+					+ latency.getTotalNanos() + ",\"minNanos\":" + latency.getMinNanos()
+					+ ",\"maxNanos\":" + latency.getMaxNanos() + ",\"p50Nanos\":"
+					+ latency.getP50Nanos() + ",\"p95Nanos\":" + latency.getP95Nanos()
+					+ ",\"p99Nanos\":" + latency.getP99Nanos() + "}");
+			}
+			out.write("\n}}\n");
+		}
+	}
+
+	/**
+	 * @param name the name of an operation
+	 * @return the category of the operation: the part of the name before the first period
+	 */
+	private static String getCategory(String name)
+	{
+		int index = name.indexOf('.');
+		if (index == -1)
+			return name;
+		return name.substring(0, index);
+	}
+
+	/**
+	 * @param nanos a duration in nanoseconds
+	 * @return the duration in microseconds
+	 */
+	private static long toMicros(long nanos)
+	{
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	/**
+	 * Writes a JSON string.
+	 * <p/>
+	 * @param out the writer to write to
+	 * @param value the value of the string
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void writeString(Writer out, String value) throws IOException
+	{
+		out.write('"');
+		for (int i = 0; i < value.length(); ++i)
+		{
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				out.write('\\');
+				out.write(c);
+			}
+			else if (c < 0x20)
+				out.write(String.format("\\u%04x", (int) c));
+			else
+				out.write(c);
+		}
+		out.write('"');
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToJsonString(getClass().getName()).put("counters", getCounters()).
+			put("latencies", getLatencies()).toString();
+	}
+
+	/**
+	 * A completed span.
+	 */
+	private static final class TraceEvent
+	{
+		public final String name;
+		public final long threadId;
+		public final long start;
+		public final long duration;
+
+		/**
+		 * Creates a new TraceEvent.
+		 * <p/>
+		 * @param name the name of the operation
+		 * @param threadId the thread that executed the operation
+		 * @param start the value of {@link System#nanoTime()} when the operation started
+		 * @param duration the duration of the operation, in nanoseconds
+		 */
+		TraceEvent(String name, long threadId, long start, long duration)
+		{
+			this.name = name;
+			this.threadId = threadId;
+			this.start = start;
+			this.duration = duration;
+		}
+	}
+
+	/**
+	 * A latency histogram. Values below 8 have a bucket of their own; larger values share each
+	 * power of two between 8 buckets, bounding the relative error to 1/8.
+	 */
+	static final class Histogram
+	{
+		private static final int SUB_BUCKETS = 8;
+		private static final int SUB_BUCKET_BITS = 3;
+		private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS * 62);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Records a value.
+		 * <p/>
+		 * @param value the value, in nanoseconds
+		 */
+		public void record(long value)
+		{
+			if (value < 0)
+				value = 0;
+			buckets.incrementAndGet(getIndex(value));
+			count.incrementAndGet();
+			total.addAndGet(value);
+			while (true)
+			{
+				long current = min.get();
+				if (value >= current || min.compareAndSet(current, value))
+					break;
+			}
+			while (true)
+			{
+				long current = max.get();
+				if (value <= current || max.compareAndSet(current, value))
+					break;
+			}
+		}
+
+		/**
+		 * @param value a non-negative value
+		 * @return the index of the bucket containing the value
+		 */
+		static int getIndex(long value)
+		{
+			if (value < SUB_BUCKETS)
+				return (int) value;
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		/**
+		 * @param index the index of a bucket
+		 * @return the largest value in the bucket
+		 */
+		static long getUpperBound(int index)
+		{
+			if (index < SUB_BUCKETS)
+				return index;
+			int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			int subBucket = index % SUB_BUCKETS;
+			int shift = exponent - SUB_BUCKET_BITS;
+			return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+		}
+
+		/**
+		 * @param fraction the fraction of values that are less than or equal to the result
+		 * @param total the number of values
+		 * @param maximum the largest value
+		 * @return the value at the percentile
+		 */
+		long getPercentile(double fraction, long total, long maximum)
+		{
+			long rank = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); ++i)
+			{
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return Math.min(getUpperBound(i), maximum);
+			}
+			return maximum;
+		}
+
+		/**
+		 * @return a snapshot of the histogram
+		 */
+		public LatencyStatistics getStatistics()
+		{
+			long n = count.get();
+			if (n == 0)
+				return new LatencyStatistics(0, 0, 0, 0, 0, 0, 0);
+			long maximum = max.get();
+			return new LatencyStatistics(n, total.get(), min.get(), maximum,
+				getPercentile(0.5, n, maximum), getPercentile(0.95, n, maximum),
+				getPercentile(0.99, n, maximum));
+		}
+	}
+
+	/**
+	 * Lazily initializes the shared instance.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final Metrics INSTANCE = createDefault();
+
+		/**
+		 * @return the shared instance, registered with the platform MBean server
+		 */
+		private static Metrics createDefault()
+		{
+			Metrics result = new Metrics(System.getProperty(TRACE_PROPERTY) != null);
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().registerMBean(result,
+					new ObjectName(OBJECT_NAME));
+			}
+			catch (JMException e)
+			{
+				Logger log = LoggerFactory.getLogger(Metrics.class);
+				log.warn("Could not register " + OBJECT_NAME, e);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.pill;
+
+import java.util.Map;
+
+/**
+ * Exposes {@link Metrics} over JMX.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public interface MetricsMXBean
+{
+	/**
+	 * @return a snapshot of the counters, by name
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return a snapshot of the latencies of each operation, by name
+	 */
+	Map<String, LatencyStatistics> getLatencies();
+
+	/**
+	 * @return true if spans are recorded for the trace file
+	 */
+	boolean isTracing();
+
+	/**
+	 * @param tracing true if spans should be recorded for the trace file
+	 */
+	void setTracing(boolean tracing);
+
+	/**
+	 * Discards all counters, latencies and spans.
+	 */
+	void reset();
+}
@@ -1,8 +1,21 @@
 package org.pill;
 
+import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +27,15 @@ import org.slf4j.LoggerFactory;
 public class Paths
 {
 	private static final int MAX_RETRY = 3;
+	/**
+	 * The infix of the name a directory is renamed to before it is deleted in the background.
+	 */
+	private static final String DELETED_INFIX = ".deleted-";
+	/**
+	 * The absolute paths that are queued for deletion in the background, or being deleted.
+	 */
+	private static final Set<Path> pendingDeletions = Collections.newSetFromMap(
+		new ConcurrentHashMap<Path, Boolean>());
 
 	/**
 	 * Deletes a path and its descendants recursively, if it exists.
@@ -24,8 +46,128 @@ public class Paths
 	 * @throws IOException if the path is not a directory or if the underlying filesystem does not
 	 * support deleting paths in a race-free manner
 	 */
-	@SuppressWarnings("SleepWhileInLoop")
 	public static void deleteRecursively(Path path) throws IOException, NotDirectoryException
+	{
+		deleteRecursively(path, false);
+	}
+
+	/**
+	 * Deletes a path and its descendants recursively, if it exists. Subdirectories are deleted
+	 * concurrently.
+	 * <p/>
+	 * @param path the directory to delete
+	 * @throws NotDirectoryException if the file could not otherwise be opened because it is not a
+	 * directory <i>(optional specific exception)</i>
+	 * @throws IOException if the path is not a directory or if the underlying filesystem does not
+	 * support deleting paths in a race-free manner
+	 */
+	public static void deleteRecursivelyInParallel(Path path)
+		throws IOException, NotDirectoryException
+	{
+		deleteRecursively(path, true);
+	}
+
+	/**
+	 * Renames a path out of the way and deletes it in the background. When this method returns,
+	 * {@code path} no longer exists and may be recreated immediately.
+	 * <p/>
+	 * Leftovers of earlier background deletions that did not complete (for example, because the
+	 * JVM exited) are deleted as well, unless an earlier invocation is still deleting them. If the
+	 * path cannot be renamed, it is deleted in the foreground. Failures are logged, so callers may
+	 * ignore the returned Future.
+	 * <p/>
+	 * @param path the directory to delete
+	 * @return a Future that completes once the path has been deleted
+	 * @throws NullPointerException if path is null
+	 * @throws IOException if an I/O error occurs while renaming the path
+	 */
+	public static Future<?> deleteRecursivelyInBackground(Path path) throws IOException
+	{
+		Preconditions.checkNotNull(path, "path may not be null");
+
+		Path parent = path.toAbsolutePath().getParent();
+		final List<Path> garbage = new ArrayList<>();
+		if (parent != null && Files.isDirectory(parent))
+		{
+			try (DirectoryStream<Path> siblings = Files.newDirectoryStream(parent,
+				path.getFileName() + DELETED_INFIX + "*"))
+			{
+				for (Path sibling: siblings)
+				{
+					sibling = sibling.toAbsolutePath();
+					if (pendingDeletions.add(sibling))
+						garbage.add(sibling);
+				}
+			}
+		}
+		if (Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+		{
+			Path renamed = path.toAbsolutePath().resolveSibling(path.getFileName() + DELETED_INFIX
+				+ UUID.randomUUID());
+			pendingDeletions.add(renamed);
+			try
+			{
+				Files.move(path, renamed, StandardCopyOption.ATOMIC_MOVE);
+				garbage.add(renamed);
+			}
+			catch (AtomicMoveNotSupportedException | AccessDeniedException e)
+			{
+				pendingDeletions.remove(renamed);
+				LoggerFactory.getLogger(Paths.class).debug("Could not rename " + path, e);
+				deleteRecursivelyInParallel(path);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				pendingDeletions.remove(renamed);
+				throw e;
+			}
+		}
+		return DefaultHolder.POOL.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws IOException
+			{
+				IOException failure = null;
+				for (Path directory: garbage)
+				{
+					try
+					{
+						deleteRecursivelyInParallel(directory);
+					}
+					catch (IOException e)
+					{
+						LoggerFactory.getLogger(Paths.class).warn("Could not delete " + directory,
+							e);
+						if (failure == null)
+							failure = e;
+						else
+							failure.addSuppressed(e);
+					}
+					finally
+					{
+						pendingDeletions.remove(directory);
+					}
+				}
+				if (failure != null)
+					throw failure;
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Deletes a path and its descendants recursively, if it exists.
+	 * <p/>
+	 * @param path the directory to delete
+	 * @param parallel true if subdirectories should be deleted concurrently
+	 * @throws NotDirectoryException if the file could not otherwise be opened because it is not a
+	 * directory <i>(optional specific exception)</i>
+	 * @throws IOException if the path is not a directory or if the underlying filesystem does not
+	 * support deleting paths in a race-free manner
+	 */
+	@SuppressWarnings("SleepWhileInLoop")
+	private static void deleteRecursively(Path path, boolean parallel)
+		throws IOException, NotDirectoryException
 	{
 		Logger log = LoggerFactory.getLogger(Paths.class);
 
@@ -34,11 +176,20 @@ public class Paths
 			try (DirectoryStream<Path> ds = Files.newDirectoryStream(path))
 			{
 				if (ds instanceof SecureDirectoryStream)
-					deleteDescendants((SecureDirectoryStream<Path>) ds);
+				{
+					SecureDirectoryStream<Path> sds = (SecureDirectoryStream<Path>) ds;
+					if (parallel)
+						invoke(new SecureDeleteTask(sds));
+					else
+						deleteDescendants(sds);
+				}
 				else
 				{
 					log.debug("The file-system does not support deleting paths in a race-free manner");
-					deleteDescendants(ds);
+					if (parallel)
+						invoke(new DeleteTask(ds));
+					else
+						deleteDescendants(ds);
 				}
 			}
 		}
@@ -60,9 +211,12 @@ public class Paths
 				{
 					Thread.sleep(300);
 				}
-				catch (InterruptedException unused)
+				catch (InterruptedException e2)
 				{
-					break;
+					Thread.currentThread().interrupt();
+					InterruptedIOException e3 = new InterruptedIOException();
+					e3.initCause(e2);
+					throw e3;
 				}
 			}
 		}
@@ -105,19 +259,208 @@ public class Paths
 	{
 		for (Path child : directory)
 		{
-			if (directory.getFileAttributeView(child, BasicFileAttributeView.class,
-				LinkOption.NOFOLLOW_LINKS).readAttributes().isDirectory())
+			// Entries are resolved against the path that the stream was opened with, but the stream
+			// resolves the paths passed to it against the directory itself
+			Path name = child.getFileName();
+			if (isDirectory(directory, name))
 			{
 				try (SecureDirectoryStream<Path> childDirectory =
-					directory.newDirectoryStream(child, LinkOption.NOFOLLOW_LINKS))
+					directory.newDirectoryStream(name, LinkOption.NOFOLLOW_LINKS))
 				{
 					deleteDescendants(childDirectory);
 				}
-				directory.deleteDirectory(child);
+				directory.deleteDirectory(name);
 			}
 			else
-				directory.deleteDirectory(child);
+				directory.deleteFile(name);
+		}
+	}
+
+	/**
+	 * @param directory a directory stream
+	 * @param child the name of an entry in the directory, relative to the directory
+	 * @return true if the entry is a directory (symbolic links are not followed)
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean isDirectory(SecureDirectoryStream<Path> directory, Path child)
+		throws IOException
+	{
+		return directory.getFileAttributeView(child, BasicFileAttributeView.class,
+			LinkOption.NOFOLLOW_LINKS).readAttributes().isDirectory();
+	}
+
+	/**
+	 * Runs a deletion task in the shared pool.
+	 * <p/>
+	 * @param task the task
+	 * @throws IOException if the task fails with an IOException
+	 */
+	private static void invoke(ForkJoinTask<?> task) throws IOException
+	{
+		try
+		{
+			DefaultHolder.POOL.invoke(task);
+		}
+		catch (RuntimeException e)
+		{
+			// ForkJoinPool may rethrow a copy of the exception, wrapping the original
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the descendants of a directory, deleting subdirectories concurrently.
+	 */
+	@SuppressWarnings("serial")
+	private static final class DeleteTask extends RecursiveAction
+	{
+		private final DirectoryStream<Path> directory;
+
+		/**
+		 * Creates a new DeleteTask.
+		 * <p/>
+		 * @param directory the directory stream, closed by the caller
+		 */
+		DeleteTask(DirectoryStream<Path> directory)
+		{
+			this.directory = directory;
 		}
-		directory.deleteDirectory(java.nio.file.Paths.get("."));
+
+		@Override
+		protected void compute()
+		{
+			try
+			{
+				List<ForkJoinTask<?>> children = new ArrayList<>();
+				for (final Path child: directory)
+				{
+					if (!Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+					{
+						Files.deleteIfExists(child);
+						continue;
+					}
+					children.add(new RecursiveAction()
+					{
+						@Override
+						protected void compute()
+						{
+							try
+							{
+								try (DirectoryStream<Path> childDirectory =
+									Files.newDirectoryStream(child))
+								{
+									new DeleteTask(childDirectory).compute();
+								}
+								Files.deleteIfExists(child);
+							}
+							catch (IOException e)
+							{
+								throw new WrappedIOException(e);
+							}
+						}
+					});
+				}
+				invokeAll(children);
+			}
+			catch (IOException e)
+			{
+				throw new WrappedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the descendants of a directory in a race-free manner, deleting subdirectories
+	 * concurrently.
+	 */
+	@SuppressWarnings("serial")
+	private static final class SecureDeleteTask extends RecursiveAction
+	{
+		private final SecureDirectoryStream<Path> directory;
+
+		/**
+		 * Creates a new SecureDeleteTask.
+		 * <p/>
+		 * @param directory the directory stream, closed by the caller
+		 */
+		SecureDeleteTask(SecureDirectoryStream<Path> directory)
+		{
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute()
+		{
+			try
+			{
+				List<ForkJoinTask<?>> children = new ArrayList<>();
+				for (Path child: directory)
+				{
+					final Path name = child.getFileName();
+					if (!isDirectory(directory, name))
+					{
+						directory.deleteFile(name);
+						continue;
+					}
+					// Child streams are opened by the subtasks, so only running tasks hold file
+					// descriptors
+					children.add(new RecursiveAction()
+					{
+						@Override
+						protected void compute()
+						{
+							try
+							{
+								try (SecureDirectoryStream<Path> childDirectory =
+									directory.newDirectoryStream(name, LinkOption.NOFOLLOW_LINKS))
+								{
+									new SecureDeleteTask(childDirectory).compute();
+								}
+								directory.deleteDirectory(name);
+							}
+							catch (IOException e)
+							{
+								throw new WrappedIOException(e);
+							}
+						}
+					});
+				}
+				invokeAll(children);
+			}
+			catch (IOException e)
+			{
+				throw new WrappedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Carries an IOException out of a ForkJoinTask.
+	 */
+	@SuppressWarnings("serial")
+	private static final class WrappedIOException extends RuntimeException
+	{
+		/**
+		 * Creates a new WrappedIOException.
+		 * <p/>
+		 * @param cause the IOException
+		 */
+		WrappedIOException(IOException cause)
+		{
+			super(cause);
+		}
+	}
+
+	/**
+	 * Lazily initializes the pool used to delete paths.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final ForkJoinPool POOL = new ForkJoinPool();
 	}
 }
@@ -14,5 +14,17 @@ public enum PerformanceCopyOption implements CopyOption
 	 * Skip files with newer {@link BasicFileAttributes#lastModifiedTime() last-modified-time} than
 	 * the source file.
 	 */
-	SKIP_NEWER
+	SKIP_NEWER,
+	/**
+	 * Create a hard link to a shared copy of the file instead of copying it, if the source and
+	 * target reside on the same file system. The resulting file must be treated as read-only because
+	 * its contents are shared.
+	 */
+	LINK_IF_POSSIBLE,
+	/**
+	 * Create a copy-on-write clone of a shared copy of the file instead of copying it, if the
+	 * underlying file system supports it (e.g. btrfs or XFS). Takes precedence over
+	 * {@link #LINK_IF_POSSIBLE}.
+	 */
+	REFLINK_IF_POSSIBLE
 }
@@ -92,6 +92,9 @@ public class Pill
 	}
 
 	/**
+	 * Builds the project. If the {@value Metrics#TRACE_PROPERTY} system property is set, a trace of
+	 * the build is written to the path it names.
+	 * <p/>
 	 * @param args the command line arguments
 	 * @throws IOException if an I/O error occurs while building the project
 	 * @throws CompilationException if an error occurs while compiling the project
@@ -100,6 +103,15 @@ public class Pill
 	{
 		Path currentDirectory = Paths.get(System.getProperty("user.dir")).resolve("pill");
 		Pill pill = new Pill();
-		new ScriptBuilder(currentDirectory).classPath(pill.getClassPath()).run();
+		String tracePath = System.getProperty(Metrics.TRACE_PROPERTY);
+		try
+		{
+			new ScriptBuilder(currentDirectory).classPath(pill.getClassPath()).run();
+		}
+		finally
+		{
+			if (tracePath != null)
+				Metrics.getInstance().writeTrace(Paths.get(tracePath));
+		}
 	}
 }
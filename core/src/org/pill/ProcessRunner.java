@@ -0,0 +1,331 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+
+/**
+ * Runs external processes asynchronously, with a bounded number of processes running at once.
+ * <p/>
+ * The output of each process is copied byte-for-byte into the streams supplied by the caller, so
+ * it is not subject to the platform charset. Processes that are submitted while the maximum
+ * number of processes are running wait in FIFO order.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ProcessRunner
+{
+	/**
+	 * The default maximum number of processes that may run at once.
+	 */
+	public static final int DEFAULT_PROCESSES = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The size of the buffer used to copy process output.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+	/**
+	 * Launches processes, waits for them to exit and copies their standard output.
+	 */
+	private final ExecutorService launcher;
+	/**
+	 * Copies the standard error of running processes.
+	 */
+	private final ExecutorService errorPump;
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+		new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ProcessRunner-timer-%d").build());
+
+	/**
+	 * Creates a new ProcessRunner.
+	 * <p/>
+	 * @param maxProcesses the maximum number of processes that may run at once
+	 * @throws IllegalArgumentException if {@code maxProcesses < 1}
+	 */
+	public ProcessRunner(int maxProcesses)
+	{
+		Preconditions.checkArgument(maxProcesses >= 1, "maxProcesses must be positive: "
+			+ maxProcesses);
+
+		this.launcher = Executors.newFixedThreadPool(maxProcesses,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ProcessRunner-%d").build());
+		this.errorPump = Executors.newFixedThreadPool(maxProcesses,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ProcessRunner-stderr-%d").
+			build());
+	}
+
+	/**
+	 * @return the runner shared by the entire JVM, using {@link #DEFAULT_PROCESSES}
+	 */
+	public static ProcessRunner getInstance()
+	{
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Runs a process without a timeout.
+	 * <p/>
+	 * @param processBuilder the process to launch
+	 * @param out the stream to write the standard output of the process into
+	 * @param err the stream to write the standard error of the process into. Ignored if
+	 * {@code processBuilder} redirects the error stream.
+	 * @return the exit code of the process
+	 * @throws NullPointerException if processBuilder, out or err are null
+	 * @see #start(ProcessBuilder, OutputStream, OutputStream, long, TimeUnit)
+	 */
+	public ListenableFuture<Integer> start(ProcessBuilder processBuilder, OutputStream out,
+		OutputStream err)
+	{
+		return start(processBuilder, out, err, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a process.
+	 * <p/>
+	 * The process is destroyed if it times out, if its output cannot be copied, or if the returned
+	 * future is cancelled. The streams are flushed, but not closed.
+	 * <p/>
+	 * @param processBuilder the process to launch
+	 * @param out the stream to write the standard output of the process into
+	 * @param err the stream to write the standard error of the process into. Ignored if
+	 * {@code processBuilder} redirects the error stream.
+	 * @param timeout the maximum amount of time the process may run for, or 0 to wait forever.
+	 * Time spent waiting for other processes to complete is not included.
+	 * @param unit the unit of {@code timeout}
+	 * @return the exit code of the process. Fails with a {@link TimeoutException} if the process
+	 * times out.
+	 * @throws NullPointerException if processBuilder, out, err or unit are null
+	 * @throws IllegalArgumentException if {@code timeout < 0}
+	 */
+	public ListenableFuture<Integer> start(ProcessBuilder processBuilder, OutputStream out,
+		OutputStream err, long timeout, TimeUnit unit)
+	{
+		Preconditions.checkNotNull(processBuilder, "processBuilder may not be null");
+		Preconditions.checkNotNull(out, "out may not be null");
+		Preconditions.checkNotNull(err, "err may not be null");
+		Preconditions.checkNotNull(unit, "unit may not be null");
+		Preconditions.checkArgument(timeout >= 0, "timeout may not be negative: " + timeout);
+
+		final Job job = new Job(processBuilder, out, err, unit.toNanos(timeout));
+		job.result.addListener(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (job.result.isCancelled())
+					job.destroy();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		launcher.execute(job);
+		return job.result;
+	}
+
+	/**
+	 * Copies a process stream into an output stream.
+	 * <p/>
+	 * @param source the process stream, closed on return
+	 * @param target the stream to copy into
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void pump(InputStream source, OutputStream target) throws IOException
+	{
+		try (ReadableByteChannel in = Channels.newChannel(source))
+		{
+			WritableByteChannel out = Channels.newChannel(target);
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (in.read(buffer) != -1)
+			{
+				buffer.flip();
+				while (buffer.hasRemaining())
+					out.write(buffer);
+				buffer.clear();
+				target.flush();
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName();
+	}
+
+	/**
+	 * A process that was submitted to the runner.
+	 */
+	private final class Job implements Runnable
+	{
+		public final SettableFuture<Integer> result = SettableFuture.create();
+		private final ProcessBuilder processBuilder;
+		private final OutputStream out;
+		private final OutputStream err;
+		private final long timeoutNanos;
+		private final Object lock = new Object();
+		/**
+		 * Null if the process has not started yet. Guarded by {@code lock}.
+		 */
+		private Process process;
+		/**
+		 * True if the process should be destroyed as soon as it starts. Guarded by {@code lock}.
+		 */
+		private boolean destroyed;
+		private volatile boolean timedOut;
+
+		/**
+		 * Creates a new Job.
+		 * <p/>
+		 * @param processBuilder the process to launch
+		 * @param out the stream to write the standard output of the process into
+		 * @param err the stream to write the standard error of the process into
+		 * @param timeoutNanos the maximum number of nanoseconds the process may run for, or 0 to
+		 * wait forever
+		 */
+		Job(ProcessBuilder processBuilder, OutputStream out, OutputStream err, long timeoutNanos)
+		{
+			this.processBuilder = processBuilder;
+			this.out = out;
+			this.err = err;
+			this.timeoutNanos = timeoutNanos;
+		}
+
+		/**
+		 * Destroys the process, or prevents it from starting.
+		 */
+		public void destroy()
+		{
+			synchronized (lock)
+			{
+				destroyed = true;
+				if (process != null)
+					process.destroy();
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			if (result.isDone())
+				return;
+			Process process;
+			synchronized (lock)
+			{
+				if (destroyed)
+					return;
+				try
+				{
+					process = processBuilder.start();
+				}
+				catch (IOException | RuntimeException e)
+				{
+					result.setException(e);
+					return;
+				}
+				this.process = process;
+			}
+			ScheduledFuture<?> timeout = null;
+			if (timeoutNanos > 0)
+			{
+				timeout = timer.schedule(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						timedOut = true;
+						destroy();
+					}
+				}, timeoutNanos, TimeUnit.NANOSECONDS);
+			}
+			try
+			{
+				// External tools must not block waiting for input
+				process.getOutputStream().close();
+				Future<?> errorCopy = null;
+				if (!processBuilder.redirectErrorStream())
+					errorCopy = errorPump.submit(new ErrorPump(process.getErrorStream(), err));
+				pump(process.getInputStream(), out);
+				if (errorCopy != null)
+					errorCopy.get();
+				int exitCode = process.waitFor();
+				if (timedOut)
+				{
+					result.setException(new TimeoutException(processBuilder.command()
+						+ " timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+						+ " ms"));
+				}
+				else
+					result.set(exitCode);
+			}
+			catch (ExecutionException e)
+			{
+				destroy();
+				result.setException(e.getCause());
+			}
+			catch (IOException | InterruptedException | RuntimeException e)
+			{
+				destroy();
+				result.setException(e);
+			}
+			finally
+			{
+				if (timeout != null)
+					timeout.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Copies the standard error of a process.
+	 */
+	private static final class ErrorPump implements Callable<Void>
+	{
+		private final InputStream source;
+		private final OutputStream target;
+
+		/**
+		 * Creates a new ErrorPump.
+		 * <p/>
+		 * @param source the standard error of the process
+		 * @param target the stream to copy into
+		 */
+		ErrorPump(InputStream source, OutputStream target)
+		{
+			this.source = source;
+			this.target = target;
+		}
+
+		@Override
+		@Nullable
+		public Void call() throws IOException
+		{
+			pump(source, target);
+			return null;
+		}
+	}
+
+	/**
+	 * Lazily initializes the shared runner.
+	 */
+	private static final class DefaultHolder
+	{
+		public static final ProcessRunner INSTANCE = new ProcessRunner(DEFAULT_PROCESSES);
+	}
+}
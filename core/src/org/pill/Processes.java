@@ -1,9 +1,9 @@
 package org.pill;
 
-import java.io.BufferedReader;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Process helper functions.
@@ -13,27 +13,41 @@ import java.io.PrintStream;
 public class Processes
 {
 	/**
-	 * Launches and waits for a process to complete.
+	 * Launches and waits for a process to complete, merging its standard error into its standard
+	 * output.
+	 * <p/>
+	 * The process is run by {@link ProcessRunner#getInstance()}, so it may wait for other processes
+	 * to complete before it starts.
 	 * <p/>
 	 * @param processBuilder the process to launch
 	 * @param out the stream to write the process output into
 	 * @throws IOException if an I/O error occurs while running the process
-	 * @throws InterruptedException if the thread was interrupted
+	 * @throws InterruptedException if the thread was interrupted. The process is destroyed.
 	 */
 	public static int waitFor(ProcessBuilder processBuilder, PrintStream out)
 		throws IOException, InterruptedException
 	{
-		Process process = processBuilder.redirectErrorStream(true).start();
-		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream())))
+		ListenableFuture<Integer> result = ProcessRunner.getInstance().start(
+			processBuilder.redirectErrorStream(true), out, out);
+		try
+		{
+			return result.get();
+		}
+		catch (InterruptedException e)
+		{
+			result.cancel(true);
+			throw e;
+		}
+		catch (ExecutionException e)
 		{
-			while (true)
-			{
-				String line = in.readLine();
-				if (line == null)
-					break;
-				out.println(line);
-			}
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
 		}
-		return process.waitFor();
 	}
 }
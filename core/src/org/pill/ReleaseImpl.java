@@ -8,9 +8,12 @@ import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -103,11 +106,37 @@ public final class ReleaseImpl implements Release
 		{
 			targetModifiedTime = FileTime.fromMillis(-1);
 		}
-		if (!Arrays.asList(options).contains(PerformanceCopyOption.SKIP_NEWER)
-			|| Files.getLastModifiedTime(source).compareTo(targetModifiedTime) > 0)
+		List<CopyOption> optionList = Arrays.asList(options);
+		if (optionList.contains(PerformanceCopyOption.SKIP_NEWER)
+			&& Files.getLastModifiedTime(source).compareTo(targetModifiedTime) <= 0)
 		{
-			Files.copy(source, target, options);
+			return;
 		}
+		boolean replaceExisting = optionList.contains(StandardCopyOption.REPLACE_EXISTING);
+		if (LinkStore.getInstance().materialize(this, source, target,
+			optionList.contains(PerformanceCopyOption.REFLINK_IF_POSSIBLE),
+			optionList.contains(PerformanceCopyOption.LINK_IF_POSSIBLE), replaceExisting))
+		{
+			return;
+		}
+		Files.copy(source, target, withoutPerformanceOptions(options));
+	}
+
+	/**
+	 * Removes {@link PerformanceCopyOption}s, which are not understood by file system providers.
+	 * <p/>
+	 * @param options copy options
+	 * @return the remaining options
+	 */
+	private static CopyOption[] withoutPerformanceOptions(CopyOption... options)
+	{
+		List<CopyOption> result = new ArrayList<>(options.length);
+		for (CopyOption option: options)
+		{
+			if (!(option instanceof PerformanceCopyOption))
+				result.add(option);
+		}
+		return result.toArray(new CopyOption[result.size()]);
 	}
 
 	@Override
@@ -0,0 +1,219 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.CopyOption;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Release helper functions.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Releases
+{
+	/**
+	 * The default number of releases to copy concurrently.
+	 */
+	public static final int DEFAULT_PARALLELISM = Math.max(4,
+		Runtime.getRuntime().availableProcessors());
+	private static final ProgressListener NO_PROGRESS = new ProgressListener()
+	{
+		@Override
+		public void copied(Release release, int completed, int total)
+		{
+		}
+	};
+
+	/**
+	 * Copies releases to a directory, {@link #DEFAULT_PARALLELISM} at a time.
+	 * <p/>
+	 * @param releases the releases to copy
+	 * @param directory the directory to copy the releases into
+	 * @param options options specifying how the copy should be done
+	 * @throws NullPointerException if releases, directory or options are null
+	 * @throws IllegalArgumentException if two releases with different contents share the same
+	 * filename
+	 * @throws NoSuchFileException if directory is not an existing directory
+	 * @throws IOException if an I/O error occurs
+	 * @see Release#copyTo(Path, CopyOption...)
+	 */
+	public static void copyAll(Collection<? extends Release> releases, Path directory,
+		CopyOption... options) throws IOException
+	{
+		copyAll(releases, directory, DEFAULT_PARALLELISM, NO_PROGRESS, options);
+	}
+
+	/**
+	 * Copies releases to a directory concurrently.
+	 * <p/>
+	 * Each release is copied at most once, even if it occurs multiple times in {@code releases}.
+	 * Distinct releases that share a filename are compared by the SHA-1 digest of their contents:
+	 * if the contents are identical only one of them is copied, otherwise the method fails before
+	 * copying anything. If any copy fails, the remaining copies are cancelled.
+	 * <p/>
+	 * @param releases the releases to copy
+	 * @param directory the directory to copy the releases into
+	 * @param parallelism the maximum number of releases to copy at a time
+	 * @param listener notified as each release is copied
+	 * @param options options specifying how the copy should be done
+	 * @throws NullPointerException if releases, directory, listener or options are null
+	 * @throws IllegalArgumentException if {@code parallelism < 1} or if two releases with different
+	 * contents share the same filename
+	 * @throws NoSuchFileException if directory is not an existing directory
+	 * @throws IOException if an I/O error occurs
+	 * @see Release#copyTo(Path, CopyOption...)
+	 */
+	public static void copyAll(Collection<? extends Release> releases, final Path directory,
+		int parallelism, final ProgressListener listener, final CopyOption... options)
+		throws IOException
+	{
+		Preconditions.checkNotNull(releases, "releases may not be null");
+		Preconditions.checkNotNull(directory, "directory may not be null");
+		Preconditions.checkArgument(parallelism >= 1, "parallelism must be positive: " + parallelism);
+		Preconditions.checkNotNull(listener, "listener may not be null");
+		Preconditions.checkNotNull(options, "options may not be null");
+
+		Map<String, Release> filenameToRelease = new LinkedHashMap<>();
+		Map<Release, String> releaseToSha1 = new HashMap<>();
+		for (Release release: new LinkedHashSet<Release>(releases))
+		{
+			Release existing = filenameToRelease.get(release.getFilename());
+			if (existing == null)
+			{
+				filenameToRelease.put(release.getFilename(), release);
+				continue;
+			}
+			String expected = releaseToSha1.get(existing);
+			if (expected == null)
+			{
+				expected = getSha1(existing);
+				releaseToSha1.put(existing, expected);
+			}
+			if (!getSha1(release).equals(expected))
+			{
+				throw new IllegalArgumentException(release + " and " + existing
+					+ " would be copied to the same file, but their contents differ");
+			}
+		}
+		Collection<Release> uniqueReleases = filenameToRelease.values();
+		if (uniqueReleases.isEmpty())
+			return;
+		if (!Files.readAttributes(directory, BasicFileAttributes.class).isDirectory())
+		{
+			throw new NoSuchFileException("directory must refer to an existing directory: "
+				+ directory);
+		}
+
+		final int total = uniqueReleases.size();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, total),
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Releases.copyAll-%d").build());
+		try
+		{
+			CompletionService<Release> completionService = new ExecutorCompletionService<>(executor);
+			for (final Release release: uniqueReleases)
+			{
+				completionService.submit(new Callable<Release>()
+				{
+					@Override
+					public Release call() throws IOException
+					{
+						release.copyTo(directory, options);
+						return release;
+					}
+				});
+			}
+			for (int completed = 1; completed <= total; ++completed)
+			{
+				Release release;
+				try
+				{
+					release = completionService.take().get();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					InterruptedIOException e2 = new InterruptedIOException();
+					e2.initCause(e);
+					throw e2;
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IOException(cause);
+				}
+				listener.copied(release, completed, total);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param release a release
+	 * @return the SHA-1 digest of the release contents, in hexadecimal
+	 * @throws IOException if an I/O error occurs while reading the release
+	 */
+	private static String getSha1(Release release) throws IOException
+	{
+		Path source = java.nio.file.Paths.get(release.getUri());
+		if (source.getFileSystem() == FileSystems.getDefault())
+			return FileHasher.getInstance().hash(source);
+		Hasher hasher = Hashing.sha1().newHasher();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(source))
+		{
+			while (true)
+			{
+				int count = in.read(buffer);
+				if (count == -1)
+					break;
+				hasher.putBytes(buffer, 0, count);
+			}
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Receives progress notifications from {@link #copyAll}. Notifications are delivered on the
+	 * thread that invoked {@code copyAll}.
+	 */
+	@SuppressWarnings("PublicInnerClass")
+	public interface ProgressListener
+	{
+		/**
+		 * Invoked after a release is copied.
+		 * <p/>
+		 * @param release the release that was copied
+		 * @param completed the number of releases copied so far
+		 * @param total the total number of releases being copied
+		 */
+		void copied(Release release, int completed, int total);
+	}
+}
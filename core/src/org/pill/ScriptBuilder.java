@@ -80,7 +80,12 @@ public class ScriptBuilder
 	{
 		Path sourcePath = scriptPath.resolve("source");
 		Path targetPath = scriptPath.resolve("target/classes");
-		compileProjectBuilder(sourcePath, targetPath);
+		Metrics metrics = Metrics.getInstance();
+		try (Span span = metrics.start("ScriptBuilder.compile"))
+		{
+			compileProjectBuilder(sourcePath, targetPath);
+		}
+		Span loadSpan = metrics.start("ScriptBuilder.loadScript");
 		Path logbackSource = sourcePath.resolve("logback.xml");
 
 		ClassLoader parentClassLoader = Thread.currentThread().getContextClassLoader();
@@ -123,9 +128,13 @@ public class ScriptBuilder
 			// We just compiled the source-code, so the file should exist. Perhaps someone deleted it?
 			throw new IOException(e);
 		}
+		finally
+		{
+			loadSpan.close();
+		}
 		log.debug("Running {}.main(String[]) with classpath {}", mainMethod.getDeclaringClass(),
 			targetPath);
-		try
+		try (Span span = metrics.start("ScriptBuilder.runScript"))
 		{
 			mainMethod.invoke(null, new Object[]
 			{
@@ -191,7 +200,7 @@ public class ScriptBuilder
 		throws CompilationException, IOException
 	{
 		log.debug("Compiling source files");
-		org.pill.Paths.deleteRecursively(targetPath);
+		org.pill.Paths.deleteRecursivelyInBackground(targetPath);
 		final Collection<Path> sourceFiles = new ArrayList<>();
 		final Collection<Path> resourceFiles = new ArrayList<>();
 		Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>()
@@ -208,7 +217,8 @@ public class ScriptBuilder
 		});
 		Files.createDirectories(targetPath);
 
-		new JavaCompiler().classPath(classPath).run(sourceFiles, targetPath);
+		new JavaCompiler().classPath(classPath).buildCache(BuildCache.getInstance()).
+			run(sourceFiles, targetPath);
 		for (Path path: resourceFiles)
 		{
 			Path relativePath = sourcePath.relativize(path);
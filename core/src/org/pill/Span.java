@@ -0,0 +1,61 @@
+package org.pill;
+
+/**
+ * Times an operation. The duration is recorded by {@link Metrics} when the span is closed:
+ * <pre>
+ * try (Span span = Metrics.getInstance().start("JavaCompiler.compile"))
+ * {
+ *     ...
+ * }
+ * </pre>
+ * THREAD-SAFETY: This class is not thread-safe. A span must be closed by the thread that started
+ * it.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Span implements AutoCloseable
+{
+	private final Metrics metrics;
+	private final String name;
+	private final long start;
+	private boolean closed;
+
+	/**
+	 * Starts a new Span.
+	 * <p/>
+	 * @param metrics the metrics to record the duration in
+	 * @param name the name of the operation
+	 */
+	Span(Metrics metrics, String name)
+	{
+		this.metrics = metrics;
+		this.name = name;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * @return the name of the operation
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Ends the span. Subsequent invocations have no effect.
+	 */
+	@Override
+	public void close()
+	{
+		if (closed)
+			return;
+		closed = true;
+		metrics.record(name, start, System.nanoTime() - start);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + name + "]";
+	}
+}
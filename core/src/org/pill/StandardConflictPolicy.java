@@ -0,0 +1,92 @@
+package org.pill;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Standard conflict policies.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public enum StandardConflictPolicy implements ConflictPolicy
+{
+	/**
+	 * Use the release nearest to the roots of the dependency graph.
+	 */
+	NEAREST
+	{
+		@Override
+		public Release select(Module module, List<Release> candidates)
+		{
+			return candidates.get(0);
+		}
+	},
+	/**
+	 * Use the release with the highest version number.
+	 */
+	NEWEST
+	{
+		@Override
+		public Release select(Module module, List<Release> candidates)
+		{
+			Release result = candidates.get(0);
+			for (Release candidate: candidates.subList(1, candidates.size()))
+			{
+				if (compareVersions(candidate.getVersion(), result.getVersion()) > 0)
+					result = candidate;
+			}
+			return result;
+		}
+	},
+	/**
+	 * Fail with a {@link DependencyConflictException}.
+	 */
+	FAIL
+	{
+		@Override
+		public Release select(Module module, List<Release> candidates)
+			throws DependencyConflictException
+		{
+			List<String> versions = new ArrayList<>(candidates.size());
+			for (Release candidate: candidates)
+				versions.add(candidate.getVersion());
+			throw new DependencyConflictException(module.getName()
+				+ " is referenced by multiple versions: " + versions);
+		}
+	};
+	private static final Pattern VERSION_SEPARATOR = Pattern.compile("[.\\-]");
+
+	/**
+	 * Compares two version numbers. Numeric components are compared numerically, other components
+	 * are compared lexicographically.
+	 * <p/>
+	 * @param left the first version
+	 * @param right the second version
+	 * @return a negative integer, zero, or a positive integer as the first version is less than,
+	 * equal to, or greater than the second version
+	 */
+	public static int compareVersions(String left, String right)
+	{
+		String[] leftComponents = VERSION_SEPARATOR.split(left);
+		String[] rightComponents = VERSION_SEPARATOR.split(right);
+		int count = Math.min(leftComponents.length, rightComponents.length);
+		for (int i = 0; i < count; ++i)
+		{
+			String leftComponent = leftComponents[i];
+			String rightComponent = rightComponents[i];
+			int result;
+			try
+			{
+				result = Long.compare(Long.parseLong(leftComponent), Long.parseLong(rightComponent));
+			}
+			catch (NumberFormatException unused)
+			{
+				result = leftComponent.compareTo(rightComponent);
+			}
+			if (result != 0)
+				return result;
+		}
+		return Integer.compare(leftComponents.length, rightComponents.length);
+	}
+}
@@ -0,0 +1,21 @@
+package org.pill;
+
+import java.io.IOException;
+
+/**
+ * A unit of work in a {@link TaskGraph}.
+ * <p/>
+ * THREAD-SAFETY: Implementations may be invoked from any thread, concurrently with other tasks.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public interface Task
+{
+	/**
+	 * Runs the task.
+	 * <p/>
+	 * @throws IOException if an I/O error occurs
+	 * @throws CompilationException if an error occurs while compiling source-code
+	 */
+	void run() throws IOException, CompilationException;
+}
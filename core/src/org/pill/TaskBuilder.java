@@ -0,0 +1,159 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Declares a task in a {@link TaskGraph}.
+ * <p/>
+ * A task runs after any task whose outputs contain, or are contained by, one of its inputs, and
+ * after any task that it explicitly depends on.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class TaskBuilder
+{
+	private final String name;
+	private final Task task;
+	private final Set<Path> inputs = new LinkedHashSet<>();
+	private final Set<Path> outputs = new LinkedHashSet<>();
+	private final Set<String> dependencies = new LinkedHashSet<>();
+	private long cost = 1;
+
+	/**
+	 * Creates a new TaskBuilder.
+	 * <p/>
+	 * @param name the name of the task
+	 * @param task the work to run
+	 */
+	TaskBuilder(String name, Task task)
+	{
+		this.name = name;
+		this.task = task;
+	}
+
+	/**
+	 * Adds files or directories that the task reads.
+	 * <p/>
+	 * @param paths the paths
+	 * @return the builder
+	 * @throws NullPointerException if paths are null
+	 */
+	public TaskBuilder inputs(Path... paths)
+	{
+		for (Path path: paths)
+		{
+			Preconditions.checkNotNull(path, "paths may not contain null");
+			inputs.add(path.toAbsolutePath().normalize());
+		}
+		return this;
+	}
+
+	/**
+	 * Adds files or directories that the task writes.
+	 * <p/>
+	 * @param paths the paths
+	 * @return the builder
+	 * @throws NullPointerException if paths are null
+	 */
+	public TaskBuilder outputs(Path... paths)
+	{
+		for (Path path: paths)
+		{
+			Preconditions.checkNotNull(path, "paths may not contain null");
+			outputs.add(path.toAbsolutePath().normalize());
+		}
+		return this;
+	}
+
+	/**
+	 * Indicates that the task must run after other tasks, regardless of their inputs and outputs.
+	 * <p/>
+	 * @param names the names of the tasks
+	 * @return the builder
+	 * @throws NullPointerException if names are null
+	 */
+	public TaskBuilder dependsOn(String... names)
+	{
+		for (String dependency: names)
+		{
+			Preconditions.checkNotNull(dependency, "names may not contain null");
+			dependencies.add(dependency);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the estimated cost of the task. Among the tasks that are ready to run, those on the
+	 * most expensive remaining path through the graph run first. The default cost is 1.
+	 * <p/>
+	 * @param cost the estimated cost, in arbitrary units (such as milliseconds)
+	 * @return the builder
+	 * @throws IllegalArgumentException if {@code cost < 0}
+	 */
+	public TaskBuilder cost(long cost)
+	{
+		Preconditions.checkArgument(cost >= 0, "cost may not be negative: " + cost);
+		this.cost = cost;
+		return this;
+	}
+
+	/**
+	 * @return the name of the task
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the work to run
+	 */
+	Task getTask()
+	{
+		return task;
+	}
+
+	/**
+	 * @return the files or directories that the task reads
+	 */
+	Set<Path> getInputs()
+	{
+		return Collections.unmodifiableSet(inputs);
+	}
+
+	/**
+	 * @return the files or directories that the task writes
+	 */
+	Set<Path> getOutputs()
+	{
+		return Collections.unmodifiableSet(outputs);
+	}
+
+	/**
+	 * @return the names of the tasks that must run before this task
+	 */
+	Set<String> getDependencies()
+	{
+		return Collections.unmodifiableSet(dependencies);
+	}
+
+	/**
+	 * @return the estimated cost of the task
+	 */
+	long getCost()
+	{
+		return cost;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,453 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent build steps concurrently.
+ * <p/>
+ * Scripts remain imperative: they declare tasks, then invoke {@link #run()} at the point where
+ * those tasks must have completed. The order between tasks is derived from their inputs, outputs
+ * and explicit dependencies. Tasks run on a work-stealing pool; whenever a thread becomes
+ * available, the ready task with the most expensive remaining path through the graph (the critical
+ * path) is started first.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class TaskGraph
+{
+	private final Map<String, TaskBuilder> tasks = new LinkedHashMap<>();
+	private final Map<String, Long> durations = new LinkedHashMap<>();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private final Logger log = LoggerFactory.getLogger(TaskGraph.class);
+
+	/**
+	 * Declares a task.
+	 * <p/>
+	 * @param name the name of the task
+	 * @param task the work to run
+	 * @return a builder that declares the task's inputs, outputs and dependencies
+	 * @throws NullPointerException if name or task are null
+	 * @throws IllegalArgumentException if a task with the same name was already declared
+	 */
+	public TaskBuilder task(String name, Task task)
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+		Preconditions.checkNotNull(task, "task may not be null");
+		Preconditions.checkArgument(!tasks.containsKey(name), "Task already declared: " + name);
+
+		TaskBuilder result = new TaskBuilder(name, task);
+		tasks.put(name, result);
+		return result;
+	}
+
+	/**
+	 * Sets the maximum number of tasks that may run at once. The default is the number of
+	 * processors.
+	 * <p/>
+	 * @param parallelism the maximum number of tasks that may run at once
+	 * @return this
+	 * @throws IllegalArgumentException if {@code parallelism < 1}
+	 */
+	public TaskGraph parallelism(int parallelism)
+	{
+		Preconditions.checkArgument(parallelism >= 1, "parallelism must be positive: "
+			+ parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Runs all declared tasks and waits for them to complete. The graph is empty when this method
+	 * returns, so it may be reused for the next batch of tasks.
+	 * <p/>
+	 * If a task fails, no new tasks are started; the tasks that are already running are allowed to
+	 * complete before the failure is rethrown.
+	 * <p/>
+	 * @throws IllegalStateException if a task depends on an unknown task, if two tasks declare
+	 * the same output or if the tasks contain a dependency cycle
+	 * @throws IOException if a task throws an IOException
+	 * @throws CompilationException if a task throws a CompilationException
+	 */
+	public void run() throws IOException, CompilationException
+	{
+		List<TaskBuilder> declared = new ArrayList<>(tasks.values());
+		tasks.clear();
+		if (declared.isEmpty())
+			return;
+		Map<TaskBuilder, Set<TaskBuilder>> dependencies = getDependencies(declared);
+		Map<TaskBuilder, List<TaskBuilder>> dependents = new HashMap<>();
+		for (TaskBuilder task: declared)
+			dependents.put(task, new ArrayList<TaskBuilder>());
+		for (Map.Entry<TaskBuilder, Set<TaskBuilder>> entry: dependencies.entrySet())
+		{
+			for (TaskBuilder dependency: entry.getValue())
+				dependents.get(dependency).add(entry.getKey());
+		}
+		Map<TaskBuilder, Long> criticalPath = getCriticalPath(declared, dependents);
+
+		ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, declared.size()),
+			ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		try
+		{
+			new Execution(dependencies, dependents, criticalPath, pool).run();
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the number of milliseconds that each task took to run, in order of completion,
+	 * accumulated across all invocations of {@link #run()}
+	 */
+	public Map<String, Long> getDurations()
+	{
+		return Collections.unmodifiableMap(durations);
+	}
+
+	/**
+	 * @param tasks the declared tasks
+	 * @return the tasks that each task depends on
+	 * @throws IllegalStateException if a task depends on an unknown task, if two tasks declare
+	 * the same output or if the tasks contain a dependency cycle
+	 */
+	private static Map<TaskBuilder, Set<TaskBuilder>> getDependencies(List<TaskBuilder> tasks)
+	{
+		Map<String, TaskBuilder> nameToTask = new HashMap<>();
+		for (TaskBuilder task: tasks)
+			nameToTask.put(task.getName(), task);
+		Map<TaskBuilder, Set<TaskBuilder>> result = new HashMap<>();
+		for (TaskBuilder task: tasks)
+		{
+			Set<TaskBuilder> dependencies = new HashSet<>();
+			for (String name: task.getDependencies())
+			{
+				TaskBuilder dependency = nameToTask.get(name);
+				if (dependency == null)
+					throw new IllegalStateException(task + " depends on unknown task: " + name);
+				dependencies.add(dependency);
+			}
+			for (TaskBuilder other: tasks)
+			{
+				if (other == task)
+					continue;
+				for (Path output: other.getOutputs())
+				{
+					if (task.getOutputs().contains(output))
+					{
+						throw new IllegalStateException(task + " and " + other
+							+ " both write to " + output);
+					}
+					if (overlaps(output, task.getInputs()))
+						dependencies.add(other);
+				}
+			}
+			result.put(task, dependencies);
+		}
+		checkForCycles(tasks, result);
+		return result;
+	}
+
+	/**
+	 * @param path a path
+	 * @param paths a set of paths
+	 * @return true if {@code path} contains, or is contained by, one of {@code paths}
+	 */
+	private static boolean overlaps(Path path, Set<Path> paths)
+	{
+		for (Path other: paths)
+		{
+			if (path.startsWith(other) || other.startsWith(path))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param tasks the declared tasks
+	 * @param dependencies the tasks that each task depends on
+	 * @throws IllegalStateException if the tasks contain a dependency cycle
+	 */
+	private static void checkForCycles(List<TaskBuilder> tasks,
+		Map<TaskBuilder, Set<TaskBuilder>> dependencies)
+	{
+		Set<TaskBuilder> visited = new HashSet<>();
+		for (TaskBuilder task: tasks)
+			checkForCycles(task, dependencies, visited, new ArrayList<TaskBuilder>());
+	}
+
+	/**
+	 * @param task the task to visit
+	 * @param dependencies the tasks that each task depends on
+	 * @param visited the tasks whose dependencies are known to be acyclic
+	 * @param path the tasks that are being visited, from the outermost to the innermost
+	 * @throws IllegalStateException if the tasks contain a dependency cycle
+	 */
+	private static void checkForCycles(TaskBuilder task,
+		Map<TaskBuilder, Set<TaskBuilder>> dependencies, Set<TaskBuilder> visited,
+		List<TaskBuilder> path)
+	{
+		if (visited.contains(task))
+			return;
+		int index = path.indexOf(task);
+		if (index != -1)
+		{
+			List<TaskBuilder> cycle = new ArrayList<>(path.subList(index, path.size()));
+			cycle.add(task);
+			throw new IllegalStateException("Tasks contain a dependency cycle: " + cycle);
+		}
+		path.add(task);
+		for (TaskBuilder dependency: dependencies.get(task))
+			checkForCycles(dependency, dependencies, visited, path);
+		path.remove(path.size() - 1);
+		visited.add(task);
+	}
+
+	/**
+	 * @param tasks the declared tasks
+	 * @param dependents the tasks that depend on each task
+	 * @return the cost of the most expensive path from each task to the end of the graph,
+	 * including the task itself
+	 */
+	private static Map<TaskBuilder, Long> getCriticalPath(List<TaskBuilder> tasks,
+		Map<TaskBuilder, List<TaskBuilder>> dependents)
+	{
+		Map<TaskBuilder, Long> result = new HashMap<>();
+		for (TaskBuilder task: tasks)
+			getCriticalPath(task, dependents, result);
+		return result;
+	}
+
+	/**
+	 * @param task a task
+	 * @param dependents the tasks that depend on each task
+	 * @param result the critical path of tasks that were already visited
+	 * @return the cost of the most expensive path from {@code task} to the end of the graph,
+	 * including the task itself
+	 */
+	private static long getCriticalPath(TaskBuilder task,
+		Map<TaskBuilder, List<TaskBuilder>> dependents, Map<TaskBuilder, Long> result)
+	{
+		Long cached = result.get(task);
+		if (cached != null)
+			return cached;
+		long longest = 0;
+		for (TaskBuilder dependent: dependents.get(task))
+			longest = Math.max(longest, getCriticalPath(dependent, dependents, result));
+		long value = task.getCost() + longest;
+		result.put(task, value);
+		return value;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[tasks=" + tasks.keySet() + "]";
+	}
+
+	/**
+	 * A single invocation of {@link TaskGraph#run()}.
+	 */
+	private final class Execution
+	{
+		private final Map<TaskBuilder, List<TaskBuilder>> dependents;
+		private final ForkJoinPool pool;
+		private final Object lock = new Object();
+		/**
+		 * The number of unfinished dependencies of each task that has not started yet. Guarded by
+		 * {@code lock}.
+		 */
+		private final Map<TaskBuilder, Integer> remaining = new HashMap<>();
+		/**
+		 * Tasks whose dependencies have completed, most critical first. Guarded by {@code lock}.
+		 */
+		private final PriorityQueue<TaskBuilder> ready;
+		/**
+		 * The number of tasks that have been handed to the pool but have not completed. Guarded by
+		 * {@code lock}.
+		 */
+		private int pending;
+		/**
+		 * The first failure, or null if no task failed. Guarded by {@code lock}.
+		 */
+		private Throwable failure;
+
+		/**
+		 * Creates a new Execution.
+		 * <p/>
+		 * @param dependencies the tasks that each task depends on
+		 * @param dependents the tasks that depend on each task
+		 * @param criticalPath the critical path of each task
+		 * @param pool the pool to run tasks on
+		 */
+		Execution(Map<TaskBuilder, Set<TaskBuilder>> dependencies,
+			Map<TaskBuilder, List<TaskBuilder>> dependents,
+			final Map<TaskBuilder, Long> criticalPath, ForkJoinPool pool)
+		{
+			this.dependents = dependents;
+			this.pool = pool;
+			this.ready = new PriorityQueue<>(dependencies.size(), new Comparator<TaskBuilder>()
+			{
+				@Override
+				public int compare(TaskBuilder first, TaskBuilder second)
+				{
+					return Long.compare(criticalPath.get(second), criticalPath.get(first));
+				}
+			});
+			for (Map.Entry<TaskBuilder, Set<TaskBuilder>> entry: dependencies.entrySet())
+				remaining.put(entry.getKey(), entry.getValue().size());
+		}
+
+		/**
+		 * Runs the tasks and waits for them to complete.
+		 * <p/>
+		 * @throws IOException if a task throws an IOException
+		 * @throws CompilationException if a task throws a CompilationException
+		 */
+		public void run() throws IOException, CompilationException
+		{
+			Throwable result;
+			synchronized (lock)
+			{
+				for (Map.Entry<TaskBuilder, Integer> entry: remaining.entrySet())
+				{
+					if (entry.getValue() == 0)
+						ready.add(entry.getKey());
+				}
+				remaining.keySet().removeAll(ready);
+				schedule(ready.size());
+				try
+				{
+					while (pending > 0)
+						lock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					InterruptedIOException e2 = new InterruptedIOException();
+					e2.initCause(e);
+					throw e2;
+				}
+				result = failure;
+			}
+			if (result == null)
+				return;
+			if (result instanceof IOException)
+				throw (IOException) result;
+			if (result instanceof CompilationException)
+				throw (CompilationException) result;
+			if (result instanceof RuntimeException)
+				throw (RuntimeException) result;
+			throw (Error) result;
+		}
+
+		/**
+		 * Hands tasks to the pool. Each submission runs the most critical ready task at the time it
+		 * executes, rather than a task chosen at submission time. Must be invoked while holding
+		 * {@code lock}.
+		 * <p/>
+		 * @param count the number of tasks that became ready
+		 */
+		private void schedule(int count)
+		{
+			for (int i = 0; i < count; ++i)
+			{
+				++pending;
+				pool.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						runNext();
+					}
+				});
+			}
+		}
+
+		/**
+		 * Runs the most critical ready task.
+		 */
+		private void runNext()
+		{
+			TaskBuilder task;
+			synchronized (lock)
+			{
+				task = ready.poll();
+				if (failure != null)
+				{
+					complete(null, null);
+					return;
+				}
+			}
+			long start = System.nanoTime();
+			Throwable thrown = null;
+			try
+			{
+				task.getTask().run();
+			}
+			catch (IOException | CompilationException | RuntimeException | Error e)
+			{
+				thrown = e;
+			}
+			long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			log.debug("{} took {} ms", task, duration);
+			synchronized (lock)
+			{
+				durations.put(task.getName(), duration);
+				complete(task, thrown);
+			}
+		}
+
+		/**
+		 * Records the completion of a task. Must be invoked while holding {@code lock}.
+		 * <p/>
+		 * @param task the task that completed, or null if a task was skipped
+		 * @param thrown the exception thrown by the task, or null if it succeeded
+		 */
+		private void complete(TaskBuilder task, Throwable thrown)
+		{
+			--pending;
+			if (thrown != null && failure == null)
+				failure = thrown;
+			if (task != null && failure == null)
+			{
+				int count = 0;
+				for (TaskBuilder dependent: dependents.get(task))
+				{
+					int value = remaining.get(dependent) - 1;
+					if (value == 0)
+					{
+						remaining.remove(dependent);
+						ready.add(dependent);
+						++count;
+					}
+					else
+						remaining.put(dependent, value);
+				}
+				schedule(count);
+			}
+			if (pending == 0)
+				lock.notifyAll();
+		}
+	}
+}
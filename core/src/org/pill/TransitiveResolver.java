@@ -0,0 +1,230 @@
+package org.pill;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import org.pill.repository.Repository;
+
+/**
+ * Resolves the transitive dependencies of releases.
+ * <p/>
+ * When resolving {@link DependencyType#BUILD} dependencies, the build dependencies of the roots
+ * and their transitive runtime dependencies are returned. When resolving
+ * {@link DependencyType#RUNTIME} dependencies, only runtime dependencies are followed.
+ * <p/>
+ * The dependency graph is walked breadth-first, retrieving each level from the repository in a
+ * single batch. Releases are memoized by the resolver, so a release that is shared by multiple
+ * roots (or multiple invocations of {@link #resolve}) is only retrieved once.
+ * <p/>
+ * When using a {@link StandardConflictPolicy}, resolutions are cached by the repository, keyed by
+ * the roots (in order) and dependency type. Warm resolutions therefore cost a single lookup plus a
+ * single batch retrieval of the resulting releases.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class TransitiveResolver
+{
+	private final Repository repository;
+	private final ConflictPolicy conflictPolicy;
+	private final Map<URI, Release> releases = new HashMap<>();
+
+	/**
+	 * Creates a new TransitiveResolver.
+	 * <p/>
+	 * @param repository the repository containing the releases
+	 * @param conflictPolicy decides which release to use when the dependency graph references
+	 * multiple releases of the same module
+	 * @throws NullPointerException if repository or conflictPolicy are null
+	 */
+	public TransitiveResolver(Repository repository, ConflictPolicy conflictPolicy)
+	{
+		Preconditions.checkNotNull(repository, "repository may not be null");
+		Preconditions.checkNotNull(conflictPolicy, "conflictPolicy may not be null");
+
+		this.repository = repository;
+		this.conflictPolicy = conflictPolicy;
+	}
+
+	/**
+	 * Resolves the transitive dependencies of releases.
+	 * <p/>
+	 * @param roots the URIs of the releases whose dependencies should be resolved
+	 * @param type the type of dependencies to resolve
+	 * @return the roots followed by their transitive dependencies, ordered by their distance from
+	 * the roots. Each module is represented by a single release.
+	 * @throws NullPointerException if roots or type are null
+	 * @throws EntityNotFoundException if the repository does not contain one of the releases
+	 * @throws DependencyConflictException if the conflict policy failed to resolve a conflict
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<Release> resolve(Collection<URI> roots, DependencyType type)
+		throws EntityNotFoundException, DependencyConflictException, IOException
+	{
+		Preconditions.checkNotNull(roots, "roots may not be null");
+		Preconditions.checkNotNull(type, "type may not be null");
+
+		Set<URI> rootSet = new LinkedHashSet<>(roots);
+		if (rootSet.isEmpty())
+			return Collections.emptyList();
+		String fingerprint = getFingerprint(rootSet, type);
+		if (fingerprint != null)
+		{
+			List<URI> cached = repository.getResolution(fingerprint);
+			if (cached != null)
+			{
+				fetch(new HashSet<>(cached));
+				List<Release> result = new ArrayList<>(cached.size());
+				for (URI uri: cached)
+					result.add(releases.get(uri));
+				return ImmutableList.copyOf(result);
+			}
+		}
+
+		// Discover all releases reachable from the roots, one level at a time
+		Map<Module, List<Release>> moduleToCandidates = new LinkedHashMap<>();
+		Set<URI> visited = new HashSet<>();
+		Set<URI> frontier = rootSet;
+		while (!frontier.isEmpty())
+		{
+			fetch(frontier);
+			Set<URI> nextFrontier = new LinkedHashSet<>();
+			for (URI uri: frontier)
+			{
+				visited.add(uri);
+				Release release = releases.get(uri);
+				List<Release> candidates = moduleToCandidates.get(release.getModule());
+				if (candidates == null)
+				{
+					candidates = new ArrayList<>(1);
+					moduleToCandidates.put(release.getModule(), candidates);
+				}
+				candidates.add(release);
+				for (URI child: getChildren(release, type, rootSet))
+				{
+					if (!visited.contains(child) && !frontier.contains(child))
+						nextFrontier.add(child);
+				}
+			}
+			frontier = nextFrontier;
+		}
+
+		// Pick one release per module
+		Map<Module, Release> moduleToRelease = new HashMap<>();
+		for (Map.Entry<Module, List<Release>> entry: moduleToCandidates.entrySet())
+		{
+			List<Release> candidates = entry.getValue();
+			Release selected;
+			if (candidates.size() == 1)
+				selected = candidates.get(0);
+			else
+			{
+				selected = conflictPolicy.select(entry.getKey(),
+					Collections.unmodifiableList(candidates));
+			}
+			moduleToRelease.put(entry.getKey(), selected);
+		}
+
+		// Walk the memoized graph again, substituting the selected release for each module. This
+		// drops dependencies that are only reachable through releases that lost a conflict.
+		Set<Release> result = new LinkedHashSet<>();
+		Queue<Release> queue = new ArrayDeque<>();
+		for (URI root: rootSet)
+			queue.add(moduleToRelease.get(releases.get(root).getModule()));
+		while (!queue.isEmpty())
+		{
+			Release release = queue.remove();
+			if (!result.add(release))
+				continue;
+			for (URI child: getChildren(release, type, rootSet))
+				queue.add(moduleToRelease.get(releases.get(child).getModule()));
+		}
+		if (fingerprint != null)
+		{
+			List<URI> uris = new ArrayList<>(result.size());
+			for (Release release: result)
+				uris.add(release.getUri());
+			repository.putResolution(fingerprint, uris);
+		}
+		return ImmutableList.copyOf(result);
+	}
+
+	/**
+	 * Returns the key used to cache a resolution.
+	 * <p/>
+	 * @param roots the URIs of the roots
+	 * @param type the type of dependencies being resolved
+	 * @return null if the resolution may not be cached
+	 */
+	private String getFingerprint(Set<URI> roots, DependencyType type)
+	{
+		// The behavior of custom policies is unknown, so their resolutions are not cached
+		if (!(conflictPolicy instanceof StandardConflictPolicy))
+			return null;
+		StringBuilder key = new StringBuilder();
+		StandardConflictPolicy policy = (StandardConflictPolicy) conflictPolicy;
+		key.append(type.name()).append('|').append(policy.name());
+		for (URI root: roots)
+			key.append('|').append(root);
+		return Hashing.sha1().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Retrieves any releases that have not been memoized yet.
+	 * <p/>
+	 * @param uris the URIs of the releases
+	 * @throws EntityNotFoundException if the repository does not contain one of the releases
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void fetch(Set<URI> uris) throws EntityNotFoundException, IOException
+	{
+		Set<URI> missing = new HashSet<>(uris);
+		missing.removeAll(releases.keySet());
+		if (missing.isEmpty())
+			return;
+		releases.putAll(repository.getReleases(missing));
+		missing.removeAll(releases.keySet());
+		if (!missing.isEmpty())
+			throw new EntityNotFoundException("Releases not found: " + missing);
+	}
+
+	/**
+	 * Returns the dependencies of a release that should be followed.
+	 * <p/>
+	 * @param release the release
+	 * @param type the type of dependencies being resolved
+	 * @param roots the URIs of the roots
+	 * @return the URIs of the release's dependencies
+	 */
+	private static List<URI> getChildren(Release release, DependencyType type, Set<URI> roots)
+	{
+		DependencyType edgeType;
+		if (roots.contains(release.getUri()))
+			edgeType = type;
+		else
+			edgeType = DependencyType.RUNTIME;
+		List<URI> result = new ArrayList<>();
+		for (Dependency dependency: release.getDependencies())
+		{
+			if (dependency.getType() == edgeType)
+				result.add(dependency.getUri());
+		}
+		return result;
+	}
+}
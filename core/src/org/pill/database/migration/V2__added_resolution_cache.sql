@@ -0,0 +1,7 @@
+-- Resolved dependencies, keyed by a fingerprint of the roots and dependency type
+CREATE TABLE resolutions (id IDENTITY PRIMARY KEY, fingerprint VARCHAR UNIQUE NOT NULL);
+CREATE TABLE resolution_members (resolution_id BIGINT NOT NULL, position INT NOT NULL,
+	release_id BIGINT NOT NULL, PRIMARY KEY (resolution_id, position),
+	FOREIGN KEY (resolution_id) REFERENCES resolutions(id) ON DELETE CASCADE,
+	FOREIGN KEY (release_id) REFERENCES releases(id));
+CREATE INDEX resolution_members_release ON resolution_members(release_id);
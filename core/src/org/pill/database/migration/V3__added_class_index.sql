@@ -0,0 +1,9 @@
+-- Index from package and class names to the releases that contain them. Class names are stored
+-- relative to their package, so each package name is only stored once per release.
+CREATE TABLE release_packages (id IDENTITY PRIMARY KEY, release_id BIGINT NOT NULL,
+	name VARCHAR NOT NULL, UNIQUE (release_id, name),
+	FOREIGN KEY (release_id) REFERENCES releases(id) ON DELETE CASCADE);
+CREATE INDEX release_packages_name ON release_packages(name);
+CREATE TABLE release_classes (package_id BIGINT NOT NULL, name VARCHAR NOT NULL,
+	PRIMARY KEY (package_id, name),
+	FOREIGN KEY (package_id) REFERENCES release_packages(id) ON DELETE CASCADE);
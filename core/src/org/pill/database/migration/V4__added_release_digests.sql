@@ -0,0 +1,3 @@
+-- SHA-1 digest of each release's content, used to detect duplicate artifacts
+ALTER TABLE releases ADD COLUMN sha1 VARCHAR;
+CREATE INDEX releases_sha1 ON releases(sha1);
@@ -0,0 +1,2 @@
+-- Releases inserted through MetadataStore alone have no contents until ContentStore writes them
+ALTER TABLE releases ALTER COLUMN content SET NULL;
@@ -8,6 +8,8 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.pill.*;
 
@@ -90,6 +92,66 @@ public interface Repository
 	@Nullable
 	Release getRelease(URI uri);
 
+	/**
+	 * Looks up multiple releases in the repository at once.
+	 * <p/>
+	 * @param uris the release URIs
+	 * @return a map from the URI of each release that was found to the release
+	 * @throws NullPointerException if uris is null
+	 * @throws IllegalArgumentException if any of the URIs is not a valid release URI
+	 * @throws IOException if an I/O error occurs
+	 */
+	Map<URI, Release> getReleases(Set<URI> uris) throws IOException;
+
+	/**
+	 * Looks up a cached dependency resolution.
+	 * <p/>
+	 * @param fingerprint the resolution fingerprint
+	 * @return the URIs of the releases making up the resolution, in classpath order, or null if the
+	 * resolution is not cached
+	 * @throws NullPointerException if fingerprint is null
+	 * @throws IOException if an I/O error occurs
+	 * @see #putResolution(String, List)
+	 */
+	@Nullable
+	List<URI> getResolution(String fingerprint) throws IOException;
+
+	/**
+	 * Caches a dependency resolution, replacing any existing resolution with the same fingerprint.
+	 * The resolution is discarded if any of its releases are removed from the repository.
+	 * <p/>
+	 * @param fingerprint the resolution fingerprint
+	 * @param releases the URIs of the releases making up the resolution, in classpath order
+	 * @throws NullPointerException if fingerprint or releases are null
+	 * @throws IllegalArgumentException if releases is empty, or references a release that does not
+	 * exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	void putResolution(String fingerprint, List<URI> releases) throws IOException;
+
+	/**
+	 * Looks up the releases that contain a class.
+	 * <p/>
+	 * @param className the {@link java.lang.Class#getName() class name}
+	 * @return the URIs of the releases that contain the class, in the order they were added to the
+	 * repository
+	 * @throws NullPointerException if className is null
+	 * @throws IllegalArgumentException if className is an empty string
+	 * @throws IOException if an I/O error occurs
+	 */
+	List<URI> getReleasesByClass(String className) throws IOException;
+
+	/**
+	 * Looks up the releases that contain classes in a package.
+	 * <p/>
+	 * @param packageName the package name ({@code ""} for the default package)
+	 * @return the URIs of the releases that contain the package, in the order they were added to
+	 * the repository
+	 * @throws NullPointerException if packageName is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	List<URI> getReleasesByPackage(String packageName) throws IOException;
+
 	/**
 	 * Indicates if a file exists.
 	 * <p/>
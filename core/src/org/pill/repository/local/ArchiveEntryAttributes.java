@@ -0,0 +1,94 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * The file attributes of an entry inside an archive belonging to a Release.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class ArchiveEntryAttributes implements BasicFileAttributes
+{
+	private final String name;
+	private final boolean directory;
+	private final long size;
+	private final FileTime lastModified;
+
+	/**
+	 * Creates a new ArchiveEntryAttributes.
+	 * <p/>
+	 * @param name the entry name, relative to the root of the archive
+	 * @param directory true if the entry is a directory
+	 * @param size the uncompressed size of the entry
+	 * @param lastModified the last time the entry was modified
+	 * @throws NullPointerException if name or lastModified are null
+	 */
+	public ArchiveEntryAttributes(String name, boolean directory, long size, FileTime lastModified)
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+		Preconditions.checkNotNull(lastModified, "lastModified may not be null");
+
+		this.name = name;
+		this.directory = directory;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	@Override
+	public FileTime lastModifiedTime()
+	{
+		return lastModified;
+	}
+
+	@Override
+	public FileTime lastAccessTime()
+	{
+		return lastModified;
+	}
+
+	@Override
+	public FileTime creationTime()
+	{
+		return lastModified;
+	}
+
+	@Override
+	public boolean isRegularFile()
+	{
+		return !directory;
+	}
+
+	@Override
+	public boolean isDirectory()
+	{
+		return directory;
+	}
+
+	@Override
+	public boolean isSymbolicLink()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isOther()
+	{
+		return false;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public Object fileKey()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,402 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An index of the entries in a ZIP (or JAR) archive, built from the archive's central directory.
+ * <p/>
+ * The index allows entries to be looked up and read without scanning the archive, or extracting
+ * it to disk.
+ * <p/>
+ * <b>THREAD SAFETY</b>: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class ArchiveIndex
+{
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+	/**
+	 * General purpose flag indicating that names are encoded using UTF-8.
+	 */
+	private static final int FLAG_UTF8 = 1 << 11;
+	private final NavigableMap<String, Entry> entries;
+	private final Set<String> directories;
+
+	/**
+	 * Creates a new ArchiveIndex.
+	 * <p/>
+	 * @param entries a map from each entry name to the entry
+	 * @param directories the names of all directories in the archive, including implicit ones (without
+	 * a trailing slash)
+	 */
+	private ArchiveIndex(NavigableMap<String, Entry> entries, Set<String> directories)
+	{
+		this.entries = entries;
+		this.directories = directories;
+	}
+
+	/**
+	 * Reads the central directory of an archive.
+	 * <p/>
+	 * @param archive the archive contents
+	 * @return the index of the archive
+	 * @throws NullPointerException if archive is null
+	 * @throws IOException if archive is not a valid ZIP file, or if an I/O error occurs
+	 */
+	public static ArchiveIndex read(SeekableByteChannel archive) throws IOException
+	{
+		Preconditions.checkNotNull(archive, "archive may not be null");
+
+		long size = archive.size();
+		int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+		ByteBuffer tail = readFully(archive, size - tailSize, tailSize);
+		int end = -1;
+		for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; --i)
+		{
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+			{
+				end = i;
+				break;
+			}
+		}
+		if (end == -1)
+			throw new IOException("Missing end of central directory record");
+		int entryCount = tail.getShort(end + 10) & 0xFFFF;
+		long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+		long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+		if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL)
+			throw new IOException("ZIP64 archives are not supported");
+
+		ByteBuffer directory = readFully(archive, directoryOffset, (int) directorySize);
+		NavigableMap<String, Entry> entries = new TreeMap<>();
+		Set<String> directories = new HashSet<>();
+		directories.add("");
+		for (int i = 0; i < entryCount; ++i)
+		{
+			int offset = directory.position();
+			if (directory.getInt(offset) != CENTRAL_DIRECTORY_SIGNATURE)
+				throw new IOException("Invalid central directory header at offset " + offset);
+			int flags = directory.getShort(offset + 8) & 0xFFFF;
+			int method = directory.getShort(offset + 10) & 0xFFFF;
+			int time = directory.getShort(offset + 12) & 0xFFFF;
+			int date = directory.getShort(offset + 14) & 0xFFFF;
+			long compressedSize = directory.getInt(offset + 20) & 0xFFFFFFFFL;
+			long uncompressedSize = directory.getInt(offset + 24) & 0xFFFFFFFFL;
+			int nameLength = directory.getShort(offset + 28) & 0xFFFF;
+			int extraLength = directory.getShort(offset + 30) & 0xFFFF;
+			int commentLength = directory.getShort(offset + 32) & 0xFFFF;
+			long localHeaderOffset = directory.getInt(offset + 42) & 0xFFFFFFFFL;
+
+			byte[] nameBytes = new byte[nameLength];
+			directory.position(offset + CENTRAL_DIRECTORY_HEADER_SIZE);
+			directory.get(nameBytes);
+			Charset charset;
+			if ((flags & FLAG_UTF8) != 0)
+				charset = StandardCharsets.UTF_8;
+			else
+				charset = StandardCharsets.ISO_8859_1;
+			String name = new String(nameBytes, charset);
+			directory.position(directory.position() + extraLength + commentLength);
+
+			boolean isDirectory = name.endsWith("/");
+			if (isDirectory)
+				name = name.substring(0, name.length() - 1);
+			else
+			{
+				entries.put(name, new Entry(name, method, compressedSize, uncompressedSize,
+					toFileTime(date, time), localHeaderOffset));
+			}
+			for (int index = isDirectory ? name.length() : name.lastIndexOf('/'); index > 0;
+				index = name.lastIndexOf('/', index - 1))
+			{
+				if (!directories.add(name.substring(0, index)))
+					break;
+			}
+		}
+		return new ArchiveIndex(entries, ImmutableSet.copyOf(directories));
+	}
+
+	/**
+	 * Reads a section of a channel. Channels that support reads at absolute positions are read
+	 * without modifying their position.
+	 * <p/>
+	 * @param channel the channel to read from
+	 * @param position the position to read from
+	 * @param length the number of bytes to read
+	 * @return a little-endian buffer containing the bytes that were read
+	 * @throws EOFException if the channel ends before {@code length} bytes are read
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static ByteBuffer readFully(SeekableByteChannel channel, long position, int length)
+		throws IOException
+	{
+		ByteBuffer result = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (result.hasRemaining())
+		{
+			long offset = position + result.position();
+			int count;
+			if (channel instanceof PositionalByteChannel)
+				count = ((PositionalByteChannel) channel).read(result, offset);
+			else if (channel instanceof FileChannel)
+				count = ((FileChannel) channel).read(result, offset);
+			else
+			{
+				channel.position(offset);
+				count = channel.read(result);
+			}
+			if (count == -1)
+				throw new EOFException("Expected " + length + " bytes at position " + position);
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Converts an MS-DOS date and time to a FileTime.
+	 * <p/>
+	 * @param date the MS-DOS date
+	 * @param time the MS-DOS time
+	 * @return the FileTime
+	 */
+	private static FileTime toFileTime(int date, int time)
+	{
+		Calendar calendar = new GregorianCalendar(((date >> 9) & 0x7F) + 1980, ((date >> 5) & 0x0F) - 1,
+			date & 0x1F, (time >> 11) & 0x1F, (time >> 5) & 0x3F, (time << 1) & 0x3E);
+		return FileTime.fromMillis(calendar.getTimeInMillis());
+	}
+
+	/**
+	 * Looks up a file.
+	 * <p/>
+	 * @param name the entry name, relative to the root of the archive
+	 * @return null if the archive does not contain a file with the specified name
+	 */
+	public Entry getEntry(String name)
+	{
+		return entries.get(name);
+	}
+
+	/**
+	 * Indicates if the archive contains a directory.
+	 * <p/>
+	 * @param name the directory name, relative to the root of the archive. An empty string denotes
+	 * the root of the archive.
+	 * @return true if the archive contains the directory
+	 */
+	public boolean isDirectory(String name)
+	{
+		return directories.contains(name);
+	}
+
+	/**
+	 * Lists the children of a directory.
+	 * <p/>
+	 * @param name the directory name, relative to the root of the archive. An empty string denotes
+	 * the root of the archive.
+	 * @return the names of the directory's children, relative to the directory
+	 * @throws NoSuchFileException if the directory does not exist
+	 */
+	public List<String> list(String name) throws NoSuchFileException
+	{
+		if (!isDirectory(name))
+			throw new NoSuchFileException(name);
+		String prefix;
+		if (name.isEmpty())
+			prefix = "";
+		else
+			prefix = name + "/";
+		List<String> result = new ArrayList<>();
+		for (String directory: directories)
+		{
+			if (directory.length() > prefix.length() && directory.startsWith(prefix)
+				&& directory.indexOf('/', prefix.length()) == -1)
+			{
+				result.add(directory.substring(prefix.length()));
+			}
+		}
+		for (String file: entries.tailMap(prefix, true).keySet())
+		{
+			if (!file.startsWith(prefix))
+				break;
+			if (file.indexOf('/', prefix.length()) == -1)
+				result.add(file.substring(prefix.length()));
+		}
+		return ImmutableList.copyOf(result);
+	}
+
+	/**
+	 * Returns the attributes of a file or directory.
+	 * <p/>
+	 * @param name the entry name, relative to the root of the archive
+	 * @param archiveAttributes the attributes of the archive
+	 * @return the attributes of the entry
+	 * @throws NoSuchFileException if the entry does not exist
+	 */
+	public BasicFileAttributes readAttributes(String name, BasicFileAttributes archiveAttributes)
+		throws NoSuchFileException
+	{
+		Entry entry = getEntry(name);
+		if (entry != null)
+			return new ArchiveEntryAttributes(name, false, entry.getSize(), entry.getLastModified());
+		if (isDirectory(name))
+			return new ArchiveEntryAttributes(name, true, 0, archiveAttributes.lastModifiedTime());
+		throw new NoSuchFileException(name);
+	}
+
+	/**
+	 * Reads the contents of a file.
+	 * <p/>
+	 * @param entry the file
+	 * @param archive the archive contents
+	 * @return the uncompressed contents of the file
+	 * @throws NullPointerException if entry or archive are null
+	 * @throws IOException if the entry is corrupt, or if an I/O error occurs
+	 */
+	public byte[] read(Entry entry, SeekableByteChannel archive) throws IOException
+	{
+		Preconditions.checkNotNull(entry, "entry may not be null");
+		Preconditions.checkNotNull(archive, "archive may not be null");
+
+		ByteBuffer header = readFully(archive, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+			throw new IOException("Invalid local header for " + entry.getName());
+		int nameLength = header.getShort(26) & 0xFFFF;
+		int extraLength = header.getShort(28) & 0xFFFF;
+		ByteBuffer data = readFully(archive, entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength
+			+ extraLength, (int) entry.compressedSize);
+		switch (entry.method)
+		{
+			case METHOD_STORED:
+				return data.array();
+			case METHOD_DEFLATED:
+			{
+				Inflater inflater = new Inflater(true);
+				try
+				{
+					inflater.setInput(data.array());
+					byte[] result = new byte[(int) entry.getSize()];
+					int offset = 0;
+					while (offset < result.length)
+					{
+						int count = inflater.inflate(result, offset, result.length - offset);
+						if (count == 0 && (inflater.finished() || inflater.needsInput()))
+							throw new EOFException("Unexpected end of " + entry.getName());
+						offset += count;
+					}
+					return result;
+				}
+				catch (DataFormatException e)
+				{
+					throw new IOException("Corrupt entry: " + entry.getName(), e);
+				}
+				finally
+				{
+					inflater.end();
+				}
+			}
+			default:
+				throw new IOException("Unsupported compression method " + entry.method + " for "
+					+ entry.getName());
+		}
+	}
+
+	/**
+	 * @return a map from the name of each file to its entry
+	 */
+	public Map<String, Entry> getEntries()
+	{
+		return ImmutableMap.copyOf(entries);
+	}
+
+	/**
+	 * A file in the archive.
+	 */
+	@SuppressWarnings("PublicInnerClass")
+	public static final class Entry
+	{
+		private final String name;
+		private final int method;
+		private final long compressedSize;
+		private final long size;
+		private final FileTime lastModified;
+		private final long localHeaderOffset;
+
+		/**
+		 * Creates a new Entry.
+		 * <p/>
+		 * @param name the entry name
+		 * @param method the compression method
+		 * @param compressedSize the compressed size of the entry
+		 * @param size the uncompressed size of the entry
+		 * @param lastModified the last time the entry was modified
+		 * @param localHeaderOffset the offset of the entry's local header
+		 */
+		Entry(String name, int method, long compressedSize, long size, FileTime lastModified,
+			long localHeaderOffset)
+		{
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * @return the entry name, relative to the root of the archive
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the uncompressed size of the entry
+		 */
+		public long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * @return the last time the entry was modified
+		 */
+		public FileTime getLastModified()
+		{
+			return lastModified;
+		}
+	}
+}
@@ -2,13 +2,16 @@ package org.pill.repository.local;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
 import com.mysema.query.QueryException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonReadableChannelException;
 import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.StandardOpenOption;
 import java.sql.Blob;
@@ -21,18 +24,51 @@ import org.pill.sql.Session;
  * A SeekableByteChannel for reading/writing BLOBs. The BLOB is kept open during the lifetime of the
  * channel.
  * <p/>
+ * Reads are served from an internal chunk that is refilled at least {@value #CHUNK_SIZE} bytes at a
+ * time, so consumers issuing many small (possibly random) reads, such as {@code java.util.zip}
+ * scanning a central directory, do not pay for a database round-trip per read.
+ * <p/>
  * <b>THREAD SAFETY</b>: This class is not thread-safe.
  * <p/>
  * @author Gili Tzabari
  */
-public class BlobByteChannel implements SeekableByteChannel
+public class BlobByteChannel implements PositionalByteChannel, ScatteringByteChannel
 {
+	/**
+	 * The minimum number of bytes to fetch from the BLOB at a time.
+	 */
+	private static final int CHUNK_SIZE = 8 * 1024;
+	/**
+	 * The maximum number of bytes to fetch from the BLOB at a time.
+	 */
+	private static final int MAX_CHUNK_SIZE = 1024 * 1024;
 	private final Set<StandardOpenOption> options;
 	private final Blob blob;
 	private final Session session;
+	private final ChannelStatistics statistics;
 	private long position;
 	private boolean needToAppend;
 	private boolean closed;
+	/**
+	 * The length of the BLOB, or -1 if it must be retrieved from the database.
+	 */
+	private long length = -1;
+	/**
+	 * The most recently fetched section of the BLOB. The array is reused across reads.
+	 */
+	private byte[] chunk = new byte[0];
+	/**
+	 * The BLOB position corresponding to {@code chunk[0]}.
+	 */
+	private long chunkPosition;
+	/**
+	 * The number of valid bytes in {@code chunk}.
+	 */
+	private int chunkLength;
+	/**
+	 * False if the driver does not support {@link Blob#getBinaryStream(long, long)}.
+	 */
+	private boolean streamingSupported = true;
 
 	/**
 	 * Creates a new BlobByteChannel.
@@ -40,50 +76,155 @@ public class BlobByteChannel implements SeekableByteChannel
 	 * @param options the open options
 	 * @param blob the blob to wrap
 	 * @param session the database session associated with the blob
-	 * @throws NullPointerException if options, blob or session are null
+	 * @param statistics the statistics to record database round-trips in
+	 * @throws NullPointerException if options, blob, session or statistics are null
 	 */
-	public BlobByteChannel(Set<StandardOpenOption> options, Blob blob, Session session)
+	public BlobByteChannel(Set<StandardOpenOption> options, Blob blob, Session session,
+		ChannelStatistics statistics)
 	{
 		Preconditions.checkNotNull(options, "options may not be null");
 		Preconditions.checkNotNull(blob, "blob may not be null");
 		Preconditions.checkNotNull(session, "session may not be null");
+		Preconditions.checkNotNull(statistics, "statistics may not be null");
 
 		this.options = ImmutableSet.copyOf(options);
 		this.needToAppend = options.contains(StandardOpenOption.APPEND);
 		this.blob = blob;
 		this.session = session;
+		this.statistics = statistics;
 	}
 
 	@Override
 	public int read(ByteBuffer dst) throws IOException
 	{
+		int result = read(dst, position);
+		if (result > 0)
+			position += result;
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * @throws NonReadableChannelException if the channel was not opened for reading
+	 */
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException
+	{
+		Preconditions.checkNotNull(dst, "dst may not be null");
+		Preconditions.checkArgument(position >= 0, "position may not be negative");
 		if (closed)
 			throw new ClosedChannelException();
 		if (!options.contains(StandardOpenOption.READ))
 			throw new NonReadableChannelException();
-		byte[] data;
-		long length;
-		try
+		long size = size();
+		if (position >= size)
 		{
-			length = blob.length();
-			if (position > length)
+			// Behavior mentioned in position(long) Javadoc
+			return -1;
+		}
+		int result = 0;
+		while (dst.hasRemaining() && position < size)
+		{
+			if (position < chunkPosition || position >= chunkPosition + chunkLength)
+			{
+				fillChunk(position, dst.remaining(), size);
+				if (chunkLength == 0)
+					break;
+			}
+			int offset = (int) (position - chunkPosition);
+			int count = Math.min(dst.remaining(), chunkLength - offset);
+			dst.put(chunk, offset, count);
+			position += count;
+			result += count;
+		}
+		return result;
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts) throws IOException
+	{
+		return read(dsts, 0, dsts.length);
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+	{
+		Preconditions.checkNotNull(dsts, "dsts may not be null");
+		if (offset < 0 || length < 0 || offset > dsts.length - length)
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+		long result = 0;
+		for (int i = offset, end = offset + length; i < end; ++i)
+		{
+			ByteBuffer dst = dsts[i];
+			if (!dst.hasRemaining())
+				continue;
+			int count = read(dst);
+			if (count == -1)
 			{
-				// Behavior mentioned in position(long) Javadoc
-				return -1;
+				if (result == 0)
+					return -1;
+				break;
 			}
+			result += count;
+			if (dst.hasRemaining())
+				break;
+		}
+		return result;
+	}
 
+	/**
+	 * Populates {@code chunk} with the BLOB contents starting at a position.
+	 * <p/>
+	 * @param position the BLOB position to start reading at (0-based)
+	 * @param requested the number of bytes the caller is interested in
+	 * @param size the size of the BLOB
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void fillChunk(long position, int requested, long size) throws IOException
+	{
+		int count = Ints.saturatedCast(Math.min(size - position,
+			Math.min(Math.max(requested, CHUNK_SIZE), MAX_CHUNK_SIZE)));
+		chunkPosition = position;
+		chunkLength = 0;
+		try
+		{
+			if (streamingSupported)
+			{
+				if (chunk.length < count)
+					chunk = new byte[Math.max(count, Math.min(chunk.length * 2, MAX_CHUNK_SIZE))];
+				// BLOB positions are 1-based
+				statistics.addRoundTrip();
+				try (InputStream in = blob.getBinaryStream(position + 1, count))
+				{
+					ByteStreams.readFully(in, chunk, 0, count);
+					chunkLength = count;
+					return;
+				}
+				catch (SQLException unused)
+				{
+					// Fall back to getBytes(), which also reports any genuine database errors
+					streamingSupported = false;
+				}
+			}
 			// BLOB positions are 1-based
-			data = blob.getBytes(position + 1, dst.remaining());
-			position += data.length;
+			statistics.addRoundTrip();
+			chunk = blob.getBytes(position + 1, count);
+			chunkLength = chunk.length;
 		}
 		catch (SQLException e)
 		{
 			throw new IOException(e);
 		}
-		dst.put(data);
-		if (data.length == 0 && position == length)
-			return -1;
-		return data.length;
+	}
+
+	/**
+	 * Discards any cached BLOB contents.
+	 */
+	private void invalidateCache()
+	{
+		length = -1;
+		chunkLength = 0;
 	}
 
 	@Override
@@ -93,6 +234,7 @@ public class BlobByteChannel implements SeekableByteChannel
 			throw new ClosedChannelException();
 		if (!options.contains(StandardOpenOption.WRITE))
 			throw new NonWritableChannelException();
+		invalidateCache();
 		try
 		{
 			long length = blob.length();
@@ -165,9 +307,13 @@ public class BlobByteChannel implements SeekableByteChannel
 	{
 		if (closed)
 			throw new ClosedChannelException();
+		if (length != -1)
+			return length;
 		try
 		{
-			return blob.length();
+			statistics.addRoundTrip();
+			length = blob.length();
+			return length;
 		}
 		catch (SQLException e)
 		{
@@ -0,0 +1,112 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only channel backed by a byte array.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class ByteArrayByteChannel implements PositionalByteChannel
+{
+	private final byte[] data;
+	private int position;
+	private boolean closed;
+
+	/**
+	 * Creates a new ByteArrayByteChannel.
+	 * <p/>
+	 * @param data the channel contents
+	 * @throws NullPointerException if data is null
+	 */
+	public ByteArrayByteChannel(byte[] data)
+	{
+		Preconditions.checkNotNull(data, "data may not be null");
+
+		this.data = data;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException
+	{
+		int result = read(dst, position);
+		if (result > 0)
+			position += result;
+		return result;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException
+	{
+		Preconditions.checkNotNull(dst, "dst may not be null");
+		Preconditions.checkArgument(position >= 0, "position may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		if (position >= data.length)
+			return -1;
+		int result = (int) Math.min(dst.remaining(), data.length - position);
+		dst.put(data, (int) position, result);
+		return result;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException
+	{
+		Preconditions.checkArgument(newPosition >= 0, "newPosition may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		position = (int) Math.min(newPosition, data.length);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		return data.length;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return !closed;
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+	}
+}
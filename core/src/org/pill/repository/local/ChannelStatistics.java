@@ -0,0 +1,106 @@
+package org.pill.repository.local;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.pill.ToJsonString;
+
+/**
+ * Read statistics of a channel.
+ * <p/>
+ * <b>THREAD SAFETY</b>: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ChannelStatistics
+{
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong roundTrips = new AtomicLong();
+	private final AtomicLong prefetchHits = new AtomicLong();
+	private final AtomicLong prefetchMisses = new AtomicLong();
+
+	/**
+	 * @return the number of bytes returned to the consumer
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return the number of requests issued against the underlying storage, such as database
+	 * queries
+	 */
+	public long getRoundTrips()
+	{
+		return roundTrips.get();
+	}
+
+	/**
+	 * @return the number of reads that were satisfied by data that had been read ahead
+	 */
+	public long getPrefetchHits()
+	{
+		return prefetchHits.get();
+	}
+
+	/**
+	 * @return the number of reads that had to wait for the underlying channel
+	 */
+	public long getPrefetchMisses()
+	{
+		return prefetchMisses.get();
+	}
+
+	/**
+	 * @return the fraction of reads that were satisfied by data that had been read ahead, or 0 if no
+	 * reads took place
+	 */
+	public double getPrefetchHitRatio()
+	{
+		long hits = prefetchHits.get();
+		long total = hits + prefetchMisses.get();
+		if (total == 0)
+			return 0;
+		return (double) hits / total;
+	}
+
+	/**
+	 * Records bytes returned to the consumer.
+	 * <p/>
+	 * @param count the number of bytes
+	 */
+	void addBytesRead(long count)
+	{
+		bytesRead.addAndGet(count);
+	}
+
+	/**
+	 * Records a request against the underlying storage.
+	 */
+	void addRoundTrip()
+	{
+		roundTrips.incrementAndGet();
+	}
+
+	/**
+	 * Records a read that was satisfied by data that had been read ahead.
+	 */
+	void addPrefetchHit()
+	{
+		prefetchHits.incrementAndGet();
+	}
+
+	/**
+	 * Records a read that had to wait for the underlying channel.
+	 */
+	void addPrefetchMiss()
+	{
+		prefetchMisses.incrementAndGet();
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToJsonString(ChannelStatistics.class, this).put("prefetchHitRatio",
+			getPrefetchHitRatio()).toString();
+	}
+}
@@ -11,11 +11,24 @@ import com.google.inject.servlet.ServletScopes;
 import com.mysema.query.sql.H2Templates;
 import com.mysema.query.sql.SQLTemplates;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.ProviderException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 import org.h2.jdbcx.JdbcDataSource;
+import org.pill.repository.local.storage.ContentStore;
+import org.pill.repository.local.storage.H2ContentStore;
+import org.pill.repository.local.storage.H2MetadataStore;
+import org.pill.repository.local.storage.LogContentStore;
+import org.pill.repository.local.storage.LogMetadataStore;
+import org.pill.repository.local.storage.MetadataStore;
+import org.pill.repository.local.storage.ReleaseWriter;
+import org.pill.repository.local.storage.TwoPhaseReleaseWriter;
+import org.pill.sql.PooledDataSource;
+import org.pill.sql.ReadOnly;
 import org.pill.sql.Session;
 
 /**
@@ -25,10 +38,42 @@ import org.pill.sql.Session;
  */
 public class GuiceConfig extends AbstractModule
 {
+	/**
+	 * The system property that overrides the path of the database selected by the
+	 * {@link RepositoryProfile}, relative to the working directory. Benchmarks use it to run
+	 * against a temporary database.
+	 */
+	public static final String DATABASE_PROPERTY = "org.pill.database";
+	/**
+	 * The system property that selects the repository's storage backend: {@code h2} (the default)
+	 * keeps everything in the H2 database, {@code log} keeps metadata and release contents in
+	 * append-only files next to it and never opens a database connection.
+	 */
+	public static final String STORAGE_PROPERTY = "org.pill.repository.storage";
+
 	@Override
 	protected void configure()
 	{
+		String storage = System.getProperty(STORAGE_PROPERTY, "h2");
+		switch (storage)
+		{
+			case "h2":
+				bind(MetadataStore.class).to(H2MetadataStore.class);
+				bind(ContentStore.class).to(H2ContentStore.class);
+				bind(ReleaseWriter.class).to(H2MetadataStore.class);
+				break;
+			case "log":
+				bind(MetadataStore.class).to(LogMetadataStore.class);
+				bind(ContentStore.class).to(LogContentStore.class);
+				bind(ReleaseWriter.class).to(TwoPhaseReleaseWriter.class);
+				break;
+			default:
+				throw new IllegalArgumentException(STORAGE_PROPERTY + " must be \"h2\" or \"log\": "
+					+ storage);
+		}
 		bind(Session.class).toProvider(SessionProvider.class).in(ServletScopes.REQUEST);
+		bind(Session.class).annotatedWith(ReadOnly.class).toProvider(ReadOnlySessionProvider.class).
+			in(ServletScopes.REQUEST);
 		bind(Connection.class).toProvider(ConnectionProvider.class);
 		install(new ServletModule());
 	}
@@ -51,15 +96,61 @@ public class GuiceConfig extends AbstractModule
 		return new H2Templates();
 	}
 
+	/**
+	 * Connections are pooled so that repository operations reuse both the H2 session and its
+	 * prepared statements. MVCC lets read-only sessions read without locking tables. The remaining
+	 * settings come from the {@link RepositoryProfile}.
+	 */
 	@Singleton
 	@Provides
 	private DataSource getDataSource() throws IOException
 	{
+		RepositoryProfile profile = RepositoryProfile.getCurrent();
+		Path database = getDatabase(profile);
+		Path parent = database.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+
 		JdbcDataSource result = new JdbcDataSource();
-		result.setURL("jdbc:h2:pill;TRACE_LEVEL_FILE=4");
+		result.setURL(profile.getUrl(database));
 		result.setUser("sa");
 		result.setPassword("sa");
-		return result;
+		return new PooledDataSource(result);
+	}
+
+	@Singleton
+	@Provides
+	private LogMetadataStore getLogMetadataStore() throws IOException
+	{
+		return new LogMetadataStore(getLogDirectory());
+	}
+
+	@Singleton
+	@Provides
+	private LogContentStore getLogContentStore() throws IOException
+	{
+		return new LogContentStore(getLogDirectory());
+	}
+
+	/**
+	 * @param profile the repository profile
+	 * @return the path of the database, without any file extension
+	 */
+	private static Path getDatabase(RepositoryProfile profile)
+	{
+		String databaseProperty = System.getProperty(DATABASE_PROPERTY);
+		if (databaseProperty == null)
+			return profile.getDatabase();
+		return Paths.get(databaseProperty);
+	}
+
+	/**
+	 * @return the directory of the {@code log} storage backend, next to the database
+	 */
+	private static Path getLogDirectory()
+	{
+		Path database = getDatabase(RepositoryProfile.getCurrent()).toAbsolutePath();
+		return database.resolveSibling(database.getFileName() + "-store");
 	}
 
 	/**
@@ -129,4 +220,47 @@ public class GuiceConfig extends AbstractModule
 			}
 		}
 	}
+
+	/**
+	 * Provides a database Session for operations that only read from the database.
+	 */
+	@SuppressWarnings("PublicInnerClass")
+	public static class ReadOnlySessionProvider implements Provider<Session>
+	{
+		private final DataSource dataSource;
+		private final SQLTemplates dialect;
+
+		/**
+		 * Creates a new ReadOnlySessionProvider.
+		 * <p/>
+		 * @param dataSource the DataSource
+		 * @param dialect the database dialect
+		 * @throws NullPointerException if dataSource or dialect are null
+		 */
+		@Inject
+		public ReadOnlySessionProvider(DataSource dataSource, SQLTemplates dialect)
+		{
+			this.dataSource = dataSource;
+			this.dialect = dialect;
+		}
+
+		@Override
+		public Session get()
+		{
+			try
+			{
+				Connection connection = dataSource.getConnection();
+				connection.setAutoCommit(false);
+				connection.setReadOnly(true);
+				// H2 applies the isolation level to the whole database. Only change it if needed.
+				if (connection.getTransactionIsolation() != Connection.TRANSACTION_READ_COMMITTED)
+					connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+				return new Session(connection, dialect);
+			}
+			catch (SQLException e)
+			{
+				throw new ProviderException(e);
+			}
+		}
+	}
 }
@@ -1,98 +1,94 @@
 package org.pill.repository.local;
 
 import com.google.common.base.Preconditions;
-import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
-import com.google.inject.TypeLiteral;
-import com.google.inject.name.Named;
-import com.google.inject.name.Names;
-import com.google.inject.servlet.RequestScoped;
-import com.googlecode.flyway.core.Flyway;
-import com.mysema.query.QueryException;
-import com.mysema.query.Tuple;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.sql.Blob;
-import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import javax.sql.DataSource;
-import javax.sql.rowset.serial.SerialBlob;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
+import java.util.TreeMap;
 import org.pill.Dependency;
-import org.pill.DependencyType;
+import org.pill.DependencyResolver;
 import org.pill.EntityExistsException;
 import org.pill.EntityNotFoundException;
-import org.pill.Module;
+import org.pill.FileHasher;
+import org.pill.LinkStore;
+import org.pill.Metrics;
 import org.pill.Module;
 import org.pill.Release;
 import org.pill.ReleaseBuilder;
 import org.pill.ReleaseImpl;
+import org.pill.Span;
 import org.pill.repository.RepositorySpi;
-import org.pill.repository.local.queries.QDependencyTypes;
-import org.pill.repository.local.queries.QModules;
-import org.pill.repository.local.queries.QReleaseDependencies;
-import org.pill.repository.local.queries.QReleases;
-import org.pill.sql.ConstraintViolationException;
-import org.pill.sql.SQLExceptions;
-import org.pill.sql.Session;
+import org.pill.repository.local.storage.ContentStore;
+import org.pill.repository.local.storage.MetadataStore;
+import org.pill.repository.local.storage.ReleaseRecord;
+import org.pill.repository.local.storage.ReleaseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A local repository.
  * <p/>
+ * Metadata and release contents are kept by a {@link MetadataStore} and a {@link ContentStore}
+ * respectively. {@link GuiceConfig} selects their implementation.
+ * <p/>
+ * The latency of each operation is recorded by {@link Metrics} under the name of the method, e.g.
+ * {@code LocalRepository.insertModule}, regardless of the implementation. Failed operations are
+ * also counted, e.g. {@code LocalRepository.insertModule.failures}.
+ * <p/>
  * <b>THREAD-SAFETY</b>: This implementation is not thread-safe.
  * <p/>
  * @author Gili Tzabari
  */
 @Singleton
-public final class LocalRepository implements RepositorySpi
+public final class LocalRepository implements RepositorySpi, DependencyResolver
 {
 	private static LocalRepository instance;
 	private static final String schema = LocalRepository.class.getPackage().getName() + ".release";
 	private final Path rootDirectory = Paths.get(System.getProperty("user.home"), ".pill");
-	private final RequestInjector requestInjector;
-	private final Logger log = LoggerFactory.getLogger(LocalRepository.class);
+	private final MetadataStore metadata;
+	private final ContentStore content;
+	private final ReleaseWriter releaseWriter;
+	private final Metrics metrics = Metrics.getInstance();
+	private static final Logger log = LoggerFactory.getLogger(LocalRepository.class);
 
 	/**
 	 * Creates a new LocalRepository.
 	 * <p/>
-	 * @param dataSource the database associated with the repository
-	 * @param requestInjector executes code in request scope
-	 * @throws NullPointerException if dataSource or requestInjector are null
+	 * @param metadata stores the repository's metadata
+	 * @param content stores the contents of the repository's releases
+	 * @param releaseWriter adds releases to metadata and content
+	 * @throws NullPointerException if metadata, content or releaseWriter are null
 	 */
 	@Inject
-	private LocalRepository(DataSource dataSource, RequestInjector requestInjector)
+	private LocalRepository(MetadataStore metadata, ContentStore content,
+		ReleaseWriter releaseWriter)
 	{
-		Preconditions.checkNotNull(dataSource, "dataSource may not be null");
-		Preconditions.checkNotNull(requestInjector, "requestInjector may not be null");
+		Preconditions.checkNotNull(metadata, "metadata may not be null");
+		Preconditions.checkNotNull(content, "content may not be null");
+		Preconditions.checkNotNull(releaseWriter, "releaseWriter may not be null");
 
-		this.requestInjector = requestInjector;
-		Flyway flyway = new Flyway();
-		flyway.setDataSource(dataSource);
-		flyway.setLocations("org/pill/database/migration");
-		flyway.migrate();
+		this.metadata = metadata;
+		this.content = content;
+		this.releaseWriter = releaseWriter;
 	}
 
 	/**
@@ -109,75 +105,21 @@ public final class LocalRepository implements RepositorySpi
 	}
 
 	@Override
-	public Module insertModule(final String name)
+	public Module insertModule(String name)
 		throws EntityExistsException, IOException
 	{
 		Preconditions.checkNotNull(name, "name may not be null");
 		Preconditions.checkArgument(!name.isEmpty(), "name may not be an empty string");
-		try
-		{
-			return requestInjector.scopeRequest(InsertModule.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(String.class).annotatedWith(Names.named("name")).toInstance(name);
-				}
-			}).call();
-		}
-		catch (IOException | EntityExistsException e)
-		{
-			throw e;
-		}
-		catch (Exception e)
-		{
-			throw new AssertionError(e);
-		}
-	}
 
-	/**
-	 * Implements insertModule().
-	 */
-	@RequestScoped
-	private static class InsertModule implements Callable<Module>
-	{
-		private final String name;
-		private final Session session;
-
-		@Inject
-		public InsertModule(@Named("name") String name, Session session)
+		try (Span span = metrics.start("LocalRepository.insertModule"))
 		{
-			this.name = name;
-			this.session = session;
+			metadata.insertModule(name);
+			return new Module(name);
 		}
-
-		@Override
-		public Module call() throws IOException, EntityExistsException
+		catch (Exception e)
 		{
-			try
-			{
-				Long id;
-				try
-				{
-					QModules modules = QModules.modules;
-					id = session.insert(modules).set(modules.name, name).executeWithKey(modules.id);
-					if (id == null)
-						throw new IOException("Could not insert module");
-					session.commit();
-				}
-				catch (QueryException e)
-				{
-					ConstraintViolationException constraintViolation = SQLExceptions.getConstraintViolation(e);
-					if (constraintViolation != null)
-						throw new EntityExistsException(name, e);
-					throw new IOException(e);
-				}
-				return new Module(name);
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.insertModule.failures");
+			throw e;
 		}
 	}
 
@@ -188,8 +130,8 @@ public final class LocalRepository implements RepositorySpi
 	}
 
 	@Override
-	public Release insertRelease(final Module module, final String version,
-		final Path path, final Set<Dependency> dependencies)
+	public Release insertRelease(Module module, String version, Path path,
+		Set<Dependency> dependencies)
 		throws EntityExistsException, IOException
 	{
 		Preconditions.checkNotNull(module, "module may not be null");
@@ -197,264 +139,111 @@ public final class LocalRepository implements RepositorySpi
 		Preconditions.checkArgument(!version.isEmpty(), "version may not be an empty string");
 		Preconditions.checkNotNull(path, "path may not be null");
 		Preconditions.checkNotNull(dependencies, "dependencies may not be null");
-		try
-		{
-			return requestInjector.scopeRequest(InsertRelease.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(Module.class).annotatedWith(Names.named("module")).toInstance(module);
-					bind(String.class).annotatedWith(Names.named("version")).toInstance(version);
-					bind(Path.class).annotatedWith(Names.named("path")).toInstance(path);
-					bind(new TypeLiteral<Set<Dependency>>()
-					{
-					}).annotatedWith(Names.named("dependencies")).toInstance(dependencies);
-					bind(Logger.class).annotatedWith(Names.named("log")).toInstance(log);
-				}
-			}).call();
-		}
-		catch (IllegalArgumentException | IOException | EntityExistsException e)
+
+		try (Span span = metrics.start("LocalRepository.insertRelease"))
 		{
-			throw e;
+			String filename = path.getFileName().toString();
+			FileTime lastModified = Files.readAttributes(path, BasicFileAttributes.class).
+				lastModifiedTime();
+			ReleaseRecord record = new ReleaseRecord(module, version, filename, lastModified,
+				FileHasher.getInstance().hash(path), dependencies);
+			long id = releaseWriter.insertRelease(record, indexClasses(path), path);
+			return new ReleaseImpl(toUri(id), module, version, filename, dependencies);
 		}
 		catch (Exception e)
 		{
-			throw new AssertionError(e);
+			metrics.increment("LocalRepository.insertRelease.failures");
+			throw e;
 		}
 	}
 
 	/**
-	 * Implements insertRelease().
+	 * Indexes the classes contained by a release, if it is an archive.
+	 * <p/>
+	 * @param path the release file
+	 * @return the simple names of the classes contained by the release, by package name
+	 * @throws IOException if an I/O error occurs while reading the release
 	 */
-	@RequestScoped
-	private static class InsertRelease implements Callable<Release>
+	private static Map<String, List<String>> indexClasses(Path path) throws IOException
 	{
-		private final Path path;
-		private final Module module;
-		private final String version;
-		private final Set<Dependency> dependencies;
-		private final Session session;
-
-		@Inject
-		public InsertRelease(@Named("path") Path path, @Named("module") Module module,
-			@Named("version") String version, @Named("dependencies") Set<Dependency> dependencies,
-			Session session)
-		{
-			this.path = path;
-			this.module = module;
-			this.version = version;
-			this.dependencies = dependencies;
-			this.session = session;
-		}
-
-		@Override
-		public Release call() throws IllegalArgumentException, IOException, EntityExistsException
+		Map<String, List<String>> result = new TreeMap<>();
+		String filename = path.getFileName().toString().toLowerCase(Locale.ENGLISH);
+		if (!filename.endsWith(".jar") && !filename.endsWith(".zip"))
+			return result;
+		ArchiveIndex archive;
+		try (FileChannel channel = FileChannel.open(path))
 		{
+			// Only the central directory is read, instead of the entire release
 			try
 			{
-				Long releaseId;
-				try
-				{
-					QModules modules = QModules.modules;
-					Long moduleId = session.query(modules).
-						where(modules.name.eq(module.getName())).uniqueResult(modules.id);
-					if (moduleId == null)
-						throw new IllegalArgumentException("Module " + module.getName() + " not found");
-
-					Timestamp lastModified = new Timestamp(Files.readAttributes(path,
-						BasicFileAttributes.class).lastModifiedTime().toMillis());
-					SerialBlob content;
-					try
-					{
-						content = new SerialBlob(Files.readAllBytes(path));
-					}
-					catch (SQLException e)
-					{
-						throw new QueryException(e);
-					}
-					QReleases releases = QReleases.releases;
-					releaseId = session.insert(releases).
-						set(releases.moduleId, moduleId).
-						set(releases.version, version).
-						set(releases.path, path.getFileName().toString()).
-						set(releases.content, content).
-						set(releases.lastModified, lastModified).
-						executeWithKey(releases.id);
-					if (releaseId == null)
-						throw new IOException("Could not insert the release");
-
-					Map<String, Byte> dependencyTypes = new HashMap<>();
-					QDependencyTypes dt = QDependencyTypes.dependencyTypes;
-					for (Tuple row : session.query(dt).list(dt.id, dt.name))
-					{
-						Byte id = row.get(dt.id);
-						String name = row.get(dt.name);
-						dependencyTypes.put(name, id);
-					}
-
-					QReleaseDependencies rd = QReleaseDependencies.releaseDependencies;
-					for (Dependency dependency : dependencies)
-					{
-						long rows = session.insert(rd).set(rd.releaseId, releaseId).
-							set(rd.module, module.getName()).
-							set(rd.version, version).
-							set(rd.type, dependencyTypes.get(dependency.getType().name())).
-							set(rd.uri, dependency.getUri().toString()).
-							execute();
-						if (rows != 1)
-							throw new IOException("Could not insert dependency: " + dependency);
-					}
-					session.commit();
-				}
-				catch (QueryException e)
-				{
-					ConstraintViolationException constraintViolation = SQLExceptions.getConstraintViolation(e);
-					if (constraintViolation != null)
-						throw new EntityExistsException(module.getName() + " " + version, e);
-					throw new IOException(e);
-				}
-				return new ReleaseImpl(toUri(releaseId), module, version, path.getFileName().toString(),
-					dependencies);
+				archive = ArchiveIndex.read(channel);
 			}
-			finally
+			catch (IOException e)
 			{
-				session.close();
+				log.warn("Could not index the classes of " + path, e);
+				return Collections.emptyMap();
 			}
 		}
+		for (String name: archive.getEntries().keySet())
+		{
+			if (!name.endsWith(".class") || name.startsWith("META-INF/"))
+				continue;
+			int separator = name.lastIndexOf('/');
+			String packageName;
+			if (separator == -1)
+				packageName = "";
+			else
+				packageName = name.substring(0, separator).replace('/', '.');
+			String className = name.substring(separator + 1, name.length() - ".class".length());
+			if (className.equals("package-info") || className.equals("module-info"))
+				continue;
+			List<String> classes = result.get(packageName);
+			if (classes == null)
+			{
+				classes = new ArrayList<>();
+				result.put(packageName, classes);
+			}
+			classes.add(className);
+		}
+		return result;
 	}
 
 	@Override
-	public Module getModule(final String name) throws IOException
+	public Module getModule(String name) throws IOException
 	{
 		Preconditions.checkNotNull(name, "name may not be null");
 		Preconditions.checkArgument(!name.isEmpty(), "name may not be an empty string");
-		try
-		{
-			return requestInjector.scopeRequest(GetModule.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(String.class).annotatedWith(Names.named("name")).toInstance(name);
-				}
-			}).call();
-		}
-		catch (IOException e)
-		{
-			throw e;
-		}
-		catch (Exception e)
-		{
-			throw new AssertionError(e);
-		}
-	}
 
-	/**
-	 * Implements getModule().
-	 */
-	@RequestScoped
-	private static class GetModule implements Callable<Module>
-	{
-		private final String name;
-		private final Session session;
-
-		@Inject
-		public GetModule(@Named("name") String name, Session session)
+		try (Span span = metrics.start("LocalRepository.getModule"))
 		{
-			this.name = name;
-			this.session = session;
+			if (!metadata.containsModule(name))
+				return null;
+			return new Module(name);
 		}
-
-		@Override
-		public Module call() throws IOException
+		catch (Exception e)
 		{
-			try
-			{
-				QModules modules = QModules.modules;
-				Long id = session.query(modules).where(modules.name.eq(name)).uniqueResult(modules.id);
-				if (id == null)
-					return null;
-				return new Module(name);
-			}
-			catch (QueryException e)
-			{
-				throw new IOException(e);
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.getModule.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public List<URI> getReleases(final Module module)
+	public List<URI> getReleases(Module module)
 		throws IOException
 	{
 		Preconditions.checkNotNull(module, "module may not be null");
-		try
-		{
-			return requestInjector.scopeRequest(GetReleases.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(Module.class).annotatedWith(Names.named("module")).toInstance(module);
-					bind(Logger.class).annotatedWith(Names.named("log")).toInstance(log);
-				}
-			}).call();
-		}
-		catch (IOException e)
-		{
-			throw e;
-		}
-		catch (Exception e)
-		{
-			throw new AssertionError(e);
-		}
-	}
-
-	/**
-	 * Implements getReleases().
-	 */
-	@RequestScoped
-	private static class GetReleases implements Callable<List<URI>>
-	{
-		private final Module module;
-		private final Session session;
 
-		@Inject
-		public GetReleases(@Named("module") Module module, @Named("log") Logger log, Session session)
+		try (Span span = metrics.start("LocalRepository.getReleases"))
 		{
-			this.module = module;
-			this.session = session;
+			List<Long> ids = metadata.getReleases(module.getName());
+			if (ids == null)
+				return null;
+			return toUris(ids);
 		}
-
-		@Override
-		public List<URI> call() throws IOException
+		catch (Exception e)
 		{
-			try
-			{
-				QModules modules = QModules.modules;
-				Long moduleId = session.query(modules).where(modules.name.eq(module.getName())).
-					uniqueResult(modules.id);
-				if (moduleId == null)
-					return null;
-
-				List<URI> result = new ArrayList<>();
-				QReleases releases = QReleases.releases;
-				for (Long id : session.query(releases).where(releases.moduleId.eq(moduleId)).
-					list(releases.id))
-				{
-					result.add(URI.create(schema + ":" + id));
-				}
-				return result;
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.getReleases.failures");
+			throw e;
 		}
 	}
 
@@ -497,569 +286,346 @@ public final class LocalRepository implements RepositorySpi
 		return URI.create(schema + ":" + id);
 	}
 
+	/**
+	 * Converts database identifiers to URIs.
+	 * <p/>
+	 * @param ids the database identifiers
+	 * @return the URIs, in the same order
+	 */
+	private static List<URI> toUris(List<Long> ids)
+	{
+		List<URI> result = new ArrayList<>(ids.size());
+		for (Long id: ids)
+			result.add(toUri(id));
+		return result;
+	}
+
 	@Override
-	public URI getReleaseUri(final Module module, final String version)
+	public URI getReleaseUri(Module module, String version)
 	{
 		Preconditions.checkNotNull(module, "module may not be null");
 		Preconditions.checkNotNull(version, "version may not be null");
 		Preconditions.checkArgument(!version.isEmpty(), "version may not be an empty string");
-		try
+		try (Span span = metrics.start("LocalRepository.getReleaseUri"))
 		{
-			return requestInjector.scopeRequest(GetReleaseUri.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(Module.class).annotatedWith(Names.named("module")).toInstance(module);
-					bind(String.class).annotatedWith(Names.named("version")).toInstance(version);
-					bind(Logger.class).annotatedWith(Names.named("log")).toInstance(log);
-				}
-			}).call();
+			Long id = metadata.getReleaseId(module.getName(), version);
+			if (id == null)
+				return null;
+			return toUri(id);
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
+			metrics.increment("LocalRepository.getReleaseUri.failures");
 			throw new AssertionError(e);
 		}
-	}
-
-	/**
-	 * Implements getReleaseUri().
-	 */
-	@RequestScoped
-	private static class GetReleaseUri implements Callable<URI>
-	{
-		private final Module module;
-		private final String version;
-		private final Logger log;
-		private final Session session;
-
-		@Inject
-		public GetReleaseUri(@Named("module") Module module, @Named("version") String version,
-			@Named("log") Logger log, Session session)
+		catch (RuntimeException e)
 		{
-			this.module = module;
-			this.version = version;
-			this.session = session;
-			this.log = log;
-		}
-
-		@Override
-		public URI call() throws IOException
-		{
-			try
-			{
-				QModules modules = QModules.modules;
-				Long moduleId = session.query(modules).where(modules.name.eq(module.getName())).
-					uniqueResult(modules.id);
-				if (moduleId == null)
-					return null;
-
-				QReleases releases = QReleases.releases;
-				Long id = session.query(releases).
-					where(releases.moduleId.eq(moduleId), releases.version.eq(version)).
-					uniqueResult(releases.id);
-				if (id == null)
-					return null;
-				return toUri(id);
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.getReleaseUri.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public Release getRelease(final URI uri)
+	public Release getRelease(URI uri)
 	{
-		try
+		try (Span span = metrics.start("LocalRepository.getRelease"))
 		{
-			return requestInjector.scopeRequest(GetReleaseById.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(URI.class).annotatedWith(Names.named("uri")).toInstance(uri);
-					bind(Logger.class).annotatedWith(Names.named("log")).toInstance(log);
-				}
-			}).call();
+			ReleaseRecord record = metadata.getRelease(toId(uri));
+			if (record == null)
+				return null;
+			return toRelease(uri, record);
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
+			metrics.increment("LocalRepository.getRelease.failures");
 			throw new AssertionError(e);
 		}
+		catch (RuntimeException e)
+		{
+			metrics.increment("LocalRepository.getRelease.failures");
+			throw e;
+		}
 	}
 
 	/**
-	 * Implements getReleaseById().
+	 * @param uri the release URI
+	 * @param record the release metadata
+	 * @return the release
 	 */
-	@RequestScoped
-	private static class GetReleaseById implements Callable<Release>
+	private static Release toRelease(URI uri, ReleaseRecord record)
 	{
-		private final URI uri;
-		private final Logger log;
-		private final Session session;
-
-		@Inject
-		public GetReleaseById(@Named("uri") URI uri, @Named("log") Logger log, Session session)
-		{
-			this.uri = uri;
-			this.log = log;
-			this.session = session;
-		}
+		return new ReleaseImpl(uri, record.getModule(), record.getVersion(), record.getFilename(),
+			record.getDependencies());
+	}
 
-		@Override
-		public Release call() throws IOException
+	@Override
+	public Map<URI, Release> getReleases(Set<URI> uris) throws IOException
+	{
+		Preconditions.checkNotNull(uris, "uris may not be null");
+		if (uris.isEmpty())
+			return Collections.emptyMap();
+		try (Span span = metrics.start("LocalRepository.getReleasesByUri"))
 		{
-			try
-			{
-				long id = toId(uri);
-				QModules modules = QModules.modules;
-				QReleases releases = QReleases.releases;
+			List<Long> ids = new ArrayList<>(uris.size());
+			for (URI uri: uris)
+				ids.add(toId(uri));
 
-				Tuple row = session.query(modules, releases).
-					where(releases.id.eq(id), modules.id.eq(releases.moduleId)).
-					uniqueResult(modules.name, releases.version, releases.path);
-				if (row == null)
-					return null;
-				Module module = new Module(row.get(modules.name));
-				String version = row.get(releases.version);
-				String filename = row.get(releases.path);
-				Set<Dependency> dependencies = getDependencies(id);
-				return new ReleaseImpl(uri, module, version, filename, dependencies);
-			}
-			finally
+			Map<URI, Release> result = new HashMap<>();
+			for (Map.Entry<Long, ReleaseRecord> entry: metadata.getReleases(ids).entrySet())
 			{
-				session.close();
+				URI uri = toUri(entry.getKey());
+				result.put(uri, toRelease(uri, entry.getValue()));
 			}
+			return result;
 		}
-
-		/**
-		 * @param id a release id
-		 * @return the set of dependencies associated with the release
-		 */
-		private Set<Dependency> getDependencies(long id)
+		catch (Exception e)
 		{
-			Set<Dependency> result = new HashSet<>();
-			QReleaseDependencies dependencies = QReleaseDependencies.releaseDependencies;
-			QDependencyTypes dt = QDependencyTypes.dependencyTypes;
-			for (Tuple row : session.query(dependencies, dt).
-				where(dependencies.releaseId.eq(id), dependencies.type.eq(dt.id)).
-				list(dependencies.module, dependencies.version, dt.name, dependencies.uri))
-			{
-				Module module = new Module(row.get(dependencies.module));
-				String version = row.get(dependencies.version);
-				DependencyType type = DependencyType.valueOf(row.get(dt.name));
-				URI dependencyUri = URI.create(row.get(dependencies.uri));
-				result.add(new Dependency(dependencyUri, module, version, type));
-			}
-			return result;
+			metrics.increment("LocalRepository.getReleasesByUri.failures");
+			throw e;
 		}
 	}
 
-	/**
-	 * Returns the release id associated with a URI.
-	 * <p/>
-	 * @param uri a ReleasePath URI
-	 * @return the release id
-	 * @throws ParseException if the URI did not correspond to a release
-	 */
-	private long parseReleaseId(URI uri) throws ParseException
+	@Override
+	public List<URI> getResolution(String fingerprint) throws IOException
 	{
-		if (!uri.getScheme().equals(schema))
-			throw new ParseException("Expected " + schema + ", got: " + uri.getScheme(), 0);
-		try
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+
+		try (Span span = metrics.start("LocalRepository.getResolution"))
 		{
-			String schemeSpecificPart = uri.getSchemeSpecificPart();
-			int index = schemeSpecificPart.indexOf(":");
-			if (index == -1)
-				throw new ParseException("Missing colon in scheme-specific psrt", uri.toString().length());
-			return Long.parseLong(schemeSpecificPart.substring(0, index));
+			List<Long> ids = metadata.getResolution(fingerprint);
+			if (ids == null)
+				return null;
+			return toUris(ids);
 		}
-		catch (NumberFormatException e)
+		catch (Exception e)
 		{
-			ParseException e2 = new ParseException("Invalid release id", uri.getScheme().length() + ":".
-				length() + 1);
-			e2.initCause(e);
-			throw e2;
+			metrics.increment("LocalRepository.getResolution.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public SeekableByteChannel newByteChannel(final URI uri) throws NoSuchFileException, IOException
+	public void putResolution(String fingerprint, List<URI> releases) throws IOException
 	{
-		try
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+		Preconditions.checkNotNull(releases, "releases may not be null");
+		Preconditions.checkArgument(!releases.isEmpty(), "releases may not be empty");
+
+		try (Span span = metrics.start("LocalRepository.putResolution"))
 		{
-			return requestInjector.scopeRequest(NewByteChannel.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					try
-					{
-						bind(Long.class).annotatedWith(Names.named("releaseId")).toInstance(parseReleaseId(uri));
-					}
-					catch (ParseException e)
-					{
-						throw new IllegalArgumentException(e);
-					}
-				}
-			}).call();
+			List<Long> ids = new ArrayList<>(releases.size());
+			for (URI uri: releases)
+				ids.add(toId(uri));
+			metadata.putResolution(fingerprint, ids);
 		}
-		catch (NoSuchFileException e)
+		catch (Exception e)
 		{
+			metrics.increment("LocalRepository.putResolution.failures");
 			throw e;
 		}
-		catch (QueryException e)
+	}
+
+	@Override
+	public Module resolve(String className) throws ClassNotFoundException
+	{
+		Preconditions.checkNotNull(className, "className may not be null");
+		List<URI> releases;
+		try
 		{
-			throw new IOException(e);
+			releases = getReleasesByClass(className);
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
-			throw new AssertionError(e);
+			throw new ClassNotFoundException(className, e);
 		}
+		if (releases.isEmpty())
+			throw new ClassNotFoundException(className);
+		Release release = getRelease(releases.get(0));
+		if (release == null)
+			throw new ClassNotFoundException(className);
+		return release.getModule();
 	}
 
-	/**
-	 * Implements newByteChannel().
-	 */
-	@RequestScoped
-	private static class NewByteChannel implements Callable<SeekableByteChannel>
+	@Override
+	public List<URI> getReleasesByClass(String className) throws IOException
 	{
-		private final Long releaseId;
-		private final Session session;
+		Preconditions.checkNotNull(className, "className may not be null");
+		Preconditions.checkArgument(!className.isEmpty(), "className may not be an empty string");
 
-		@Inject
-		public NewByteChannel(@Named("releaseId") Long releaseId, Session session)
+		try (Span span = metrics.start("LocalRepository.getReleasesByClass"))
 		{
-			this.releaseId = releaseId;
-			this.session = session;
+			int separator = className.lastIndexOf('.');
+			String packageName;
+			if (separator == -1)
+				packageName = "";
+			else
+				packageName = className.substring(0, separator);
+			String simpleName = className.substring(separator + 1);
+			return toUris(metadata.getReleasesByClass(packageName, simpleName));
 		}
-
-		@Override
-		public SeekableByteChannel call() throws NoSuchFileException, QueryException
+		catch (Exception e)
 		{
-			try
-			{
-				QReleases releases = QReleases.releases;
-				Blob content = session.query(releases).where(releases.id.eq(releaseId)).
-					uniqueResult(releases.content);
-				if (content == null)
-					throw new NoSuchFileException("release #" + releaseId);
-				// NOTE: Session closed by BlobByteChannel.close()
-				return new BlobByteChannel(Collections.singleton(StandardOpenOption.READ), content, session);
-			}
-			catch (RuntimeException e)
-			{
-				session.close();
-				throw e;
-			}
+			metrics.increment("LocalRepository.getReleasesByClass.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public boolean fileExists(final URI uri) throws IOException
+	public List<URI> getReleasesByPackage(String packageName) throws IOException
 	{
-		try
-		{
-			return requestInjector.scopeRequest(FileExists.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					try
-					{
-						bind(Long.class).annotatedWith(Names.named("releaseId")).toInstance(parseReleaseId(uri));
-					}
-					catch (ParseException e)
-					{
-						throw new IllegalArgumentException(e);
-					}
-				}
-			}).call();
-		}
-		catch (QueryException e)
+		Preconditions.checkNotNull(packageName, "packageName may not be null");
+
+		try (Span span = metrics.start("LocalRepository.getReleasesByPackage"))
 		{
-			throw new IOException(e);
+			return toUris(metadata.getReleasesByPackage(packageName));
 		}
 		catch (Exception e)
 		{
-			throw new AssertionError(e);
+			metrics.increment("LocalRepository.getReleasesByPackage.failures");
+			throw e;
 		}
 	}
 
 	/**
-	 * Implements fileExists().
+	 * Returns the release id associated with a URI.
+	 * <p/>
+	 * @param uri a ReleasePath URI
+	 * @return the release id
+	 * @throws ParseException if the URI did not correspond to a release
 	 */
-	@RequestScoped
-	private static class FileExists implements Callable<Boolean>
+	private long parseReleaseId(URI uri) throws ParseException
 	{
-		private final Long releaseId;
-		private final String path;
-		private final Session session;
-
-		@Inject
-		public FileExists(@Named("releaseId") Long releaseId, @Named("path") String path,
-			Session session)
+		if (!uri.getScheme().equals(schema))
+			throw new ParseException("Expected " + schema + ", got: " + uri.getScheme(), 0);
+		try
 		{
-			this.releaseId = releaseId;
-			this.path = path;
-			this.session = session;
+			String schemeSpecificPart = uri.getSchemeSpecificPart();
+			int index = schemeSpecificPart.indexOf(":");
+			if (index == -1)
+				throw new ParseException("Missing colon in scheme-specific psrt", uri.toString().length());
+			return Long.parseLong(schemeSpecificPart.substring(0, index));
 		}
-
-		@Override
-		public Boolean call() throws QueryException
+		catch (NumberFormatException e)
 		{
-			try
-			{
-				QReleases releases = QReleases.releases;
-				return session.query(releases).where(releases.id.eq(releaseId), releases.path.eq(path)).
-					exists();
-			}
-			finally
-			{
-				session.close();
-			}
+			ParseException e2 = new ParseException("Invalid release id", uri.getScheme().length() + ":".
+				length() + 1);
+			e2.initCause(e);
+			throw e2;
 		}
 	}
 
-	@Override
-	public BasicFileAttributes readAttributes(final URI uri) throws NoSuchFileException, IOException
+	/**
+	 * Returns the release id associated with a URI.
+	 * <p/>
+	 * @param uri a ReleasePath URI
+	 * @return the release id
+	 * @throws IllegalArgumentException if the URI did not correspond to a release
+	 */
+	private long getReleaseId(URI uri)
 	{
 		try
 		{
-			return requestInjector.scopeRequest(ReadAttributes.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					try
-					{
-						bind(Long.class).annotatedWith(Names.named("releaseId")).toInstance(parseReleaseId(uri));
-					}
-					catch (ParseException e)
-					{
-						throw new IllegalArgumentException(e);
-					}
-				}
-			}).call();
+			return parseReleaseId(uri);
 		}
-		catch (NoSuchFileException e)
+		catch (ParseException e)
 		{
-			throw e;
+			throw new IllegalArgumentException(e);
 		}
-		catch (QueryException e)
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(URI uri) throws NoSuchFileException, IOException
+	{
+		try (Span span = metrics.start("LocalRepository.newByteChannel"))
 		{
-			throw new IOException(e);
+			return content.newByteChannel(getReleaseId(uri));
 		}
 		catch (Exception e)
 		{
-			throw new AssertionError(e);
+			metrics.increment("LocalRepository.newByteChannel.failures");
+			throw e;
 		}
 	}
 
-	/**
-	 * Implements readAttributes().
-	 */
-	@RequestScoped
-	private static class ReadAttributes implements Callable<BasicFileAttributes>
+	@Override
+	public boolean fileExists(URI uri) throws IOException
 	{
-		private final Long releaseId;
-		private final Session session;
-
-		@Inject
-		public ReadAttributes(@Named("releaseId") Long releaseId, Session session)
+		try (Span span = metrics.start("LocalRepository.fileExists"))
 		{
-			this.releaseId = releaseId;
-			this.session = session;
+			ReleaseRecord record = metadata.getRelease(getReleaseId(uri));
+			if (record == null)
+				return false;
+			String schemeSpecificPart = uri.getSchemeSpecificPart();
+			String path = schemeSpecificPart.substring(schemeSpecificPart.indexOf(':') + 1);
+			if (path.startsWith("/"))
+				path = path.substring(1);
+			return record.getFilename().equals(path);
 		}
-
-		@Override
-		public BasicFileAttributes call() throws NoSuchFileException, QueryException
+		catch (Exception e)
 		{
-			try
-			{
-				QReleases releases = QReleases.releases;
-				Tuple row = session.query(releases).where(releases.id.eq(releaseId)).
-					uniqueResult(releases.path, releases.lastModified, releases.content);
-				if (row == null)
-					throw new NoSuchFileException("Release #" + releaseId);
-				String path = row.get(releases.path);
-				DateTime lastModified = new DateTime(row.get(releases.lastModified), DateTimeZone.UTC);
-				Blob content = row.get(releases.content);
-				long size;
-				try
-				{
-					try
-					{
-						size = content.length();
-					}
-					catch (SQLException e)
-					{
-						throw new QueryException(e);
-					}
-				}
-				finally
-				{
-					try
-					{
-						content.free();
-					}
-					catch (SQLException e)
-					{
-						throw new QueryException(e);
-					}
-				}
-				return new ReleaseFileAttributes(path, size, FileTime.fromMillis(lastModified.getMillis()));
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.fileExists.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public void removeModule(final Module module) throws IOException, EntityNotFoundException
+	public BasicFileAttributes readAttributes(URI uri) throws NoSuchFileException, IOException
 	{
-		Preconditions.checkNotNull(module, "module may not be null");
-		try
+		try (Span span = metrics.start("LocalRepository.readAttributes"))
 		{
-			requestInjector.scopeRequest(RemoveModule.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(Module.class).annotatedWith(Names.named("module")).toInstance(module);
-				}
-			}).call();
-		}
-		catch (IllegalStateException | EntityNotFoundException | IOException e)
-		{
-			throw e;
+			long id = getReleaseId(uri);
+			ReleaseRecord record = metadata.getRelease(id);
+			if (record == null)
+				throw new NoSuchFileException("Release #" + id);
+			return new ReleaseFileAttributes(record.getFilename(), content.size(id),
+				record.getLastModified());
 		}
 		catch (Exception e)
 		{
-			throw new AssertionError(e);
+			metrics.increment("LocalRepository.readAttributes.failures");
+			throw e;
 		}
 	}
 
-	/**
-	 * Implements removeModule().
-	 */
-	@RequestScoped
-	private static class RemoveModule implements Callable<Void>
+	@Override
+	public void removeModule(Module module) throws IOException, EntityNotFoundException
 	{
-		private final Module module;
-		private final Session session;
+		Preconditions.checkNotNull(module, "module may not be null");
 
-		@Inject
-		public RemoveModule(@Named("module") Module module, Session session)
+		try (Span span = metrics.start("LocalRepository.removeModule"))
 		{
-			this.module = module;
-			this.session = session;
+			metadata.removeModule(module.getName());
 		}
-
-		@Override
-		public Void call() throws IllegalStateException, EntityNotFoundException, IOException
+		catch (Exception e)
 		{
-			try
-			{
-				QModules modules = QModules.modules;
-				Long moduleId = session.query(modules).where(modules.name.eq(module.getName())).
-					uniqueResult(modules.id);
-				if (moduleId == null)
-					throw new EntityNotFoundException(module.getName());
-
-				QReleases releases = QReleases.releases;
-				long releaseCount = session.query(releases).where(releases.moduleId.eq(moduleId)).
-					count();
-				if (releaseCount > 0)
-				{
-					throw new IllegalStateException("Module contains " + releaseCount
-						+ " versions which must be removed first");
-				}
-
-				long rows = session.delete(modules).where(modules.id.eq(moduleId)).execute();
-				if (rows == 0)
-					throw new EntityNotFoundException(module.getName());
-				if (rows != 1)
-					throw new AssertionError("Expected to delete 1 row, found " + rows + " rows instead");
-				session.commit();
-				return null;
-			}
-			finally
-			{
-				session.close();
-			}
+			metrics.increment("LocalRepository.removeModule.failures");
+			throw e;
 		}
 	}
 
 	@Override
-	public void removeRelease(final Release release) throws IOException, EntityNotFoundException
+	public void removeRelease(Release release) throws IOException, EntityNotFoundException
 	{
 		Preconditions.checkNotNull(release, "release may not be null");
-		try
-		{
-			requestInjector.scopeRequest(RemoveRelease.class, new AbstractModule()
-			{
-				@Override
-				protected void configure()
-				{
-					bind(Release.class).annotatedWith(Names.named("release")).toInstance(release);
-				}
-			}).call();
-		}
-		catch (IOException | EntityNotFoundException e)
+
+		try (Span span = metrics.start("LocalRepository.removeRelease"))
 		{
-			throw e;
+			long id = toId(release.getUri());
+			metadata.removeRelease(id);
+			content.remove(id);
 		}
 		catch (Exception e)
 		{
-			throw new AssertionError(e);
+			metrics.increment("LocalRepository.removeRelease.failures");
+			throw e;
 		}
-	}
-
-	/**
-	 * Implements removeRelease().
-	 */
-	@RequestScoped
-	private static class RemoveRelease implements Callable<Void>
-	{
-		private final Release release;
-		private final Session session;
-
-		@Inject
-		public RemoveRelease(@Named("release") Release release, Session session)
+		try
 		{
-			this.release = release;
-			this.session = session;
+			LinkStore.getInstance().remove(release.getUri());
 		}
-
-		@Override
-		public Void call() throws IOException, EntityNotFoundException
+		catch (IOException e)
 		{
-			try
-			{
-				long releaseId = toId(release.getUri());
-				QReleaseDependencies dependencies = QReleaseDependencies.releaseDependencies;
-				session.delete(dependencies).where(dependencies.releaseId.eq(releaseId)).
-					execute();
-
-				QReleases releases = QReleases.releases;
-				long rows = session.delete(releases).where(releases.id.eq(releaseId)).
-					execute();
-				if (rows == 0)
-					throw new EntityNotFoundException(release.toString());
-				if (rows != 1)
-					throw new AssertionError("Expected to delete 1 row, found " + rows + " rows instead");
-				session.commit();
-				return null;
-			}
-			finally
-			{
-				session.close();
-			}
+			log.warn("Could not remove " + release.getUri() + " from the link store", e);
 		}
 	}
 
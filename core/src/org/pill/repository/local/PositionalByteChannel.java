@@ -0,0 +1,29 @@
+package org.pill.repository.local;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A SeekableByteChannel that can read from absolute positions without modifying its position.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public interface PositionalByteChannel extends SeekableByteChannel
+{
+	/**
+	 * Reads a sequence of bytes from this channel into the given buffer, starting at the given
+	 * position. This method does not modify the channel's position.
+	 * <p/>
+	 * @param dst the buffer into which bytes are to be transferred
+	 * @param position the position at which the transfer is to begin
+	 * @return the number of bytes read, possibly zero, or -1 if the given position is greater than
+	 * or equal to the channel's current size
+	 * @throws NullPointerException if dst is null
+	 * @throws IllegalArgumentException if position is negative
+	 * @throws java.nio.channels.ClosedChannelException if the channel is closed
+	 * @throws IOException if an I/O error occurs
+	 * @see java.nio.channels.FileChannel#read(ByteBuffer, long)
+	 */
+	int read(ByteBuffer dst, long position) throws IOException;
+}
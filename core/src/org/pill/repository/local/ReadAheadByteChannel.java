@@ -0,0 +1,470 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A read-only channel that reads ahead of its consumer.
+ * <p/>
+ * Sequential access is detected by comparing the position of each read against the end of the
+ * previous read. Once the consumer is reading sequentially, chunks of growing size (from
+ * {@value #MIN_CHUNK_SIZE} up to {@value #MAX_CHUNK_SIZE} bytes) are fetched on a background thread
+ * ahead of the consumer. Random access cancels any read-ahead and reads directly from the
+ * underlying channel, which only fetches small chunks at a time.
+ * <p/>
+ * The underlying channel is locked for at most {@value #SLICE_SIZE} bytes at a time, so a random
+ * read never waits for more than one slice of a cancelled read-ahead.
+ * <p/>
+ * <b>THREAD SAFETY</b>: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ReadAheadByteChannel implements PositionalByteChannel, ScatteringByteChannel
+{
+	/**
+	 * The size of the first chunk read ahead of a sequential consumer.
+	 */
+	private static final int MIN_CHUNK_SIZE = 64 * 1024;
+	/**
+	 * The maximum size of chunks read ahead of a sequential consumer.
+	 */
+	private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+	/**
+	 * The maximum number of bytes read from the underlying channel while holding its lock.
+	 */
+	private static final int SLICE_SIZE = MIN_CHUNK_SIZE;
+	/**
+	 * The number of consecutive sequential reads after which we begin reading ahead.
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 2;
+	private static final ExecutorService executor = Executors.newCachedThreadPool(
+		new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ReadAheadByteChannel-%d").build());
+	private final PositionalByteChannel delegate;
+	private final ChannelStatistics statistics;
+	private long position;
+	/**
+	 * The position immediately following the previous read.
+	 */
+	private long expectedPosition;
+	/**
+	 * The number of consecutive sequential reads.
+	 */
+	private int sequentialReads;
+	/**
+	 * The number of bytes to read ahead next time.
+	 */
+	private int chunkSize = MIN_CHUNK_SIZE;
+	/**
+	 * Data that was read ahead of the consumer.
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocate(0);
+	/**
+	 * The channel position corresponding to the beginning of {@code buffer}.
+	 */
+	private long bufferPosition;
+	/**
+	 * The pending read-ahead, or null if there is none.
+	 */
+	private Prefetch prefetch;
+	private boolean closed;
+
+	/**
+	 * Creates a new ReadAheadByteChannel.
+	 * <p/>
+	 * @param delegate the channel to read from
+	 * @param statistics the statistics that {@code delegate} records its round-trips in
+	 * @throws NullPointerException if delegate or statistics are null
+	 */
+	public ReadAheadByteChannel(PositionalByteChannel delegate, ChannelStatistics statistics)
+	{
+		Preconditions.checkNotNull(delegate, "delegate may not be null");
+		Preconditions.checkNotNull(statistics, "statistics may not be null");
+
+		this.delegate = delegate;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return the channel's read statistics
+	 */
+	public ChannelStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException
+	{
+		Preconditions.checkNotNull(dst, "dst may not be null");
+		if (closed)
+			throw new ClosedChannelException();
+		if (position == expectedPosition)
+			++sequentialReads;
+		else
+		{
+			sequentialReads = 0;
+			chunkSize = MIN_CHUNK_SIZE;
+			cancelPrefetch();
+		}
+		if (!isBuffered(position) && prefetch != null && prefetch.contains(position))
+		{
+			boolean done = prefetch.future.isDone();
+			bufferPosition = prefetch.start;
+			buffer = awaitPrefetch();
+			if (!done)
+				statistics.addPrefetchMiss();
+			else if (isBuffered(position))
+				statistics.addPrefetchHit();
+		}
+		else if (isBuffered(position))
+			statistics.addPrefetchHit();
+		else
+		{
+			statistics.addPrefetchMiss();
+			cancelPrefetch();
+			if (sequentialReads >= SEQUENTIAL_THRESHOLD)
+			{
+				long size = size();
+				if (position >= size)
+					return -1;
+				bufferPosition = position;
+				buffer = fetch(position, (int) Math.min(chunkSize, size - position), null);
+				chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+			}
+		}
+
+		int result;
+		if (isBuffered(position))
+		{
+			ByteBuffer source = buffer.duplicate();
+			source.position((int) (position - bufferPosition));
+			if (source.remaining() > dst.remaining())
+				source.limit(source.position() + dst.remaining());
+			result = source.remaining();
+			dst.put(source);
+		}
+		else
+			result = readDelegate(dst, position);
+		if (result > 0)
+		{
+			position += result;
+			statistics.addBytesRead(result);
+		}
+		expectedPosition = position;
+		if (sequentialReads >= SEQUENTIAL_THRESHOLD)
+			readAhead();
+		return result;
+	}
+
+	/**
+	 * @param position a channel position
+	 * @return true if the position is contained by {@code buffer}
+	 */
+	private boolean isBuffered(long position)
+	{
+		return position >= bufferPosition && position < bufferPosition + buffer.limit();
+	}
+
+	/**
+	 * Reads the chunk following {@code buffer} on a background thread, if necessary.
+	 * <p/>
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void readAhead() throws IOException
+	{
+		if (prefetch != null)
+			return;
+		final long start = Math.max(position, bufferPosition + buffer.limit());
+		long size = size();
+		if (start >= size)
+			return;
+		prefetch = new Prefetch(start, (int) Math.min(chunkSize, size - start));
+		prefetch.future = executor.submit(prefetch);
+		chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+	}
+
+	/**
+	 * Reads a chunk from the underlying channel, one slice at a time.
+	 * <p/>
+	 * @param start the position to read from
+	 * @param count the number of bytes to read
+	 * @param owner the read-ahead that the chunk is being read for, or null if the consumer is
+	 * waiting for it
+	 * @return the bytes that were read, or a partial chunk if {@code owner} was cancelled
+	 * @throws IOException if an I/O error occurs
+	 */
+	private ByteBuffer fetch(long start, int count, Prefetch owner) throws IOException
+	{
+		ByteBuffer result = ByteBuffer.allocate(count);
+		while (result.hasRemaining())
+		{
+			if (owner != null && owner.cancelled)
+				break;
+			ByteBuffer slice = result.duplicate();
+			slice.limit(Math.min(result.limit(), result.position() + SLICE_SIZE));
+			if (readDelegate(slice, start + result.position()) == -1)
+				break;
+			result.position(slice.position());
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Reads from the underlying channel.
+	 * <p/>
+	 * @param dst the buffer into which bytes are to be transferred
+	 * @param position the position at which the transfer is to begin
+	 * @return the number of bytes read, possibly zero, or -1 if the given position is greater than
+	 * or equal to the channel's current size
+	 * @throws IOException if an I/O error occurs
+	 */
+	private int readDelegate(ByteBuffer dst, long position) throws IOException
+	{
+		synchronized (delegate)
+		{
+			return delegate.read(dst, position);
+		}
+	}
+
+	/**
+	 * Waits for the pending read-ahead to complete.
+	 * <p/>
+	 * @return the bytes that were read ahead
+	 * @throws IOException if an I/O error occurs
+	 */
+	private ByteBuffer awaitPrefetch() throws IOException
+	{
+		try
+		{
+			return prefetch.future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			InterruptedIOException e2 = new InterruptedIOException();
+			e2.initCause(e);
+			throw e2;
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException(cause);
+		}
+		finally
+		{
+			prefetch = null;
+		}
+	}
+
+	/**
+	 * Cancels the pending read-ahead, if any.
+	 */
+	private void cancelPrefetch()
+	{
+		if (prefetch == null)
+			return;
+		// Stops the fetch at the next slice without interrupting the underlying channel
+		prefetch.cancelled = true;
+		prefetch.future.cancel(false);
+		prefetch = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Data that was read ahead is used if available, but positional reads do not affect sequential
+	 * access detection.
+	 */
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException
+	{
+		Preconditions.checkNotNull(dst, "dst may not be null");
+		Preconditions.checkArgument(position >= 0, "position may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		int result;
+		if (isBuffered(position))
+		{
+			ByteBuffer source = buffer.duplicate();
+			source.position((int) (position - bufferPosition));
+			if (source.remaining() > dst.remaining())
+				source.limit(source.position() + dst.remaining());
+			result = source.remaining();
+			dst.put(source);
+		}
+		else
+			result = readDelegate(dst, position);
+		if (result > 0)
+			statistics.addBytesRead(result);
+		return result;
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts) throws IOException
+	{
+		return read(dsts, 0, dsts.length);
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+	{
+		Preconditions.checkNotNull(dsts, "dsts may not be null");
+		if (offset < 0 || length < 0 || offset > dsts.length - length)
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+		long result = 0;
+		for (int i = offset, end = offset + length; i < end; ++i)
+		{
+			ByteBuffer dst = dsts[i];
+			if (!dst.hasRemaining())
+				continue;
+			int count = read(dst);
+			if (count == -1)
+			{
+				if (result == 0)
+					return -1;
+				break;
+			}
+			result += count;
+			if (dst.hasRemaining())
+				break;
+		}
+		return result;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException
+	{
+		Preconditions.checkArgument(newPosition >= 0, "newPosition may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		synchronized (delegate)
+		{
+			return delegate.size();
+		}
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return !closed;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		cancelPrefetch();
+		synchronized (delegate)
+		{
+			delegate.close();
+		}
+		closed = true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[position=" + position + ", statistics=" + statistics + "]";
+	}
+
+	/**
+	 * A chunk being read ahead on a background thread.
+	 * <p/>
+	 * <b>THREAD SAFETY</b>: This class is thread-safe.
+	 */
+	private final class Prefetch implements Callable<ByteBuffer>
+	{
+		/**
+		 * The channel position corresponding to the beginning of the chunk.
+		 */
+		public final long start;
+		/**
+		 * The number of bytes requested.
+		 */
+		public final int count;
+		/**
+		 * The result of the read-ahead.
+		 */
+		public Future<ByteBuffer> future;
+		/**
+		 * True if the consumer no longer needs the chunk.
+		 */
+		public volatile boolean cancelled;
+
+		/**
+		 * Creates a new Prefetch.
+		 * <p/>
+		 * @param start the channel position corresponding to the beginning of the chunk
+		 * @param count the number of bytes to read
+		 */
+		Prefetch(long start, int count)
+		{
+			this.start = start;
+			this.count = count;
+		}
+
+		/**
+		 * @param position a channel position
+		 * @return true if the position is contained by the chunk
+		 */
+		public boolean contains(long position)
+		{
+			return position >= start && position < start + count;
+		}
+
+		@Override
+		public ByteBuffer call() throws IOException
+		{
+			return fetch(start, count, this);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+
+/**
+ * A ClassLoader that loads classes directly out of archives belonging to releases, without
+ * extracting them to disk.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ReleaseClassLoader extends ClassLoader
+{
+	private final List<ReleasePath> archives;
+
+	/**
+	 * Creates a new ReleaseClassLoader.
+	 * <p/>
+	 * @param archives the archives to load classes from, in order of precedence
+	 * @param parent the parent ClassLoader
+	 * @throws NullPointerException if archives is null
+	 */
+	public ReleaseClassLoader(List<ReleasePath> archives, ClassLoader parent)
+	{
+		super(parent);
+		Preconditions.checkNotNull(archives, "archives may not be null");
+
+		this.archives = ImmutableList.copyOf(archives);
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException
+	{
+		String entryName = name.replace('.', '/') + ".class";
+		for (ReleasePath archive: archives)
+		{
+			ReleasePath entry = archive.getFileSystem().getPath(archive.toAbsolutePath() + "!/"
+				+ entryName);
+			byte[] bytecode;
+			try
+			{
+				bytecode = Files.readAllBytes(entry);
+			}
+			catch (NoSuchFileException unused)
+			{
+				continue;
+			}
+			catch (IOException e)
+			{
+				throw new ClassNotFoundException(name, e);
+			}
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+		throw new ClassNotFoundException(name);
+	}
+}
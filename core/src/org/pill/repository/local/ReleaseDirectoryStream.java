@@ -8,7 +8,9 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
@@ -167,7 +169,25 @@ final class ReleaseDirectoryStream implements SecureDirectoryStream<Path>
 		ReleaseFileSystem filesystem = directory.getFileSystem();
 		if (!filesystem.isOpen())
 			throw new ClosedFileSystemException();
-		return Iterators.singletonIterator(provider.getPath(directory.toUri()));
+		ReleasePath absolute = directory.toAbsolutePath();
+		ReleasePath archive = absolute.getArchive();
+		if (archive == null)
+			return Iterators.singletonIterator(provider.getPath(directory.toUri()));
+		try
+		{
+			List<Path> result = new ArrayList<>();
+			for (String child: filesystem.getArchiveIndex(archive).list(absolute.getEntryName()))
+			{
+				Path entry = absolute.resolve(child);
+				if (filter.accept(entry))
+					result.add(entry);
+			}
+			return result.iterator();
+		}
+		catch (IOException e)
+		{
+			throw new DirectoryIteratorException(e);
+		}
 	}
 
 	@Override
@@ -43,7 +43,13 @@ class ReleaseFileAttributeView implements BasicFileAttributeView
 	{
 		ReleaseFileSystem filesystem = path.getFileSystem();
 		Repository repository = filesystem.getRepository();
-		return repository.readAttributes(path.toUri());
+		ReleasePath absolute = path.toAbsolutePath();
+		ReleasePath archive = absolute.getArchive();
+		if (archive == null)
+			return repository.readAttributes(path.toUri());
+		BasicFileAttributes archiveAttributes = repository.readAttributes(archive.toUri());
+		return filesystem.getArchiveIndex(archive).readAttributes(absolute.getEntryName(),
+			archiveAttributes);
 	}
 
 	@Override
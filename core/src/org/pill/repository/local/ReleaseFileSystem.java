@@ -6,8 +6,10 @@ import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
@@ -15,12 +17,18 @@ import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 import org.pill.repository.RepositorySpi;
 
 /**
  * A Release file system.
  * <p/>
+ * Each archive that is read is kept open until the file system is closed, so entries are read
+ * from a single channel instead of opening the archive (a database session, in the case of H2)
+ * per entry.
+ * <p/>
  * @author Gili Tzabari
  */
 public final class ReleaseFileSystem extends FileSystem
@@ -29,6 +37,11 @@ public final class ReleaseFileSystem extends FileSystem
 	private final URI release;
 	private final RepositorySpi repository;
 	private final Method toRegexPattern;
+	/**
+	 * Maps the path of each archive to its index and contents. Release contents are immutable so
+	 * entries never go stale.
+	 */
+	private final ConcurrentMap<ReleasePath, Archive> archives = new ConcurrentHashMap<>();
 //	private ReleasePath currentPath;
 	private boolean open;
 
@@ -51,6 +64,7 @@ public final class ReleaseFileSystem extends FileSystem
 		this.provider = provider;
 		this.release = release;
 		this.repository = repository;
+		this.open = true;
 //		this.currentPath = getPath("/");
 
 		try
@@ -104,6 +118,80 @@ public final class ReleaseFileSystem extends FileSystem
 		return repository;
 	}
 
+	/**
+	 * Returns the index of an archive, reading its central directory if necessary.
+	 * <p/>
+	 * @param archive the absolute path of the archive
+	 * @return the index of the archive
+	 * @throws NullPointerException if archive is null
+	 * @throws IOException if the archive is not a valid ZIP file, or if an I/O error occurs
+	 */
+	ArchiveIndex getArchiveIndex(ReleasePath archive) throws IOException
+	{
+		return getArchive(archive).index;
+	}
+
+	/**
+	 * Returns an archive, opening it if necessary.
+	 * <p/>
+	 * @param path the absolute path of the archive
+	 * @return the archive
+	 * @throws NullPointerException if path is null
+	 * @throws IOException if the archive is not a valid ZIP file, or if an I/O error occurs
+	 */
+	private Archive getArchive(ReleasePath path) throws IOException
+	{
+		Preconditions.checkNotNull(path, "path may not be null");
+
+		Archive result = archives.get(path);
+		if (result != null)
+			return result;
+		SeekableByteChannel channel = repository.newByteChannel(path.toUri());
+		try
+		{
+			result = new Archive(ArchiveIndex.read(channel), channel);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+		Archive existing = archives.putIfAbsent(path, result);
+		if (existing != null)
+		{
+			channel.close();
+			return existing;
+		}
+		return result;
+	}
+
+	/**
+	 * Opens an entry inside an archive.
+	 * <p/>
+	 * @param archive the absolute path of the archive
+	 * @param name the entry name, relative to the root of the archive
+	 * @return a channel containing the uncompressed contents of the entry
+	 * @throws NullPointerException if archive or name are null
+	 * @throws NoSuchFileException if the entry does not exist, or is a directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	SeekableByteChannel newEntryByteChannel(ReleasePath archive, String name) throws IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		Archive contents = getArchive(archive);
+		ArchiveIndex.Entry entry = contents.index.getEntry(name);
+		if (entry == null)
+			throw new NoSuchFileException(archive + "!/" + name);
+		byte[] data;
+		// The channel is shared by all threads reading the archive
+		synchronized (contents.channel)
+		{
+			data = contents.index.read(entry, contents.channel);
+		}
+		return new ByteArrayByteChannel(data);
+	}
+
 	@Override
 	public FileSystemProvider provider()
 	{
@@ -113,11 +201,31 @@ public final class ReleaseFileSystem extends FileSystem
 	@Override
 	public void close() throws IOException
 	{
-		if (open)
+		if (!open)
+			return;
+		open = false;
+		provider.close(this);
+		IOException failure = null;
+		for (Archive archive: archives.values())
 		{
-			open = false;
-			provider.close(this);
+			synchronized (archive.channel)
+			{
+				try
+				{
+					archive.channel.close();
+				}
+				catch (IOException e)
+				{
+					if (failure == null)
+						failure = e;
+					else
+						failure.addSuppressed(e);
+				}
+			}
 		}
+		archives.clear();
+		if (failure != null)
+			throw failure;
 	}
 
 	@Override
@@ -223,4 +331,28 @@ public final class ReleaseFileSystem extends FileSystem
 	{
 		throw new UnsupportedOperationException();
 	}
+
+	/**
+	 * An archive that is open for reading.
+	 */
+	private static final class Archive
+	{
+		public final ArchiveIndex index;
+		/**
+		 * The archive contents. Access must be synchronized on the channel.
+		 */
+		public final SeekableByteChannel channel;
+
+		/**
+		 * Creates a new Archive.
+		 * <p/>
+		 * @param index the index of the archive
+		 * @param channel the archive contents
+		 */
+		Archive(ArchiveIndex index, SeekableByteChannel channel)
+		{
+			this.index = index;
+			this.channel = channel;
+		}
+	}
 }
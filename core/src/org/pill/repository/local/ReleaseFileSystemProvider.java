@@ -55,7 +55,20 @@ public class ReleaseFileSystemProvider extends FileSystemProvider
 	 */
 	public ReleaseFileSystemProvider()
 	{
-		this.localRepository = ClassloaderBridge.getInstance().getLocalRepository();
+		this(ClassloaderBridge.getInstance().getLocalRepository());
+	}
+
+	/**
+	 * Creates a new ReleaseFileSystemProvider.
+	 * <p/>
+	 * @param localRepository the repository to look up releases in
+	 * @throws NullPointerException if localRepository is null
+	 */
+	ReleaseFileSystemProvider(Repository localRepository)
+	{
+		Preconditions.checkNotNull(localRepository, "localRepository may not be null");
+
+		this.localRepository = localRepository;
 	}
 
 	@Override
@@ -195,6 +208,10 @@ public class ReleaseFileSystemProvider extends FileSystemProvider
 		// Ignore "attrs" because we don't support file attributes
 
 		ReleaseFileSystem filesystem = (ReleaseFileSystem) path.getFileSystem();
+		ReleasePath absolute = ((ReleasePath) path).toAbsolutePath();
+		ReleasePath archive = absolute.getArchive();
+		if (archive != null)
+			return filesystem.newEntryByteChannel(archive, absolute.getEntryName());
 		Repository repository = filesystem.getRepository();
 		return repository.newByteChannel(URI.create(filesystem.getRelease() + ":" + path.toString()));
 	}
@@ -307,7 +324,12 @@ public class ReleaseFileSystemProvider extends FileSystemProvider
 	{
 		ReleaseFileSystem filesystem = (ReleaseFileSystem) path.getFileSystem();
 		Repository repository = filesystem.getRepository();
-		if (!repository.fileExists(path.toUri()))
+		if (((ReleasePath) path).toAbsolutePath().getArchive() != null)
+		{
+			// Throws NoSuchFileException if the entry does not exist
+			new ReleaseFileAttributeView((ReleasePath) path).readAttributes();
+		}
+		else if (!repository.fileExists(path.toUri()))
 			throw new NoSuchFileException(path.toString());
 		for (AccessMode mode : modes)
 		{
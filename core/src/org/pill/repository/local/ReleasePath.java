@@ -24,6 +24,9 @@ import java.util.List;
  * <p/>
  * Where {@code <id>} is the database id of the Release and {@code <path>} is the path of file.
  * <p/>
+ * Entries inside an archive are addressed by appending {@code "!/"} and the entry name to the path
+ * of the archive, e.g. {@code /guava.jar!/com/google/common/base/Preconditions.class}.
+ * <p/>
  * @author Gili Tzabari
  */
 public final class ReleasePath implements Path
@@ -99,6 +102,51 @@ public final class ReleasePath implements Path
 		return path.equals("/");
 	}
 
+	/**
+	 * Returns the archive containing the entry denoted by this path.
+	 * <p/>
+	 * @return null if the path does not denote an archive entry
+	 */
+	public ReleasePath getArchive()
+	{
+		int index = getArchiveSeparator();
+		if (index == -1)
+			return null;
+		return new ReleasePath(filesystem, path.substring(0, index));
+	}
+
+	/**
+	 * Returns the name of the archive entry denoted by this path.
+	 * <p/>
+	 * @return the entry name, relative to the root of the archive (an empty string denotes the root
+	 * of the archive), or null if the path does not denote an archive entry
+	 */
+	public String getEntryName()
+	{
+		int index = getArchiveSeparator();
+		if (index == -1)
+			return null;
+		int start = index + 1;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/')
+			++start;
+		while (end > start && path.charAt(end - 1) == '/')
+			--end;
+		return path.substring(start, end);
+	}
+
+	/**
+	 * @return the index of the {@code '!'} separating an archive from its entry, or -1 if the path
+	 * does not denote an archive entry
+	 */
+	private int getArchiveSeparator()
+	{
+		int result = path.indexOf("!/");
+		if (result == -1 && path.endsWith("!"))
+			return path.length() - 1;
+		return result;
+	}
+
 	@Override
 	public ReleasePath getRoot()
 	{
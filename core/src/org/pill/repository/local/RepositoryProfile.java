@@ -0,0 +1,118 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Tunes the local repository's H2 database for the environment it runs in.
+ * <p/>
+ * The profile is selected using the {@value #PROPERTY} system property, e.g.
+ * {@code -Dorg.pill.repository.profile=ci}. It defaults to {@link #PRODUCTION}.
+ * <p/>
+ * {@code PAGE_SIZE} only takes effect when the database is created.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public enum RepositoryProfile
+{
+	/**
+	 * A repository in {@code ~/.pill} whose H2 trace is forwarded to SLF4J, so the logging
+	 * configuration decides what gets logged.
+	 */
+	DEVELOPMENT(4, 16 * 1024, 2 * 1024, 500),
+	/**
+	 * A throwaway repository in the working directory. It is isolated from other builds on the same
+	 * machine and discarded along with the workspace, so it trades durability for throughput by
+	 * flushing commits less often.
+	 */
+	CI(1, 64 * 1024, 8 * 1024, 2000)
+	{
+		@Override
+		public Path getDatabase()
+		{
+			return Paths.get("pill");
+		}
+	},
+	/**
+	 * A long-lived repository in {@code ~/.pill} that only traces errors. It uses a large cache and
+	 * large pages because releases are stored as BLOBs.
+	 */
+	PRODUCTION(1, 64 * 1024, 8 * 1024, 500);
+	/**
+	 * The system property that selects the profile.
+	 */
+	public static final String PROPERTY = "org.pill.repository.profile";
+	/**
+	 * The {@code LOCK_MODE} of every profile: read committed. The other modes either serialize all
+	 * readers or disable locking, neither of which is safe for a repository shared by several
+	 * builds.
+	 */
+	private static final int LOCK_MODE = 3;
+	private final int traceLevel;
+	private final int cacheSize;
+	private final int pageSize;
+	private final int writeDelay;
+
+	/**
+	 * Creates a new RepositoryProfile.
+	 * <p/>
+	 * @param traceLevel the {@code TRACE_LEVEL_FILE}, where 1 traces errors and 4 forwards the
+	 * trace to SLF4J
+	 * @param cacheSize the {@code CACHE_SIZE}, in kilobytes
+	 * @param pageSize the {@code PAGE_SIZE}, in bytes
+	 * @param writeDelay the {@code WRITE_DELAY}, the maximum number of milliseconds before a commit
+	 * is written to disk
+	 */
+	private RepositoryProfile(int traceLevel, int cacheSize, int pageSize, int writeDelay)
+	{
+		this.traceLevel = traceLevel;
+		this.cacheSize = cacheSize;
+		this.pageSize = pageSize;
+		this.writeDelay = writeDelay;
+	}
+
+	/**
+	 * @return the profile selected by the {@value #PROPERTY} system property
+	 * @throws IllegalArgumentException if the property does not name a profile
+	 */
+	public static RepositoryProfile getCurrent()
+	{
+		String name = System.getProperty(PROPERTY);
+		if (name == null)
+			return PRODUCTION;
+		try
+		{
+			return valueOf(name.toUpperCase(Locale.ENGLISH));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException(PROPERTY + " must be one of "
+				+ Arrays.toString(values()) + ": " + name, e);
+		}
+	}
+
+	/**
+	 * @return the path of the database, without the file extension
+	 */
+	public Path getDatabase()
+	{
+		return Paths.get(System.getProperty("user.home"), ".pill", "pill");
+	}
+
+	/**
+	 * @param database the path of the database, without the file extension
+	 * @return the JDBC URL of the database
+	 * @throws NullPointerException if database is null
+	 */
+	public String getUrl(Path database)
+	{
+		Preconditions.checkNotNull(database, "database may not be null");
+
+		return "jdbc:h2:" + database + ";MVCC=TRUE;TRACE_LEVEL_FILE=" + traceLevel
+			+ ";CACHE_SIZE=" + cacheSize + ";PAGE_SIZE=" + pageSize + ";LOCK_MODE=" + LOCK_MODE
+			+ ";WRITE_DELAY=" + writeDelay;
+	}
+}
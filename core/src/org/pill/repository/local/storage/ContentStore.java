@@ -0,0 +1,52 @@
+package org.pill.repository.local.storage;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Stores the contents of the releases in a local repository, keyed by the identifiers assigned by
+ * its {@link MetadataStore}.
+ * <p/>
+ * Implementations must be thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public interface ContentStore
+{
+	/**
+	 * Stores the contents of a release.
+	 * <p/>
+	 * @param id the release identifier
+	 * @param source the release file
+	 * @throws NullPointerException if source is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(long id, Path source) throws IOException;
+
+	/**
+	 * @param id the release identifier
+	 * @return a read-only channel over the contents of the release. Closing the channel releases
+	 * any resources associated with it.
+	 * @throws NoSuchFileException if the release has no contents
+	 * @throws IOException if an I/O error occurs
+	 */
+	SeekableByteChannel newByteChannel(long id) throws NoSuchFileException, IOException;
+
+	/**
+	 * @param id the release identifier
+	 * @return the size of the release, in bytes
+	 * @throws NoSuchFileException if the release has no contents
+	 * @throws IOException if an I/O error occurs
+	 */
+	long size(long id) throws NoSuchFileException, IOException;
+
+	/**
+	 * Removes the contents of a release. Does nothing if the release has no contents.
+	 * <p/>
+	 * @param id the release identifier
+	 * @throws IOException if an I/O error occurs
+	 */
+	void remove(long id) throws IOException;
+}
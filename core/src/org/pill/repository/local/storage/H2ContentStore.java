@@ -0,0 +1,284 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.inject.servlet.RequestScoped;
+import com.mysema.query.QueryException;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import javax.sql.rowset.serial.SerialBlob;
+import org.pill.repository.local.BlobByteChannel;
+import org.pill.repository.local.ChannelStatistics;
+import org.pill.repository.local.ReadAheadByteChannel;
+import org.pill.repository.local.RequestInjector;
+import org.pill.repository.local.queries.QReleases;
+import org.pill.sql.ReadOnly;
+import org.pill.sql.Session;
+
+/**
+ * Stores release contents as BLOBs in the {@code releases} table of an H2 database.
+ * <p/>
+ * The table's rows are owned by {@link H2MetadataStore}, so removing a release's metadata also
+ * removes its contents. {@link H2MetadataStore} also implements {@link ReleaseWriter}, which
+ * inserts a release and its contents in one transaction. {@link #write(long, Path)} only fills in
+ * the contents of releases that were inserted without them.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe. Each operation runs in its own request scope.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@Singleton
+public final class H2ContentStore implements ContentStore
+{
+	private final RequestInjector requestInjector;
+
+	/**
+	 * Creates a new H2ContentStore.
+	 * <p/>
+	 * @param requestInjector executes code in request scope
+	 * @throws NullPointerException if requestInjector is null
+	 */
+	@Inject
+	public H2ContentStore(RequestInjector requestInjector)
+	{
+		Preconditions.checkNotNull(requestInjector, "requestInjector may not be null");
+
+		this.requestInjector = requestInjector;
+	}
+
+	@Override
+	public void write(final long id, final Path source) throws IOException
+	{
+		Preconditions.checkNotNull(source, "source may not be null");
+		try
+		{
+			requestInjector.scopeRequest(Write.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(Long.class).annotatedWith(Names.named("id")).toInstance(id);
+					bind(Path.class).annotatedWith(Names.named("source")).toInstance(source);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements write().
+	 */
+	@RequestScoped
+	private static class Write implements Callable<Void>
+	{
+		private final Long id;
+		private final Path source;
+		private final Session session;
+
+		@Inject
+		public Write(@Named("id") Long id, @Named("source") Path source, Session session)
+		{
+			this.id = id;
+			this.source = source;
+			this.session = session;
+		}
+
+		@Override
+		public Void call() throws IOException
+		{
+			try
+			{
+				SerialBlob content;
+				try
+				{
+					content = new SerialBlob(Files.readAllBytes(source));
+				}
+				catch (SQLException e)
+				{
+					throw new QueryException(e);
+				}
+				QReleases releases = QReleases.releases;
+				long rows = session.update(releases).set(releases.content, content).
+					where(releases.id.eq(id)).execute();
+				if (rows == 0)
+					throw new IOException("Release #" + id + " not found");
+				session.commit();
+				return null;
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(final long id) throws NoSuchFileException, IOException
+	{
+		try
+		{
+			return requestInjector.scopeRequest(NewByteChannel.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(Long.class).annotatedWith(Names.named("id")).toInstance(id);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (QueryException e)
+		{
+			throw new IOException(e);
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements newByteChannel().
+	 */
+	@RequestScoped
+	private static class NewByteChannel implements Callable<SeekableByteChannel>
+	{
+		private final Long id;
+		private final Session session;
+
+		@Inject
+		public NewByteChannel(@Named("id") Long id, @ReadOnly Session session)
+		{
+			this.id = id;
+			this.session = session;
+		}
+
+		@Override
+		public SeekableByteChannel call() throws NoSuchFileException, QueryException
+		{
+			try
+			{
+				QReleases releases = QReleases.releases;
+				Blob content = session.query(releases).where(releases.id.eq(id)).
+					uniqueResult(releases.content);
+				if (content == null)
+				{
+					session.close();
+					throw new NoSuchFileException("release #" + id);
+				}
+				// NOTE: Session closed by BlobByteChannel.close()
+				ChannelStatistics statistics = new ChannelStatistics();
+				return new ReadAheadByteChannel(new BlobByteChannel(
+					Collections.singleton(StandardOpenOption.READ), content, session, statistics),
+					statistics);
+			}
+			catch (RuntimeException e)
+			{
+				session.close();
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public long size(final long id) throws NoSuchFileException, IOException
+	{
+		try
+		{
+			return requestInjector.scopeRequest(Size.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(Long.class).annotatedWith(Names.named("id")).toInstance(id);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements size().
+	 */
+	@RequestScoped
+	private static class Size implements Callable<Long>
+	{
+		private final Long id;
+		private final Session session;
+
+		@Inject
+		public Size(@Named("id") Long id, @ReadOnly Session session)
+		{
+			this.id = id;
+			this.session = session;
+		}
+
+		@Override
+		public Long call() throws NoSuchFileException, IOException
+		{
+			try
+			{
+				QReleases releases = QReleases.releases;
+				Blob content = session.query(releases).where(releases.id.eq(id)).
+					uniqueResult(releases.content);
+				if (content == null)
+					throw new NoSuchFileException("release #" + id);
+				try
+				{
+					return content.length();
+				}
+				finally
+				{
+					content.free();
+				}
+			}
+			catch (SQLException | QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public void remove(long id)
+	{
+		// The contents are removed along with the release's row by H2MetadataStore.removeRelease()
+	}
+}
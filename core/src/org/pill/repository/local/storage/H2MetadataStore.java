@@ -0,0 +1,1128 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.util.Providers;
+import com.googlecode.flyway.core.Flyway;
+import com.mysema.query.QueryException;
+import com.mysema.query.Tuple;
+import com.mysema.query.sql.dml.SQLInsertClause;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import javax.sql.rowset.serial.SerialBlob;
+import org.pill.Dependency;
+import org.pill.DependencyType;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+import org.pill.Module;
+import org.pill.repository.local.RequestInjector;
+import org.pill.repository.local.queries.QDependencyTypes;
+import org.pill.repository.local.queries.QModules;
+import org.pill.repository.local.queries.QReleaseClasses;
+import org.pill.repository.local.queries.QReleaseDependencies;
+import org.pill.repository.local.queries.QReleasePackages;
+import org.pill.repository.local.queries.QReleases;
+import org.pill.repository.local.queries.QResolutionMembers;
+import org.pill.repository.local.queries.QResolutions;
+import org.pill.sql.ConstraintViolationException;
+import org.pill.sql.ReadOnly;
+import org.pill.sql.SQLExceptions;
+import org.pill.sql.Session;
+
+/**
+ * Stores metadata in an H2 database.
+ * <p/>
+ * Release identifiers are the primary keys of the {@code releases} table. The contents of a
+ * release live in the same row, so {@link #insertRelease(ReleaseRecord, Map, Path)} stores a
+ * release and its contents in a single transaction.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe. Each operation runs in its own request scope.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@Singleton
+public final class H2MetadataStore implements MetadataStore, ReleaseWriter
+{
+	private final RequestInjector requestInjector;
+
+	/**
+	 * Creates a new H2MetadataStore, migrating the database schema if necessary.
+	 * <p/>
+	 * @param dataSource the database
+	 * @param requestInjector executes code in request scope
+	 * @throws NullPointerException if dataSource or requestInjector are null
+	 */
+	@Inject
+	public H2MetadataStore(DataSource dataSource, RequestInjector requestInjector)
+	{
+		Preconditions.checkNotNull(dataSource, "dataSource may not be null");
+		Preconditions.checkNotNull(requestInjector, "requestInjector may not be null");
+
+		this.requestInjector = requestInjector;
+		Flyway flyway = new Flyway();
+		flyway.setDataSource(dataSource);
+		flyway.setLocations("org/pill/database/migration");
+		flyway.migrate();
+	}
+
+	@Override
+	public void insertModule(final String name) throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+		try
+		{
+			requestInjector.scopeRequest(InsertModule.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("name")).toInstance(name);
+				}
+			}).call();
+		}
+		catch (IOException | EntityExistsException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements insertModule().
+	 */
+	@RequestScoped
+	private static class InsertModule implements Callable<Void>
+	{
+		private final String name;
+		private final Session session;
+
+		@Inject
+		public InsertModule(@Named("name") String name, Session session)
+		{
+			this.name = name;
+			this.session = session;
+		}
+
+		@Override
+		public Void call() throws IOException, EntityExistsException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				Long id = session.insert(modules).set(modules.name, name).
+					executeWithKey(modules.id);
+				if (id == null)
+					throw new IOException("Could not insert module");
+				session.commit();
+				return null;
+			}
+			catch (QueryException e)
+			{
+				ConstraintViolationException constraintViolation =
+					SQLExceptions.getConstraintViolation(e);
+				if (constraintViolation != null)
+					throw new EntityExistsException(name, e);
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public boolean containsModule(final String name) throws IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(ContainsModule.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("name")).toInstance(name);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements containsModule().
+	 */
+	@RequestScoped
+	private static class ContainsModule implements Callable<Boolean>
+	{
+		private final String name;
+		private final Session session;
+
+		@Inject
+		public ContainsModule(@Named("name") String name, @ReadOnly Session session)
+		{
+			this.name = name;
+			this.session = session;
+		}
+
+		@Override
+		public Boolean call() throws IOException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				return session.query(modules).where(modules.name.eq(name)).exists();
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public void removeModule(final String name) throws EntityNotFoundException, IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+		try
+		{
+			requestInjector.scopeRequest(RemoveModule.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("name")).toInstance(name);
+				}
+			}).call();
+		}
+		catch (IllegalStateException | EntityNotFoundException | IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements removeModule().
+	 */
+	@RequestScoped
+	private static class RemoveModule implements Callable<Void>
+	{
+		private final String name;
+		private final Session session;
+
+		@Inject
+		public RemoveModule(@Named("name") String name, Session session)
+		{
+			this.name = name;
+			this.session = session;
+		}
+
+		@Override
+		public Void call() throws IllegalStateException, EntityNotFoundException, IOException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				Long moduleId = session.query(modules).where(modules.name.eq(name)).
+					uniqueResult(modules.id);
+				if (moduleId == null)
+					throw new EntityNotFoundException(name);
+
+				QReleases releases = QReleases.releases;
+				long releaseCount = session.query(releases).where(releases.moduleId.eq(moduleId)).
+					count();
+				if (releaseCount > 0)
+				{
+					throw new IllegalStateException("Module contains " + releaseCount
+						+ " versions which must be removed first");
+				}
+
+				long rows = session.delete(modules).where(modules.id.eq(moduleId)).execute();
+				if (rows == 0)
+					throw new EntityNotFoundException(name);
+				if (rows != 1)
+				{
+					throw new AssertionError("Expected to delete 1 row, found " + rows
+						+ " rows instead");
+				}
+				session.commit();
+				return null;
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * The release is inserted without contents. {@link H2ContentStore#write(long, Path)} may fill
+	 * them in later.
+	 */
+	@Override
+	public long insertRelease(ReleaseRecord release, Map<String, List<String>> classes)
+		throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(release, "release may not be null");
+		Preconditions.checkNotNull(classes, "classes may not be null");
+		return insertRelease(release, classes, Providers.<Path>of(null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * The metadata and contents are inserted in a single transaction.
+	 */
+	@Override
+	public long insertRelease(ReleaseRecord release, Map<String, List<String>> classes,
+		Path source) throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(release, "release may not be null");
+		Preconditions.checkNotNull(classes, "classes may not be null");
+		Preconditions.checkNotNull(source, "source may not be null");
+		return insertRelease(release, classes, Providers.of(source));
+	}
+
+	/**
+	 * Adds a release.
+	 * <p/>
+	 * @param release the release
+	 * @param classes the simple names of the classes contained by the release, by package name
+	 * @param source provides the release file, or null if the release has no contents
+	 * @return the release identifier
+	 * @throws IllegalArgumentException if the release's module does not exist
+	 * @throws EntityExistsException if the module already contains the release's version
+	 * @throws IOException if an I/O error occurs
+	 */
+	private long insertRelease(final ReleaseRecord release,
+		final Map<String, List<String>> classes, final Provider<Path> source)
+		throws EntityExistsException, IOException
+	{
+		try
+		{
+			return requestInjector.scopeRequest(InsertRelease.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(ReleaseRecord.class).annotatedWith(Names.named("release")).
+						toInstance(release);
+					bind(new TypeLiteral<Map<String, List<String>>>()
+					{
+					}).annotatedWith(Names.named("classes")).toInstance(classes);
+					bind(Path.class).annotatedWith(Names.named("source")).toProvider(source);
+				}
+			}).call();
+		}
+		catch (IllegalArgumentException | IOException | EntityExistsException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements insertRelease().
+	 */
+	@RequestScoped
+	private static class InsertRelease implements Callable<Long>
+	{
+		private final ReleaseRecord release;
+		private final Map<String, List<String>> classes;
+		private final Path source;
+		private final Session session;
+
+		@Inject
+		public InsertRelease(@Named("release") ReleaseRecord release,
+			@Named("classes") Map<String, List<String>> classes,
+			@Named("source") @Nullable Path source, Session session)
+		{
+			this.release = release;
+			this.classes = classes;
+			this.source = source;
+			this.session = session;
+		}
+
+		@Override
+		public Long call() throws IllegalArgumentException, IOException, EntityExistsException
+		{
+			String module = release.getModule().getName();
+			try
+			{
+				QModules modules = QModules.modules;
+				Long moduleId = session.query(modules).
+					where(modules.name.eq(module)).uniqueResult(modules.id);
+				if (moduleId == null)
+					throw new IllegalArgumentException("Module " + module + " not found");
+
+				QReleases releases = QReleases.releases;
+				SQLInsertClause insert = session.insert(releases).
+					set(releases.moduleId, moduleId).
+					set(releases.version, release.getVersion()).
+					set(releases.path, release.getFilename()).
+					set(releases.sha1, release.getSha1()).
+					set(releases.lastModified, new Timestamp(release.getLastModified().toMillis()));
+				if (source != null)
+				{
+					try
+					{
+						insert.set(releases.content, new SerialBlob(Files.readAllBytes(source)));
+					}
+					catch (SQLException e)
+					{
+						throw new QueryException(e);
+					}
+				}
+				Long releaseId = insert.executeWithKey(releases.id);
+				if (releaseId == null)
+					throw new IOException("Could not insert the release");
+
+				Map<String, Byte> dependencyTypes = new HashMap<>();
+				QDependencyTypes dt = QDependencyTypes.dependencyTypes;
+				for (Tuple row : session.query(dt).list(dt.id, dt.name))
+				{
+					Byte id = row.get(dt.id);
+					String name = row.get(dt.name);
+					dependencyTypes.put(name, id);
+				}
+
+				QReleaseDependencies rd = QReleaseDependencies.releaseDependencies;
+				for (Dependency dependency : release.getDependencies())
+				{
+					long rows = session.insert(rd).set(rd.releaseId, releaseId).
+						set(rd.module, dependency.getModule().getName()).
+						set(rd.version, dependency.getVersion()).
+						set(rd.type, dependencyTypes.get(dependency.getType().name())).
+						set(rd.uri, dependency.getUri().toString()).
+						execute();
+					if (rows != 1)
+						throw new IOException("Could not insert dependency: " + dependency);
+				}
+				indexClasses(releaseId);
+				session.commit();
+				return releaseId;
+			}
+			catch (QueryException e)
+			{
+				ConstraintViolationException constraintViolation =
+					SQLExceptions.getConstraintViolation(e);
+				if (constraintViolation != null)
+					throw new EntityExistsException(module + " " + release.getVersion(), e);
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+
+		/**
+		 * Indexes the classes contained by the release.
+		 * <p/>
+		 * @param releaseId the release id
+		 * @throws QueryException if a database error occurs
+		 */
+		private void indexClasses(long releaseId) throws QueryException
+		{
+			QReleasePackages packages = QReleasePackages.releasePackages;
+			QReleaseClasses releaseClasses = QReleaseClasses.releaseClasses;
+			for (Map.Entry<String, List<String>> entry: classes.entrySet())
+			{
+				Long packageId = session.insert(packages).
+					set(packages.releaseId, releaseId).
+					set(packages.name, entry.getKey()).
+					executeWithKey(packages.id);
+				SQLInsertClause insert = session.insert(releaseClasses);
+				for (String className: entry.getValue())
+				{
+					insert.set(releaseClasses.packageId, packageId).
+						set(releaseClasses.name, className).addBatch();
+				}
+				insert.execute();
+			}
+		}
+	}
+
+	@Override
+	@Nullable
+	public List<Long> getReleases(final String module) throws IOException
+	{
+		Preconditions.checkNotNull(module, "module may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(GetReleases.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("module")).toInstance(module);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getReleases(String).
+	 */
+	@RequestScoped
+	private static class GetReleases implements Callable<List<Long>>
+	{
+		private final String module;
+		private final Session session;
+
+		@Inject
+		public GetReleases(@Named("module") String module, @ReadOnly Session session)
+		{
+			this.module = module;
+			this.session = session;
+		}
+
+		@Override
+		public List<Long> call() throws IOException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				Long moduleId = session.query(modules).where(modules.name.eq(module)).
+					uniqueResult(modules.id);
+				if (moduleId == null)
+					return null;
+
+				QReleases releases = QReleases.releases;
+				return session.query(releases).where(releases.moduleId.eq(moduleId)).
+					orderBy(releases.id.asc()).list(releases.id);
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	@Nullable
+	public Long getReleaseId(final String module, final String version) throws IOException
+	{
+		Preconditions.checkNotNull(module, "module may not be null");
+		Preconditions.checkNotNull(version, "version may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(GetReleaseId.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("module")).toInstance(module);
+					bind(String.class).annotatedWith(Names.named("version")).toInstance(version);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getReleaseId().
+	 */
+	@RequestScoped
+	private static class GetReleaseId implements Callable<Long>
+	{
+		private final String module;
+		private final String version;
+		private final Session session;
+
+		@Inject
+		public GetReleaseId(@Named("module") String module, @Named("version") String version,
+			@ReadOnly Session session)
+		{
+			this.module = module;
+			this.version = version;
+			this.session = session;
+		}
+
+		@Override
+		public Long call() throws IOException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				QReleases releases = QReleases.releases;
+				return session.query(modules, releases).
+					where(modules.name.eq(module), releases.moduleId.eq(modules.id),
+					releases.version.eq(version)).
+					uniqueResult(releases.id);
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	@Nullable
+	public ReleaseRecord getRelease(long id) throws IOException
+	{
+		Map<Long, ReleaseRecord> releases = getReleases(Collections.singleton(id));
+		return releases.get(id);
+	}
+
+	@Override
+	public Map<Long, ReleaseRecord> getReleases(final Collection<Long> ids) throws IOException
+	{
+		Preconditions.checkNotNull(ids, "ids may not be null");
+		if (ids.isEmpty())
+			return Collections.emptyMap();
+		try
+		{
+			return requestInjector.scopeRequest(GetReleasesById.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(new TypeLiteral<Collection<Long>>()
+					{
+					}).annotatedWith(Names.named("ids")).toInstance(ids);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getRelease() and getReleases(Collection).
+	 * <p/>
+	 * The releases and their dependencies are retrieved using a fixed number of queries regardless
+	 * of the number of releases.
+	 */
+	@RequestScoped
+	private static class GetReleasesById implements Callable<Map<Long, ReleaseRecord>>
+	{
+		private final Collection<Long> ids;
+		private final Session session;
+
+		@Inject
+		public GetReleasesById(@Named("ids") Collection<Long> ids, @ReadOnly Session session)
+		{
+			this.ids = ids;
+			this.session = session;
+		}
+
+		@Override
+		public Map<Long, ReleaseRecord> call() throws IOException
+		{
+			try
+			{
+				QModules modules = QModules.modules;
+				QReleases releases = QReleases.releases;
+				QReleaseDependencies dependencies = QReleaseDependencies.releaseDependencies;
+				QDependencyTypes dt = QDependencyTypes.dependencyTypes;
+
+				Map<Long, Set<Dependency>> idToDependencies = new HashMap<>();
+				for (Tuple row: session.query(dependencies, dt).
+					where(dependencies.releaseId.in(ids), dependencies.type.eq(dt.id)).
+					list(dependencies.releaseId, dependencies.module, dependencies.version, dt.name,
+					dependencies.uri))
+				{
+					Long id = row.get(dependencies.releaseId);
+					Set<Dependency> releaseDependencies = idToDependencies.get(id);
+					if (releaseDependencies == null)
+					{
+						releaseDependencies = new HashSet<>();
+						idToDependencies.put(id, releaseDependencies);
+					}
+					Module module = new Module(row.get(dependencies.module));
+					String version = row.get(dependencies.version);
+					DependencyType type = DependencyType.valueOf(row.get(dt.name));
+					URI dependencyUri = URI.create(row.get(dependencies.uri));
+					releaseDependencies.add(new Dependency(dependencyUri, module, version, type));
+				}
+
+				Map<Long, ReleaseRecord> result = new HashMap<>();
+				for (Tuple row: session.query(modules, releases).
+					where(releases.id.in(ids), modules.id.eq(releases.moduleId)).
+					list(releases.id, modules.name, releases.version, releases.path,
+					releases.lastModified, releases.sha1))
+				{
+					Long id = row.get(releases.id);
+					Set<Dependency> releaseDependencies = idToDependencies.get(id);
+					if (releaseDependencies == null)
+						releaseDependencies = Collections.emptySet();
+					Module module = new Module(row.get(modules.name));
+					String version = row.get(releases.version);
+					String filename = row.get(releases.path);
+					FileTime lastModified = FileTime.fromMillis(row.get(releases.lastModified).
+						getTime());
+					String sha1 = row.get(releases.sha1);
+					result.put(id, new ReleaseRecord(module, version, filename, lastModified, sha1,
+						releaseDependencies));
+				}
+				return result;
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public void removeRelease(final long id) throws EntityNotFoundException, IOException
+	{
+		try
+		{
+			requestInjector.scopeRequest(RemoveRelease.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(Long.class).annotatedWith(Names.named("id")).toInstance(id);
+				}
+			}).call();
+		}
+		catch (IOException | EntityNotFoundException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements removeRelease().
+	 */
+	@RequestScoped
+	private static class RemoveRelease implements Callable<Void>
+	{
+		private final Long id;
+		private final Session session;
+
+		@Inject
+		public RemoveRelease(@Named("id") Long id, Session session)
+		{
+			this.id = id;
+			this.session = session;
+		}
+
+		@Override
+		public Void call() throws IOException, EntityNotFoundException
+		{
+			try
+			{
+				// Discard any cached resolutions that contain the release
+				QResolutions resolutions = QResolutions.resolutions;
+				QResolutionMembers members = QResolutionMembers.resolutionMembers;
+				session.delete(resolutions).where(resolutions.id.in(session.subQuery(members).
+					where(members.releaseId.eq(id)).list(members.resolutionId))).execute();
+
+				QReleaseDependencies dependencies = QReleaseDependencies.releaseDependencies;
+				session.delete(dependencies).where(dependencies.releaseId.eq(id)).
+					execute();
+
+				QReleases releases = QReleases.releases;
+				long rows = session.delete(releases).where(releases.id.eq(id)).
+					execute();
+				if (rows == 0)
+					throw new EntityNotFoundException("release #" + id);
+				if (rows != 1)
+				{
+					throw new AssertionError("Expected to delete 1 row, found " + rows
+						+ " rows instead");
+				}
+				session.commit();
+				return null;
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	@Nullable
+	public List<Long> getResolution(final String fingerprint) throws IOException
+	{
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(GetResolution.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("fingerprint")).
+						toInstance(fingerprint);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getResolution().
+	 */
+	@RequestScoped
+	private static class GetResolution implements Callable<List<Long>>
+	{
+		private final String fingerprint;
+		private final Session session;
+
+		@Inject
+		public GetResolution(@Named("fingerprint") String fingerprint, @ReadOnly Session session)
+		{
+			this.fingerprint = fingerprint;
+			this.session = session;
+		}
+
+		@Override
+		public List<Long> call() throws IOException
+		{
+			try
+			{
+				QResolutions resolutions = QResolutions.resolutions;
+				QResolutionMembers members = QResolutionMembers.resolutionMembers;
+
+				// Resolutions are never empty, so one query suffices to tell whether one exists
+				List<Long> result = session.query(resolutions, members).
+					where(resolutions.fingerprint.eq(fingerprint),
+					members.resolutionId.eq(resolutions.id)).
+					orderBy(members.position.asc()).list(members.releaseId);
+				if (result.isEmpty())
+					return null;
+				return result;
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public void putResolution(final String fingerprint, final List<Long> releases)
+		throws IOException
+	{
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+		Preconditions.checkNotNull(releases, "releases may not be null");
+		Preconditions.checkArgument(!releases.isEmpty(), "releases may not be empty");
+		try
+		{
+			requestInjector.scopeRequest(PutResolution.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("fingerprint")).
+						toInstance(fingerprint);
+					bind(new TypeLiteral<List<Long>>()
+					{
+					}).annotatedWith(Names.named("releases")).toInstance(releases);
+				}
+			}).call();
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements putResolution().
+	 */
+	@RequestScoped
+	private static class PutResolution implements Callable<Void>
+	{
+		private final String fingerprint;
+		private final List<Long> releases;
+		private final Session session;
+
+		@Inject
+		public PutResolution(@Named("fingerprint") String fingerprint,
+			@Named("releases") List<Long> releases, Session session)
+		{
+			this.fingerprint = fingerprint;
+			this.releases = releases;
+			this.session = session;
+		}
+
+		@Override
+		public Void call() throws IOException
+		{
+			try
+			{
+				QResolutions resolutions = QResolutions.resolutions;
+				QResolutionMembers members = QResolutionMembers.resolutionMembers;
+				session.delete(resolutions).where(resolutions.fingerprint.eq(fingerprint)).
+					execute();
+				Long resolutionId = session.insert(resolutions).
+					set(resolutions.fingerprint, fingerprint).
+					executeWithKey(resolutions.id);
+				if (resolutionId == null)
+					throw new IOException("Could not insert the resolution");
+
+				SQLInsertClause insert = session.insert(members);
+				for (int i = 0; i < releases.size(); ++i)
+				{
+					insert.set(members.resolutionId, resolutionId).
+						set(members.position, i).
+						set(members.releaseId, releases.get(i)).
+						addBatch();
+				}
+				insert.execute();
+				session.commit();
+				return null;
+			}
+			catch (QueryException e)
+			{
+				ConstraintViolationException constraintViolation =
+					SQLExceptions.getConstraintViolation(e);
+				if (constraintViolation != null)
+					throw new IllegalArgumentException("releases references a missing release", e);
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public List<Long> getReleasesByClass(final String packageName, final String className)
+		throws IOException
+	{
+		Preconditions.checkNotNull(packageName, "packageName may not be null");
+		Preconditions.checkNotNull(className, "className may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(GetReleasesByClass.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("packageName")).
+						toInstance(packageName);
+					bind(String.class).annotatedWith(Names.named("className")).
+						toInstance(className);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getReleasesByClass().
+	 */
+	@RequestScoped
+	private static class GetReleasesByClass implements Callable<List<Long>>
+	{
+		private final String packageName;
+		private final String className;
+		private final Session session;
+
+		@Inject
+		public GetReleasesByClass(@Named("packageName") String packageName,
+			@Named("className") String className, @ReadOnly Session session)
+		{
+			this.packageName = packageName;
+			this.className = className;
+			this.session = session;
+		}
+
+		@Override
+		public List<Long> call() throws IOException
+		{
+			try
+			{
+				QReleasePackages packages = QReleasePackages.releasePackages;
+				QReleaseClasses classes = QReleaseClasses.releaseClasses;
+				return session.query(packages, classes).
+					where(packages.name.eq(packageName), classes.packageId.eq(packages.id),
+					classes.name.eq(className)).
+					orderBy(packages.releaseId.asc()).list(packages.releaseId);
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+
+	@Override
+	public List<Long> getReleasesByPackage(final String packageName) throws IOException
+	{
+		Preconditions.checkNotNull(packageName, "packageName may not be null");
+		try
+		{
+			return requestInjector.scopeRequest(GetReleasesByPackage.class, new AbstractModule()
+			{
+				@Override
+				protected void configure()
+				{
+					bind(String.class).annotatedWith(Names.named("packageName")).
+						toInstance(packageName);
+				}
+			}).call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Implements getReleasesByPackage().
+	 */
+	@RequestScoped
+	private static class GetReleasesByPackage implements Callable<List<Long>>
+	{
+		private final String packageName;
+		private final Session session;
+
+		@Inject
+		public GetReleasesByPackage(@Named("packageName") String packageName,
+			@ReadOnly Session session)
+		{
+			this.packageName = packageName;
+			this.session = session;
+		}
+
+		@Override
+		public List<Long> call() throws IOException
+		{
+			try
+			{
+				QReleasePackages packages = QReleasePackages.releasePackages;
+				return session.query(packages).where(packages.name.eq(packageName)).
+					orderBy(packages.releaseId.asc()).list(packages.releaseId);
+			}
+			catch (QueryException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				session.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores release contents in an append-only file, located by a memory-mapped index.
+ * <p/>
+ * {@code content.log} holds the contents of each release back to back. {@code content.idx} holds
+ * a 16-byte slot per release identifier: the position of the contents within the log (plus one,
+ * so that zero denotes a missing release) followed by their size. A release's slot is only
+ * written once its contents have been flushed to disk, so a crash can leave unreferenced bytes in
+ * the log but never a slot that points at incomplete contents.
+ * <p/>
+ * Removing a release clears its slot. The space it occupied in the log is not reclaimed.
+ * <p/>
+ * The store is locked for the lifetime of the object, so it may only be opened once at a time,
+ * even across processes.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe. Releases are written and read concurrently.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class LogContentStore implements ContentStore, Closeable
+{
+	/**
+	 * The size of an index slot, in bytes.
+	 */
+	private static final int SLOT_SIZE = 16;
+	/**
+	 * The number of slots the index grows by.
+	 */
+	private static final int SLOTS_PER_CHUNK = 64 * 1024;
+	private final FileChannel log;
+	private final FileChannel indexChannel;
+	private final FileLock lock;
+	/**
+	 * The position at which the next release will be written. Guarded by "this".
+	 */
+	private long end;
+	/**
+	 * The memory-mapped index. Guarded by "this".
+	 */
+	private MappedByteBuffer index;
+
+	/**
+	 * Opens a store, creating it if necessary.
+	 * <p/>
+	 * @param directory the directory containing the store
+	 * @throws NullPointerException if directory is null
+	 * @throws IOException if an I/O error occurs, or if the store is already open
+	 */
+	public LogContentStore(Path directory) throws IOException
+	{
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		Files.createDirectories(directory);
+		this.log = FileChannel.open(directory.resolve("content.log"), StandardOpenOption.CREATE,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			this.lock = tryLock(log);
+			if (lock == null)
+				throw new IOException(directory + " is already in use");
+			this.indexChannel = FileChannel.open(directory.resolve("content.idx"),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.close();
+			throw e;
+		}
+		this.end = log.size();
+		long slots = Math.max(indexChannel.size() / SLOT_SIZE, SLOTS_PER_CHUNK);
+		this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, slots * SLOT_SIZE);
+	}
+
+	/**
+	 * Attempts to lock a file exclusively.
+	 * <p/>
+	 * @param channel the file
+	 * @return the lock, or null if the file is locked by another process or by another object in
+	 * this JVM
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException
+	{
+		try
+		{
+			return channel.tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			return null;
+		}
+	}
+
+	@Override
+	public void write(long id, Path source) throws IOException
+	{
+		Preconditions.checkArgument(id > 0, "id must be positive: %s", id);
+		Preconditions.checkNotNull(source, "source may not be null");
+
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ))
+		{
+			long size = in.size();
+			long start;
+			synchronized (this)
+			{
+				start = end;
+				end += size;
+			}
+
+			// Other releases may be written to the log concurrently, so use absolute positions
+			ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+			long position = start;
+			while (position < start + size)
+			{
+				buffer.clear();
+				if (buffer.remaining() > start + size - position)
+					buffer.limit((int) (start + size - position));
+				if (in.read(buffer) == -1)
+					throw new IOException(source + " was truncated while it was being stored");
+				buffer.flip();
+				while (buffer.hasRemaining())
+					position += log.write(buffer, position);
+			}
+			log.force(false);
+			synchronized (this)
+			{
+				int slot = getSlot(id, true);
+				index.putLong(slot, start + 1);
+				index.putLong(slot + 8, size);
+				index.force();
+			}
+		}
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(long id) throws NoSuchFileException, IOException
+	{
+		long start;
+		long size;
+		synchronized (this)
+		{
+			int slot = getSlot(id, false);
+			if (slot == -1 || index.getLong(slot) == 0)
+				throw new NoSuchFileException("release #" + id);
+			start = index.getLong(slot) - 1;
+			size = index.getLong(slot + 8);
+		}
+		return new SliceByteChannel(log, start, size);
+	}
+
+	@Override
+	public synchronized long size(long id) throws NoSuchFileException, IOException
+	{
+		int slot = getSlot(id, false);
+		if (slot == -1 || index.getLong(slot) == 0)
+			throw new NoSuchFileException("release #" + id);
+		return index.getLong(slot + 8);
+	}
+
+	@Override
+	public synchronized void remove(long id) throws IOException
+	{
+		int slot = getSlot(id, false);
+		if (slot == -1)
+			return;
+		index.putLong(slot, 0);
+		index.putLong(slot + 8, 0);
+		index.force();
+	}
+
+	/**
+	 * Returns the position of a release's slot within the index. The caller must hold the lock on
+	 * "this".
+	 * <p/>
+	 * @param id the release identifier
+	 * @param grow true if the index should grow to include the slot
+	 * @return the position of the slot, or -1 if the slot lies beyond the end of the index and
+	 * {@code grow} is false
+	 * @throws IOException if the index could not be grown
+	 */
+	private int getSlot(long id, boolean grow) throws IOException
+	{
+		Preconditions.checkArgument(id > 0, "id must be positive: %s", id);
+		if (id >= Integer.MAX_VALUE / SLOT_SIZE)
+			throw new IOException("Release #" + id + " exceeds the capacity of the index");
+		int result = (int) id * SLOT_SIZE;
+		if (result + SLOT_SIZE <= index.capacity())
+			return result;
+		if (!grow)
+			return -1;
+		long slots = (id / SLOTS_PER_CHUNK + 1) * SLOTS_PER_CHUNK;
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+			Math.min(slots * SLOT_SIZE, Integer.MAX_VALUE));
+		return result;
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			index.force();
+			indexChannel.close();
+		}
+		finally
+		{
+			try
+			{
+				lock.release();
+			}
+			finally
+			{
+				log.close();
+			}
+		}
+	}
+}
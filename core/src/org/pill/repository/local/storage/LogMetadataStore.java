@@ -0,0 +1,635 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nullable;
+import org.pill.Dependency;
+import org.pill.DependencyType;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+import org.pill.Module;
+
+/**
+ * Stores metadata in an append-only log of operations, without the need for a database.
+ * <p/>
+ * Every change is appended to {@code metadata.log} and flushed to disk before it becomes visible.
+ * Opening the store replays the log into memory, so lookups never touch the disk. Removals are
+ * recorded as operations of their own, so the log only ever grows.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe. Lookups run concurrently; changes are serialized.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class LogMetadataStore implements MetadataStore, Closeable
+{
+	private static final byte INSERT_MODULE = 1;
+	private static final byte REMOVE_MODULE = 2;
+	private static final byte INSERT_RELEASE = 3;
+	private static final byte REMOVE_RELEASE = 4;
+	private static final byte PUT_RESOLUTION = 5;
+	private final RecordLog log;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * The identifiers of each module's releases, in the order they were inserted.
+	 */
+	private final Map<String, List<Long>> modules = new HashMap<>();
+	private final Map<Long, ReleaseRecord> releases = new HashMap<>();
+	/**
+	 * The simple names of the classes contained by each release, by package name.
+	 */
+	private final Map<Long, Map<String, List<String>>> releaseClasses = new HashMap<>();
+	/**
+	 * The releases that contain each package.
+	 */
+	private final Map<String, NavigableSet<Long>> packageToReleases = new HashMap<>();
+	/**
+	 * The releases that contain each class, by fully-qualified name.
+	 */
+	private final Map<String, NavigableSet<Long>> classToReleases = new HashMap<>();
+	private final Map<String, List<Long>> resolutions = new HashMap<>();
+	/**
+	 * The identifier of the next release. Identifiers are never reused, even after the release
+	 * holding the highest identifier is removed.
+	 */
+	private long nextId = 1;
+
+	/**
+	 * Opens a store, creating it if necessary.
+	 * <p/>
+	 * @param directory the directory containing the store
+	 * @throws NullPointerException if directory is null
+	 * @throws IOException if an I/O error occurs, if the log is corrupt, or if the store is already
+	 * open
+	 */
+	public LogMetadataStore(Path directory) throws IOException
+	{
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		Files.createDirectories(directory);
+		this.log = new RecordLog(directory.resolve("metadata.log"));
+		try
+		{
+			for (byte[] record: log.readAll())
+				replay(record);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Applies a record to the in-memory state.
+	 * <p/>
+	 * @param record the record
+	 * @throws IOException if the record is malformed
+	 */
+	private void replay(byte[] record) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		byte operation = in.readByte();
+		switch (operation)
+		{
+			case INSERT_MODULE:
+				modules.put(in.readUTF(), new ArrayList<Long>());
+				break;
+			case REMOVE_MODULE:
+				modules.remove(in.readUTF());
+				break;
+			case INSERT_RELEASE:
+				readRelease(in);
+				break;
+			case REMOVE_RELEASE:
+				applyRemoveRelease(in.readLong());
+				break;
+			case PUT_RESOLUTION:
+				readResolution(in);
+				break;
+			default:
+				throw new IOException("Unknown operation: " + operation);
+		}
+	}
+
+	/**
+	 * Applies a PUT_RESOLUTION record to the in-memory state.
+	 * <p/>
+	 * @param in the record, positioned after the operation
+	 * @throws IOException if the record is malformed
+	 */
+	private void readResolution(DataInputStream in) throws IOException
+	{
+		String fingerprint = in.readUTF();
+		int count = in.readInt();
+		List<Long> members = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i)
+			members.add(in.readLong());
+		resolutions.put(fingerprint, members);
+	}
+
+	@Override
+	public void insertModule(String name) throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			if (modules.containsKey(name))
+				throw new EntityExistsException(name);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(INSERT_MODULE);
+			out.writeUTF(name);
+			log.append(bytes.toByteArray());
+			modules.put(name, new ArrayList<Long>());
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean containsModule(String name)
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			return modules.containsKey(name);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void removeModule(String name) throws EntityNotFoundException, IOException
+	{
+		Preconditions.checkNotNull(name, "name may not be null");
+
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			List<Long> moduleReleases = modules.get(name);
+			if (moduleReleases == null)
+				throw new EntityNotFoundException(name);
+			if (!moduleReleases.isEmpty())
+			{
+				throw new IllegalStateException("Module contains " + moduleReleases.size()
+					+ " versions which must be removed first");
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(REMOVE_MODULE);
+			out.writeUTF(name);
+			log.append(bytes.toByteArray());
+			modules.remove(name);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public long insertRelease(ReleaseRecord release, Map<String, List<String>> classes)
+		throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(release, "release may not be null");
+		Preconditions.checkNotNull(classes, "classes may not be null");
+
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			String module = release.getModule().getName();
+			List<Long> moduleReleases = modules.get(module);
+			if (moduleReleases == null)
+				throw new IllegalArgumentException("Module " + module + " not found");
+			for (Long id: moduleReleases)
+			{
+				if (releases.get(id).getVersion().equals(release.getVersion()))
+					throw new EntityExistsException(module + " " + release.getVersion());
+			}
+
+			long result = nextId;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(INSERT_RELEASE);
+			out.writeLong(result);
+			out.writeUTF(module);
+			out.writeUTF(release.getVersion());
+			out.writeUTF(release.getFilename());
+			out.writeLong(release.getLastModified().toMillis());
+			String sha1 = release.getSha1();
+			out.writeBoolean(sha1 != null);
+			if (sha1 != null)
+				out.writeUTF(sha1);
+			out.writeInt(release.getDependencies().size());
+			for (Dependency dependency: release.getDependencies())
+			{
+				out.writeUTF(dependency.getUri().toString());
+				out.writeUTF(dependency.getModule().getName());
+				out.writeUTF(dependency.getVersion());
+				out.writeUTF(dependency.getType().name());
+			}
+			out.writeInt(classes.size());
+			for (Map.Entry<String, List<String>> entry: classes.entrySet())
+			{
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (String className: entry.getValue())
+					out.writeUTF(className);
+			}
+			byte[] record = bytes.toByteArray();
+			log.append(record);
+			replay(record);
+			return result;
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Applies an INSERT_RELEASE record to the in-memory state.
+	 * <p/>
+	 * @param in the record, positioned after the operation
+	 * @throws IOException if the record is malformed
+	 */
+	private void readRelease(DataInputStream in) throws IOException
+	{
+		long id = in.readLong();
+		Module module = new Module(in.readUTF());
+		String version = in.readUTF();
+		String filename = in.readUTF();
+		FileTime lastModified = FileTime.fromMillis(in.readLong());
+		String sha1;
+		if (in.readBoolean())
+			sha1 = in.readUTF();
+		else
+			sha1 = null;
+		int dependencyCount = in.readInt();
+		Set<Dependency> dependencies = new HashSet<>();
+		for (int i = 0; i < dependencyCount; ++i)
+		{
+			URI uri = URI.create(in.readUTF());
+			Module dependencyModule = new Module(in.readUTF());
+			String dependencyVersion = in.readUTF();
+			DependencyType type = DependencyType.valueOf(in.readUTF());
+			dependencies.add(new Dependency(uri, dependencyModule, dependencyVersion, type));
+		}
+		Map<String, List<String>> classes = new LinkedHashMap<>();
+		int packageCount = in.readInt();
+		for (int i = 0; i < packageCount; ++i)
+		{
+			String packageName = in.readUTF();
+			int classCount = in.readInt();
+			List<String> classNames = new ArrayList<>(classCount);
+			for (int j = 0; j < classCount; ++j)
+				classNames.add(in.readUTF());
+			classes.put(packageName, classNames);
+		}
+
+		List<Long> moduleReleases = modules.get(module.getName());
+		if (moduleReleases == null)
+			throw new IOException("Release #" + id + " references a missing module: " + module);
+		moduleReleases.add(id);
+		releases.put(id, new ReleaseRecord(module, version, filename, lastModified, sha1,
+			dependencies));
+		releaseClasses.put(id, classes);
+		for (Map.Entry<String, List<String>> entry: classes.entrySet())
+		{
+			String packageName = entry.getKey();
+			getOrCreate(packageToReleases, packageName).add(id);
+			for (String className: entry.getValue())
+				getOrCreate(classToReleases, qualify(packageName, className)).add(id);
+		}
+		nextId = Math.max(nextId, id + 1);
+	}
+
+	@Override
+	@Nullable
+	public List<Long> getReleases(String module)
+	{
+		Preconditions.checkNotNull(module, "module may not be null");
+
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			List<Long> result = modules.get(module);
+			if (result == null)
+				return null;
+			return new ArrayList<>(result);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	@Nullable
+	public Long getReleaseId(String module, String version)
+	{
+		Preconditions.checkNotNull(module, "module may not be null");
+		Preconditions.checkNotNull(version, "version may not be null");
+
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			List<Long> moduleReleases = modules.get(module);
+			if (moduleReleases == null)
+				return null;
+			for (Long id: moduleReleases)
+			{
+				if (releases.get(id).getVersion().equals(version))
+					return id;
+			}
+			return null;
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	@Nullable
+	public ReleaseRecord getRelease(long id)
+	{
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			return releases.get(id);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<Long, ReleaseRecord> getReleases(Collection<Long> ids)
+	{
+		Preconditions.checkNotNull(ids, "ids may not be null");
+
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			Map<Long, ReleaseRecord> result = new HashMap<>();
+			for (Long id: ids)
+			{
+				ReleaseRecord release = releases.get(id);
+				if (release != null)
+					result.put(id, release);
+			}
+			return result;
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void removeRelease(long id) throws EntityNotFoundException, IOException
+	{
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			if (!releases.containsKey(id))
+				throw new EntityNotFoundException("release #" + id);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(REMOVE_RELEASE);
+			out.writeLong(id);
+			log.append(bytes.toByteArray());
+			applyRemoveRelease(id);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a release, its class index and any resolutions that contain it from the in-memory
+	 * state.
+	 * <p/>
+	 * @param id the release identifier
+	 */
+	private void applyRemoveRelease(long id)
+	{
+		ReleaseRecord release = releases.remove(id);
+		if (release == null)
+			return;
+		modules.get(release.getModule().getName()).remove(id);
+		Map<String, List<String>> classes = releaseClasses.remove(id);
+		for (Map.Entry<String, List<String>> entry: classes.entrySet())
+		{
+			String packageName = entry.getKey();
+			remove(packageToReleases, packageName, id);
+			for (String className: entry.getValue())
+				remove(classToReleases, qualify(packageName, className), id);
+		}
+		for (Iterator<List<Long>> i = resolutions.values().iterator(); i.hasNext();)
+		{
+			if (i.next().contains(id))
+				i.remove();
+		}
+	}
+
+	@Override
+	@Nullable
+	public List<Long> getResolution(String fingerprint)
+	{
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			List<Long> result = resolutions.get(fingerprint);
+			if (result == null)
+				return null;
+			return new ArrayList<>(result);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void putResolution(String fingerprint, List<Long> releases) throws IOException
+	{
+		Preconditions.checkNotNull(fingerprint, "fingerprint may not be null");
+		Preconditions.checkNotNull(releases, "releases may not be null");
+		Preconditions.checkArgument(!releases.isEmpty(), "releases may not be empty");
+
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			for (Long id: releases)
+			{
+				if (!this.releases.containsKey(id))
+				{
+					throw new IllegalArgumentException("releases references a missing release: "
+						+ id);
+				}
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(PUT_RESOLUTION);
+			out.writeUTF(fingerprint);
+			out.writeInt(releases.size());
+			for (Long id: releases)
+				out.writeLong(id);
+			log.append(bytes.toByteArray());
+			resolutions.put(fingerprint, new ArrayList<>(releases));
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public List<Long> getReleasesByClass(String packageName, String className)
+	{
+		Preconditions.checkNotNull(packageName, "packageName may not be null");
+		Preconditions.checkNotNull(className, "className may not be null");
+
+		return get(classToReleases, qualify(packageName, className));
+	}
+
+	@Override
+	public List<Long> getReleasesByPackage(String packageName)
+	{
+		Preconditions.checkNotNull(packageName, "packageName may not be null");
+
+		return get(packageToReleases, packageName);
+	}
+
+	/**
+	 * @param index an index
+	 * @param key a key
+	 * @return the releases associated with the key, in ascending order
+	 */
+	private List<Long> get(Map<String, NavigableSet<Long>> index, String key)
+	{
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try
+		{
+			NavigableSet<Long> result = index.get(key);
+			if (result == null)
+				return Collections.emptyList();
+			return new ArrayList<>(result);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * @param index an index
+	 * @param key a key
+	 * @return the releases associated with the key, creating the entry if necessary
+	 */
+	private static NavigableSet<Long> getOrCreate(Map<String, NavigableSet<Long>> index,
+		String key)
+	{
+		NavigableSet<Long> result = index.get(key);
+		if (result == null)
+		{
+			result = new TreeSet<>();
+			index.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Disassociates a release from a key, removing the key once it has no releases left.
+	 * <p/>
+	 * @param index an index
+	 * @param key a key
+	 * @param id the release identifier
+	 */
+	private static void remove(Map<String, NavigableSet<Long>> index, String key, long id)
+	{
+		NavigableSet<Long> ids = index.get(key);
+		if (ids == null)
+			return;
+		ids.remove(id);
+		if (ids.isEmpty())
+			index.remove(key);
+	}
+
+	/**
+	 * @param packageName the name of a package, or an empty string for the default package
+	 * @param className the simple name of a class
+	 * @return the fully-qualified name of the class
+	 */
+	private static String qualify(String packageName, String className)
+	{
+		if (packageName.isEmpty())
+			return className;
+		return packageName + "." + className;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try
+		{
+			log.close();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.pill.repository.local.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+
+/**
+ * Stores the modules, releases, class index and cached resolutions of a local repository.
+ * <p/>
+ * Releases are identified by a positive number that is assigned by the store and never reused.
+ * Their contents are kept by a {@link ContentStore} under the same identifier.
+ * <p/>
+ * Implementations must be thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ * @see org.pill.repository.local.LocalRepository
+ */
+public interface MetadataStore
+{
+	/**
+	 * Adds a module.
+	 * <p/>
+	 * @param name the module name
+	 * @throws NullPointerException if name is null
+	 * @throws EntityExistsException if the module already exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	void insertModule(String name) throws EntityExistsException, IOException;
+
+	/**
+	 * @param name a module name
+	 * @return true if the module exists
+	 * @throws NullPointerException if name is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	boolean containsModule(String name) throws IOException;
+
+	/**
+	 * Removes a module.
+	 * <p/>
+	 * @param name the module name
+	 * @throws NullPointerException if name is null
+	 * @throws EntityNotFoundException if the module does not exist
+	 * @throws IllegalStateException if the module contains releases
+	 * @throws IOException if an I/O error occurs
+	 */
+	void removeModule(String name) throws EntityNotFoundException, IOException;
+
+	/**
+	 * Adds a release.
+	 * <p/>
+	 * @param release the release
+	 * @param classes the simple names of the classes contained by the release, by package name
+	 * @return the release identifier
+	 * @throws NullPointerException if release or classes are null
+	 * @throws IllegalArgumentException if the release's module does not exist
+	 * @throws EntityExistsException if the module already contains the release's version
+	 * @throws IOException if an I/O error occurs
+	 */
+	long insertRelease(ReleaseRecord release, Map<String, List<String>> classes)
+		throws EntityExistsException, IOException;
+
+	/**
+	 * @param module a module name
+	 * @return the identifiers of the module's releases, or null if the module does not exist
+	 * @throws NullPointerException if module is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	List<Long> getReleases(String module) throws IOException;
+
+	/**
+	 * @param module a module name
+	 * @param version a release version
+	 * @return the release identifier, or null if the release does not exist
+	 * @throws NullPointerException if module or version are null
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	Long getReleaseId(String module, String version) throws IOException;
+
+	/**
+	 * @param id a release identifier
+	 * @return the release, or null if it does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	ReleaseRecord getRelease(long id) throws IOException;
+
+	/**
+	 * Looks up multiple releases at once.
+	 * <p/>
+	 * @param ids release identifiers
+	 * @return the releases that exist, by identifier
+	 * @throws NullPointerException if ids is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	Map<Long, ReleaseRecord> getReleases(Collection<Long> ids) throws IOException;
+
+	/**
+	 * Removes a release, its class index and any resolutions that contain it.
+	 * <p/>
+	 * @param id the release identifier
+	 * @throws EntityNotFoundException if the release does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	void removeRelease(long id) throws EntityNotFoundException, IOException;
+
+	/**
+	 * @param fingerprint a resolution fingerprint
+	 * @return the identifiers of the resolved releases, in order, or null if the fingerprint is not
+	 * cached
+	 * @throws NullPointerException if fingerprint is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	List<Long> getResolution(String fingerprint) throws IOException;
+
+	/**
+	 * Caches a resolution, replacing any existing resolution with the same fingerprint.
+	 * <p/>
+	 * @param fingerprint the resolution fingerprint
+	 * @param releases the identifiers of the resolved releases, in order
+	 * @throws NullPointerException if fingerprint or releases are null
+	 * @throws IllegalArgumentException if releases is empty or references a missing release
+	 * @throws IOException if an I/O error occurs
+	 */
+	void putResolution(String fingerprint, List<Long> releases) throws IOException;
+
+	/**
+	 * @param packageName the name of a package, or an empty string for the default package
+	 * @param className the simple name of a class
+	 * @return the identifiers of the releases that contain the class, in ascending order
+	 * @throws NullPointerException if packageName or className are null
+	 * @throws IOException if an I/O error occurs
+	 */
+	List<Long> getReleasesByClass(String packageName, String className) throws IOException;
+
+	/**
+	 * @param packageName the name of a package, or an empty string for the default package
+	 * @return the identifiers of the releases that contain the package, in ascending order
+	 * @throws NullPointerException if packageName is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	List<Long> getReleasesByPackage(String packageName) throws IOException;
+}
@@ -0,0 +1,197 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file of records.
+ * <p/>
+ * Each record is framed as {@code [int length][int crc32][payload]}. A record is durable once
+ * {@link #append(byte[])} returns. A crash during an append leaves a partial record at the end of
+ * the file, which {@link #readAll()} discards.
+ * <p/>
+ * The file is locked for the lifetime of the object, so it may only be opened once at a time,
+ * even across processes.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class RecordLog implements Closeable
+{
+	/**
+	 * The size of a record header, in bytes.
+	 */
+	private static final int HEADER_SIZE = 8;
+	private static final Logger log = LoggerFactory.getLogger(RecordLog.class);
+	private final Path path;
+	private final FileChannel channel;
+	private final FileLock lock;
+
+	/**
+	 * Opens a log, creating it if necessary.
+	 * <p/>
+	 * @param path the log file
+	 * @throws NullPointerException if path is null
+	 * @throws IOException if an I/O error occurs, or if the log is already open
+	 */
+	public RecordLog(Path path) throws IOException
+	{
+		Preconditions.checkNotNull(path, "path may not be null");
+
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		try
+		{
+			this.lock = tryLock(channel);
+			if (lock == null)
+				throw new IOException(path + " is already in use");
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Attempts to lock a file exclusively.
+	 * <p/>
+	 * @param channel the file
+	 * @return the lock, or null if the file is locked by another process or by another object in
+	 * this JVM
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException
+	{
+		try
+		{
+			return channel.tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Reads every record in the log, truncating any partial or corrupt record found at the end of
+	 * the file. Subsequent records are appended after the last valid record.
+	 * <p/>
+	 * @return the payload of each record, in the order they were appended
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<byte[]> readAll() throws IOException
+	{
+		List<byte[]> result = new ArrayList<>();
+		long size = channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		while (size - position >= HEADER_SIZE)
+		{
+			header.clear();
+			readFully(header, position);
+			header.flip();
+			int length = header.getInt();
+			int checksum = header.getInt();
+			if (length < 0 || length > size - position - HEADER_SIZE)
+				break;
+			byte[] payload = new byte[length];
+			readFully(ByteBuffer.wrap(payload), position + HEADER_SIZE);
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum)
+				break;
+			result.add(payload);
+			position += HEADER_SIZE + length;
+		}
+		if (position < size)
+		{
+			log.warn("Discarding {} bytes of incomplete records at the end of {}", size - position,
+				path);
+			channel.truncate(position);
+			channel.force(false);
+		}
+		channel.position(position);
+		return result;
+	}
+
+	/**
+	 * Appends a record to the log and flushes it to disk.
+	 * <p/>
+	 * @param payload the record contents
+	 * @throws NullPointerException if payload is null
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void append(byte[] payload) throws IOException
+	{
+		Preconditions.checkNotNull(payload, "payload may not be null");
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		record.putInt(payload.length);
+		record.putInt((int) crc.getValue());
+		record.put(payload);
+		record.flip();
+		long start = channel.position();
+		try
+		{
+			while (record.hasRemaining())
+				channel.write(record);
+			channel.force(false);
+		}
+		catch (IOException e)
+		{
+			// Drop the partial record so that it does not hide the records appended after it
+			channel.truncate(start);
+			channel.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Fills a buffer from the log.
+	 * <p/>
+	 * @param buffer the buffer to fill
+	 * @param position the position to read from
+	 * @throws IOException if the end of the file is reached or an I/O error occurs
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int count = channel.read(buffer, position);
+			if (count == -1)
+				throw new IOException("Unexpected end of " + path);
+			position += count;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			lock.release();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
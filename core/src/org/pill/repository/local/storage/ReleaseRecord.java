@@ -0,0 +1,114 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.pill.Dependency;
+import org.pill.Module;
+import org.pill.ToJsonString;
+
+/**
+ * The metadata of a release, as kept by a {@link MetadataStore}.
+ * <p/>
+ * THREAD-SAFETY: This class is immutable.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class ReleaseRecord
+{
+	private final Module module;
+	private final String version;
+	private final String filename;
+	private final FileTime lastModified;
+	private final String sha1;
+	private final Set<Dependency> dependencies;
+
+	/**
+	 * Creates a new ReleaseRecord.
+	 * <p/>
+	 * @param module the module the release belongs to
+	 * @param version the release version
+	 * @param filename the name of the release file
+	 * @param lastModified the time the release file was last modified
+	 * @param sha1 the SHA-1 digest of the release file, or null if it is unknown
+	 * @param dependencies the dependencies of the release
+	 * @throws NullPointerException if module, version, filename, lastModified or dependencies are
+	 * null
+	 * @throws IllegalArgumentException if version or filename are empty
+	 */
+	public ReleaseRecord(Module module, String version, String filename, FileTime lastModified,
+		@Nullable String sha1, Set<Dependency> dependencies)
+	{
+		Preconditions.checkNotNull(module, "module may not be null");
+		Preconditions.checkNotNull(version, "version may not be null");
+		Preconditions.checkArgument(!version.isEmpty(), "version may not be an empty string");
+		Preconditions.checkNotNull(filename, "filename may not be null");
+		Preconditions.checkArgument(!filename.isEmpty(), "filename may not be an empty string");
+		Preconditions.checkNotNull(lastModified, "lastModified may not be null");
+		Preconditions.checkNotNull(dependencies, "dependencies may not be null");
+
+		this.module = module;
+		this.version = version;
+		this.filename = filename;
+		this.lastModified = lastModified;
+		this.sha1 = sha1;
+		this.dependencies = ImmutableSet.copyOf(dependencies);
+	}
+
+	/**
+	 * @return the module the release belongs to
+	 */
+	public Module getModule()
+	{
+		return module;
+	}
+
+	/**
+	 * @return the release version
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return the name of the release file
+	 */
+	public String getFilename()
+	{
+		return filename;
+	}
+
+	/**
+	 * @return the time the release file was last modified
+	 */
+	public FileTime getLastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * @return the SHA-1 digest of the release file, or null if it is unknown
+	 */
+	@Nullable
+	public String getSha1()
+	{
+		return sha1;
+	}
+
+	/**
+	 * @return the dependencies of the release
+	 */
+	public Set<Dependency> getDependencies()
+	{
+		return dependencies;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToJsonString(ReleaseRecord.class, this).toString();
+	}
+}
@@ -0,0 +1,36 @@
+package org.pill.repository.local.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.pill.EntityExistsException;
+
+/**
+ * Adds releases to a {@link MetadataStore} and their contents to the matching
+ * {@link ContentStore}.
+ * <p/>
+ * Implementations must be thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ * @see H2MetadataStore
+ * @see TwoPhaseReleaseWriter
+ */
+public interface ReleaseWriter
+{
+	/**
+	 * Adds a release along with its contents. If the contents cannot be stored, the release is not
+	 * added.
+	 * <p/>
+	 * @param release the release
+	 * @param classes the simple names of the classes contained by the release, by package name
+	 * @param source the release file
+	 * @return the release identifier
+	 * @throws NullPointerException if release, classes or source are null
+	 * @throws IllegalArgumentException if the release's module does not exist
+	 * @throws EntityExistsException if the module already contains the release's version
+	 * @throws IOException if an I/O error occurs
+	 */
+	long insertRelease(ReleaseRecord release, Map<String, List<String>> classes, Path source)
+		throws EntityExistsException, IOException;
+}
@@ -0,0 +1,132 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import org.pill.repository.local.PositionalByteChannel;
+
+/**
+ * A read-only channel over a region of a file. Reads use absolute positions, so any number of
+ * slices may share the same FileChannel. Closing a slice leaves the FileChannel open.
+ * <p/>
+ * THREAD-SAFETY: This class is not thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class SliceByteChannel implements PositionalByteChannel
+{
+	private final FileChannel channel;
+	private final long start;
+	private final long size;
+	private long position;
+	private boolean closed;
+
+	/**
+	 * Creates a new SliceByteChannel.
+	 * <p/>
+	 * @param channel the file containing the region
+	 * @param start the position of the region within the file
+	 * @param size the size of the region
+	 * @throws NullPointerException if channel is null
+	 * @throws IllegalArgumentException if start or size are negative
+	 */
+	public SliceByteChannel(FileChannel channel, long start, long size)
+	{
+		Preconditions.checkNotNull(channel, "channel may not be null");
+		Preconditions.checkArgument(start >= 0, "start may not be negative");
+		Preconditions.checkArgument(size >= 0, "size may not be negative");
+
+		this.channel = channel;
+		this.start = start;
+		this.size = size;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException
+	{
+		int result = read(dst, position);
+		if (result > 0)
+			position += result;
+		return result;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException
+	{
+		Preconditions.checkNotNull(dst, "dst may not be null");
+		Preconditions.checkArgument(position >= 0, "position may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		if (position >= size)
+			return -1;
+		int limit = dst.limit();
+		if (dst.remaining() > size - position)
+			dst.limit(dst.position() + (int) (size - position));
+		try
+		{
+			return channel.read(dst, start + position);
+		}
+		finally
+		{
+			dst.limit(limit);
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException
+	{
+		Preconditions.checkArgument(newPosition >= 0, "newPosition may not be negative");
+		if (closed)
+			throw new ClosedChannelException();
+		position = Math.min(newPosition, size);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException
+	{
+		if (closed)
+			throw new ClosedChannelException();
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return !closed;
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+	}
+}
@@ -0,0 +1,72 @@
+package org.pill.repository.local.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+
+/**
+ * Adds releases to stores that cannot share a transaction.
+ * <p/>
+ * The metadata is stored before the contents. If the contents cannot be stored, the metadata is
+ * removed again. Until the contents are stored, readers see the release but
+ * {@link ContentStore#newByteChannel(long)} throws {@code NoSuchFileException}.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@Singleton
+public final class TwoPhaseReleaseWriter implements ReleaseWriter
+{
+	private final MetadataStore metadata;
+	private final ContentStore content;
+
+	/**
+	 * Creates a new TwoPhaseReleaseWriter.
+	 * <p/>
+	 * @param metadata stores the release metadata
+	 * @param content stores the release contents
+	 * @throws NullPointerException if metadata or content are null
+	 */
+	@Inject
+	public TwoPhaseReleaseWriter(MetadataStore metadata, ContentStore content)
+	{
+		Preconditions.checkNotNull(metadata, "metadata may not be null");
+		Preconditions.checkNotNull(content, "content may not be null");
+
+		this.metadata = metadata;
+		this.content = content;
+	}
+
+	@Override
+	public long insertRelease(ReleaseRecord release, Map<String, List<String>> classes,
+		Path source) throws EntityExistsException, IOException
+	{
+		Preconditions.checkNotNull(source, "source may not be null");
+
+		long id = metadata.insertRelease(release, classes);
+		try
+		{
+			content.write(id, source);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			try
+			{
+				metadata.removeRelease(id);
+			}
+			catch (IOException | EntityNotFoundException | RuntimeException e2)
+			{
+				e.addSuppressed(e2);
+			}
+			throw e;
+		}
+		return id;
+	}
+}
@@ -0,0 +1,5 @@
+@NotNullByDefault
+package org.pill.repository.local.storage;
+
+import org.pill.NotNullByDefault;
+
@@ -0,0 +1,121 @@
+package org.pill.repository.maven;
+
+import com.google.common.base.Preconditions;
+import java.util.Objects;
+
+/**
+ * The coordinates of a Maven artifact.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class Artifact
+{
+	private final String groupId;
+	private final String artifactId;
+	private final String version;
+
+	/**
+	 * Creates a new Artifact.
+	 * <p/>
+	 * @param groupId the group identifier
+	 * @param artifactId the artifact identifier
+	 * @param version the artifact version
+	 * @throws NullPointerException if groupId, artifactId or version are null
+	 * @throws IllegalArgumentException if groupId, artifactId or version are empty strings
+	 */
+	public Artifact(String groupId, String artifactId, String version)
+	{
+		Preconditions.checkNotNull(groupId, "groupId may not be null");
+		Preconditions.checkArgument(!groupId.isEmpty(), "groupId may not be empty");
+		Preconditions.checkNotNull(artifactId, "artifactId may not be null");
+		Preconditions.checkArgument(!artifactId.isEmpty(), "artifactId may not be empty");
+		Preconditions.checkNotNull(version, "version may not be null");
+		Preconditions.checkArgument(!version.isEmpty(), "version may not be empty");
+
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+	}
+
+	/**
+	 * @return the group identifier
+	 */
+	public String getGroupId()
+	{
+		return groupId;
+	}
+
+	/**
+	 * @return the artifact identifier
+	 */
+	public String getArtifactId()
+	{
+		return artifactId;
+	}
+
+	/**
+	 * @return the artifact version
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return the name of the module associated with the artifact, {@code groupId:artifactId}
+	 */
+	public String getModuleName()
+	{
+		return groupId + ":" + artifactId;
+	}
+
+	/**
+	 * Returns the path of one of the artifact's files, relative to the repository root.
+	 * <p/>
+	 * @param extension the file extension (e.g. {@code "jar"} or {@code "pom"})
+	 * @return the path of the file
+	 * @throws NullPointerException if extension is null
+	 */
+	public String getPath(String extension)
+	{
+		Preconditions.checkNotNull(extension, "extension may not be null");
+
+		return getDirectory(groupId, artifactId) + version + "/" + artifactId + "-" + version + "."
+			+ extension;
+	}
+
+	/**
+	 * Returns the directory containing all versions of an artifact, relative to the repository
+	 * root.
+	 * <p/>
+	 * @param groupId the group identifier
+	 * @param artifactId the artifact identifier
+	 * @return the directory, ending with a {@code '/'}
+	 */
+	static String getDirectory(String groupId, String artifactId)
+	{
+		return groupId.replace('.', '/') + "/" + artifactId + "/";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof Artifact))
+			return false;
+		Artifact other = (Artifact) o;
+		return groupId.equals(other.getGroupId()) && artifactId.equals(other.getArtifactId())
+			&& version.equals(other.getVersion());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(groupId, artifactId, version);
+	}
+
+	@Override
+	public String toString()
+	{
+		return groupId + ":" + artifactId + ":" + version;
+	}
+}
@@ -0,0 +1,813 @@
+package org.pill.repository.maven;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.pill.Dependency;
+import org.pill.DependencyType;
+import org.pill.Download;
+import org.pill.DownloadManager;
+import org.pill.DownloadManager.Priority;
+import org.pill.EntityExistsException;
+import org.pill.Module;
+import org.pill.Paths;
+import org.pill.Release;
+import org.pill.ReleaseBuilder;
+import org.pill.StandardConflictPolicy;
+import org.pill.repository.Repository;
+import org.pill.repository.maven.Pom.PomDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+/**
+ * A client for repositories using the Maven 2 layout.
+ * <p/>
+ * Files are retrieved using {@link URLConnection}, so any URL scheme supported by the JDK may be
+ * used (e.g. {@code http}, {@code https} or {@code file}). Responses are always consumed in full
+ * so the JDK can reuse HTTP connections across requests. Every file is verified against its
+ * {@code .sha1} checksum, if the repository provides one.
+ * <p/>
+ * Artifacts are imported into a {@link Repository} as modules named {@code groupId:artifactId}.
+ * Maven scopes are mapped to dependency types as follows:
+ * <ul>
+ * <li>{@code compile}: {@link DependencyType#BUILD} and {@link DependencyType#RUNTIME}</li>
+ * <li>{@code provided}: {@link DependencyType#BUILD}</li>
+ * <li>{@code runtime}: {@link DependencyType#RUNTIME}</li>
+ * </ul>
+ * Optional dependencies, dependencies with classifiers and dependencies that are neither jars nor
+ * POMs are ignored. Exclusions are not supported.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class MavenRepository
+{
+	/**
+	 * The Maven Central repository.
+	 */
+	public static final URI CENTRAL = URI.create("https://repo1.maven.org/maven2/");
+	/**
+	 * The default number of files to retrieve concurrently.
+	 */
+	public static final int DEFAULT_PARALLELISM = 8;
+	/**
+	 * The number of milliseconds to wait for a connection or a read before giving up.
+	 */
+	private static final int TIMEOUT = 30_000;
+	private static final Pattern RANGE_SEPARATOR = Pattern.compile("(?<=[\\])])\\s*,\\s*");
+	private final URI root;
+	private final int parallelism;
+	/**
+	 * Maps an artifact to its project model, with inherited values resolved.
+	 */
+	private final ConcurrentMap<Artifact, Pom> effectivePoms = new ConcurrentHashMap<>();
+	private final Logger log = LoggerFactory.getLogger(MavenRepository.class);
+
+	/**
+	 * Creates a new MavenRepository that retrieves {@link #DEFAULT_PARALLELISM} files at a time.
+	 * <p/>
+	 * @param root the URI of the repository root
+	 * @throws NullPointerException if root is null
+	 */
+	public MavenRepository(URI root)
+	{
+		this(root, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * Creates a new MavenRepository.
+	 * <p/>
+	 * @param root the URI of the repository root
+	 * @param parallelism the maximum number of files to retrieve at a time
+	 * @throws NullPointerException if root is null
+	 * @throws IllegalArgumentException if {@code parallelism < 1}
+	 */
+	public MavenRepository(URI root, int parallelism)
+	{
+		Preconditions.checkNotNull(root, "root may not be null");
+		Preconditions.checkArgument(parallelism >= 1, "parallelism must be positive: "
+			+ parallelism);
+
+		// URI.resolve() replaces the last path segment unless the path ends with a slash
+		if (root.getPath() != null && !root.getPath().endsWith("/"))
+			this.root = URI.create(root + "/");
+		else
+			this.root = root;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Lists the versions of an artifact, as advertised by {@code maven-metadata.xml}.
+	 * <p/>
+	 * @param groupId the group identifier
+	 * @param artifactId the artifact identifier
+	 * @return the versions of the artifact, in the order listed by the repository (empty if the
+	 * artifact was not found)
+	 * @throws NullPointerException if groupId or artifactId are null
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<String> getVersions(String groupId, String artifactId) throws IOException
+	{
+		Preconditions.checkNotNull(groupId, "groupId may not be null");
+		Preconditions.checkNotNull(artifactId, "artifactId may not be null");
+
+		byte[] content = get(Artifact.getDirectory(groupId, artifactId) + "maven-metadata.xml");
+		if (content == null)
+			return Collections.emptyList();
+		Element versioning = Xml.getChild(Xml.parse(content), "versioning");
+		if (versioning == null)
+			return Collections.emptyList();
+		Element versions = Xml.getChild(versioning, "versions");
+		if (versions == null)
+			return Collections.emptyList();
+		List<String> result = new ArrayList<>();
+		for (Element version: Xml.getChildren(versions, "version"))
+			result.add(version.getTextContent().trim());
+		return ImmutableList.copyOf(result);
+	}
+
+	/**
+	 * Returns the direct dependencies of an artifact. Versions inherited from parent POMs or
+	 * managed by {@code dependencyManagement} sections are resolved, and version ranges are
+	 * resolved to the newest matching version.
+	 * <p/>
+	 * @param artifact the artifact
+	 * @return a map from each dependency to its types
+	 * @throws NullPointerException if artifact is null
+	 * @throws NoSuchFileException if the artifact's POM does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	public Map<Artifact, Set<DependencyType>> getDependencies(Artifact artifact) throws IOException
+	{
+		Preconditions.checkNotNull(artifact, "artifact may not be null");
+
+		Pom pom = getEffectivePom(artifact, new HashSet<Artifact>());
+		Map<Artifact, Set<DependencyType>> result = new LinkedHashMap<>();
+		for (PomDependency dependency: pom.getDependencies())
+		{
+			Set<DependencyType> types = getDependencyTypes(dependency.getScope());
+			if (types.isEmpty() || dependency.isOptional())
+				continue;
+			if (dependency.getClassifier() != null || !(dependency.getType().equals("jar")
+				|| dependency.getType().equals("pom")))
+			{
+				log.debug("{}: ignoring {}", artifact, dependency);
+				continue;
+			}
+			String version = dependency.getVersion();
+			if (version == null)
+			{
+				throw new IOException(artifact + " does not specify the version of "
+					+ dependency.getGroupId() + ":" + dependency.getArtifactId());
+			}
+			if (version.startsWith("[") || version.startsWith("("))
+			{
+				version = resolveRange(dependency.getGroupId(), dependency.getArtifactId(),
+					version);
+			}
+			Artifact key = new Artifact(dependency.getGroupId(), dependency.getArtifactId(),
+				version);
+			Set<DependencyType> existingTypes = result.get(key);
+			if (existingTypes == null)
+				result.put(key, types);
+			else
+				existingTypes.addAll(types);
+		}
+		return result;
+	}
+
+	/**
+	 * Downloads an artifact's file: its jar, or its POM if the artifact is packaged as a POM.
+	 * <p/>
+	 * @param artifact the artifact
+	 * @param directory the directory to download into
+	 * @return the downloaded file
+	 * @throws NullPointerException if artifact or directory are null
+	 * @throws NoSuchFileException if the artifact does not exist
+	 * @throws IOException if the file does not match its checksum, or if an I/O error occurs
+	 */
+	public Path download(Artifact artifact, Path directory) throws IOException
+	{
+		Preconditions.checkNotNull(artifact, "artifact may not be null");
+		Preconditions.checkNotNull(directory, "directory may not be null");
+
+		String extension;
+		if (getEffectivePom(artifact, new HashSet<Artifact>()).getPackaging().equals("pom"))
+			extension = "pom";
+		else
+			extension = "jar";
+		String path = artifact.getPath(extension);
+		Path target = directory.resolve(path.substring(path.lastIndexOf('/') + 1));
+		Download download = new Download(root.resolve(path).toURL(), target).parallelism(1);
+		String checksum = getChecksum(path);
+		if (checksum != null)
+			download.checksum("SHA-1", checksum);
+		Priority priority;
+		if (extension.equals("pom"))
+			priority = Priority.HIGH;
+		else
+			priority = Priority.NORMAL;
+		try
+		{
+			return await(DownloadManager.getInstance().submit(download, priority));
+		}
+		catch (FileNotFoundException e)
+		{
+			NoSuchFileException result = new NoSuchFileException(root.resolve(path).toString());
+			result.initCause(e);
+			throw result;
+		}
+	}
+
+	/**
+	 * Imports an artifact and its transitive dependencies into a repository.
+	 * <p/>
+	 * Artifacts that already exist in the target repository are not retrieved. The POMs of each
+	 * level of the dependency graph, and then all missing files, are retrieved concurrently.
+	 * Dependencies are imported before the releases that depend on them. As with Maven, the
+	 * {@code provided} dependencies of transitive dependencies are not imported.
+	 * <p/>
+	 * @param repository the repository to import into
+	 * @param artifact the artifact to import
+	 * @return the imported release
+	 * @throws NullPointerException if repository or artifact are null
+	 * @throws NoSuchFileException if the artifact or one of its dependencies does not exist
+	 * @throws IOException if the dependency graph contains a cycle, if a file does not match its
+	 * checksum, or if an I/O error occurs
+	 */
+	public Release importRelease(Repository repository, Artifact artifact) throws IOException
+	{
+		Preconditions.checkNotNull(repository, "repository may not be null");
+		Preconditions.checkNotNull(artifact, "artifact may not be null");
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MavenRepository-%d").build());
+		try
+		{
+			// Discover the artifacts that are missing from the repository, one level at a time
+			Map<Artifact, URI> imported = new HashMap<>();
+			Map<Artifact, Map<Artifact, Set<DependencyType>>> graph = new LinkedHashMap<>();
+			Set<Artifact> frontier = Collections.singleton(artifact);
+			while (!frontier.isEmpty())
+			{
+				Map<Artifact, Future<Map<Artifact, Set<DependencyType>>>> pending =
+					new LinkedHashMap<>();
+				for (final Artifact node: frontier)
+				{
+					URI uri = getReleaseUri(repository, node);
+					if (uri != null)
+					{
+						imported.put(node, uri);
+						continue;
+					}
+					Callable<Map<Artifact, Set<DependencyType>>> task =
+						new Callable<Map<Artifact, Set<DependencyType>>>()
+						{
+							@Override
+							public Map<Artifact, Set<DependencyType>> call() throws IOException
+							{
+								return getDependencies(node);
+							}
+						};
+					pending.put(node, executor.submit(task));
+				}
+				Set<Artifact> nextFrontier = new LinkedHashSet<>();
+				for (Map.Entry<Artifact, Future<Map<Artifact, Set<DependencyType>>>> entry:
+					pending.entrySet())
+				{
+					Map<Artifact, Set<DependencyType>> dependencies = await(entry.getValue());
+					if (!entry.getKey().equals(artifact))
+					{
+						for (Iterator<Set<DependencyType>> i = dependencies.values().iterator();
+							i.hasNext();)
+						{
+							if (!i.next().contains(DependencyType.RUNTIME))
+								i.remove();
+						}
+					}
+					graph.put(entry.getKey(), dependencies);
+					for (Artifact dependency: dependencies.keySet())
+					{
+						if (!graph.containsKey(dependency) && !imported.containsKey(dependency)
+							&& !frontier.contains(dependency))
+						{
+							nextFrontier.add(dependency);
+						}
+					}
+				}
+				frontier = nextFrontier;
+			}
+			if (graph.isEmpty())
+				return repository.getRelease(imported.get(artifact));
+
+			final Path directory = Files.createTempDirectory("pill-maven");
+			try
+			{
+				Map<Artifact, Future<Path>> downloads = new LinkedHashMap<>();
+				for (final Artifact node: graph.keySet())
+				{
+					downloads.put(node, executor.submit(new Callable<Path>()
+					{
+						@Override
+						public Path call() throws IOException
+						{
+							// Artifacts from different groups may share the same filename
+							Path target = directory.resolve(Artifact.getDirectory(node.getGroupId(),
+								node.getArtifactId()) + node.getVersion());
+							return download(node, Files.createDirectories(target));
+						}
+					}));
+				}
+				Map<Artifact, Path> paths = new HashMap<>();
+				for (Map.Entry<Artifact, Future<Path>> entry: downloads.entrySet())
+					paths.put(entry.getKey(), await(entry.getValue()));
+				URI result = insert(repository, artifact, graph, paths, imported,
+					new LinkedHashSet<Artifact>());
+				return repository.getRelease(result);
+			}
+			finally
+			{
+				Paths.deleteRecursively(directory);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Inserts an artifact into a repository, after its dependencies.
+	 * <p/>
+	 * @param repository the repository to import into
+	 * @param artifact the artifact to insert
+	 * @param graph a map from each missing artifact to its dependencies
+	 * @param paths a map from each missing artifact to its file
+	 * @param imported a map from each artifact that exists in the repository to its release URI.
+	 * Inserted artifacts are added to this map.
+	 * @param ancestors the artifacts being inserted further up the call stack
+	 * @return the URI of the release associated with the artifact
+	 * @throws IOException if the dependency graph contains a cycle, or if an I/O error occurs
+	 */
+	private URI insert(Repository repository, Artifact artifact,
+		Map<Artifact, Map<Artifact, Set<DependencyType>>> graph, Map<Artifact, Path> paths,
+		Map<Artifact, URI> imported, Set<Artifact> ancestors) throws IOException
+	{
+		URI result = imported.get(artifact);
+		if (result != null)
+			return result;
+		if (!ancestors.add(artifact))
+			throw new IOException("Dependency cycle: " + ancestors + " -> " + artifact);
+		Module module = repository.getModule(artifact.getModuleName());
+		if (module == null)
+		{
+			try
+			{
+				module = repository.insertModule(artifact.getModuleName());
+			}
+			catch (EntityExistsException unused)
+			{
+				// Inserted concurrently
+				module = repository.getModule(artifact.getModuleName());
+				assert (module != null): artifact;
+			}
+		}
+		ReleaseBuilder builder = repository.insertRelease(module, artifact.getVersion(),
+			paths.get(artifact));
+		for (Map.Entry<Artifact, Set<DependencyType>> entry: graph.get(artifact).entrySet())
+		{
+			Artifact dependency = entry.getKey();
+			URI uri = insert(repository, dependency, graph, paths, imported, ancestors);
+			for (DependencyType type: entry.getValue())
+			{
+				builder.addDependency(new Dependency(uri, new Module(dependency.getModuleName()),
+					dependency.getVersion(), type));
+			}
+		}
+		try
+		{
+			result = builder.build().getUri();
+		}
+		catch (EntityExistsException e)
+		{
+			// Inserted concurrently
+			result = repository.getReleaseUri(module, artifact.getVersion());
+			if (result == null)
+				throw new IOException(e);
+		}
+		log.info("Imported {}", artifact);
+		ancestors.remove(artifact);
+		imported.put(artifact, result);
+		return result;
+	}
+
+	/**
+	 * Looks up the release associated with an artifact.
+	 * <p/>
+	 * @param repository the repository to search
+	 * @param artifact the artifact
+	 * @return null if the repository does not contain the release
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	private static URI getReleaseUri(Repository repository, Artifact artifact) throws IOException
+	{
+		Module module = repository.getModule(artifact.getModuleName());
+		if (module == null)
+			return null;
+		return repository.getReleaseUri(module, artifact.getVersion());
+	}
+
+	/**
+	 * Returns the project model of an artifact, with inherited values resolved.
+	 * <p/>
+	 * @param artifact the artifact
+	 * @param descendants the artifacts whose project model is being resolved further up the call
+	 * stack, used to detect cycles
+	 * @return the project model
+	 * @throws NoSuchFileException if the POM does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	private Pom getEffectivePom(Artifact artifact, Set<Artifact> descendants) throws IOException
+	{
+		Pom result = effectivePoms.get(artifact);
+		if (result != null)
+			return result;
+		if (!descendants.add(artifact))
+			throw new IOException("POM inheritance cycle: " + descendants + " -> " + artifact);
+		String path = artifact.getPath("pom");
+		byte[] content = get(path);
+		if (content == null)
+			throw new NoSuchFileException(root.resolve(path).toString());
+		Pom pom = Pom.parse(content);
+
+		Map<String, String> properties = new HashMap<>();
+		Map<String, PomDependency> dependencies = new LinkedHashMap<>();
+		Pom parent = null;
+		if (pom.getParent() != null)
+		{
+			parent = getEffectivePom(pom.getParent(), descendants);
+			properties.putAll(parent.getProperties());
+			properties.put("project.parent.groupId", pom.getParent().getGroupId());
+			properties.put("project.parent.artifactId", pom.getParent().getArtifactId());
+			properties.put("project.parent.version", pom.getParent().getVersion());
+			for (PomDependency dependency: parent.getDependencies())
+				dependencies.put(dependency.getManagementKey(), dependency);
+		}
+		properties.putAll(pom.getProperties());
+		Artifact self = pom.getArtifact();
+		for (String prefix: new String[]{"project.", "pom.", ""})
+		{
+			properties.put(prefix + "groupId", self.getGroupId());
+			properties.put(prefix + "artifactId", self.getArtifactId());
+			properties.put(prefix + "version", self.getVersion());
+		}
+
+		// Managed dependencies declared by the POM take precedence over imported ones, which take
+		// precedence over those inherited from the parent.
+		Map<String, PomDependency> managed = new LinkedHashMap<>();
+		List<PomDependency> imports = new ArrayList<>();
+		for (PomDependency dependency: pom.getDependencyManagement())
+		{
+			dependency = dependency.interpolate(properties);
+			if ("import".equals(dependency.getScope()) && dependency.getType().equals("pom"))
+				imports.add(dependency);
+			else
+				managed.put(dependency.getManagementKey(), dependency);
+		}
+		for (PomDependency dependency: imports)
+		{
+			if (dependency.getVersion() == null)
+				throw new IOException(artifact + " imports " + dependency + " without a version");
+			Pom bom = getEffectivePom(new Artifact(dependency.getGroupId(),
+				dependency.getArtifactId(), dependency.getVersion()), descendants);
+			addAbsent(managed, bom.getDependencyManagement());
+		}
+		if (parent != null)
+			addAbsent(managed, parent.getDependencyManagement());
+		for (PomDependency dependency: pom.getDependencies())
+		{
+			dependency = dependency.interpolate(properties);
+			dependencies.put(dependency.getManagementKey(),
+				dependency.manage(managed.get(dependency.getManagementKey())));
+		}
+		descendants.remove(artifact);
+		result = new Pom(self, pom.getParent(), pom.getPackaging(), properties,
+			new ArrayList<>(managed.values()), new ArrayList<>(dependencies.values()));
+		Pom existing = effectivePoms.putIfAbsent(artifact, result);
+		if (existing != null)
+			return existing;
+		return result;
+	}
+
+	/**
+	 * Adds managed dependencies that are not already present.
+	 * <p/>
+	 * @param managed a map from the management key to the managed dependency
+	 * @param dependencies the dependencies to add
+	 */
+	private static void addAbsent(Map<String, PomDependency> managed,
+		List<PomDependency> dependencies)
+	{
+		for (PomDependency dependency: dependencies)
+		{
+			String key = dependency.getManagementKey();
+			if (!managed.containsKey(key))
+				managed.put(key, dependency);
+		}
+	}
+
+	/**
+	 * @param scope a Maven dependency scope
+	 * @return the corresponding dependency types (empty if the dependency should be ignored)
+	 */
+	private static Set<DependencyType> getDependencyTypes(String scope)
+	{
+		switch (scope)
+		{
+			case "compile":
+				return EnumSet.of(DependencyType.BUILD, DependencyType.RUNTIME);
+			case "provided":
+				return EnumSet.of(DependencyType.BUILD);
+			case "runtime":
+				return EnumSet.of(DependencyType.RUNTIME);
+			default:
+				return EnumSet.noneOf(DependencyType.class);
+		}
+	}
+
+	/**
+	 * Returns the newest version of an artifact that matches a version range.
+	 * <p/>
+	 * @param groupId the group identifier
+	 * @param artifactId the artifact identifier
+	 * @param range the version range
+	 * @return the newest matching version
+	 * @throws IOException if no version matches, or if an I/O error occurs
+	 */
+	private String resolveRange(String groupId, String artifactId, String range)
+		throws IOException
+	{
+		String result = null;
+		for (String version: getVersions(groupId, artifactId))
+		{
+			if (matchesRange(version, range) && (result == null
+				|| StandardConflictPolicy.compareVersions(version, result) > 0))
+			{
+				result = version;
+			}
+		}
+		if (result == null)
+		{
+			throw new IOException("No version of " + groupId + ":" + artifactId + " matches "
+				+ range);
+		}
+		return result;
+	}
+
+	/**
+	 * Indicates if a version matches a version range, such as {@code [1.0,2.0)} or
+	 * {@code (,1.0],[1.2,)}.
+	 * <p/>
+	 * @param version the version
+	 * @param range the version range
+	 * @return true if the version matches the range
+	 */
+	static boolean matchesRange(String version, String range)
+	{
+		for (String restriction: RANGE_SEPARATOR.split(range.trim()))
+		{
+			boolean lowerInclusive = restriction.startsWith("[");
+			boolean upperInclusive = restriction.endsWith("]");
+			String bounds = restriction.substring(1, restriction.length() - 1);
+			int comma = bounds.indexOf(',');
+			if (comma == -1)
+			{
+				if (StandardConflictPolicy.compareVersions(version, bounds.trim()) == 0)
+					return true;
+				continue;
+			}
+			String lower = bounds.substring(0, comma).trim();
+			if (!lower.isEmpty())
+			{
+				int comparison = StandardConflictPolicy.compareVersions(version, lower);
+				if (comparison < 0 || (comparison == 0 && !lowerInclusive))
+					continue;
+			}
+			String upper = bounds.substring(comma + 1).trim();
+			if (!upper.isEmpty())
+			{
+				int comparison = StandardConflictPolicy.compareVersions(version, upper);
+				if (comparison > 0 || (comparison == 0 && !upperInclusive))
+					continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieves a file from the repository and verifies its checksum.
+	 * <p/>
+	 * @param path the path of the file, relative to the repository root
+	 * @return null if the file does not exist
+	 * @throws IOException if the file does not match its checksum, or if an I/O error occurs
+	 */
+	@Nullable
+	private byte[] get(String path) throws IOException
+	{
+		byte[] result;
+		try (InputStream in = open(path))
+		{
+			if (in == null)
+				return null;
+			result = ByteStreams.toByteArray(in);
+		}
+		MessageDigest digest = newSha1();
+		verifyChecksum(path, digest.digest(result));
+		return result;
+	}
+
+	/**
+	 * Verifies a file against the checksum published by the repository.
+	 * <p/>
+	 * @param path the path of the file, relative to the repository root
+	 * @param sha1 the SHA-1 digest of the file
+	 * @throws IOException if the file does not match its checksum, or if an I/O error occurs
+	 */
+	private void verifyChecksum(String path, byte[] sha1) throws IOException
+	{
+		String expected = getChecksum(path);
+		if (expected == null)
+			return;
+		String actual = BaseEncoding.base16().lowerCase().encode(sha1);
+		if (!expected.equalsIgnoreCase(actual))
+		{
+			throw new IOException("Checksum mismatch for " + root.resolve(path) + ". Expected: "
+				+ expected + ", actual: " + actual);
+		}
+	}
+
+	/**
+	 * Returns the checksum published by the repository for a file.
+	 * <p/>
+	 * @param path the path of the file, relative to the repository root
+	 * @return the SHA-1 digest of the file, in hexadecimal, or null if the repository does not
+	 * publish one
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	private String getChecksum(String path) throws IOException
+	{
+		byte[] content;
+		try (InputStream in = open(path + ".sha1"))
+		{
+			if (in == null)
+			{
+				log.warn("{} does not have a checksum", root.resolve(path));
+				return null;
+			}
+			content = ByteStreams.toByteArray(in);
+		}
+		// Some repositories append the filename to the checksum
+		return new String(content, StandardCharsets.US_ASCII).trim().split("\\s+")[0];
+	}
+
+	/**
+	 * Opens a file in the repository.
+	 * <p/>
+	 * @param path the path of the file, relative to the repository root
+	 * @return null if the file does not exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Nullable
+	private InputStream open(String path) throws IOException
+	{
+		URL url = root.resolve(path).toURL();
+		log.debug("Retrieving {}", url);
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		if (connection instanceof HttpURLConnection)
+		{
+			HttpURLConnection http = (HttpURLConnection) connection;
+			int code = http.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK)
+			{
+				// Consume the response so the connection may be reused
+				InputStream error = http.getErrorStream();
+				if (error != null)
+				{
+					try (InputStream in = error)
+					{
+						ByteStreams.copy(in, ByteStreams.nullOutputStream());
+					}
+				}
+				if (code == HttpURLConnection.HTTP_NOT_FOUND)
+					return null;
+				throw new IOException(url + " returned HTTP " + code + " "
+					+ http.getResponseMessage());
+			}
+		}
+		try
+		{
+			return connection.getInputStream();
+		}
+		catch (FileNotFoundException unused)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return a new SHA-1 message digest
+	 */
+	private static MessageDigest newSha1()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// All Java platforms are required to support SHA-1
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Waits for a task to complete.
+	 * <p/>
+	 * @param <T> the type of value returned by the task
+	 * @param future the task
+	 * @return the value returned by the task
+	 * @throws IOException if the task failed or the current thread was interrupted
+	 */
+	private static <T> T await(Future<T> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			InterruptedIOException e2 = new InterruptedIOException();
+			e2.initCause(e);
+			throw e2;
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + root + "]";
+	}
+}
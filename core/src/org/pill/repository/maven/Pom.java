@@ -0,0 +1,394 @@
+package org.pill.repository.maven;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.w3c.dom.Element;
+
+/**
+ * A Maven project model.
+ * <p/>
+ * THREAD-SAFETY: This class is immutable.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class Pom
+{
+	private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)\\}");
+	/**
+	 * The maximum depth of nested property references.
+	 */
+	private static final int MAX_INTERPOLATION_DEPTH = 10;
+	private final Artifact artifact;
+	private final Artifact parent;
+	private final String packaging;
+	private final Map<String, String> properties;
+	private final List<PomDependency> dependencyManagement;
+	private final List<PomDependency> dependencies;
+
+	/**
+	 * Creates a new Pom.
+	 * <p/>
+	 * @param artifact the project's coordinates
+	 * @param parent the coordinates of the parent project, or null if there is none
+	 * @param packaging the project's packaging (e.g. {@code "jar"} or {@code "pom"})
+	 * @param properties the project's properties
+	 * @param dependencyManagement the project's managed dependencies
+	 * @param dependencies the project's dependencies
+	 * @throws NullPointerException if any of the arguments (other than parent) are null
+	 */
+	Pom(Artifact artifact, @Nullable Artifact parent, String packaging,
+		Map<String, String> properties, List<PomDependency> dependencyManagement,
+		List<PomDependency> dependencies)
+	{
+		Preconditions.checkNotNull(artifact, "artifact may not be null");
+		Preconditions.checkNotNull(packaging, "packaging may not be null");
+		Preconditions.checkNotNull(properties, "properties may not be null");
+		Preconditions.checkNotNull(dependencyManagement, "dependencyManagement may not be null");
+		Preconditions.checkNotNull(dependencies, "dependencies may not be null");
+
+		this.artifact = artifact;
+		this.parent = parent;
+		this.packaging = packaging;
+		this.properties = ImmutableMap.copyOf(properties);
+		this.dependencyManagement = ImmutableList.copyOf(dependencyManagement);
+		this.dependencies = ImmutableList.copyOf(dependencies);
+	}
+
+	/**
+	 * Parses a POM file. Values inherited from the parent project are not resolved.
+	 * <p/>
+	 * @param content the contents of the POM file
+	 * @return the project model
+	 * @throws NullPointerException if content is null
+	 * @throws IOException if the POM file is malformed
+	 */
+	public static Pom parse(byte[] content) throws IOException
+	{
+		Preconditions.checkNotNull(content, "content may not be null");
+
+		Element project = Xml.parse(content);
+		Artifact parent = null;
+		Element parentElement = Xml.getChild(project, "parent");
+		if (parentElement != null)
+		{
+			parent = new Artifact(Xml.getRequiredText(parentElement, "groupId"),
+				Xml.getRequiredText(parentElement, "artifactId"),
+				Xml.getRequiredText(parentElement, "version"));
+		}
+		String groupId = Xml.getText(project, "groupId");
+		if (groupId == null)
+		{
+			if (parent == null)
+				throw new IOException("project.groupId is missing");
+			groupId = parent.getGroupId();
+		}
+		String version = Xml.getText(project, "version");
+		if (version == null)
+		{
+			if (parent == null)
+				throw new IOException("project.version is missing");
+			version = parent.getVersion();
+		}
+		Artifact artifact = new Artifact(groupId, Xml.getRequiredText(project, "artifactId"),
+			version);
+		String packaging = Xml.getText(project, "packaging");
+		if (packaging == null)
+			packaging = "jar";
+
+		Map<String, String> properties = new LinkedHashMap<>();
+		Element propertiesElement = Xml.getChild(project, "properties");
+		if (propertiesElement != null)
+		{
+			for (Element property: Xml.getChildren(propertiesElement, null))
+				properties.put(property.getTagName(), property.getTextContent().trim());
+		}
+		List<PomDependency> dependencyManagement = ImmutableList.of();
+		Element dependencyManagementElement = Xml.getChild(project, "dependencyManagement");
+		if (dependencyManagementElement != null)
+			dependencyManagement = parseDependencies(dependencyManagementElement);
+		return new Pom(artifact, parent, packaging, properties, dependencyManagement,
+			parseDependencies(project));
+	}
+
+	/**
+	 * Parses the {@code dependencies} child of an element.
+	 * <p/>
+	 * @param parent the element containing the dependencies
+	 * @return the dependencies
+	 * @throws IOException if the dependencies are malformed
+	 */
+	private static List<PomDependency> parseDependencies(Element parent) throws IOException
+	{
+		Element dependenciesElement = Xml.getChild(parent, "dependencies");
+		if (dependenciesElement == null)
+			return ImmutableList.of();
+		List<PomDependency> result = new ArrayList<>();
+		for (Element dependency: Xml.getChildren(dependenciesElement, "dependency"))
+		{
+			String type = Xml.getText(dependency, "type");
+			if (type == null)
+				type = "jar";
+			result.add(new PomDependency(Xml.getRequiredText(dependency, "groupId"),
+				Xml.getRequiredText(dependency, "artifactId"), Xml.getText(dependency, "version"),
+				Xml.getText(dependency, "scope"), type, Xml.getText(dependency, "classifier"),
+				"true".equals(Xml.getText(dependency, "optional"))));
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces {@code ${name}} references with the value of the corresponding property. References
+	 * to undefined properties are left as-is.
+	 * <p/>
+	 * @param value the value to interpolate
+	 * @param properties the property values
+	 * @return the interpolated value
+	 */
+	public static String interpolate(String value, Map<String, String> properties)
+	{
+		String result = value;
+		for (int depth = 0; depth < MAX_INTERPOLATION_DEPTH && result.contains("${"); ++depth)
+		{
+			Matcher matcher = PROPERTY.matcher(result);
+			StringBuffer buffer = new StringBuffer();
+			boolean changed = false;
+			while (matcher.find())
+			{
+				String replacement = properties.get(matcher.group(1));
+				if (replacement == null)
+					replacement = matcher.group();
+				else
+					changed = true;
+				matcher.appendReplacement(buffer, Matcher.quoteReplacement(replacement));
+			}
+			matcher.appendTail(buffer);
+			result = buffer.toString();
+			if (!changed)
+				break;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the project's coordinates
+	 */
+	public Artifact getArtifact()
+	{
+		return artifact;
+	}
+
+	/**
+	 * @return the coordinates of the parent project, or null if there is none
+	 */
+	@Nullable
+	public Artifact getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * @return the project's packaging (e.g. {@code "jar"} or {@code "pom"})
+	 */
+	public String getPackaging()
+	{
+		return packaging;
+	}
+
+	/**
+	 * @return the project's properties
+	 */
+	public Map<String, String> getProperties()
+	{
+		return properties;
+	}
+
+	/**
+	 * @return the project's managed dependencies
+	 */
+	public List<PomDependency> getDependencyManagement()
+	{
+		return dependencyManagement;
+	}
+
+	/**
+	 * @return the project's dependencies
+	 */
+	public List<PomDependency> getDependencies()
+	{
+		return dependencies;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + artifact + "]";
+	}
+
+	/**
+	 * A dependency declared by a POM.
+	 * <p/>
+	 * THREAD-SAFETY: This class is immutable.
+	 */
+	static final class PomDependency
+	{
+		private final String groupId;
+		private final String artifactId;
+		private final String version;
+		private final String scope;
+		private final String type;
+		private final String classifier;
+		private final boolean optional;
+
+		/**
+		 * Creates a new PomDependency.
+		 * <p/>
+		 * @param groupId the group identifier
+		 * @param artifactId the artifact identifier
+		 * @param version the version, or null if it is managed by a parent project
+		 * @param scope the scope, or null if it is managed by a parent project
+		 * @param type the artifact type
+		 * @param classifier the artifact classifier, or null if there is none
+		 * @param optional true if the dependency is optional
+		 * @throws NullPointerException if groupId, artifactId or type are null
+		 */
+		PomDependency(String groupId, String artifactId, @Nullable String version,
+			@Nullable String scope, String type, @Nullable String classifier, boolean optional)
+		{
+			Preconditions.checkNotNull(groupId, "groupId may not be null");
+			Preconditions.checkNotNull(artifactId, "artifactId may not be null");
+			Preconditions.checkNotNull(type, "type may not be null");
+
+			this.groupId = groupId;
+			this.artifactId = artifactId;
+			this.version = version;
+			this.scope = scope;
+			this.type = type;
+			this.classifier = classifier;
+			this.optional = optional;
+		}
+
+		/**
+		 * @return the group identifier
+		 */
+		public String getGroupId()
+		{
+			return groupId;
+		}
+
+		/**
+		 * @return the artifact identifier
+		 */
+		public String getArtifactId()
+		{
+			return artifactId;
+		}
+
+		/**
+		 * @return the version, or null if it is managed by a parent project
+		 */
+		@Nullable
+		public String getVersion()
+		{
+			return version;
+		}
+
+		/**
+		 * @return the scope, or null if it is managed by a parent project
+		 */
+		@Nullable
+		public String getScope()
+		{
+			return scope;
+		}
+
+		/**
+		 * @return the artifact type
+		 */
+		public String getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the artifact classifier, or null if there is none
+		 */
+		@Nullable
+		public String getClassifier()
+		{
+			return classifier;
+		}
+
+		/**
+		 * @return true if the dependency is optional
+		 */
+		public boolean isOptional()
+		{
+			return optional;
+		}
+
+		/**
+		 * @return the key used to match the dependency against managed dependencies
+		 */
+		public String getManagementKey()
+		{
+			return groupId + ":" + artifactId + ":" + type + ":" + classifier;
+		}
+
+		/**
+		 * Interpolates property references in the dependency.
+		 * <p/>
+		 * @param properties the property values
+		 * @return the interpolated dependency
+		 */
+		public PomDependency interpolate(Map<String, String> properties)
+		{
+			String newVersion = version;
+			if (newVersion != null)
+				newVersion = Pom.interpolate(newVersion, properties);
+			String newClassifier = classifier;
+			if (newClassifier != null)
+				newClassifier = Pom.interpolate(newClassifier, properties);
+			return new PomDependency(Pom.interpolate(groupId, properties),
+				Pom.interpolate(artifactId, properties), newVersion, scope, type, newClassifier,
+				optional);
+		}
+
+		/**
+		 * Fills in the version and scope from a managed dependency.
+		 * <p/>
+		 * @param managed the managed dependency, or null if there is none
+		 * @return the updated dependency
+		 */
+		public PomDependency manage(@Nullable PomDependency managed)
+		{
+			String newVersion = version;
+			String newScope = scope;
+			if (managed != null)
+			{
+				if (newVersion == null)
+					newVersion = managed.getVersion();
+				if (newScope == null)
+					newScope = managed.getScope();
+			}
+			if (newScope == null)
+				newScope = "compile";
+			return new PomDependency(groupId, artifactId, newVersion, newScope, type, classifier,
+				optional);
+		}
+
+		@Override
+		public String toString()
+		{
+			return getClass().getName() + "[" + groupId + ":" + artifactId + ":" + version + "]";
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.pill.repository.maven;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * XML helper functions.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class Xml
+{
+	/**
+	 * Parses an XML document.
+	 * <p/>
+	 * @param content the document contents
+	 * @return the root element
+	 * @throws NullPointerException if content is null
+	 * @throws IOException if the document is malformed
+	 */
+	public static Element parse(byte[] content) throws IOException
+	{
+		Preconditions.checkNotNull(content, "content may not be null");
+
+		try
+		{
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setExpandEntityReferences(false);
+			return factory.newDocumentBuilder().parse(new ByteArrayInputStream(content)).
+				getDocumentElement();
+		}
+		catch (ParserConfigurationException e)
+		{
+			throw new AssertionError(e);
+		}
+		catch (SAXException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @param parent an element
+	 * @param name the name of the child element
+	 * @return the first child element with the specified name, or null if there is none
+	 */
+	@Nullable
+	public static Element getChild(Element parent, String name)
+	{
+		List<Element> children = getChildren(parent, name);
+		if (children.isEmpty())
+			return null;
+		return children.get(0);
+	}
+
+	/**
+	 * @param parent an element
+	 * @param name the name of the child elements, or null to match all names
+	 * @return the child elements with the specified name
+	 */
+	public static List<Element> getChildren(Element parent, @Nullable String name)
+	{
+		List<Element> result = new ArrayList<>();
+		NodeList children = parent.getChildNodes();
+		for (int i = 0, size = children.getLength(); i < size; ++i)
+		{
+			Node child = children.item(i);
+			if (child.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			Element element = (Element) child;
+			if (name == null || element.getTagName().equals(name))
+				result.add(element);
+		}
+		return result;
+	}
+
+	/**
+	 * @param parent an element
+	 * @param name the name of the child element
+	 * @return the trimmed text of the child element, or null if it is missing or empty
+	 */
+	@Nullable
+	public static String getText(Element parent, String name)
+	{
+		Element child = getChild(parent, name);
+		if (child == null)
+			return null;
+		String result = child.getTextContent().trim();
+		if (result.isEmpty())
+			return null;
+		return result;
+	}
+
+	/**
+	 * @param parent an element
+	 * @param name the name of the child element
+	 * @return the trimmed text of the child element
+	 * @throws IOException if the child element is missing or empty
+	 */
+	public static String getRequiredText(Element parent, String name) throws IOException
+	{
+		String result = getText(parent, name);
+		if (result == null)
+			throw new IOException(parent.getTagName() + "." + name + " is missing");
+		return result;
+	}
+
+	/**
+	 * Prevent construction.
+	 */
+	private Xml()
+	{
+	}
+}
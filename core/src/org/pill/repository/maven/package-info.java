@@ -0,0 +1,4 @@
+@NotNullByDefault
+package org.pill.repository.maven;
+
+import org.pill.NotNullByDefault;
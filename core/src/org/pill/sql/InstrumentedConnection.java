@@ -0,0 +1,119 @@
+package org.pill.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import org.pill.Metrics;
+import org.pill.Span;
+
+/**
+ * Records the latency of statements executed over a connection, along with commits and
+ * rollbacks. Spans are named after the JDBC method, e.g. {@code Session.executeQuery}.
+ * <p/>
+ * @author Gili Tzabari
+ */
+final class InstrumentedConnection implements InvocationHandler
+{
+	private final Object delegate;
+	private final Metrics metrics;
+
+	/**
+	 * Creates a new InstrumentedConnection.
+	 * <p/>
+	 * @param delegate the connection or statement to forward invocations to
+	 * @param metrics the metrics to record latencies in
+	 */
+	private InstrumentedConnection(Object delegate, Metrics metrics)
+	{
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Instruments a connection.
+	 * <p/>
+	 * @param connection the connection
+	 * @param metrics the metrics to record latencies in
+	 * @return the instrumented connection
+	 */
+	public static Connection wrap(Connection connection, Metrics metrics)
+	{
+		return wrap(Connection.class, connection, metrics);
+	}
+
+	/**
+	 * @param <T> the type of object to wrap
+	 * @param type the interface to implement
+	 * @param delegate the object to forward invocations to
+	 * @param metrics the metrics to record latencies in
+	 * @return the instrumented object
+	 */
+	private static <T> T wrap(Class<T> type, T delegate, Metrics metrics)
+	{
+		return type.cast(Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+			new Class<?>[]
+			{
+				type
+			}, new InstrumentedConnection(delegate, metrics)));
+	}
+
+	/**
+	 * @param method a method
+	 * @return true if the method should be timed
+	 */
+	private static boolean isTimed(Method method)
+	{
+		String name = method.getName();
+		if (name.startsWith("execute"))
+			return true;
+		return method.getDeclaringClass() == Connection.class
+			&& (name.equals("commit") || name.equals("rollback"));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		if (method.getName().equals("equals") && method.getParameterTypes().length == 1)
+			return proxy == args[0];
+		Object result;
+		try
+		{
+			if (isTimed(method))
+			{
+				try (Span span = metrics.start("Session." + method.getName()))
+				{
+					result = method.invoke(delegate, args);
+				}
+			}
+			else
+				result = method.invoke(delegate, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			if (isTimed(method))
+				metrics.increment("Session." + method.getName() + ".failures");
+			throw e.getCause();
+		}
+		Class<?> returnType = method.getReturnType();
+		if (result == null)
+			return null;
+		if (returnType == Statement.class)
+			return wrap(Statement.class, (Statement) result, metrics);
+		if (returnType == PreparedStatement.class)
+			return wrap(PreparedStatement.class, (PreparedStatement) result, metrics);
+		if (returnType == CallableStatement.class)
+			return wrap(CallableStatement.class, (CallableStatement) result, metrics);
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return delegate.toString();
+	}
+}
@@ -0,0 +1,502 @@
+package org.pill.sql;
+
+import com.google.common.base.Preconditions;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.pill.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A DataSource that reuses physical connections and caches their prepared statements.
+ * <p/>
+ * Closing a connection returns it to the pool. Uncommitted changes are rolled back, and the
+ * auto-commit mode, read-only mode and transaction isolation are reset.
+ * <p/>
+ * Each physical connection caches its prepared statements, keyed by their SQL. The repository
+ * issues the same few statements over and over, so most requests can skip parsing and planning.
+ * Closing a cached statement clears its parameters and returns it to the cache. If a statement is
+ * still open when the same SQL is prepared again, a new uncached statement is returned. Only
+ * {@link Connection#prepareStatement(String)} and
+ * {@link Connection#prepareStatement(String, int)} are cached. Callers must not change the
+ * statement's settings (fetch size, maximum rows, timeouts) because the next user would see them.
+ * <p/>
+ * The number of open connections is not limited. Only the number of idle connections is.
+ * <p/>
+ * THREAD-SAFETY: This class is thread-safe. The connections it returns are not.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class PooledDataSource implements DataSource, AutoCloseable
+{
+	/**
+	 * The default number of idle connections to retain.
+	 */
+	public static final int DEFAULT_MAX_IDLE = 8;
+	/**
+	 * The default number of statements to cache per connection.
+	 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	private static final Logger log = LoggerFactory.getLogger(PooledDataSource.class);
+	private final DataSource delegate;
+	private final int maxIdle;
+	private final int statementCacheSize;
+	/**
+	 * Idle connections, most recently used first. Guarded by itself.
+	 */
+	private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+	private final Metrics metrics = Metrics.getInstance();
+	private boolean closed;
+
+	/**
+	 * Creates a new PooledDataSource with the default limits.
+	 * <p/>
+	 * @param delegate the DataSource that opens physical connections
+	 * @throws NullPointerException if delegate is null
+	 */
+	public PooledDataSource(DataSource delegate)
+	{
+		this(delegate, DEFAULT_MAX_IDLE, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new PooledDataSource.
+	 * <p/>
+	 * @param delegate the DataSource that opens physical connections
+	 * @param maxIdle the maximum number of idle connections to retain
+	 * @param statementCacheSize the maximum number of statements to cache per connection
+	 * @throws NullPointerException if delegate is null
+	 * @throws IllegalArgumentException if maxIdle or statementCacheSize are negative
+	 */
+	public PooledDataSource(DataSource delegate, int maxIdle, int statementCacheSize)
+	{
+		Preconditions.checkNotNull(delegate, "delegate may not be null");
+		Preconditions.checkArgument(maxIdle >= 0, "maxIdle may not be negative: %s", maxIdle);
+		Preconditions.checkArgument(statementCacheSize >= 0,
+			"statementCacheSize may not be negative: %s", statementCacheSize);
+
+		this.delegate = delegate;
+		this.maxIdle = maxIdle;
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		PhysicalConnection physical;
+		synchronized (idle)
+		{
+			if (closed)
+				throw new SQLException("DataSource is closed", "08003");
+			physical = idle.pollFirst();
+		}
+		if (physical == null)
+		{
+			physical = new PhysicalConnection(delegate.getConnection());
+			metrics.increment("PooledDataSource.connectionsOpened");
+		}
+		return physical.checkOut();
+	}
+
+	/**
+	 * Returns an unpooled connection.
+	 * <p/>
+	 * @param username the database user
+	 * @param password the user's password
+	 * @return a connection that is not pooled and does not cache statements
+	 * @throws SQLException if a database access error occurs
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException
+	{
+		return delegate.getConnection(username, password);
+	}
+
+	/**
+	 * Returns a connection to the pool.
+	 * <p/>
+	 * @param physical the physical connection
+	 */
+	private void checkIn(PhysicalConnection physical)
+	{
+		try
+		{
+			physical.reset();
+			synchronized (idle)
+			{
+				if (!closed && idle.size() < maxIdle)
+				{
+					idle.addFirst(physical);
+					return;
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			log.warn("Discarding connection that could not be reset", e);
+		}
+		physical.close();
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are in use are closed when they are returned.
+	 */
+	@Override
+	public void close()
+	{
+		Deque<PhysicalConnection> connections;
+		synchronized (idle)
+		{
+			closed = true;
+			connections = new ArrayDeque<>(idle);
+			idle.clear();
+		}
+		for (PhysicalConnection physical: connections)
+			physical.close();
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException
+	{
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException
+	{
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException
+	{
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException
+	{
+		return delegate.getLoginTimeout();
+	}
+
+	@Override
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException
+	{
+		return delegate.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException
+	{
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException
+	{
+		return iface.isInstance(this) || delegate.isWrapperFor(iface);
+	}
+
+	/**
+	 * Invokes a method, unwrapping any exception it throws.
+	 * <p/>
+	 * @param target the object to invoke the method on
+	 * @param method the method
+	 * @param args the method arguments
+	 * @return the value returned by the method
+	 * @throws Throwable the exception thrown by the method
+	 */
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+	{
+		try
+		{
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A connection opened by the delegate DataSource, along with its statement cache.
+	 */
+	private final class PhysicalConnection
+	{
+		private final Connection connection;
+		private final int transactionIsolation;
+		/**
+		 * Prepared statements by their key, least recently used first.
+		 */
+		private final Map<String, CachedStatement> statements;
+		/**
+		 * The connection handed out to the current user.
+		 */
+		private Connection owner;
+
+		/**
+		 * Creates a new PhysicalConnection.
+		 * <p/>
+		 * @param connection the connection opened by the delegate DataSource
+		 * @throws SQLException if a database access error occurs
+		 */
+		PhysicalConnection(Connection connection) throws SQLException
+		{
+			this.connection = connection;
+			this.transactionIsolation = connection.getTransactionIsolation();
+			this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 0L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest)
+				{
+					// Statements that are in use are evicted by a later insertion
+					if (size() <= statementCacheSize || eldest.getValue().inUse)
+						return false;
+					eldest.getValue().close();
+					return true;
+				}
+			};
+		}
+
+		/**
+		 * @return a connection that returns this connection to the pool when it is closed
+		 */
+		public Connection checkOut()
+		{
+			owner = (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(),
+				new Class<?>[]
+				{
+					Connection.class
+				}, new PooledConnectionHandler(this));
+			return owner;
+		}
+
+		/**
+		 * Returns a prepared statement, reusing a cached one if possible.
+		 * <p/>
+		 * @param key the statement's cache key
+		 * @param method the Connection method that prepares the statement
+		 * @param args the method arguments
+		 * @return the prepared statement
+		 * @throws Throwable if the statement could not be prepared
+		 */
+		public PreparedStatement prepare(String key, Method method, Object[] args) throws Throwable
+		{
+			if (statementCacheSize == 0)
+				return (PreparedStatement) invoke(connection, method, args);
+			CachedStatement cached = statements.get(key);
+			if (cached != null)
+			{
+				if (cached.inUse)
+					return (PreparedStatement) invoke(connection, method, args);
+				metrics.increment("PooledDataSource.statementCacheHits");
+				cached.inUse = true;
+				return cached.proxy;
+			}
+			metrics.increment("PooledDataSource.statementCacheMisses");
+			PreparedStatement statement = (PreparedStatement) invoke(connection, method, args);
+			cached = new CachedStatement(this, statement);
+			cached.inUse = true;
+			statements.put(key, cached);
+			return cached.proxy;
+		}
+
+		/**
+		 * Prepares the connection for its next user.
+		 * <p/>
+		 * @throws SQLException if a database access error occurs
+		 */
+		public void reset() throws SQLException
+		{
+			owner = null;
+			for (CachedStatement cached: statements.values())
+				cached.release();
+			if (!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (connection.isReadOnly())
+				connection.setReadOnly(false);
+			if (connection.getTransactionIsolation() != transactionIsolation)
+				connection.setTransactionIsolation(transactionIsolation);
+			connection.clearWarnings();
+		}
+
+		/**
+		 * Closes the connection and its statements, logging any failure.
+		 */
+		public void close()
+		{
+			for (CachedStatement cached: statements.values())
+				cached.close();
+			statements.clear();
+			try
+			{
+				connection.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Could not close " + connection, e);
+			}
+		}
+	}
+
+	/**
+	 * A prepared statement that is returned to the cache when it is closed.
+	 */
+	private final class CachedStatement implements InvocationHandler
+	{
+		private final PhysicalConnection physical;
+		private final PreparedStatement statement;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+
+		/**
+		 * Creates a new CachedStatement.
+		 * <p/>
+		 * @param physical the connection that prepared the statement
+		 * @param statement the prepared statement
+		 */
+		CachedStatement(PhysicalConnection physical, PreparedStatement statement)
+		{
+			this.physical = physical;
+			this.statement = statement;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+				PooledDataSource.class.getClassLoader(), new Class<?>[]
+				{
+					PreparedStatement.class
+				}, this);
+		}
+
+		/**
+		 * Returns the statement to the cache.
+		 */
+		public void release()
+		{
+			if (!inUse)
+				return;
+			inUse = false;
+			try
+			{
+				statement.clearParameters();
+				statement.clearBatch();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Could not reset " + statement, e);
+			}
+		}
+
+		/**
+		 * Closes the statement, logging any failure.
+		 */
+		public void close()
+		{
+			try
+			{
+				statement.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Could not close " + statement, e);
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			switch (method.getName())
+			{
+				case "close":
+					release();
+					return null;
+				case "isClosed":
+					return !inUse;
+				case "getConnection":
+					return physical.owner;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return statement.toString();
+				default:
+					if (!inUse)
+						throw new SQLException("Statement is closed");
+					return PooledDataSource.invoke(statement, method, args);
+			}
+		}
+	}
+
+	/**
+	 * The connection handed out to users. Closing it returns the physical connection to the pool.
+	 */
+	private final class PooledConnectionHandler implements InvocationHandler
+	{
+		private final PhysicalConnection physical;
+		private boolean closed;
+
+		/**
+		 * Creates a new PooledConnectionHandler.
+		 * <p/>
+		 * @param physical the physical connection
+		 */
+		PooledConnectionHandler(PhysicalConnection physical)
+		{
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			switch (method.getName())
+			{
+				case "close":
+					if (!closed)
+					{
+						closed = true;
+						checkIn(physical);
+					}
+					return null;
+				case "isClosed":
+					return closed;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return physical.connection.toString();
+				default:
+					break;
+			}
+			if (closed)
+				throw new SQLException("Connection is closed", "08003");
+			if (method.getName().equals("prepareStatement"))
+			{
+				Class<?>[] parameterTypes = method.getParameterTypes();
+				if (parameterTypes.length == 1)
+					return physical.prepare((String) args[0], method, args);
+				if (parameterTypes.length == 2 && parameterTypes[1] == int.class)
+					return physical.prepare(args[1] + ":" + args[0], method, args);
+			}
+			return PooledDataSource.invoke(physical.connection, method, args);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package org.pill.sql;
+
+import com.google.inject.BindingAnnotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests a {@link Session} for operations that only read from the database.
+ * <p/>
+ * Read-only sessions are marked read-only and use {@link TransactionIsolation#READ_COMMITTED}.
+ * They never commit, so closing them discards their transaction. Under MVCC they read from a
+ * snapshot and do not contend with concurrent writers.
+ * <p/>
+ * @author Gili Tzabari
+ */
+@BindingAnnotation
+@Target(
+{
+	ElementType.FIELD,
+	ElementType.PARAMETER,
+	ElementType.METHOD
+})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadOnly
+{
+}
@@ -13,6 +13,12 @@ import org.slf4j.LoggerFactory;
  */
 public class SQLExceptions
 {
+	private static final Logger log = LoggerFactory.getLogger(SQLExceptions.class);
+	/**
+	 * True if method entry and exit should be logged. Read once, when the class is loaded.
+	 */
+	private static final boolean DEBUG = log.isDebugEnabled();
+
 	/**
 	 * Returns the deepest exception cause of type SQLException.
 	 * <p/>
@@ -21,8 +27,8 @@ public class SQLExceptions
 	 */
 	public static SQLException getCause(Throwable t)
 	{
-		Logger log = LoggerFactory.getLogger(SQLExceptions.class);
-		log.debug("Entering. t: {}", t);
+		if (DEBUG)
+			log.debug("Entering. t: {}", t);
 		SQLException result = null;
 		Throwable current = t;
 		do
@@ -32,7 +38,8 @@ public class SQLExceptions
 				result = (SQLException) current;
 		}
 		while (current != null);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -45,8 +52,8 @@ public class SQLExceptions
 	@Nullable
 	public static ConstraintViolationException getConstraintViolation(Throwable t)
 	{
-		Logger log = LoggerFactory.getLogger(SQLExceptions.class);
-		log.debug("Entering. t: {}", t);
+		if (DEBUG)
+			log.debug("Entering. t: {}", t);
 		SQLException cause = getCause(t);
 		ConstraintViolationException result;
 		try
@@ -63,7 +70,8 @@ public class SQLExceptions
 		{
 			throw new IllegalArgumentException("SQLCode: " + cause.getSQLState(), e);
 		}
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 }
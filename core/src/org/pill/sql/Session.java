@@ -18,12 +18,15 @@ import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLWarning;
+import org.pill.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Binds a database connection and dialect.
  * <p/>
+ * The latency of each statement, commit and rollback is recorded by {@link Metrics}.
+ * <p/>
  * @author Gili Tzabari
  */
 @RequestScoped
@@ -31,7 +34,13 @@ public class Session implements AutoCloseable
 {
 	private final Connection connection;
 	private final SQLTemplates dialect;
-	private final Logger log = LoggerFactory.getLogger(Session.class);
+	private static final Logger log = LoggerFactory.getLogger(Session.class);
+	/**
+	 * True if method entry and exit should be logged. The flag is read once, when the class is
+	 * loaded, so that the JIT can eliminate the logging calls (and the boxing of their arguments)
+	 * when debug logging is disabled. Changing the log level at runtime has no effect.
+	 */
+	private static final boolean DEBUG = log.isDebugEnabled();
 
 	/**
 	 * Creates a new Session.
@@ -42,10 +51,12 @@ public class Session implements AutoCloseable
 	@Inject
 	public Session(Connection connection, SQLTemplates dialect)
 	{
-		log.debug("Entering. connection: {}, dialect: {}, lockingOrder: {}", connection, dialect);
-		this.connection = connection;
+		if (DEBUG)
+			log.debug("Entering. connection: {}, dialect: {}", connection, dialect);
+		this.connection = InstrumentedConnection.wrap(connection, Metrics.getInstance());
 		this.dialect = dialect;
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -56,9 +67,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLQuery query(Expression<?>... tables)
 	{
-		log.debug("Entering. tables: {}", (Object[]) tables);
+		if (DEBUG)
+			log.debug("Entering. tables: {}", (Object[]) tables);
 		SQLQuery result = new SQLQuery(connection, dialect).from(tables);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -70,9 +83,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLSubQuery subQuery(Expression<?>... tables)
 	{
-		log.debug("Entering. tables: {}", (Object[]) tables);
+		if (DEBUG)
+			log.debug("Entering. tables: {}", (Object[]) tables);
 		SQLSubQuery result = new SQLSubQuery().from(tables);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -84,9 +99,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLInsertClause insert(RelationalPath<?> table)
 	{
-		log.debug("Entering. table: {}", table);
+		if (DEBUG)
+			log.debug("Entering. table: {}", table);
 		SQLInsertClause result = new SQLInsertClause(connection, dialect, table);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -98,9 +115,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLUpdateClause update(RelationalPath<?> table)
 	{
-		log.debug("Entering. table: {}", table);
+		if (DEBUG)
+			log.debug("Entering. table: {}", table);
 		SQLUpdateClause result = new SQLUpdateClause(connection, dialect, table);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -112,9 +131,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLMergeClause merge(RelationalPath<?> table)
 	{
-		log.debug("Entering. table: {}", table);
+		if (DEBUG)
+			log.debug("Entering. table: {}", table);
 		SQLMergeClause result = new SQLMergeClause(connection, dialect, table);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -126,9 +147,11 @@ public class Session implements AutoCloseable
 	 */
 	public SQLDeleteClause delete(RelationalPath<?> table)
 	{
-		log.debug("Entering. table: {}", table);
+		if (DEBUG)
+			log.debug("Entering. table: {}", table);
 		SQLDeleteClause result = new SQLDeleteClause(connection, dialect, table);
-		log.debug("Returning {}", result);
+		if (DEBUG)
+			log.debug("Returning {}", result);
 		return result;
 	}
 
@@ -159,7 +182,8 @@ public class Session implements AutoCloseable
 	 */
 	public void setAutoCommit(boolean autoCommit)
 	{
-		log.debug("Entering. autoCommit: {}", autoCommit);
+		if (DEBUG)
+			log.debug("Entering. autoCommit: {}", autoCommit);
 		try
 		{
 			connection.setAutoCommit(autoCommit);
@@ -168,7 +192,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -182,11 +207,13 @@ public class Session implements AutoCloseable
 	 */
 	public boolean isAutoCommit()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			boolean result = connection.getAutoCommit();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -208,7 +235,8 @@ public class Session implements AutoCloseable
 	 */
 	public void commit()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			connection.commit();
@@ -217,7 +245,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -233,7 +262,8 @@ public class Session implements AutoCloseable
 	 */
 	public void rollback()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			connection.rollback();
@@ -242,7 +272,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -262,7 +293,8 @@ public class Session implements AutoCloseable
 	@Override
 	public void close()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			connection.close();
@@ -271,7 +303,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -291,11 +324,13 @@ public class Session implements AutoCloseable
 	 */
 	public boolean isClosed()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			boolean result = connection.isClosed();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -315,7 +350,8 @@ public class Session implements AutoCloseable
 	 */
 	public void setReadOnly(boolean readOnly)
 	{
-		log.debug("Entering. readOnly: {}", readOnly);
+		if (DEBUG)
+			log.debug("Entering. readOnly: {}", readOnly);
 		try
 		{
 			connection.setReadOnly(readOnly);
@@ -324,7 +360,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -338,11 +375,13 @@ public class Session implements AutoCloseable
 	 */
 	public boolean isReadOnly()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			boolean result = connection.isReadOnly();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -364,7 +403,8 @@ public class Session implements AutoCloseable
 	 */
 	public void setCatalog(String catalog)
 	{
-		log.debug("Entering. catalog: {}", catalog);
+		if (DEBUG)
+			log.debug("Entering. catalog: {}", catalog);
 		try
 		{
 			connection.setCatalog(catalog);
@@ -373,7 +413,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -387,11 +428,13 @@ public class Session implements AutoCloseable
 	 */
 	public String getCatalog()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			String result = connection.getCatalog();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -414,7 +457,8 @@ public class Session implements AutoCloseable
 	 */
 	public void setTransactionIsolation(TransactionIsolation level)
 	{
-		log.debug("Entering. level: {}", level);
+		if (DEBUG)
+			log.debug("Entering. level: {}", level);
 		try
 		{
 			connection.setTransactionIsolation(level.getId());
@@ -423,7 +467,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -437,12 +482,14 @@ public class Session implements AutoCloseable
 	 */
 	public TransactionIsolation getTransactionIsolation()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			TransactionIsolation result = TransactionIsolation.fromConnection(connection.
 				getTransactionIsolation());
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -468,11 +515,13 @@ public class Session implements AutoCloseable
 	 */
 	public SQLWarning getWarnings()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			SQLWarning result = connection.getWarnings();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -493,7 +542,8 @@ public class Session implements AutoCloseable
 	 */
 	public void clearWarnings()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			connection.clearWarnings();
@@ -502,7 +552,8 @@ public class Session implements AutoCloseable
 		{
 			throw new QueryException(e);
 		}
-		log.debug("Returning");
+		if (DEBUG)
+			log.debug("Returning");
 	}
 
 	/**
@@ -521,11 +572,13 @@ public class Session implements AutoCloseable
 	 */
 	public boolean isValid(int timeout)
 	{
-		log.debug("Entering. timeout: {}", timeout);
+		if (DEBUG)
+			log.debug("Entering. timeout: {}", timeout);
 		try
 		{
 			boolean result = connection.isValid(timeout);
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -553,11 +606,13 @@ public class Session implements AutoCloseable
 	 */
 	public Blob createBlob()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			Blob result = connection.createBlob();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
@@ -572,11 +627,13 @@ public class Session implements AutoCloseable
 	 */
 	public String getDatabaseUrl()
 	{
-		log.debug("Entering");
+		if (DEBUG)
+			log.debug("Entering");
 		try
 		{
 			String result = connection.getMetaData().getURL();
-			log.debug("Returning {}", result);
+			if (DEBUG)
+				log.debug("Returning {}", result);
 			return result;
 		}
 		catch (SQLException e)
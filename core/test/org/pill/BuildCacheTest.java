@@ -0,0 +1,85 @@
+package org.pill;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests BuildCache.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class BuildCacheTest
+{
+	private static final PathMatcher CLASS_FILES = FileSystems.getDefault().getPathMatcher(
+		"glob:**.class");
+
+	/**
+	 * @param file a file
+	 * @param content the contents to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void write(Path file, String content) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param file a file
+	 * @return the contents of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static String read(Path file) throws IOException
+	{
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Restoring an entry brings back its files, deletes other matching files and leaves the rest of
+	 * the directory alone.
+	 */
+	@Test
+	public void restore() throws IOException
+	{
+		BuildCache cache = new BuildCache(Files.createTempDirectory(null));
+		Path source = Files.createTempDirectory(null).resolve("Main.java");
+		write(source, "class Main {}");
+		Path output = Files.createTempDirectory(null);
+		write(output.resolve("org/Main.class"), "main");
+		write(output.resolve("resource.txt"), "resource");
+		String key = new Fingerprint().addFile(source).getValue();
+		cache.store(key, output, CLASS_FILES);
+
+		write(output.resolve("org/Main.class"), "modified");
+		write(output.resolve("org/Other.class"), "other");
+		Assert.assertTrue(cache.restore(key, output, CLASS_FILES));
+		Assert.assertEquals(read(output.resolve("org/Main.class")), "main");
+		Assert.assertFalse(Files.exists(output.resolve("org/Other.class")));
+		Assert.assertEquals(read(output.resolve("resource.txt")), "resource");
+	}
+
+	/**
+	 * Changing an input changes the fingerprint, so the stale entry is not restored.
+	 */
+	@Test
+	public void missingEntry() throws IOException
+	{
+		BuildCache cache = new BuildCache(Files.createTempDirectory(null));
+		Path source = Files.createTempDirectory(null).resolve("Main.java");
+		write(source, "class Main {}");
+		Path output = Files.createTempDirectory(null);
+		write(output.resolve("Main.class"), "main");
+		cache.store(new Fingerprint().addFile(source).getValue(), output, CLASS_FILES);
+
+		write(source, "class Main { int x; }");
+		Assert.assertFalse(cache.restore(new Fingerprint().addFile(source).getValue(), output,
+			CLASS_FILES));
+		Assert.assertEquals(read(output.resolve("Main.class")), "main");
+	}
+}
@@ -0,0 +1,215 @@
+package org.pill;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests ContinuousBuild in watch mode.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ContinuousBuildTest
+{
+	/**
+	 * The number of milliseconds to wait for a rebuild.
+	 */
+	private static final long TIMEOUT = 30000;
+
+	/**
+	 * @param file a file
+	 * @param content the contents to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void write(Path file, String content) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param value the value of {@code A.VALUE}
+	 * @return the source code of class {@code A}
+	 */
+	private static String getSourceOfA(int value)
+	{
+		return "package p; public class A { public static final int VALUE = " + value + "; }";
+	}
+
+	/**
+	 * Runs a build in a background thread.
+	 * <p/>
+	 * @param build the build
+	 * @return the thread
+	 */
+	private static Thread start(final ContinuousBuild build)
+	{
+		Thread result = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					build.run();
+				}
+				catch (IOException e)
+				{
+					throw new AssertionError(e);
+				}
+			}
+		});
+		result.start();
+		return result;
+	}
+
+	/**
+	 * Waits for a condition to become true.
+	 * <p/>
+	 * @param condition the condition
+	 * @throws Exception if the condition throws an exception
+	 * @throws AssertionError if the condition does not become true in time
+	 */
+	private static void await(Callable<Boolean> condition) throws Exception
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+		while (!condition.call())
+		{
+			if (System.nanoTime() - deadline > 0)
+				throw new AssertionError("Timed out");
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * @param targetDirectory the directory containing the class files
+	 * @param expected the expected value
+	 * @return a condition that returns true once {@code B.COPY} has the expected value
+	 */
+	private static Callable<Boolean> copyEquals(final Path targetDirectory, final int expected)
+	{
+		return new Callable<Boolean>()
+		{
+			@Override
+			public Boolean call() throws Exception
+			{
+				if (!Files.exists(targetDirectory.resolve("p/B.class")))
+					return false;
+				try (URLClassLoader loader = new URLClassLoader(
+					new URL[]{targetDirectory.toUri().toURL()}, null))
+				{
+					return loader.loadClass("p.B").getField("COPY").getInt(null) == expected;
+				}
+				catch (ClassFormatError | ClassNotFoundException unused)
+				{
+					// The class file is being written
+					return false;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Changing a constant recompiles the classes that inlined it. Compilation errors do not stop
+	 * the build.
+	 */
+	@Test
+	public void recompileDependents() throws Exception
+	{
+		Path sourceRoot = Files.createTempDirectory("pill");
+		Path targetDirectory = Files.createTempDirectory("pill");
+		try
+		{
+			write(sourceRoot.resolve("p/A.java"), getSourceOfA(1));
+			write(sourceRoot.resolve("p/B.java"),
+				"package p; public class B { public static final int COPY = A.VALUE; }");
+			ContinuousBuild build = new ContinuousBuild(new JavaCompiler(),
+				Collections.singletonList(sourceRoot), targetDirectory).
+				debounce(50, TimeUnit.MILLISECONDS);
+			Thread thread = start(build);
+			try
+			{
+				await(copyEquals(targetDirectory, 1));
+
+				write(sourceRoot.resolve("p/A.java"), getSourceOfA(2));
+				await(copyEquals(targetDirectory, 2));
+
+				write(sourceRoot.resolve("p/A.java"), "package p; public class A {");
+				Thread.sleep(500);
+				Assert.assertTrue(thread.isAlive());
+
+				write(sourceRoot.resolve("p/A.java"), getSourceOfA(3));
+				await(copyEquals(targetDirectory, 3));
+			}
+			finally
+			{
+				build.close();
+				thread.join();
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(sourceRoot);
+			Paths.deleteRecursively(targetDirectory);
+		}
+	}
+
+	/**
+	 * Deleting a source file deletes its class files.
+	 */
+	@Test
+	public void deleteSourceFile() throws Exception
+	{
+		Path sourceRoot = Files.createTempDirectory("pill");
+		final Path targetDirectory = Files.createTempDirectory("pill");
+		try
+		{
+			write(sourceRoot.resolve("p/A.java"), getSourceOfA(1));
+			write(sourceRoot.resolve("p/C.java"), "package p; public class C { class Nested {} }");
+			ContinuousBuild build = new ContinuousBuild(new JavaCompiler(),
+				Collections.singletonList(sourceRoot), targetDirectory).
+				debounce(50, TimeUnit.MILLISECONDS);
+			Thread thread = start(build);
+			try
+			{
+				await(new Callable<Boolean>()
+				{
+					@Override
+					public Boolean call()
+					{
+						return Files.exists(targetDirectory.resolve("p/C$Nested.class"));
+					}
+				});
+				Files.delete(sourceRoot.resolve("p/C.java"));
+				await(new Callable<Boolean>()
+				{
+					@Override
+					public Boolean call()
+					{
+						return !Files.exists(targetDirectory.resolve("p/C.class"))
+							&& !Files.exists(targetDirectory.resolve("p/C$Nested.class"));
+					}
+				});
+				Assert.assertTrue(Files.exists(targetDirectory.resolve("p/A.class")));
+			}
+			finally
+			{
+				build.close();
+				thread.join();
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(sourceRoot);
+			Paths.deleteRecursively(targetDirectory);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.pill;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.pill.DownloadManager.Priority;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests DownloadManager against a local HTTP server.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class DownloadManagerTest
+{
+	/**
+	 * Starts an HTTP server that returns the request path as the response body.
+	 * <p/>
+	 * @param requests the number of requests received by the server
+	 * @param active the number of requests being served
+	 * @param maxActive the maximum number of requests that were served concurrently
+	 * @return the server
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static TestHttpServer startServer(final AtomicInteger requests,
+		final AtomicInteger active, final AtomicInteger maxActive) throws IOException
+	{
+		return new TestHttpServer("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				requests.incrementAndGet();
+				int current = active.incrementAndGet();
+				while (true)
+				{
+					int max = maxActive.get();
+					if (current <= max || maxActive.compareAndSet(max, current))
+						break;
+				}
+				try
+				{
+					Thread.sleep(100);
+					byte[] content = exchange.getRequestURI().getPath().
+						getBytes(StandardCharsets.UTF_8);
+					exchange.sendResponseHeaders(200, content.length);
+					try (OutputStream out = exchange.getResponseBody())
+					{
+						out.write(content);
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				finally
+				{
+					active.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Requests for the same URL share a single transfer.
+	 */
+	@Test
+	public void coalesce() throws IOException, InterruptedException, ExecutionException
+	{
+		AtomicInteger requests = new AtomicInteger();
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(requests, new AtomicInteger(),
+			new AtomicInteger()))
+		{
+			URL url = server.getUri("/file").toURL();
+			DownloadManager manager = new DownloadManager(4, 4);
+			ListenableFuture<Path> first = manager.submit(new Download(url,
+				directory.resolve("first")).parallelism(1), Priority.NORMAL);
+			ListenableFuture<Path> second = manager.submit(new Download(url,
+				directory.resolve("second")).parallelism(1), Priority.HIGH);
+			Assert.assertEquals(Files.readAllBytes(first.get()), "/file".getBytes(
+				StandardCharsets.UTF_8));
+			Assert.assertEquals(Files.readAllBytes(second.get()), "/file".getBytes(
+				StandardCharsets.UTF_8));
+			Assert.assertEquals(requests.get(), 1);
+			Assert.assertEquals(manager.getStatistics().getCoalesced(), 1);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * The number of concurrent downloads from a host is bounded.
+	 */
+	@Test
+	public void connectionsPerHost() throws IOException, InterruptedException, ExecutionException
+	{
+		AtomicInteger maxActive = new AtomicInteger();
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(new AtomicInteger(), new AtomicInteger(),
+			maxActive))
+		{
+			DownloadManager manager = new DownloadManager(8, 2);
+			List<ListenableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 6; ++i)
+			{
+				futures.add(manager.submit(new Download(server.getUri("/" + i).toURL(),
+					directory.resolve(String.valueOf(i))).parallelism(1), Priority.NORMAL));
+			}
+			for (ListenableFuture<Path> future: futures)
+				future.get();
+			Assert.assertEquals(maxActive.get(), 2);
+			Assert.assertEquals(manager.getStatistics().getCompleted(), 6);
+			Assert.assertEquals(manager.getStatistics().getQueueDepth(), 0);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package org.pill;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests Download against a local HTTP server.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class DownloadTest
+{
+	/**
+	 * Starts an HTTP server that serves a file at {@code /file}, honoring {@code Range} requests.
+	 * <p/>
+	 * @param content the contents of the file
+	 * @param ranges the {@code Range} headers received by the server
+	 * @return the server
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static TestHttpServer startServer(final byte[] content, final List<String> ranges)
+		throws IOException
+	{
+		return new TestHttpServer("/file", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+				if (exchange.getRequestMethod().equals("HEAD"))
+				{
+					exchange.getResponseHeaders().add("Content-Length",
+						String.valueOf(content.length));
+					exchange.sendResponseHeaders(200, -1);
+					exchange.close();
+					return;
+				}
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				int first = 0;
+				int last = content.length - 1;
+				int code = 200;
+				if (range != null)
+				{
+					ranges.add(range);
+					String[] bounds = range.substring("bytes=".length()).split("-", -1);
+					first = Integer.parseInt(bounds[0]);
+					if (!bounds[1].isEmpty())
+						last = Integer.parseInt(bounds[1]);
+					code = 206;
+					exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last
+						+ "/" + content.length);
+				}
+				exchange.sendResponseHeaders(code, last + 1 - first);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(content, first, last + 1 - first);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param size the number of bytes to generate
+	 * @return random bytes
+	 */
+	private static byte[] randomBytes(int size)
+	{
+		byte[] result = new byte[size];
+		new Random(size).nextBytes(result);
+		return result;
+	}
+
+	/**
+	 * @param server an HTTP server
+	 * @return the URL of the file served by {@link #startServer(byte[], List)}
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static URL getUrl(TestHttpServer server) throws IOException
+	{
+		return server.getUri("/file").toURL();
+	}
+
+	@Test
+	public void download() throws IOException
+	{
+		byte[] content = randomBytes(100_000);
+		List<String> ranges = new CopyOnWriteArrayList<>();
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(content, ranges))
+		{
+			Path target = directory.resolve("file");
+			new Download(getUrl(server), target).parallelism(1).
+				checksum("SHA-256", Hashing.sha256().hashBytes(content).toString()).run();
+			Assert.assertEquals(Files.readAllBytes(target), content);
+			Assert.assertTrue(ranges.isEmpty(), ranges.toString());
+			Assert.assertFalse(Files.exists(target.resolveSibling("file.part")));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void checksumMismatch() throws IOException
+	{
+		byte[] content = randomBytes(1000);
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(content, new CopyOnWriteArrayList<String>()))
+		{
+			Path target = directory.resolve("file");
+			try
+			{
+				new Download(getUrl(server), target).checksum("SHA-1", "0000").run();
+				Assert.fail("Expected an IOException");
+			}
+			catch (IOException unused)
+			{
+				Assert.assertFalse(Files.exists(target));
+				Assert.assertFalse(Files.exists(target.resolveSibling("file.part")));
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * A missing file is reported as FileNotFoundException, so callers can tell it apart from other
+	 * failures.
+	 */
+	@Test
+	public void notFound() throws IOException
+	{
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(new byte[0], new CopyOnWriteArrayList<String>()))
+		{
+			Path target = directory.resolve("file");
+			URL missing = server.getUri("/missing").toURL();
+			try
+			{
+				new Download(missing, target).run();
+				Assert.fail("Expected a FileNotFoundException");
+			}
+			catch (FileNotFoundException unused)
+			{
+				Assert.assertFalse(Files.exists(target));
+				Assert.assertFalse(Files.exists(target.resolveSibling("file.part")));
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Resumes a partial download using a Range request.
+	 */
+	@Test
+	public void resume() throws IOException
+	{
+		byte[] content = randomBytes(100_000);
+		List<String> ranges = new CopyOnWriteArrayList<>();
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(content, ranges))
+		{
+			Path target = directory.resolve("file");
+			Files.write(target.resolveSibling("file.part"), Arrays.copyOf(content, 40_000));
+			new Download(getUrl(server), target).
+				checksum("SHA-1", Hashing.sha1().hashBytes(content).toString()).run();
+			Assert.assertEquals(Files.readAllBytes(target), content);
+			Assert.assertEquals(ranges, Arrays.asList("bytes=40000-"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Fetches a file using parallel ranges.
+	 */
+	@Test
+	public void parallelRanges() throws IOException
+	{
+		byte[] content = randomBytes(1_000_003);
+		List<String> ranges = new CopyOnWriteArrayList<>();
+		Path directory = Files.createTempDirectory(null);
+		try (TestHttpServer server = startServer(content, ranges))
+		{
+			Path target = directory.resolve("file");
+			new Download(getUrl(server), target).parallelism(4).rangeThreshold(0).
+				checksum("SHA-256", Hashing.sha256().hashBytes(content).toString()).run();
+			Assert.assertEquals(Files.readAllBytes(target), content);
+			Assert.assertEquals(ranges.size(), 4, ranges.toString());
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package org.pill;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests FileHasher.
+ * <p/>
+ * Changing a file's contents without changing its size or last-modified time is undetectable, so
+ * a hasher that returns the old digest of such a file must have remembered it.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class FileHasherTest
+{
+	/**
+	 * A last-modified time that lies well outside of {@link FileHasher#RACY_INTERVAL}, in
+	 * milliseconds since the epoch.
+	 */
+	private static final long PAST = TimeUnit.SECONDS.toMillis(
+		TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - TimeUnit.HOURS.toSeconds(1));
+
+	/**
+	 * @param file a file
+	 * @param content the contents to write
+	 * @param lastModified the last-modified time of the file, in milliseconds since the epoch
+	 * @return the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path write(Path file, String content, long lastModified) throws IOException
+	{
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+		return file;
+	}
+
+	/**
+	 * @param content a string
+	 * @return the SHA-1 digest of the string, in hexadecimal
+	 */
+	private static String sha1(String content)
+	{
+		return Hashing.sha1().hashString(content, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Copies a log that is held by another hasher, so it can be opened again.
+	 * <p/>
+	 * @param log the log
+	 * @param copy the path of the copy
+	 * @return the copy
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path copy(Path log, Path copy) throws IOException
+	{
+		Files.write(copy, Files.readAllBytes(log));
+		return copy;
+	}
+
+	/**
+	 * @param log a log
+	 * @return the offset of each record in the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static int[] getOffsets(Path log) throws IOException
+	{
+		ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(log));
+		int[] result = new int[0];
+		while (records.remaining() >= 4)
+		{
+			int start = records.position();
+			int length = records.getInt();
+			if (length == 0)
+				break;
+			result = Arrays.copyOf(result, result.length + 1);
+			result[result.length - 1] = start;
+			records.position(records.position() + length + 4);
+		}
+		return result;
+	}
+
+	/**
+	 * Digests are read back from the log.
+	 */
+	@Test
+	public void reopen() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path file = write(directory.resolve("file"), "first", PAST);
+			FileHasher hasher = new FileHasher(directory.resolve("hashes"));
+			Assert.assertEquals(hasher.hash(file), sha1("first"));
+
+			write(file, "other", PAST);
+			FileHasher reopened = new FileHasher(copy(directory.resolve("hashes"),
+				directory.resolve("copy")));
+			Assert.assertEquals(reopened.hash(file), sha1("first"));
+
+			write(file, "other", PAST + 1000);
+			Assert.assertEquals(reopened.hash(file), sha1("other"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Records following a corrupt or incomplete record are discarded, and new records overwrite
+	 * them.
+	 */
+	@Test
+	public void discardCorruptTail() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path first = write(directory.resolve("first"), "first", PAST);
+			Path second = write(directory.resolve("second"), "second", PAST);
+			Path third = write(directory.resolve("third"), "third", PAST);
+			FileHasher hasher = new FileHasher(directory.resolve("hashes"));
+			hasher.hash(first);
+			hasher.hash(second);
+			hasher.hash(third);
+			int[] offsets = getOffsets(directory.resolve("hashes"));
+			Assert.assertEquals(offsets.length, 3);
+
+			write(first, "FIRST", PAST);
+			write(second, "SECOND", PAST);
+			write(third, "THIRD", PAST);
+
+			// Corrupt the second record
+			byte[] corrupt = Files.readAllBytes(directory.resolve("hashes"));
+			corrupt[offsets[2] - 5] ^= 1;
+			Files.write(directory.resolve("corrupt"), corrupt);
+			FileHasher reopened = new FileHasher(directory.resolve("corrupt"));
+			Assert.assertEquals(reopened.hash(first), sha1("first"));
+			Assert.assertEquals(reopened.hash(third), sha1("THIRD"));
+			Assert.assertEquals(reopened.hash(second), sha1("SECOND"));
+			Assert.assertEquals(getOffsets(directory.resolve("corrupt")).length, 3);
+
+			FileHasher repaired = new FileHasher(copy(directory.resolve("corrupt"),
+				directory.resolve("repaired")));
+			write(third, "third", PAST);
+			Assert.assertEquals(repaired.hash(third), sha1("THIRD"));
+			Assert.assertEquals(repaired.hash(second), sha1("SECOND"));
+
+			// Truncate the third record
+			write(third, "THIRD", PAST);
+			Files.write(directory.resolve("truncated"), Arrays.copyOf(
+				Files.readAllBytes(directory.resolve("hashes")), offsets[2] + 10));
+			reopened = new FileHasher(directory.resolve("truncated"));
+			Assert.assertEquals(reopened.hash(second), sha1("second"));
+			Assert.assertEquals(reopened.hash(third), sha1("THIRD"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Compaction keeps only the latest record of each file.
+	 */
+	@Test
+	public void compact() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path file = directory.resolve("file");
+			FileHasher hasher = new FileHasher(directory.resolve("hashes"));
+			int count = 1100;
+			for (int i = 0; i < count; ++i)
+			{
+				write(file, "version" + i, PAST + TimeUnit.SECONDS.toMillis(i));
+				Assert.assertEquals(hasher.hash(file), sha1("version" + i));
+			}
+			Assert.assertEquals(getOffsets(directory.resolve("hashes")).length, count);
+
+			String last = "version" + (count - 1);
+			write(file, last.toUpperCase(), PAST + TimeUnit.SECONDS.toMillis(count - 1));
+			FileHasher reopened = new FileHasher(copy(directory.resolve("hashes"),
+				directory.resolve("copy")));
+			Assert.assertEquals(reopened.hash(file), sha1(last));
+			Assert.assertEquals(getOffsets(directory.resolve("copy")).length, 1);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Files modified within RACY_INTERVAL of being hashed are not remembered.
+	 */
+	@Test
+	public void racyModification() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			long now = System.currentTimeMillis();
+			Path file = write(directory.resolve("file"), "first", now);
+			FileHasher hasher = new FileHasher(directory.resolve("hashes"));
+			Assert.assertEquals(hasher.hash(file), sha1("first"));
+
+			write(file, "other", now);
+			Assert.assertEquals(hasher.hash(file), sha1("other"));
+			Assert.assertEquals(getOffsets(directory.resolve("hashes")).length, 0);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * If another hasher holds the log, digests are remembered in memory only.
+	 */
+	@Test
+	public void logInUse() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path first = write(directory.resolve("first"), "first", PAST);
+			Path second = write(directory.resolve("second"), "second", PAST);
+			FileHasher owner = new FileHasher(directory.resolve("hashes"));
+			owner.hash(first);
+			byte[] before = Files.readAllBytes(directory.resolve("hashes"));
+
+			FileHasher hasher = new FileHasher(directory.resolve("hashes"));
+			Assert.assertEquals(hasher.hash(second), sha1("second"));
+			Assert.assertEquals(Files.readAllBytes(directory.resolve("hashes")), before);
+
+			write(first, "FIRST", PAST);
+			write(second, "SECOND", PAST);
+			Assert.assertEquals(hasher.hash(first), sha1("FIRST"));
+			Assert.assertEquals(hasher.hash(second), sha1("second"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
@@ -2,15 +2,25 @@ package org.pill;
 
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.pill.repository.Repository;
 import org.pill.repository.local.LocalRepository;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 /**
@@ -18,6 +28,159 @@ import org.testng.annotations.Test;
  */
 public class JavaCompilerTest
 {
+	/**
+	 * A repository containing a single release, which records the classes that are looked up.
+	 */
+	private static final class StubRepository implements InvocationHandler
+	{
+		private final Release release;
+		private final String className;
+		public final List<String> lookups = new ArrayList<>();
+		public final Repository proxy = (Repository) Proxy.newProxyInstance(
+			JavaCompilerTest.class.getClassLoader(), new Class<?>[]
+			{
+				Repository.class
+			}, this);
+
+		/**
+		 * Creates a new StubRepository.
+		 * <p/>
+		 * @param release the release
+		 * @param className the name of the class that the release contains
+		 */
+		StubRepository(Release release, String className)
+		{
+			this.release = release;
+			this.className = className;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName())
+			{
+				case "getReleasesByClass":
+				{
+					lookups.add((String) args[0]);
+					if (args[0].equals(className))
+						return Collections.singletonList(release.getUri());
+					return Collections.emptyList();
+				}
+				case "getReleasesByPackage":
+					return Collections.emptyList();
+				case "getReleases":
+				{
+					if (!(args[0] instanceof Set))
+						break;
+					return Collections.singletonMap(release.getUri(), release);
+				}
+			}
+			throw new UnsupportedOperationException(method.toString());
+		}
+	}
+
+	/**
+	 * Writes a source file, creating its parent directories if necessary.
+	 * <p/>
+	 * @param file the file to write to
+	 * @param lines the lines of the file
+	 * @return {@code file}
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path write(Path file, String... lines) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		return Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compiles {@code library.Greeting} into an archive.
+	 * <p/>
+	 * @param directory the directory to build the archive in
+	 * @return the archive
+	 * @throws IOException if an I/O error occurs
+	 * @throws CompilationException if the library could not be compiled
+	 */
+	private static Path newLibrary(Path directory) throws IOException, CompilationException
+	{
+		Path source = write(directory.resolve("library/src/library/Greeting.java"),
+			"package library;",
+			"public class Greeting { public static String get() { return \"hello\"; } }");
+		Path classes = Files.createDirectories(directory.resolve("library/classes"));
+		new JavaCompiler().run(Collections.singletonList(source), classes);
+
+		Path result = directory.resolve("library/library.jar");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(result)))
+		{
+			out.putNextEntry(new ZipEntry("library/Greeting.class"));
+			Files.copy(classes.resolve("library/Greeting.class"), out);
+		}
+		return result;
+	}
+
+	/**
+	 * Missing packages are resolved to releases in the repository. The files that reported errors,
+	 * or whose classes were not written, are compiled again against the resolved releases.
+	 */
+	@Test
+	public void autoResolve() throws IOException, CompilationException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path library = newLibrary(directory);
+			StubRepository repository = new StubRepository(new ReleaseImpl(library.toUri(),
+				new Module("library"), "1.0", "library.jar", Collections.<Dependency>emptySet()),
+				"library.Greeting");
+			List<Path> sourceFiles = ImmutableList.of(
+				write(directory.resolve("src/application/Application.java"),
+					"package application;",
+					"import library.Greeting;",
+					"public class Application { String greeting = Greeting.get(); }"),
+				write(directory.resolve("src/application/Independent.java"),
+					"package application;",
+					"public class Independent {}"));
+			Path target = Files.createDirectories(directory.resolve("classes"));
+			Path dependencies = directory.resolve("dependencies");
+			new JavaCompiler().autoResolve(repository.proxy, dependencies).run(sourceFiles, target);
+
+			Assert.assertEquals(repository.lookups, Collections.singletonList("library.Greeting"));
+			Assert.assertTrue(Files.exists(dependencies.resolve("library.jar")));
+			Assert.assertTrue(Files.exists(target.resolve("application/Application.class")));
+			Assert.assertTrue(Files.exists(target.resolve("application/Independent.class")));
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Compilation fails if the repository does not contain the missing classes.
+	 */
+	@Test(expectedExceptions = CompilationException.class)
+	public void autoResolveMissing() throws IOException, CompilationException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			StubRepository repository = new StubRepository(new ReleaseImpl(directory.toUri(),
+				new Module("library"), "1.0", "library.jar", Collections.<Dependency>emptySet()),
+				"library.Greeting");
+			Path source = write(directory.resolve("src/application/Application.java"),
+				"package application;",
+				"import missing.Greeting;",
+				"public class Application {}");
+			Path target = Files.createDirectories(directory.resolve("classes"));
+			new JavaCompiler().autoResolve(repository.proxy, directory.resolve("dependencies")).
+				run(Collections.singletonList(source), target);
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
 	@Test
 	public void classpathUsed() throws IOException, CompilationException
 	{
@@ -0,0 +1,139 @@
+package org.pill;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests LinkStore.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class LinkStoreTest
+{
+	/**
+	 * @param file the release file
+	 * @return a release whose contents are located at {@code file}
+	 */
+	private static Release newRelease(Path file)
+	{
+		return new ReleaseImpl(file.toUri(), new Module("module"), "1.0",
+			file.getFileName().toString(), Collections.<Dependency>emptySet());
+	}
+
+	/**
+	 * @param directory a directory
+	 * @return the number of files in the directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static int count(Path directory) throws IOException
+	{
+		int result = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+		{
+			for (Path unused: files)
+				++result;
+		}
+		return result;
+	}
+
+	/**
+	 * Releases with identical contents share a single copy, which is deleted along with the last
+	 * release.
+	 */
+	@Test
+	public void sharedContents() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LinkStore store = new LinkStore(directory.resolve("store"));
+			Path first = Files.write(directory.resolve("first.jar"),
+				"contents".getBytes(StandardCharsets.UTF_8));
+			Path second = Files.write(directory.resolve("second.jar"),
+				"contents".getBytes(StandardCharsets.UTF_8));
+			Release firstRelease = newRelease(first);
+			Release secondRelease = newRelease(second);
+			Path stored = store.store(firstRelease, first);
+			Assert.assertEquals(store.store(secondRelease, second), stored);
+			Assert.assertEquals(store.store(firstRelease, first), stored);
+			Assert.assertEquals(count(directory.resolve("store/objects")), 1);
+
+			store.remove(firstRelease.getUri());
+			Assert.assertTrue(Files.exists(stored));
+			store.remove(secondRelease.getUri());
+			Assert.assertFalse(Files.exists(stored));
+			Assert.assertEquals(count(directory.resolve("store/objects")), 0);
+			Assert.assertEquals(count(directory.resolve("store/releases")), 0);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * A release that is re-imported with different contents replaces the old contents.
+	 */
+	@Test
+	public void changedContents() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LinkStore store = new LinkStore(directory.resolve("store"));
+			Path file = Files.write(directory.resolve("release.jar"),
+				"old".getBytes(StandardCharsets.UTF_8));
+			Release release = newRelease(file);
+			Path oldContents = store.store(release, file);
+
+			Files.write(file, "new".getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).
+				toMillis() + 1000));
+			Path newContents = store.store(release, file);
+			Assert.assertFalse(newContents.equals(oldContents));
+			Assert.assertEquals(new String(Files.readAllBytes(newContents), StandardCharsets.UTF_8),
+				"new");
+			Assert.assertFalse(Files.exists(oldContents));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Materialized files are hard links to the stored contents, and survive the removal of the
+	 * release.
+	 */
+	@Test
+	public void materializeHardLink() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LinkStore store = new LinkStore(directory.resolve("store"));
+			Path file = Files.write(directory.resolve("release.jar"),
+				"contents".getBytes(StandardCharsets.UTF_8));
+			Release release = newRelease(file);
+			Path target = directory.resolve("target.jar");
+			Assert.assertTrue(store.materialize(release, file, target, false, true, false));
+			Assert.assertTrue(Files.isSameFile(store.store(release, file), target));
+			Assert.assertFalse(store.materialize(release, file, target, false, false, true));
+
+			store.remove(release.getUri());
+			Assert.assertEquals(new String(Files.readAllBytes(target), StandardCharsets.UTF_8),
+				"contents");
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
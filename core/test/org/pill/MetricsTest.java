@@ -0,0 +1,474 @@
+package org.pill;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests Metrics.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class MetricsTest
+{
+	/**
+	 * A strict JSON parser. Objects are returned as Maps, arrays as Lists and numbers as Doubles.
+	 */
+	private static class JsonParser
+	{
+		private final String text;
+		private int position;
+
+		/**
+		 * Creates a new JsonParser.
+		 * <p/>
+		 * @param text the JSON text
+		 */
+		JsonParser(String text)
+		{
+			this.text = text;
+		}
+
+		/**
+		 * @return the value of the JSON text
+		 * @throws IllegalArgumentException if the text is not valid JSON
+		 */
+		public Object parse()
+		{
+			Object result = parseValue();
+			skipWhitespace();
+			if (position != text.length())
+				throw error("Unexpected trailing characters");
+			return result;
+		}
+
+		/**
+		 * @return the value at the current position
+		 */
+		private Object parseValue()
+		{
+			skipWhitespace();
+			if (position == text.length())
+				throw error("Unexpected end of input");
+			char c = text.charAt(position);
+			switch (c)
+			{
+				case '{':
+					return parseObject();
+				case '[':
+					return parseArray();
+				case '"':
+					return parseString();
+				case 't':
+					expect("true");
+					return true;
+				case 'f':
+					expect("false");
+					return false;
+				case 'n':
+					expect("null");
+					return null;
+				default:
+					return parseNumber();
+			}
+		}
+
+		/**
+		 * @return the object at the current position
+		 */
+		private Map<String, Object> parseObject()
+		{
+			Map<String, Object> result = new LinkedHashMap<>();
+			expect("{");
+			skipWhitespace();
+			if (text.startsWith("}", position))
+			{
+				++position;
+				return result;
+			}
+			while (true)
+			{
+				skipWhitespace();
+				String key = parseString();
+				skipWhitespace();
+				expect(":");
+				if (result.put(key, parseValue()) != null)
+					throw error("Duplicate key: " + key);
+				skipWhitespace();
+				if (text.startsWith("}", position))
+				{
+					++position;
+					return result;
+				}
+				expect(",");
+			}
+		}
+
+		/**
+		 * @return the array at the current position
+		 */
+		private List<Object> parseArray()
+		{
+			List<Object> result = new ArrayList<>();
+			expect("[");
+			skipWhitespace();
+			if (text.startsWith("]", position))
+			{
+				++position;
+				return result;
+			}
+			while (true)
+			{
+				result.add(parseValue());
+				skipWhitespace();
+				if (text.startsWith("]", position))
+				{
+					++position;
+					return result;
+				}
+				expect(",");
+			}
+		}
+
+		/**
+		 * @return the string at the current position
+		 */
+		private String parseString()
+		{
+			expect("\"");
+			StringBuilder result = new StringBuilder();
+			while (true)
+			{
+				if (position == text.length())
+					throw error("Unterminated string");
+				char c = text.charAt(position++);
+				if (c == '"')
+					return result.toString();
+				if (c < 0x20)
+					throw error("Unescaped control character");
+				if (c != '\\')
+				{
+					result.append(c);
+					continue;
+				}
+				if (position == text.length())
+					throw error("Unterminated escape sequence");
+				c = text.charAt(position++);
+				switch (c)
+				{
+					case '"':
+					case '\\':
+					case '/':
+						result.append(c);
+						break;
+					case 'b':
+						result.append('\b');
+						break;
+					case 'f':
+						result.append('\f');
+						break;
+					case 'n':
+						result.append('\n');
+						break;
+					case 'r':
+						result.append('\r');
+						break;
+					case 't':
+						result.append('\t');
+						break;
+					case 'u':
+					{
+						if (position + 4 > text.length())
+							throw error("Truncated unicode escape");
+						result.append((char) Integer.parseInt(text.substring(position,
+							position + 4), 16));
+						position += 4;
+						break;
+					}
+					default:
+						throw error("Invalid escape sequence: \\" + c);
+				}
+			}
+		}
+
+		/**
+		 * @return the number at the current position
+		 */
+		private Double parseNumber()
+		{
+			int start = position;
+			while (position < text.length()
+				&& "+-0123456789.eE".indexOf(text.charAt(position)) != -1)
+			{
+				++position;
+			}
+			String number = text.substring(start, position);
+			if (!number.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?"))
+				throw error("Invalid number: " + number);
+			return Double.valueOf(number);
+		}
+
+		/**
+		 * Consumes a token.
+		 * <p/>
+		 * @param token the expected token
+		 */
+		private void expect(String token)
+		{
+			if (!text.startsWith(token, position))
+				throw error("Expected " + token);
+			position += token.length();
+		}
+
+		/**
+		 * Skips over whitespace.
+		 */
+		private void skipWhitespace()
+		{
+			while (position < text.length() && " \t\r\n".indexOf(text.charAt(position)) != -1)
+				++position;
+		}
+
+		/**
+		 * @param message a description of the error
+		 * @return an exception describing a syntax error at the current position
+		 */
+		private IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException(message + " at offset " + position);
+		}
+	}
+
+	/**
+	 * Records an operation on a new thread.
+	 * <p/>
+	 * @param metrics the metrics to record the operation in
+	 * @param threadName the name of the thread
+	 * @param name the name of the operation
+	 * @throws InterruptedException if the thread is interrupted while waiting for the operation
+	 */
+	private static void recordOnThread(final Metrics metrics, String threadName,
+		final String name) throws InterruptedException
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				metrics.record(name, System.nanoTime(), 1000);
+			}
+		}, threadName);
+		thread.start();
+		thread.join();
+	}
+
+	/**
+	 * Writes the trace of a Metrics and parses it.
+	 * <p/>
+	 * @param metrics the metrics
+	 * @return the trace
+	 * @throws IOException if an I/O error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> getTrace(Metrics metrics) throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path path = directory.resolve("trace/trace.json");
+			metrics.writeTrace(path);
+			return (Map<String, Object>) new JsonParser(new String(Files.readAllBytes(path),
+				StandardCharsets.UTF_8)).parse();
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * @param trace a trace
+	 * @param phase the phase of the events to return, e.g. {@code "X"} for spans
+	 * @return the trace events of the phase
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> getEvents(Map<String, Object> trace, String phase)
+	{
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (Object event: (List<Object>) trace.get("traceEvents"))
+		{
+			Map<String, Object> map = (Map<String, Object>) event;
+			if (map.get("ph").equals(phase))
+				result.add(map);
+		}
+		return result;
+	}
+
+	/**
+	 * Every value falls within a bucket whose upper bound is no more than 1/8 larger.
+	 */
+	@Test
+	public void histogramBuckets()
+	{
+		for (int i = 0; i < 8; ++i)
+		{
+			Assert.assertEquals(Metrics.Histogram.getIndex(i), i);
+			Assert.assertEquals(Metrics.Histogram.getUpperBound(i), i);
+		}
+		Assert.assertEquals(Metrics.Histogram.getIndex(8), 8);
+		Assert.assertEquals(Metrics.Histogram.getIndex(16), 16);
+		Assert.assertEquals(Metrics.Histogram.getIndex(17), 16);
+		Assert.assertEquals(Metrics.Histogram.getIndex(18), 17);
+		Assert.assertEquals(Metrics.Histogram.getUpperBound(16), 17);
+
+		List<Long> values = new ArrayList<>();
+		for (long value = 0; value < 100000; ++value)
+			values.add(value);
+		for (int shift = 17; shift < 63; ++shift)
+		{
+			values.add((1L << shift) - 1);
+			values.add(1L << shift);
+			values.add((1L << shift) + 1);
+		}
+		values.add(Long.MAX_VALUE);
+		for (long value: values)
+		{
+			int index = Metrics.Histogram.getIndex(value);
+			long upperBound = Metrics.Histogram.getUpperBound(index);
+			Assert.assertTrue(upperBound >= value, value + " > " + upperBound);
+			Assert.assertTrue(upperBound - value <= value / 8, value + " -> " + upperBound);
+			Assert.assertEquals(Metrics.Histogram.getIndex(upperBound), index);
+			if (upperBound != Long.MAX_VALUE)
+				Assert.assertEquals(Metrics.Histogram.getIndex(upperBound + 1), index + 1);
+		}
+	}
+
+	/**
+	 * Percentiles are reported as the upper bound of their bucket, but no more than the maximum.
+	 */
+	@Test
+	public void percentiles()
+	{
+		Metrics metrics = new Metrics(false);
+		for (int i = 1; i <= 100; ++i)
+			metrics.record("uniform", 0, i);
+		LatencyStatistics uniform = metrics.getLatencies().get("uniform");
+		Assert.assertEquals(uniform.getCount(), 100);
+		Assert.assertEquals(uniform.getTotalNanos(), 5050);
+		Assert.assertEquals(uniform.getMinNanos(), 1);
+		Assert.assertEquals(uniform.getMaxNanos(), 100);
+		Assert.assertEquals(uniform.getP50Nanos(), 51);
+		Assert.assertEquals(uniform.getP95Nanos(), 95);
+		Assert.assertEquals(uniform.getP99Nanos(), 100);
+
+		for (int i = 0; i < 980; ++i)
+			metrics.record("skewed", 0, 1000);
+		for (int i = 0; i < 20; ++i)
+			metrics.record("skewed", 0, 1000000);
+		LatencyStatistics skewed = metrics.getLatencies().get("skewed");
+		long bucket = Metrics.Histogram.getUpperBound(Metrics.Histogram.getIndex(1000));
+		Assert.assertEquals(skewed.getP50Nanos(), bucket);
+		Assert.assertEquals(skewed.getP95Nanos(), bucket);
+		Assert.assertEquals(skewed.getP99Nanos(), 1000000);
+
+		metrics.record("negative", 0, -5);
+		Assert.assertEquals(metrics.getLatencies().get("negative").getP99Nanos(), 0);
+	}
+
+	/**
+	 * Spans beyond the limit are dropped and counted, but their latency is still recorded.
+	 */
+	@Test
+	public void dropSpans() throws IOException
+	{
+		Metrics metrics = new Metrics(true, 3);
+		for (int i = 0; i < 5; ++i)
+			metrics.start("Test.operation").close();
+		Assert.assertEquals(metrics.getCounters().get("Metrics.droppedSpans"), Long.valueOf(2));
+		Assert.assertEquals(metrics.getLatencies().get("Test.operation").getCount(), 5);
+		Assert.assertEquals(getEvents(getTrace(metrics), "X").size(), 3);
+
+		metrics.reset();
+		metrics.start("Test.operation").close();
+		Map<String, Object> trace = getTrace(metrics);
+		Assert.assertEquals(getEvents(trace, "X").size(), 1);
+		Assert.assertTrue(getEvents(trace, "C").isEmpty());
+	}
+
+	/**
+	 * Spans are not recorded unless tracing is enabled.
+	 */
+	@Test
+	public void tracingDisabled() throws IOException
+	{
+		Metrics metrics = new Metrics(false);
+		metrics.start("Test.operation").close();
+		Assert.assertTrue(getEvents(getTrace(metrics), "X").isEmpty());
+
+		metrics.setTracing(true);
+		metrics.start("Test.operation").close();
+		Assert.assertEquals(getEvents(getTrace(metrics), "X").size(), 1);
+	}
+
+	/**
+	 * The trace is valid JSON, even if names contain characters that must be escaped.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void writeTrace() throws IOException, InterruptedException
+	{
+		Metrics metrics = new Metrics(true);
+		String name = "Test.\"quoted\\\"\n\u0001";
+		recordOnThread(metrics, "worker \"1\"", name);
+		metrics.add("Test.counter", 42);
+		Map<String, Object> trace = getTrace(metrics);
+		Assert.assertEquals(trace.get("displayTimeUnit"), "ms");
+
+		List<Map<String, Object>> threads = getEvents(trace, "M");
+		Assert.assertEquals(threads.size(), 1);
+		Assert.assertEquals(((Map<String, Object>) threads.get(0).get("args")).get("name"),
+			"worker \"1\"");
+
+		List<Map<String, Object>> spans = getEvents(trace, "X");
+		Assert.assertEquals(spans.size(), 1);
+		Map<String, Object> span = spans.get(0);
+		Assert.assertEquals(span.get("name"), name);
+		Assert.assertEquals(span.get("cat"), "Test");
+		Assert.assertEquals(span.get("tid"), threads.get(0).get("tid"));
+		Assert.assertEquals(span.get("dur"), 1.0);
+
+		List<Map<String, Object>> counters = getEvents(trace, "C");
+		Assert.assertEquals(counters.size(), 1);
+		Assert.assertEquals(counters.get(0).get("name"), "Test.counter");
+		Assert.assertEquals(((Map<String, Object>) counters.get(0).get("args")).get("value"),
+			42.0);
+
+		Map<String, Object> latencies = (Map<String, Object>) trace.get("latencies");
+		Assert.assertEquals(((Map<String, Object>) latencies.get(name)).get("count"), 1.0);
+	}
+
+	/**
+	 * Resetting the metrics discards the names of the threads that recorded spans.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void resetThreadNames() throws IOException, InterruptedException
+	{
+		Metrics metrics = new Metrics(true);
+		recordOnThread(metrics, "first", "Test.operation");
+		metrics.reset();
+		recordOnThread(metrics, "second", "Test.operation");
+
+		List<Map<String, Object>> threads = getEvents(getTrace(metrics), "M");
+		Assert.assertEquals(threads.size(), 1);
+		Assert.assertEquals(((Map<String, Object>) threads.get(0).get("args")).get("name"),
+			"second");
+	}
+}
@@ -0,0 +1,160 @@
+package org.pill;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests Paths.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class PathsTest
+{
+	/**
+	 * Populates a directory with nested subdirectories and files.
+	 * <p/>
+	 * @param directory the directory to populate
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void populate(Path directory) throws IOException
+	{
+		for (int i = 0; i < 4; ++i)
+		{
+			Path child = Files.createDirectories(directory.resolve("child" + i).resolve("nested"));
+			Files.write(child.resolve("file.txt"), new byte[16]);
+			Files.write(child.getParent().resolve("file.txt"), new byte[16]);
+		}
+		Files.write(directory.resolve("file.txt"), new byte[16]);
+	}
+
+	/**
+	 * @param path an absolute path
+	 * @return the path, relative to the working directory
+	 */
+	private static Path relativize(Path path)
+	{
+		return java.nio.file.Paths.get("").toAbsolutePath().relativize(path);
+	}
+
+	@Test
+	public void deleteRecursively() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		populate(directory);
+		Paths.deleteRecursively(relativize(directory));
+		Assert.assertFalse(Files.exists(directory));
+	}
+
+	@Test
+	public void deleteRecursivelyInParallel() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		populate(directory);
+		Paths.deleteRecursivelyInParallel(relativize(directory));
+		Assert.assertFalse(Files.exists(directory));
+	}
+
+	/**
+	 * Deleting a path that does not exist is a no-op.
+	 */
+	@Test
+	public void deleteMissingPath() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		Files.delete(directory);
+		Paths.deleteRecursivelyInParallel(directory);
+		Assert.assertFalse(Files.exists(directory));
+	}
+
+	/**
+	 * The path is gone as soon as the method returns, and is deleted by the time the Future
+	 * completes.
+	 */
+	@Test
+	public void deleteRecursivelyInBackground()
+		throws IOException, InterruptedException, ExecutionException
+	{
+		Path parent = Files.createTempDirectory("pill");
+		try
+		{
+			Path directory = parent.resolve("target");
+			populate(directory);
+			Future<?> future = Paths.deleteRecursivelyInBackground(relativize(directory));
+			Assert.assertFalse(Files.exists(directory));
+			Files.createDirectory(directory);
+
+			future.get();
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(parent))
+			{
+				List<Path> remaining = new ArrayList<>();
+				for (Path child: children)
+					remaining.add(child.getFileName());
+				Assert.assertEquals(remaining, Collections.singletonList(
+					directory.getFileName()));
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(parent);
+		}
+	}
+
+	/**
+	 * Leftovers of an earlier deletion are deleted along with the path.
+	 */
+	@Test
+	public void deleteLeftovers() throws IOException, InterruptedException, ExecutionException
+	{
+		Path parent = Files.createTempDirectory("pill");
+		try
+		{
+			Path directory = parent.resolve("target");
+			populate(parent.resolve("target.deleted-leftover"));
+			Paths.deleteRecursivelyInBackground(directory).get();
+			Assert.assertFalse(Files.exists(parent.resolve("target.deleted-leftover")));
+		}
+		finally
+		{
+			Paths.deleteRecursively(parent);
+		}
+	}
+
+	/**
+	 * Deletions that overlap do not delete the same leftovers twice.
+	 */
+	@Test
+	public void overlappingDeletions()
+		throws IOException, InterruptedException, ExecutionException
+	{
+		Path parent = Files.createTempDirectory("pill");
+		try
+		{
+			Path directory = parent.resolve("target");
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; ++i)
+			{
+				populate(directory);
+				futures.add(Paths.deleteRecursivelyInBackground(directory));
+			}
+			for (Future<?> future: futures)
+				future.get();
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(parent))
+			{
+				Assert.assertFalse(children.iterator().hasNext());
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(parent);
+		}
+	}
+}
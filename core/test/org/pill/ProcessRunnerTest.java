@@ -0,0 +1,197 @@
+package org.pill;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests ProcessRunner and Processes.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ProcessRunnerTest
+{
+	/**
+	 * The number of seconds that long-running processes sleep for. Tests that complete sooner
+	 * prove that the process was destroyed.
+	 */
+	private static final int SLEEP_SECONDS = 30;
+
+	/**
+	 * An output stream that counts down a latch when the first byte is written to it.
+	 */
+	private static final class StartedStream extends ByteArrayOutputStream
+	{
+		public final CountDownLatch started = new CountDownLatch(1);
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len)
+		{
+			super.write(b, off, len);
+			started.countDown();
+		}
+	}
+
+	/**
+	 * @param script a shell script
+	 * @return a process that runs the script
+	 */
+	private static ProcessBuilder sh(String script)
+	{
+		return new ProcessBuilder("sh", "-c", script);
+	}
+
+	/**
+	 * @param stream a stream containing UTF-8 text
+	 * @return the text
+	 */
+	private static String toString(ByteArrayOutputStream stream)
+	{
+		return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Standard output and standard error are copied into separate streams, concurrently, so a
+	 * process that fills the standard error pipe does not block.
+	 */
+	@Test
+	public void separateStreams() throws InterruptedException, ExecutionException
+	{
+		ProcessRunner runner = new ProcessRunner(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		int exitCode = runner.start(sh("head -c 1000000 /dev/zero 1>&2; echo out; exit 3"), out,
+			err).get();
+		Assert.assertEquals(exitCode, 3);
+		Assert.assertEquals(toString(out), "out\n");
+		Assert.assertEquals(err.size(), 1_000_000);
+	}
+
+	/**
+	 * Processes that run past their timeout are destroyed, and fail with a TimeoutException.
+	 */
+	@Test
+	public void timeout() throws InterruptedException
+	{
+		ProcessRunner runner = new ProcessRunner(1);
+		long start = System.nanoTime();
+		ListenableFuture<Integer> result = runner.start(sh("exec sleep " + SLEEP_SECONDS),
+			new ByteArrayOutputStream(), new ByteArrayOutputStream(), 100, TimeUnit.MILLISECONDS);
+		try
+		{
+			result.get();
+			Assert.fail("Expected a TimeoutException");
+		}
+		catch (ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof TimeoutException, e.toString());
+		}
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(SLEEP_SECONDS / 2));
+	}
+
+	/**
+	 * Cancelling a running process destroys it, which frees its slot for the next process.
+	 */
+	@Test
+	public void cancel() throws InterruptedException, ExecutionException, TimeoutException
+	{
+		ProcessRunner runner = new ProcessRunner(1);
+		StartedStream out = new StartedStream();
+		ListenableFuture<Integer> sleeper = runner.start(sh("echo started; exec sleep "
+			+ SLEEP_SECONDS), out, new ByteArrayOutputStream());
+		Assert.assertTrue(out.started.await(SLEEP_SECONDS / 2, TimeUnit.SECONDS));
+		Assert.assertTrue(sleeper.cancel(true));
+
+		ListenableFuture<Integer> next = runner.start(sh("exit 0"), new ByteArrayOutputStream(),
+			new ByteArrayOutputStream());
+		Assert.assertEquals(next.get(SLEEP_SECONDS / 2, TimeUnit.SECONDS).intValue(), 0);
+	}
+
+	/**
+	 * Processes that are submitted while the maximum number of processes are running wait for them
+	 * to complete, and start in the order they were submitted.
+	 */
+	@Test
+	public void maxProcesses() throws InterruptedException, ExecutionException
+	{
+		ProcessRunner runner = new ProcessRunner(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<ListenableFuture<Integer>> results = new ArrayList<>();
+		for (int i = 1; i <= 3; ++i)
+		{
+			results.add(runner.start(sh("echo " + i + " start; sleep 0.2; echo " + i + " end"), out,
+				new ByteArrayOutputStream()));
+		}
+		for (ListenableFuture<Integer> result: results)
+			Assert.assertEquals(result.get().intValue(), 0);
+		Assert.assertEquals(toString(out), "1 start\n1 end\n2 start\n2 end\n3 start\n3 end\n");
+	}
+
+	/**
+	 * Processes.waitFor() merges standard error into standard output.
+	 */
+	@Test
+	public void waitFor() throws IOException, InterruptedException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(Processes.waitFor(sh("echo out; echo err 1>&2; exit 2"),
+			new PrintStream(out, true)), 2);
+		Assert.assertEquals(toString(out), "out\nerr\n");
+	}
+
+	/**
+	 * Interrupting a thread that is blocked in Processes.waitFor() destroys the process.
+	 */
+	@Test
+	public void waitForInterrupted() throws IOException, InterruptedException
+	{
+		final Thread thread = Thread.currentThread();
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			timer.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					thread.interrupt();
+				}
+			}, 200, TimeUnit.MILLISECONDS);
+			Processes.waitFor(sh("echo $$; exec sleep " + SLEEP_SECONDS), new PrintStream(out,
+				true));
+			Assert.fail("Expected an InterruptedException");
+		}
+		catch (InterruptedException unused)
+		{
+			// expected
+		}
+		finally
+		{
+			timer.shutdownNow();
+		}
+		String pid = toString(out).trim();
+		Assert.assertFalse(pid.isEmpty());
+
+		// The process is destroyed asynchronously
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SLEEP_SECONDS / 2);
+		while (Processes.waitFor(sh("kill -0 " + pid), new PrintStream(
+			new ByteArrayOutputStream())) == 0)
+		{
+			Assert.assertTrue(System.nanoTime() < deadline, "Process " + pid + " is still running");
+			Thread.sleep(50);
+		}
+	}
+}
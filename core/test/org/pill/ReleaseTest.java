@@ -99,4 +99,45 @@ public class ReleaseTest
 			4, 5, 6
 		});
 	}
+
+	/**
+	 * Materializes a release using a hard link to the link store.
+	 */
+	@Test
+	public void copyToLinkIfPossible() throws EntityExistsException, IOException
+	{
+		Repository localRepository = LocalRepository.getInstance();
+		Module module = localRepository.insertModule("com.google.common");
+		Path source = Files.createTempFile(null, null);
+		Files.write(source, new byte[]
+		{
+			1, 2, 3
+		}, StandardOpenOption.WRITE);
+		Release release = localRepository.insertRelease(module, "1.0", source).build();
+		Path store = Files.createTempDirectory(null);
+		Path target = Files.createTempDirectory(null);
+		String defaultStore = System.getProperty(LinkStore.DIRECTORY_PROPERTY);
+		System.setProperty(LinkStore.DIRECTORY_PROPERTY, store.toString());
+		try
+		{
+			release.copyTo(target, PerformanceCopyOption.LINK_IF_POSSIBLE);
+			Path copy = target.resolve(source.getFileName());
+			Assert.assertEquals(Files.readAllBytes(copy), new byte[]
+			{
+				1, 2, 3
+			});
+			Path stored = new LinkStore(store).store(release, java.nio.file.Paths.get(
+				release.getUri()));
+			Assert.assertTrue(Files.isSameFile(stored, copy));
+		}
+		finally
+		{
+			if (defaultStore == null)
+				System.clearProperty(LinkStore.DIRECTORY_PROPERTY);
+			else
+				System.setProperty(LinkStore.DIRECTORY_PROPERTY, defaultStore);
+			Paths.deleteRecursively(store);
+			Paths.deleteRecursively(target);
+		}
+	}
 }
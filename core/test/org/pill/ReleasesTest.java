@@ -0,0 +1,338 @@
+package org.pill;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests Releases.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ReleasesTest
+{
+	/**
+	 * A release backed by a file on the default file system.
+	 */
+	private static class FileRelease implements Release
+	{
+		private final Path file;
+		private final String version;
+		/**
+		 * The number of times that copyTo() was invoked.
+		 */
+		public final AtomicInteger copies = new AtomicInteger();
+
+		/**
+		 * Creates a new FileRelease.
+		 * <p/>
+		 * @param file the release file
+		 * @param version the release version
+		 */
+		FileRelease(Path file, String version)
+		{
+			this.file = file;
+			this.version = version;
+		}
+
+		@Override
+		public URI getUri()
+		{
+			return file.toUri();
+		}
+
+		@Override
+		public Module getModule()
+		{
+			return new Module("module");
+		}
+
+		@Override
+		public String getVersion()
+		{
+			return version;
+		}
+
+		@Override
+		public String getFilename()
+		{
+			return file.getFileName().toString();
+		}
+
+		@Override
+		public Set<Dependency> getDependencies()
+		{
+			return Collections.emptySet();
+		}
+
+		@Override
+		public void copyTo(Path directory, CopyOption... options) throws IOException
+		{
+			copies.incrementAndGet();
+			Files.copy(file, directory.resolve(getFilename()), options);
+		}
+
+		@Override
+		public String toString()
+		{
+			return file + " " + version;
+		}
+	}
+
+	/**
+	 * Records the progress notifications of copyAll().
+	 */
+	private static class ProgressRecorder implements Releases.ProgressListener
+	{
+		public final List<String> events = new ArrayList<>();
+		public final Thread thread = Thread.currentThread();
+
+		@Override
+		public void copied(Release release, int completed, int total)
+		{
+			Assert.assertSame(Thread.currentThread(), thread);
+			events.add(completed + "/" + total);
+		}
+	}
+
+	/**
+	 * @param directory the directory to create the file in
+	 * @param filename the filename
+	 * @param content the contents of the file
+	 * @return the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path write(Path directory, String filename, String content) throws IOException
+	{
+		Path result = Files.createDirectories(directory).resolve(filename);
+		Files.write(result, content.getBytes(StandardCharsets.UTF_8));
+		return result;
+	}
+
+	/**
+	 * Distinct releases with identical contents are copied once.
+	 */
+	@Test
+	public void identicalContents() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			FileRelease first = new FileRelease(write(directory.resolve("a"), "library.jar",
+				"contents"), "1.0");
+			FileRelease second = new FileRelease(write(directory.resolve("b"), "library.jar",
+				"contents"), "1.1");
+			Path target = Files.createDirectory(directory.resolve("target"));
+			ProgressRecorder listener = new ProgressRecorder();
+			Releases.copyAll(Arrays.asList(first, second, first), target, 2, listener);
+			Assert.assertEquals(first.copies.get() + second.copies.get(), 1);
+			Assert.assertEquals(listener.events, Collections.singletonList("1/1"));
+			Assert.assertEquals(new String(Files.readAllBytes(target.resolve("library.jar")),
+				StandardCharsets.UTF_8), "contents");
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Releases with different contents may not be copied to the same file.
+	 */
+	@Test
+	public void conflictingContents() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			FileRelease first = new FileRelease(write(directory.resolve("a"), "library.jar",
+				"first"), "1.0");
+			FileRelease second = new FileRelease(write(directory.resolve("b"), "library.jar",
+				"second"), "1.1");
+			Path target = Files.createDirectory(directory.resolve("target"));
+			try
+			{
+				Releases.copyAll(Arrays.asList(first, second), target);
+				Assert.fail("Expected an IllegalArgumentException");
+			}
+			catch (IllegalArgumentException unused)
+			{
+				// Nothing is copied
+				Assert.assertEquals(first.copies.get() + second.copies.get(), 0);
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Each copy is reported once, on the calling thread, and no more than {@code parallelism}
+	 * copies run at a time.
+	 */
+	@Test
+	public void boundedParallelism() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			final AtomicInteger running = new AtomicInteger();
+			final AtomicInteger maxRunning = new AtomicInteger();
+			List<Release> releases = new ArrayList<>();
+			for (int i = 0; i < 12; ++i)
+			{
+				releases.add(new FileRelease(write(directory.resolve("source"), i + ".jar",
+					String.valueOf(i)), "1.0")
+				{
+					@Override
+					public void copyTo(Path destination, CopyOption... options) throws IOException
+					{
+						int current = running.incrementAndGet();
+						while (true)
+						{
+							int max = maxRunning.get();
+							if (current <= max || maxRunning.compareAndSet(max, current))
+								break;
+						}
+						try
+						{
+							Thread.sleep(20);
+						}
+						catch (InterruptedException e)
+						{
+							throw new InterruptedIOException();
+						}
+						finally
+						{
+							running.decrementAndGet();
+						}
+						super.copyTo(destination, options);
+					}
+				});
+			}
+			Path target = Files.createDirectory(directory.resolve("target"));
+			ProgressRecorder listener = new ProgressRecorder();
+			Releases.copyAll(releases, target, 3, listener);
+
+			Assert.assertTrue(maxRunning.get() <= 3, "maxRunning: " + maxRunning.get());
+			List<String> expected = new ArrayList<>();
+			for (int i = 1; i <= releases.size(); ++i)
+				expected.add(i + "/" + releases.size());
+			Assert.assertEquals(listener.events, expected);
+			for (int i = 0; i < releases.size(); ++i)
+				Assert.assertTrue(Files.exists(target.resolve(i + ".jar")));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * A failed copy cancels the copies that are still running or queued.
+	 */
+	@Test
+	public void cancelOnFailure() throws IOException, InterruptedException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch interrupted = new CountDownLatch(1);
+			final AtomicInteger copies = new AtomicInteger();
+			Release blocked = new FileRelease(write(directory.resolve("source"), "blocked.jar",
+				"blocked"), "1.0")
+			{
+				@Override
+				public void copyTo(Path destination, CopyOption... options) throws IOException
+				{
+					copies.incrementAndGet();
+					started.countDown();
+					try
+					{
+						Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+					}
+					catch (InterruptedException e)
+					{
+						interrupted.countDown();
+						throw new InterruptedIOException();
+					}
+				}
+			};
+			Release failed = new FileRelease(write(directory.resolve("source"), "failed.jar",
+				"failed"), "1.0")
+			{
+				@Override
+				public void copyTo(Path destination, CopyOption... options) throws IOException
+				{
+					copies.incrementAndGet();
+					try
+					{
+						started.await();
+					}
+					catch (InterruptedException e)
+					{
+						throw new InterruptedIOException();
+					}
+					throw new IOException("Expected failure");
+				}
+			};
+			List<Release> releases = new ArrayList<>(Arrays.asList(blocked, failed));
+			for (int i = 0; i < 5; ++i)
+			{
+				// A pool thread may pick up a queued copy before the failure is handled
+				releases.add(new FileRelease(write(directory.resolve("source"), i + ".jar",
+					String.valueOf(i)), "1.0")
+				{
+					@Override
+					public void copyTo(Path destination, CopyOption... options) throws IOException
+					{
+						copies.incrementAndGet();
+						try
+						{
+							Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+						}
+						catch (InterruptedException e)
+						{
+							throw new InterruptedIOException();
+						}
+						super.copyTo(destination, options);
+					}
+				});
+			}
+			Path target = Files.createDirectory(directory.resolve("target"));
+			try
+			{
+				Releases.copyAll(releases, target, 2, new ProgressRecorder());
+				Assert.fail("Expected an IOException");
+			}
+			catch (IOException e)
+			{
+				Assert.assertEquals(e.getMessage(), "Expected failure");
+			}
+			Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+			Assert.assertTrue(copies.get() <= 3, "copies: " + copies.get());
+			for (int i = 0; i < 5; ++i)
+				Assert.assertFalse(Files.exists(target.resolve(i + ".jar")));
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
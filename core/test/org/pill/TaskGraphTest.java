@@ -0,0 +1,111 @@
+package org.pill;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests TaskGraph.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class TaskGraphTest
+{
+	/**
+	 * @param name the name of the task
+	 * @param log the list to append the name to when the task runs
+	 * @return a task that records its name
+	 */
+	private static Task record(final String name, final List<String> log)
+	{
+		return new Task()
+		{
+			@Override
+			public void run()
+			{
+				log.add(name);
+			}
+		};
+	}
+
+	/**
+	 * Tasks that read the output of other tasks run after them.
+	 */
+	@Test
+	public void inputsAndOutputs() throws IOException, CompilationException
+	{
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Path target = Paths.get("target");
+		TaskGraph graph = new TaskGraph();
+		graph.task("jar", record("jar", log)).inputs(target.resolve("classes")).
+			outputs(target.resolve("app.jar"));
+		graph.task("compile", record("compile", log)).inputs(Paths.get("src")).
+			outputs(target.resolve("classes"));
+		graph.task("copy", record("copy", log)).inputs(Paths.get("lib")).
+			outputs(target.resolve("classes/META-INF"));
+		graph.run();
+		Assert.assertEquals(log.size(), 3, log.toString());
+		Assert.assertEquals(log.get(2), "jar");
+		Assert.assertEquals(graph.getDurations().keySet().size(), 3);
+	}
+
+	/**
+	 * With a single thread, the task on the longest path runs first.
+	 */
+	@Test
+	public void criticalPathFirst() throws IOException, CompilationException
+	{
+		List<String> log = new ArrayList<>();
+		TaskGraph graph = new TaskGraph().parallelism(1);
+		graph.task("short", record("short", log)).cost(5);
+		graph.task("long", record("long", log)).cost(1);
+		graph.task("after-long", record("after-long", log)).dependsOn("long").cost(10);
+		graph.run();
+		Assert.assertEquals(log, Arrays.asList("long", "after-long", "short"));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void cycle() throws IOException, CompilationException
+	{
+		TaskGraph graph = new TaskGraph();
+		List<String> log = new ArrayList<>();
+		graph.task("first", record("first", log)).dependsOn("second");
+		graph.task("second", record("second", log)).dependsOn("first");
+		graph.run();
+	}
+
+	/**
+	 * A failing task prevents its dependents from running and its exception is rethrown.
+	 */
+	@Test
+	public void failure() throws CompilationException
+	{
+		List<String> log = new ArrayList<>();
+		TaskGraph graph = new TaskGraph();
+		graph.task("fail", new Task()
+		{
+			@Override
+			public void run() throws IOException
+			{
+				throw new IOException("expected");
+			}
+		});
+		graph.task("after", record("after", log)).dependsOn("fail");
+		try
+		{
+			graph.run();
+			Assert.fail("Expected an IOException");
+		}
+		catch (IOException e)
+		{
+			Assert.assertEquals(e.getMessage(), "expected");
+		}
+		Assert.assertTrue(log.isEmpty(), log.toString());
+	}
+}
@@ -0,0 +1,55 @@
+package org.pill;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An HTTP server listening on an ephemeral port of the loopback interface. Requests are served
+ * concurrently.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public final class TestHttpServer implements AutoCloseable
+{
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * Starts a new server.
+	 * <p/>
+	 * @param path the path of the requests to handle. Other requests are rejected with HTTP 404.
+	 * @param handler handles requests
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TestHttpServer(String path, HttpHandler handler) throws IOException
+	{
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(path, handler);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @param path an absolute path
+	 * @return the URI of the path on this server
+	 */
+	public URI getUri(String path)
+	{
+		return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	/**
+	 * Stops the server, aborting any requests in progress.
+	 */
+	@Override
+	public void close()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,239 @@
+package org.pill;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.pill.repository.Repository;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests TransitiveResolver.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class TransitiveResolverTest
+{
+	/**
+	 * A repository that serves releases from memory, and counts batch lookups.
+	 */
+	private static final class StubRepository implements InvocationHandler
+	{
+		private final Map<URI, Release> releases = new HashMap<>();
+		public int lookups;
+		public final Repository proxy = (Repository) Proxy.newProxyInstance(
+			TransitiveResolverTest.class.getClassLoader(), new Class<?>[]
+			{
+				Repository.class
+			}, this);
+
+		/**
+		 * Adds a release.
+		 * <p/>
+		 * @param id the release identifier, of the form {@code module:version}
+		 * @param dependencies the release's dependencies
+		 * @return the URI of the release
+		 */
+		public URI add(String id, Dependency... dependencies)
+		{
+			URI uri = toUri(id);
+			String[] tokens = id.split(":");
+			releases.put(uri, new ReleaseImpl(uri, new Module(tokens[0]), tokens[1], tokens[0]
+				+ ".jar", new LinkedHashSet<>(Arrays.asList(dependencies))));
+			return uri;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName())
+			{
+				case "getReleases":
+				{
+					if (!(args[0] instanceof Set))
+						break;
+					++lookups;
+					Map<URI, Release> result = new HashMap<>();
+					for (URI uri: (Set<URI>) args[0])
+					{
+						Release release = releases.get(uri);
+						if (release != null)
+							result.put(uri, release);
+					}
+					return result;
+				}
+				case "getResolution":
+				case "putResolution":
+					return null;
+			}
+			throw new UnsupportedOperationException(method.toString());
+		}
+	}
+
+	/**
+	 * @param id a release identifier, of the form {@code module:version}
+	 * @return the URI of the release
+	 */
+	private static URI toUri(String id)
+	{
+		return URI.create("test:" + id);
+	}
+
+	/**
+	 * @param id the identifier of the release to depend on, of the form {@code module:version}
+	 * @param type the type of dependency
+	 * @return a dependency on the release
+	 */
+	private static Dependency dependsOn(String id, DependencyType type)
+	{
+		String[] tokens = id.split(":");
+		return new Dependency(toUri(id), new Module(tokens[0]), tokens[1], type);
+	}
+
+	/**
+	 * @param releases the releases
+	 * @return the identifier of each release, of the form {@code module:version}
+	 */
+	private static String toString(List<Release> releases)
+	{
+		StringBuilder result = new StringBuilder();
+		for (Release release: releases)
+		{
+			if (result.length() > 0)
+				result.append(", ");
+			result.append(release.getModule().getName()).append(':').append(release.getVersion());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Creates a graph in which module {@code b} is referenced by two versions:
+	 * <pre>
+	 * root -BUILD-> a:1 -RUNTIME-> b:1 -RUNTIME-> c:1
+	 * root -BUILD-> d:1 -RUNTIME-> b:2 -RUNTIME-> e:1
+	 * </pre>
+	 * <p/>
+	 * @return the repository containing the graph
+	 */
+	private static StubRepository newConflict()
+	{
+		StubRepository result = new StubRepository();
+		result.add("root:1", dependsOn("a:1", DependencyType.BUILD),
+			dependsOn("d:1", DependencyType.BUILD));
+		result.add("a:1", dependsOn("b:1", DependencyType.RUNTIME));
+		result.add("d:1", dependsOn("b:2", DependencyType.RUNTIME));
+		result.add("b:1", dependsOn("c:1", DependencyType.RUNTIME));
+		result.add("b:2", dependsOn("e:1", DependencyType.RUNTIME));
+		result.add("c:1");
+		result.add("e:1");
+		return result;
+	}
+
+	/**
+	 * NEAREST selects the first version found, and drops dependencies that are only reachable
+	 * through the other version.
+	 */
+	@Test
+	public void nearest() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = newConflict();
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.NEAREST);
+		Assert.assertEquals(toString(resolver.resolve(Collections.singleton(toUri("root:1")),
+			DependencyType.BUILD)), "root:1, a:1, d:1, b:1, c:1");
+	}
+
+	/**
+	 * NEWEST selects the highest version, and drops dependencies that are only reachable through
+	 * the other version.
+	 */
+	@Test
+	public void newest() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = newConflict();
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.NEWEST);
+		Assert.assertEquals(toString(resolver.resolve(Collections.singleton(toUri("root:1")),
+			DependencyType.BUILD)), "root:1, a:1, d:1, b:2, e:1");
+	}
+
+	/**
+	 * FAIL rejects graphs that reference multiple versions of a module.
+	 */
+	@Test(expectedExceptions = DependencyConflictException.class)
+	public void fail() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = newConflict();
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.FAIL);
+		resolver.resolve(Collections.singleton(toUri("root:1")), DependencyType.BUILD);
+	}
+
+	/**
+	 * BUILD resolutions follow the build dependencies of the roots, then runtime dependencies.
+	 * RUNTIME resolutions only follow runtime dependencies.
+	 */
+	@Test
+	public void buildThenRuntime() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = new StubRepository();
+		repository.add("root:1", dependsOn("compiler:1", DependencyType.BUILD),
+			dependsOn("library:1", DependencyType.RUNTIME));
+		repository.add("compiler:1", dependsOn("parser:1", DependencyType.RUNTIME),
+			dependsOn("generator:1", DependencyType.BUILD));
+		repository.add("library:1", dependsOn("annotations:1", DependencyType.BUILD));
+		repository.add("parser:1");
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.NEAREST);
+		Assert.assertEquals(toString(resolver.resolve(Collections.singleton(toUri("root:1")),
+			DependencyType.BUILD)), "root:1, compiler:1, parser:1");
+		Assert.assertEquals(toString(resolver.resolve(Collections.singleton(toUri("root:1")),
+			DependencyType.RUNTIME)), "root:1, library:1");
+	}
+
+	/**
+	 * Each level of the graph is retrieved in a single batch, and releases are only retrieved once
+	 * per resolver.
+	 */
+	@Test
+	public void batchLookups() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = newConflict();
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.NEAREST);
+		resolver.resolve(Collections.singleton(toUri("root:1")), DependencyType.BUILD);
+		Assert.assertEquals(repository.lookups, 4);
+		Assert.assertEquals(toString(resolver.resolve(Arrays.asList(toUri("a:1"), toUri("d:1")),
+			DependencyType.RUNTIME)), "a:1, d:1, b:1, c:1");
+		Assert.assertEquals(repository.lookups, 4);
+	}
+
+	/**
+	 * Missing releases are reported.
+	 */
+	@Test(expectedExceptions = EntityNotFoundException.class)
+	public void missingRelease() throws EntityNotFoundException, DependencyConflictException,
+		IOException
+	{
+		StubRepository repository = new StubRepository();
+		repository.add("root:1", dependsOn("missing:1", DependencyType.RUNTIME));
+		TransitiveResolver resolver = new TransitiveResolver(repository.proxy,
+			StandardConflictPolicy.NEAREST);
+		resolver.resolve(Collections.singleton(toUri("root:1")), DependencyType.RUNTIME);
+	}
+}
@@ -0,0 +1,115 @@
+package org.pill.repository.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests ArchiveIndex.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ArchiveIndexTest
+{
+	/**
+	 * @return a ZIP file containing a stored file, compressed files and an empty directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	static byte[] newArchive() throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(result))
+		{
+			byte[] stored = "stored".getBytes(StandardCharsets.UTF_8);
+			ZipEntry entry = new ZipEntry("org/pill/Stored.txt");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(stored.length);
+			CRC32 crc = new CRC32();
+			crc.update(stored);
+			entry.setCrc(crc.getValue());
+			out.putNextEntry(entry);
+			out.write(stored);
+
+			out.putNextEntry(new ZipEntry("org/pill/empty/"));
+
+			out.putNextEntry(new ZipEntry("org/pill/deep/nested/Deflated.txt"));
+			byte[] deflated = new byte[10_000];
+			Arrays.fill(deflated, (byte) 'd');
+			out.write(deflated);
+
+			out.putNextEntry(new ZipEntry("Root.txt"));
+			out.write("root".getBytes(StandardCharsets.UTF_8));
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * The index contains every file, as well as explicit and implicit directories.
+	 */
+	@Test
+	public void entries() throws IOException
+	{
+		ArchiveIndex index = ArchiveIndex.read(new ByteArrayByteChannel(newArchive()));
+		Assert.assertEquals(index.getEntries().keySet(), new HashSet<>(Arrays.asList(
+			"org/pill/Stored.txt", "org/pill/deep/nested/Deflated.txt", "Root.txt")));
+		Assert.assertTrue(index.isDirectory(""));
+		Assert.assertTrue(index.isDirectory("org"));
+		Assert.assertTrue(index.isDirectory("org/pill/empty"));
+		Assert.assertTrue(index.isDirectory("org/pill/deep/nested"));
+		Assert.assertFalse(index.isDirectory("org/pill/Stored.txt"));
+		Assert.assertNull(index.getEntry("org/pill"));
+
+		Assert.assertEquals(new HashSet<>(index.list("")), new HashSet<>(Arrays.asList("org",
+			"Root.txt")));
+		Assert.assertEquals(new HashSet<>(index.list("org/pill")), new HashSet<>(Arrays.asList(
+			"empty", "deep", "Stored.txt")));
+		Assert.assertTrue(index.list("org/pill/empty").isEmpty());
+		Assert.assertEquals(index.getEntry("org/pill/deep/nested/Deflated.txt").getSize(), 10_000);
+	}
+
+	/**
+	 * Stored and compressed files are read without modifying the position of the channel.
+	 */
+	@Test
+	public void readEntries() throws IOException
+	{
+		ByteArrayByteChannel channel = new ByteArrayByteChannel(newArchive());
+		ArchiveIndex index = ArchiveIndex.read(channel);
+		channel.position(5);
+
+		Assert.assertEquals(new String(index.read(index.getEntry("org/pill/Stored.txt"), channel),
+			StandardCharsets.UTF_8), "stored");
+		byte[] expected = new byte[10_000];
+		Arrays.fill(expected, (byte) 'd');
+		Assert.assertEquals(index.read(index.getEntry("org/pill/deep/nested/Deflated.txt"),
+			channel), expected);
+		Assert.assertEquals(channel.position(), 5);
+	}
+
+	/**
+	 * Listing a missing directory fails.
+	 */
+	@Test(expectedExceptions = NoSuchFileException.class)
+	public void listMissingDirectory() throws IOException
+	{
+		ArchiveIndex index = ArchiveIndex.read(new ByteArrayByteChannel(newArchive()));
+		index.list("org/pill/Stored.txt");
+	}
+
+	/**
+	 * Files without a central directory are rejected.
+	 */
+	@Test(expectedExceptions = IOException.class)
+	public void notAnArchive() throws IOException
+	{
+		ArchiveIndex.read(new ByteArrayByteChannel(new byte[100]));
+	}
+}
@@ -10,6 +10,12 @@ import java.security.ProviderException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import javax.sql.DataSource;
+import org.pill.repository.local.storage.ContentStore;
+import org.pill.repository.local.storage.H2ContentStore;
+import org.pill.repository.local.storage.H2MetadataStore;
+import org.pill.repository.local.storage.MetadataStore;
+import org.pill.repository.local.storage.ReleaseWriter;
+import org.pill.sql.ReadOnly;
 import org.pill.sql.Session;
 
 /**
@@ -22,7 +28,12 @@ public class GuiceConfig extends AbstractModule
 	@Override
 	protected void configure()
 	{
+		bind(MetadataStore.class).to(H2MetadataStore.class);
+		bind(ContentStore.class).to(H2ContentStore.class);
+		bind(ReleaseWriter.class).to(H2MetadataStore.class);
 		bind(Session.class).toProvider(SessionProvider.class).in(ServletScopes.REQUEST);
+		bind(Session.class).annotatedWith(ReadOnly.class).toProvider(ReadOnlySessionProvider.class).
+			in(ServletScopes.REQUEST);
 		bind(Connection.class).toProvider(ConnectionProvider.class);
 		install(new ServletModule());
 	}
@@ -122,4 +133,41 @@ public class GuiceConfig extends AbstractModule
 			}
 		}
 	}
+
+	/**
+	 * Provides a database Session for operations that only read from the database.
+	 */
+	@SuppressWarnings("PublicInnerClass")
+	public static class ReadOnlySessionProvider implements Provider<Session>
+	{
+		private final DataSource dataSource;
+
+		/**
+		 * Creates a new ReadOnlySessionProvider.
+		 * <p/>
+		 * @param dataSource the DataSource
+		 * @throws NullPointerException if dataSource is null
+		 */
+		@Inject
+		public ReadOnlySessionProvider(DataSource dataSource)
+		{
+			this.dataSource = dataSource;
+		}
+
+		@Override
+		public Session get()
+		{
+			try
+			{
+				Connection connection = dataSource.getConnection();
+				connection.setAutoCommit(false);
+				connection.setReadOnly(true);
+				return new Session(connection, new H2Templates());
+			}
+			catch (SQLException e)
+			{
+				throw new ProviderException(e);
+			}
+		}
+	}
 }
@@ -1,19 +1,38 @@
 package org.pill.repository.local;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.logging.Handler;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.pill.Dependency;
+import org.pill.DependencyConflictException;
+import org.pill.DependencyResolver;
 import org.pill.DependencyType;
 import org.pill.EntityExistsException;
 import org.pill.EntityNotFoundException;
+import org.pill.LatencyStatistics;
+import org.pill.Metrics;
 import org.pill.Module;
 import org.pill.Release;
+import org.pill.StandardConflictPolicy;
+import org.pill.TransitiveResolver;
+import org.pill.repository.Repository;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 import org.testng.Assert;
 import org.testng.annotations.AfterSuite;
@@ -27,6 +46,70 @@ public class LocalRepositoryTest
 {
 	private final String packageName = LocalRepository.class.getPackage().getName();
 
+	/**
+	 * A repository that delegates to another repository, and counts batch lookups.
+	 */
+	private static final class CountingRepository implements InvocationHandler
+	{
+		private final Repository delegate;
+		public int lookups;
+		public final Repository proxy = (Repository) Proxy.newProxyInstance(
+			LocalRepositoryTest.class.getClassLoader(), new Class<?>[]
+			{
+				Repository.class
+			}, this);
+
+		/**
+		 * Creates a new CountingRepository.
+		 * <p/>
+		 * @param delegate the repository to delegate to
+		 */
+		CountingRepository(Repository delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			if (method.getName().equals("getReleases") && args[0] instanceof Set)
+				++lookups;
+			try
+			{
+				return method.invoke(delegate, args);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * @return a module name that is not used by any other test
+	 */
+	private static String newName()
+	{
+		return "org.pill.test" + UUID.randomUUID().toString().replace("-", "");
+	}
+
+	/**
+	 * @param directory the directory to create the release in
+	 * @param classNames the names of the classes contained by the release
+	 * @return an archive containing the classes
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path newRelease(Path directory, String... classNames) throws IOException
+	{
+		Path result = Files.createTempFile(directory, "release", ".jar");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(result)))
+		{
+			for (String className: classNames)
+				out.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+		}
+		return result;
+	}
+
 	@BeforeSuite
 	public static void beforeSuite()
 	{
@@ -258,4 +341,192 @@ public class LocalRepositoryTest
 		localrepository.insertRelease(module, "1.0", Paths.get("release.jar")).build();
 		localrepository.removeModule(module);
 	}
+
+	/**
+	 * Resolutions are cached, so resolving the same roots again only retrieves the releases.
+	 */
+	@Test
+	public void warmResolve() throws EntityExistsException, EntityNotFoundException,
+		DependencyConflictException, IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LocalRepository localrepository = LocalRepository.getInstance();
+			Module libraryModule = localrepository.insertModule(newName());
+			Release library = localrepository.insertRelease(libraryModule, "1.0",
+				newRelease(directory, "library.Library")).build();
+			Module applicationModule = localrepository.insertModule(newName());
+			Release application = localrepository.insertRelease(applicationModule, "1.0",
+				newRelease(directory, "application.Application")).addDependency(new Dependency(
+					library.getUri(), libraryModule, "1.0", DependencyType.RUNTIME)).build();
+
+			CountingRepository repository = new CountingRepository(localrepository);
+			List<URI> roots = Collections.singletonList(application.getUri());
+			List<Release> cold = new TransitiveResolver(repository.proxy,
+				StandardConflictPolicy.NEAREST).resolve(roots, DependencyType.RUNTIME);
+			Assert.assertEquals(cold, Arrays.asList(application, library));
+			Assert.assertEquals(repository.lookups, 2);
+
+			List<Release> warm = new TransitiveResolver(repository.proxy,
+				StandardConflictPolicy.NEAREST).resolve(roots, DependencyType.RUNTIME);
+			Assert.assertEquals(warm, cold);
+			Assert.assertEquals(repository.lookups, 3);
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Removing a release removes the resolutions that contain it.
+	 */
+	@Test
+	public void removeReleaseRemovesResolutions()
+		throws EntityExistsException, EntityNotFoundException, IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LocalRepository localrepository = LocalRepository.getInstance();
+			Release removed = localrepository.insertRelease(localrepository.insertModule(newName()),
+				"1.0", newRelease(directory, "removed.Removed")).build();
+			Release kept = localrepository.insertRelease(localrepository.insertModule(newName()),
+				"1.0", newRelease(directory, "kept.Kept")).build();
+			String containsRemoved = newName();
+			String omitsRemoved = newName();
+			localrepository.putResolution(containsRemoved, Arrays.asList(kept.getUri(),
+				removed.getUri()));
+			localrepository.putResolution(omitsRemoved, Collections.singletonList(kept.getUri()));
+
+			localrepository.removeRelease(removed);
+			Assert.assertNull(localrepository.getResolution(containsRemoved));
+			Assert.assertEquals(localrepository.getResolution(omitsRemoved),
+				Collections.singletonList(kept.getUri()));
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Releases are indexed by the classes and packages they contain.
+	 */
+	@Test
+	public void indexClasses() throws EntityExistsException, IOException, ClassNotFoundException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LocalRepository localrepository = LocalRepository.getInstance();
+			String packageName = newName();
+			Module module = localrepository.insertModule(newName());
+			Release release = localrepository.insertRelease(module, "1.0", newRelease(directory,
+				packageName + ".Outer", packageName + ".Outer$Inner", packageName + ".package-info",
+				"META-INF.versions.9." + packageName + ".Outer")).build();
+			List<URI> expected = Collections.singletonList(release.getUri());
+			Assert.assertEquals(localrepository.getReleasesByClass(packageName + ".Outer"),
+				expected);
+			Assert.assertEquals(localrepository.getReleasesByClass(packageName + ".Outer$Inner"),
+				expected);
+			Assert.assertTrue(localrepository.getReleasesByClass(packageName + ".package-info").
+				isEmpty());
+			Assert.assertEquals(localrepository.getReleasesByPackage(packageName), expected);
+			Assert.assertTrue(localrepository.getReleasesByPackage("META-INF.versions.9."
+				+ packageName).isEmpty());
+
+			DependencyResolver resolver = localrepository;
+			Assert.assertEquals(resolver.resolve(packageName + ".Outer"), module);
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Releases that are not valid archives are inserted without indexing their classes.
+	 */
+	@Test
+	public void indexCorruptArchive() throws EntityExistsException, IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			LocalRepository localrepository = LocalRepository.getInstance();
+			Path file = Files.write(directory.resolve("corrupt.jar"), new byte[100]);
+			Release release = localrepository.insertRelease(localrepository.insertModule(newName()),
+				"1.0", file).build();
+			Assert.assertNotNull(localrepository.getRelease(release.getUri()));
+		}
+		finally
+		{
+			org.pill.Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Classes that no release contains cannot be resolved.
+	 */
+	@Test(expectedExceptions = ClassNotFoundException.class)
+	public void resolveMissingClass() throws ClassNotFoundException
+	{
+		DependencyResolver resolver = LocalRepository.getInstance();
+		resolver.resolve(newName() + ".Missing");
+	}
+
+	/**
+	 * @param name the name of an operation
+	 * @return the number of times that the operation was timed
+	 */
+	private static long getCount(String name)
+	{
+		LatencyStatistics latency = Metrics.getInstance().getLatencies().get(name);
+		if (latency == null)
+			return 0;
+		return latency.getCount();
+	}
+
+	/**
+	 * @param name the name of a counter
+	 * @return the value of the counter
+	 */
+	private static long getCounter(String name)
+	{
+		Long result = Metrics.getInstance().getCounters().get(name);
+		if (result == null)
+			return 0;
+		return result;
+	}
+
+	/**
+	 * The latency of each operation is recorded, and failed operations are counted, regardless of
+	 * the storage backend.
+	 */
+	@Test
+	public void metrics() throws EntityExistsException, IOException
+	{
+		LocalRepository localrepository = LocalRepository.getInstance();
+		long insertions = getCount("LocalRepository.insertModule");
+		long failures = getCounter("LocalRepository.insertModule.failures");
+		long lookups = getCount("LocalRepository.getModule");
+
+		String name = newName();
+		localrepository.insertModule(name);
+		Assert.assertNotNull(localrepository.getModule(name));
+		try
+		{
+			localrepository.insertModule(name);
+			Assert.fail("Expected an EntityExistsException");
+		}
+		catch (EntityExistsException unused)
+		{
+			// expected
+		}
+		Assert.assertEquals(getCount("LocalRepository.insertModule"), insertions + 2);
+		Assert.assertEquals(getCounter("LocalRepository.insertModule.failures"), failures + 1);
+		Assert.assertEquals(getCount("LocalRepository.getModule"), lookups + 1);
+	}
 }
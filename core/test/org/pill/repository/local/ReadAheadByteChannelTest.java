@@ -0,0 +1,307 @@
+package org.pill.repository.local;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests ReadAheadByteChannel.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ReadAheadByteChannelTest
+{
+	/**
+	 * The maximum number of bytes that may be read from the underlying channel at once.
+	 */
+	private static final int SLICE_SIZE = 64 * 1024;
+
+	/**
+	 * An in-memory channel that records one round-trip per read. Reads issued by read-ahead threads
+	 * block while a gate is closed.
+	 */
+	private static final class StubChannel implements PositionalByteChannel
+	{
+		private final byte[] data;
+		private final ChannelStatistics statistics;
+		/**
+		 * The length of each read issued by a read-ahead thread.
+		 */
+		public final List<Integer> backgroundReads = new ArrayList<>();
+		/**
+		 * The length of each read issued by the consumer.
+		 */
+		public final List<Integer> foregroundReads = new ArrayList<>();
+		/**
+		 * Counted down when a read-ahead thread blocks.
+		 */
+		public final CountDownLatch blocked = new CountDownLatch(1);
+		/**
+		 * The gate that read-ahead threads wait on, or null if they do not block.
+		 */
+		public volatile CountDownLatch gate;
+
+		/**
+		 * Creates a new StubChannel.
+		 * <p/>
+		 * @param data the channel contents
+		 * @param statistics the statistics to record round-trips in
+		 */
+		StubChannel(byte[] data, ChannelStatistics statistics)
+		{
+			this.data = data;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException
+		{
+			Preconditions.checkNotNull(dst, "dst may not be null");
+			Preconditions.checkArgument(position >= 0, "position may not be negative");
+			if (position >= data.length)
+				return -1;
+			int result = (int) Math.min(dst.remaining(), data.length - position);
+			boolean background = Thread.currentThread().getName().startsWith(
+				ReadAheadByteChannel.class.getSimpleName());
+			synchronized (this)
+			{
+				if (background)
+					backgroundReads.add(result);
+				else
+					foregroundReads.add(result);
+			}
+			CountDownLatch gate = this.gate;
+			if (background && gate != null)
+			{
+				blocked.countDown();
+				try
+				{
+					gate.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new AssertionError(e);
+				}
+			}
+			statistics.addRoundTrip();
+			dst.put(data, (int) position, result);
+			return result;
+		}
+
+		@Override
+		public int read(ByteBuffer dst)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int write(ByteBuffer src)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long position()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long size()
+		{
+			return data.length;
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return true;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	/**
+	 * @param size the number of bytes to return
+	 * @return random bytes
+	 */
+	private static byte[] newData(int size)
+	{
+		byte[] result = new byte[size];
+		new Random(size).nextBytes(result);
+		return result;
+	}
+
+	/**
+	 * Sequential reads are served from large chunks that are read ahead of the consumer.
+	 */
+	@Test
+	public void sequentialReads() throws IOException
+	{
+		byte[] data = newData(1024 * 1024);
+		ChannelStatistics statistics = new ChannelStatistics();
+		StubChannel delegate = new StubChannel(data, statistics);
+		ByteBuffer actual = ByteBuffer.allocate(data.length);
+		int reads = 0;
+		try (ReadAheadByteChannel channel = new ReadAheadByteChannel(delegate, statistics))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(4096);
+			while (channel.read(buffer) != -1)
+			{
+				++reads;
+				buffer.flip();
+				actual.put(buffer);
+				buffer.clear();
+			}
+		}
+		Assert.assertEquals(actual.array(), data);
+		Assert.assertEquals(statistics.getBytesRead(), data.length);
+		Assert.assertTrue(statistics.getPrefetchHitRatio() > 0.5, statistics.toString());
+		Assert.assertTrue(statistics.getRoundTrips() < reads / 8, statistics.toString());
+		Assert.assertFalse(delegate.backgroundReads.isEmpty());
+		for (int length: delegate.backgroundReads)
+			Assert.assertTrue(length <= SLICE_SIZE, "length: " + length);
+	}
+
+	/**
+	 * Random reads go directly to the underlying channel and do not trigger read-ahead.
+	 */
+	@Test
+	public void randomReads() throws IOException
+	{
+		byte[] data = newData(1024 * 1024);
+		ChannelStatistics statistics = new ChannelStatistics();
+		StubChannel delegate = new StubChannel(data, statistics);
+		try (ReadAheadByteChannel channel = new ReadAheadByteChannel(delegate, statistics))
+		{
+			for (int i = 0; i < 10; ++i)
+			{
+				int position = data.length - (i + 1) * 100_000;
+				ByteBuffer buffer = ByteBuffer.allocate(100);
+				channel.position(position);
+				Assert.assertEquals(channel.read(buffer), 100);
+				Assert.assertEquals(buffer.array(), Arrays.copyOfRange(data, position,
+					position + 100));
+			}
+		}
+		Assert.assertEquals(statistics.getRoundTrips(), 10);
+		Assert.assertEquals(statistics.getPrefetchHits(), 0);
+		Assert.assertEquals(statistics.getPrefetchHitRatio(), 0.0, 0.0);
+		Assert.assertTrue(delegate.backgroundReads.isEmpty());
+		Assert.assertEquals(delegate.foregroundReads.toString(), "[100, 100, 100, 100, 100, 100, "
+			+ "100, 100, 100, 100]");
+	}
+
+	/**
+	 * A random read cancels the pending read-ahead and only waits for the slice that is being read.
+	 */
+	@Test
+	public void randomReadCancelsReadAhead() throws IOException, InterruptedException
+	{
+		byte[] data = newData(1024 * 1024);
+		ChannelStatistics statistics = new ChannelStatistics();
+		StubChannel delegate = new StubChannel(data, statistics);
+		try (final ReadAheadByteChannel channel = new ReadAheadByteChannel(delegate, statistics))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(4);
+			channel.read(buffer);
+			buffer.clear();
+
+			// The second sequential read triggers a read-ahead of two slices
+			delegate.gate = new CountDownLatch(1);
+			channel.read(buffer);
+			Assert.assertTrue(delegate.blocked.await(10, TimeUnit.SECONDS));
+
+			channel.position(0);
+			final ByteBuffer random = ByteBuffer.allocate(4);
+			final AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread consumer = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						channel.read(random);
+					}
+					catch (IOException | RuntimeException e)
+					{
+						failure.set(e);
+					}
+				}
+			};
+			consumer.start();
+			while (consumer.getState() != Thread.State.BLOCKED && consumer.isAlive())
+				Thread.sleep(1);
+			delegate.gate.countDown();
+			consumer.join(TimeUnit.SECONDS.toMillis(10));
+			Assert.assertFalse(consumer.isAlive());
+			Assert.assertNull(failure.get());
+			Assert.assertEquals(random.array(), Arrays.copyOf(data, 4));
+
+			// Give the read-ahead a chance to read past its first slice
+			Thread.sleep(100);
+			synchronized (delegate)
+			{
+				Assert.assertEquals(delegate.backgroundReads.toString(), "[" + SLICE_SIZE + "]");
+			}
+		}
+	}
+
+	/**
+	 * Positional reads do not modify the channel position. Scattering reads fill each buffer in
+	 * turn.
+	 */
+	@Test
+	public void positionalAndScatteringReads() throws IOException
+	{
+		byte[] data = newData(1000);
+		ChannelStatistics statistics = new ChannelStatistics();
+		try (ReadAheadByteChannel channel = new ReadAheadByteChannel(new StubChannel(data,
+			statistics), statistics))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(10);
+			Assert.assertEquals(channel.read(buffer, 500), 10);
+			Assert.assertEquals(buffer.array(), Arrays.copyOfRange(data, 500, 510));
+			Assert.assertEquals(channel.position(), 0);
+			Assert.assertEquals(channel.read(ByteBuffer.allocate(1), data.length), -1);
+
+			ByteBuffer first = ByteBuffer.allocate(3);
+			ByteBuffer second = ByteBuffer.allocate(5);
+			channel.position(990);
+			Assert.assertEquals(channel.read(new ByteBuffer[]
+			{
+				first, second
+			}), 8);
+			Assert.assertEquals(first.array(), Arrays.copyOfRange(data, 990, 993));
+			Assert.assertEquals(second.array(), Arrays.copyOfRange(data, 993, 998));
+			Assert.assertEquals(channel.position(), 998);
+		}
+	}
+}
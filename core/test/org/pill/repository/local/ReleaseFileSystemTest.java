@@ -0,0 +1,223 @@
+package org.pill.repository.local;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.pill.Paths;
+import org.pill.repository.RepositorySpi;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests ReleaseFileSystem, the archive entries denoted by ReleasePath and ReleaseClassLoader.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class ReleaseFileSystemTest
+{
+	/**
+	 * A class that is loaded out of an archive.
+	 */
+	public static final class Greeter implements Callable<String>
+	{
+		@Override
+		public String call()
+		{
+			return "hello";
+		}
+	}
+
+	/**
+	 * A repository that serves every URI from the same file, and records the channels it opens.
+	 */
+	private static final class StubRepository implements InvocationHandler
+	{
+		private final Path file;
+		public final List<FileChannel> channels = new ArrayList<>();
+		public final RepositorySpi proxy = (RepositorySpi) Proxy.newProxyInstance(
+			ReleaseFileSystemTest.class.getClassLoader(), new Class<?>[]
+			{
+				RepositorySpi.class
+			}, this);
+
+		/**
+		 * Creates a new StubRepository.
+		 * <p/>
+		 * @param file the file to serve
+		 */
+		StubRepository(Path file)
+		{
+			this.file = file;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws IOException
+		{
+			switch (method.getName())
+			{
+				case "newByteChannel":
+				{
+					FileChannel result = FileChannel.open(file);
+					synchronized (channels)
+					{
+						channels.add(result);
+					}
+					return result;
+				}
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * @param file the path of the archive
+	 * @return an archive containing a text file and the bytecode of {@link Greeter}
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path newArchive(Path file) throws IOException
+	{
+		String className = Greeter.class.getName().replace('.', '/') + ".class";
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file));
+			InputStream bytecode = Greeter.class.getClassLoader().getResourceAsStream(className))
+		{
+			out.putNextEntry(new ZipEntry("org/pill/Text.txt"));
+			out.write("text".getBytes(StandardCharsets.UTF_8));
+			out.putNextEntry(new ZipEntry(className));
+			ByteStreams.copy(bytecode, out);
+		}
+		return file;
+	}
+
+	/**
+	 * @param repository the repository containing the release
+	 * @return a new file system
+	 */
+	private static ReleaseFileSystem newFileSystem(RepositorySpi repository)
+	{
+		return new ReleaseFileSystem(new ReleaseFileSystemProvider(repository),
+			URI.create(LocalRepository.class.getPackage().getName() + ".release:1"), repository);
+	}
+
+	/**
+	 * Paths containing {@code "!/"} denote an archive entry.
+	 */
+	@Test
+	public void archivePaths() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			StubRepository repository = new StubRepository(newArchive(directory.resolve("a.jar")));
+			ReleaseFileSystem filesystem = newFileSystem(repository.proxy);
+			ReleasePath entry = filesystem.getPath("/lib/a.jar!/org/pill/Text.txt");
+			Assert.assertEquals(entry.getArchive(), filesystem.getPath("/lib/a.jar"));
+			Assert.assertEquals(entry.getEntryName(), "org/pill/Text.txt");
+
+			ReleasePath directoryEntry = filesystem.getPath("/lib/a.jar!/org/");
+			Assert.assertEquals(directoryEntry.getArchive(), filesystem.getPath("/lib/a.jar"));
+			Assert.assertEquals(directoryEntry.getEntryName(), "org");
+
+			ReleasePath root = filesystem.getPath("/lib/a.jar!");
+			Assert.assertEquals(root.getArchive(), filesystem.getPath("/lib/a.jar"));
+			Assert.assertEquals(root.getEntryName(), "");
+
+			ReleasePath archive = filesystem.getPath("/lib/a!b.jar");
+			Assert.assertNull(archive.getArchive());
+			Assert.assertNull(archive.getEntryName());
+			Assert.assertTrue(repository.channels.isEmpty());
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Entries are read through a single channel, which is closed along with the file system.
+	 */
+	@Test
+	public void readEntries() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			StubRepository repository = new StubRepository(newArchive(directory.resolve("a.jar")));
+			ReleaseFileSystem filesystem = newFileSystem(repository.proxy);
+			Path entry = filesystem.getPath("/a.jar!/org/pill/Text.txt");
+			for (int i = 0; i < 3; ++i)
+			{
+				Assert.assertEquals(new String(Files.readAllBytes(entry), StandardCharsets.UTF_8),
+					"text");
+			}
+			try
+			{
+				Files.readAllBytes(filesystem.getPath("/a.jar!/org/pill/Missing.txt"));
+				Assert.fail("Expected a NoSuchFileException");
+			}
+			catch (NoSuchFileException unused)
+			{
+				// expected
+			}
+			Assert.assertEquals(repository.channels.size(), 1);
+			Assert.assertTrue(repository.channels.get(0).isOpen());
+
+			filesystem.close();
+			Assert.assertFalse(repository.channels.get(0).isOpen());
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Classes are loaded out of archives without extracting them.
+	 */
+	@Test
+	public void loadClass() throws Exception
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			StubRepository repository = new StubRepository(newArchive(directory.resolve("a.jar")));
+			ReleaseFileSystem filesystem = newFileSystem(repository.proxy);
+			ReleaseClassLoader classLoader = new ReleaseClassLoader(Collections.singletonList(
+				filesystem.getPath("/a.jar")), null);
+			Class<?> greeter = classLoader.loadClass(Greeter.class.getName());
+			Assert.assertSame(greeter.getClassLoader(), classLoader);
+			Assert.assertNotSame(greeter, Greeter.class);
+			Assert.assertEquals(((Callable<?>) greeter.getConstructor().newInstance()).call(),
+				"hello");
+			try
+			{
+				classLoader.loadClass("org.pill.Missing");
+				Assert.fail("Expected a ClassNotFoundException");
+			}
+			catch (ClassNotFoundException unused)
+			{
+				// expected
+			}
+			filesystem.close();
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
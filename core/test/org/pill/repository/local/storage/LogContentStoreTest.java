@@ -0,0 +1,134 @@
+package org.pill.repository.local.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import org.pill.Paths;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Gili Tzabari
+ */
+public class LogContentStoreTest
+{
+	/**
+	 * @param store a store
+	 * @param id a release identifier
+	 * @return the contents of the release
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static String read(ContentStore store, long id) throws IOException
+	{
+		try (SeekableByteChannel channel = store.newByteChannel(id))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) == -1)
+					break;
+			}
+			Assert.assertEquals(channel.read(ByteBuffer.allocate(1)), -1);
+			return new String(buffer.array(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void write() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path first = Files.write(directory.resolve("first.jar"),
+				"first".getBytes(StandardCharsets.UTF_8));
+			Path second = Files.write(directory.resolve("second.jar"),
+				"second release".getBytes(StandardCharsets.UTF_8));
+			try (LogContentStore store = new LogContentStore(directory.resolve("store")))
+			{
+				store.write(1, first);
+				store.write(2, second);
+				Assert.assertEquals(read(store, 1), "first");
+				Assert.assertEquals(store.size(2), "second release".length());
+			}
+			try (LogContentStore store = new LogContentStore(directory.resolve("store")))
+			{
+				Assert.assertEquals(read(store, 2), "second release");
+				try (SeekableByteChannel channel = store.newByteChannel(2))
+				{
+					channel.position(7);
+					ByteBuffer buffer = ByteBuffer.allocate(100);
+					channel.read(buffer);
+					Assert.assertEquals(new String(buffer.array(), 0, buffer.position(),
+						StandardCharsets.UTF_8), "release");
+				}
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void writeBeyondIndex() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path file = Files.write(directory.resolve("file.jar"),
+				"contents".getBytes(StandardCharsets.UTF_8));
+			try (LogContentStore store = new LogContentStore(directory.resolve("store")))
+			{
+				// The index grows in chunks of 64K slots
+				store.write(100000, file);
+				Assert.assertEquals(read(store, 100000), "contents");
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test(expectedExceptions = NoSuchFileException.class)
+	public void remove() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Path file = Files.write(directory.resolve("file.jar"),
+				"contents".getBytes(StandardCharsets.UTF_8));
+			try (LogContentStore store = new LogContentStore(directory.resolve("store")))
+			{
+				store.write(1, file);
+				store.remove(1);
+			}
+			try (LogContentStore store = new LogContentStore(directory.resolve("store")))
+			{
+				store.newByteChannel(1);
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void lockedByAnotherStore() throws IOException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try (LogContentStore store = new LogContentStore(directory))
+		{
+			new LogContentStore(directory).close();
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
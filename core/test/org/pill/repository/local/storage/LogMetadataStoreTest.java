@@ -0,0 +1,181 @@
+package org.pill.repository.local.storage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.pill.Dependency;
+import org.pill.DependencyType;
+import org.pill.EntityExistsException;
+import org.pill.EntityNotFoundException;
+import org.pill.Module;
+import org.pill.Paths;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Gili Tzabari
+ */
+public class LogMetadataStoreTest
+{
+	/**
+	 * @param module a module
+	 * @param version a version
+	 * @return a release
+	 */
+	private static ReleaseRecord newRelease(Module module, String version)
+	{
+		Set<Dependency> dependencies = Collections.singleton(new Dependency(
+			URI.create("org.pill.repository.local.release:1"), new Module("com.google.common"),
+			"14.0", DependencyType.RUNTIME));
+		return new ReleaseRecord(module, version, "module.jar", FileTime.fromMillis(1000), null,
+			dependencies);
+	}
+
+	@Test
+	public void insertRelease() throws IOException, EntityExistsException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try (LogMetadataStore store = new LogMetadataStore(directory))
+		{
+			store.insertModule("module");
+			Module module = new Module("module");
+			Map<String, List<String>> classes = Collections.singletonMap("org.pill",
+				Arrays.asList("First", "Second"));
+			long id = store.insertRelease(newRelease(module, "1.0"), classes);
+
+			Assert.assertEquals(store.getReleaseId("module", "1.0"), Long.valueOf(id));
+			Assert.assertEquals(store.getReleases("module"), Collections.singletonList(id));
+			Assert.assertEquals(store.getRelease(id).getDependencies(),
+				newRelease(module, "1.0").getDependencies());
+			Assert.assertEquals(store.getReleasesByClass("org.pill", "Second"),
+				Collections.singletonList(id));
+			Assert.assertEquals(store.getReleasesByPackage("org.pill"),
+				Collections.singletonList(id));
+			Assert.assertTrue(store.getReleasesByClass("", "Second").isEmpty());
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test(expectedExceptions = EntityExistsException.class)
+	public void insertExistingRelease() throws IOException, EntityExistsException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try (LogMetadataStore store = new LogMetadataStore(directory))
+		{
+			store.insertModule("module");
+			Module module = new Module("module");
+			Map<String, List<String>> classes = Collections.emptyMap();
+			store.insertRelease(newRelease(module, "1.0"), classes);
+			store.insertRelease(newRelease(module, "1.0"), classes);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void replay() throws IOException, EntityExistsException, EntityNotFoundException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			Module module = new Module("module");
+			Map<String, List<String>> classes = Collections.singletonMap("",
+				Collections.singletonList("Main"));
+			long first;
+			long second;
+			try (LogMetadataStore store = new LogMetadataStore(directory))
+			{
+				store.insertModule("module");
+				first = store.insertRelease(newRelease(module, "1.0"), classes);
+				second = store.insertRelease(newRelease(module, "2.0"), classes);
+				store.putResolution("fingerprint", Arrays.asList(first, second));
+				store.removeRelease(second);
+			}
+			try (LogMetadataStore store = new LogMetadataStore(directory))
+			{
+				Assert.assertEquals(store.getReleases("module"), Collections.singletonList(first));
+				Assert.assertNull(store.getRelease(second));
+				Assert.assertEquals(store.getReleasesByClass("", "Main"),
+					Collections.singletonList(first));
+
+				// Removing a release discards the resolutions that contain it
+				Assert.assertNull(store.getResolution("fingerprint"));
+
+				// Identifiers are never reused
+				long third = store.insertRelease(newRelease(module, "3.0"), classes);
+				Assert.assertTrue(third > second, "third: " + third + ", second: " + second);
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void truncatedRecord() throws IOException, EntityExistsException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try
+		{
+			try (LogMetadataStore store = new LogMetadataStore(directory))
+			{
+				store.insertModule("first");
+				store.insertModule("second");
+			}
+
+			// Simulate a crash in the middle of appending the last record
+			Path log = directory.resolve("metadata.log");
+			try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE))
+			{
+				channel.truncate(channel.size() - 1);
+			}
+			try (LogMetadataStore store = new LogMetadataStore(directory))
+			{
+				Assert.assertTrue(store.containsModule("first"));
+				Assert.assertFalse(store.containsModule("second"));
+				store.insertModule("third");
+			}
+			try (LogMetadataStore store = new LogMetadataStore(directory))
+			{
+				Assert.assertTrue(store.containsModule("third"));
+			}
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void removeModuleWithReleases()
+		throws IOException, EntityExistsException, EntityNotFoundException
+	{
+		Path directory = Files.createTempDirectory("pill");
+		try (LogMetadataStore store = new LogMetadataStore(directory))
+		{
+			store.insertModule("module");
+			Map<String, List<String>> classes = Collections.emptyMap();
+			store.insertRelease(newRelease(new Module("module"), "1.0"), classes);
+			store.removeModule("module");
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package org.pill.repository.maven;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.pill.Dependency;
+import org.pill.DependencyType;
+import org.pill.Module;
+import org.pill.Paths;
+import org.pill.Release;
+import org.pill.ReleaseBuilder;
+import org.pill.ReleaseImpl;
+import org.pill.TestHttpServer;
+import org.pill.repository.RepositorySpi;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests MavenRepository against a file-based repository, and against the same repository served
+ * over HTTP.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class MavenRepositoryTest
+{
+	/**
+	 * A repository that starts out empty, and records the contents of the releases inserted into
+	 * it.
+	 */
+	private static final class StubRepository implements InvocationHandler
+	{
+		private final Map<URI, Release> releases = new HashMap<>();
+		/**
+		 * A map from each module name to the contents of its release.
+		 */
+		public final Map<String, String> contents = new HashMap<>();
+		public final RepositorySpi proxy = (RepositorySpi) Proxy.newProxyInstance(
+			MavenRepositoryTest.class.getClassLoader(), new Class<?>[]
+			{
+				RepositorySpi.class
+			}, this);
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object invoke(Object proxy, Method method, Object[] args) throws IOException
+		{
+			switch (method.getName())
+			{
+				case "getModule":
+					return null;
+				case "insertModule":
+					return new Module((String) args[0]);
+				case "insertRelease":
+				{
+					Module module = (Module) args[0];
+					String version = (String) args[1];
+					Path path = (Path) args[2];
+					if (args.length == 3)
+						return new ReleaseBuilder(this.proxy, module, version, path);
+					contents.put(module.getName(), new String(Files.readAllBytes(path),
+						StandardCharsets.UTF_8));
+					URI uri = URI.create("test:" + module.getName() + ":" + version);
+					Release result = new ReleaseImpl(uri, module, version,
+						path.getFileName().toString(), (Set<Dependency>) args[3]);
+					releases.put(uri, result);
+					return result;
+				}
+				case "getRelease":
+					return releases.get((URI) args[0]);
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * Creates a repository containing a parent POM, an artifact and its dependencies.
+	 * <p/>
+	 * @return the repository root
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path createRepository() throws IOException
+	{
+		Path root = Files.createTempDirectory(null);
+		write(root, "com/example/parent/1.0/parent-1.0.pom", "<project>"
+			+ "<groupId>com.example</groupId><artifactId>parent</artifactId><version>1.0</version>"
+			+ "<packaging>pom</packaging>"
+			+ "<properties><library.version>2.0</library.version></properties>"
+			+ "<dependencyManagement><dependencies>"
+			+ "<dependency><groupId>com.example</groupId><artifactId>library</artifactId>"
+			+ "<version>${library.version}</version></dependency>"
+			+ "</dependencies></dependencyManagement>"
+			+ "</project>");
+		write(root, "com/example/app/1.0/app-1.0.pom", "<project>"
+			+ "<parent><groupId>com.example</groupId><artifactId>parent</artifactId>"
+			+ "<version>1.0</version></parent>"
+			+ "<artifactId>app</artifactId>"
+			+ "<dependencies>"
+			+ "<dependency><groupId>com.example</groupId><artifactId>library</artifactId>"
+			+ "</dependency>"
+			+ "<dependency><groupId>com.example</groupId><artifactId>api</artifactId>"
+			+ "<version>[1.0,2.0)</version><scope>provided</scope></dependency>"
+			+ "<dependency><groupId>com.example</groupId><artifactId>driver</artifactId>"
+			+ "<version>${project.version}</version><scope>runtime</scope></dependency>"
+			+ "<dependency><groupId>com.example</groupId><artifactId>extra</artifactId>"
+			+ "<version>1.0</version><optional>true</optional></dependency>"
+			+ "<dependency><groupId>org.testng</groupId><artifactId>testng</artifactId>"
+			+ "<version>6.8</version><scope>test</scope></dependency>"
+			+ "</dependencies>"
+			+ "</project>");
+		write(root, "com/example/app/1.0/app-1.0.jar", "app");
+		write(root, "com/example/api/maven-metadata.xml", "<metadata>"
+			+ "<groupId>com.example</groupId><artifactId>api</artifactId>"
+			+ "<versioning><versions><version>1.0</version><version>1.5</version>"
+			+ "<version>2.0</version></versions></versioning>"
+			+ "</metadata>");
+		return root;
+	}
+
+	/**
+	 * Writes a file into the repository, along with its checksum.
+	 * <p/>
+	 * @param root the repository root
+	 * @param path the path of the file, relative to the repository root
+	 * @param content the contents of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void write(Path root, String path, String content) throws IOException
+	{
+		Path file = root.resolve(path);
+		Files.createDirectories(file.getParent());
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		Files.write(file, bytes);
+		Files.write(file.resolveSibling(file.getFileName() + ".sha1"),
+			Hashing.sha1().hashBytes(bytes).toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Starts an HTTP server that serves the files of a repository, responding with HTTP 404 for
+	 * missing files.
+	 * <p/>
+	 * @param root the repository root
+	 * @return the server
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static TestHttpServer startServer(final Path root) throws IOException
+	{
+		return new TestHttpServer("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				Path file = root.resolve(exchange.getRequestURI().getPath().substring(1));
+				if (!Files.isRegularFile(file))
+				{
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+					return;
+				}
+				byte[] content = Files.readAllBytes(file);
+				if (exchange.getRequestMethod().equals("HEAD"))
+				{
+					exchange.getResponseHeaders().add("Content-Length",
+						String.valueOf(content.length));
+					exchange.sendResponseHeaders(200, -1);
+					exchange.close();
+					return;
+				}
+				exchange.sendResponseHeaders(200, content.length);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(content);
+				}
+			}
+		});
+	}
+
+	@Test
+	public void getVersions() throws IOException
+	{
+		Path root = createRepository();
+		try
+		{
+			MavenRepository repository = new MavenRepository(root.toUri());
+			Assert.assertEquals(repository.getVersions("com.example", "api"),
+				Arrays.asList("1.0", "1.5", "2.0"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test
+	public void getVersionsMissingArtifact() throws IOException
+	{
+		Path root = createRepository();
+		try
+		{
+			MavenRepository repository = new MavenRepository(root.toUri());
+			Assert.assertTrue(repository.getVersions("com.example", "missing").isEmpty());
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test
+	public void getDependencies() throws IOException
+	{
+		Path root = createRepository();
+		try
+		{
+			MavenRepository repository = new MavenRepository(root.toUri());
+			Map<Artifact, Set<DependencyType>> expected = new LinkedHashMap<>();
+			expected.put(new Artifact("com.example", "library", "2.0"),
+				EnumSet.of(DependencyType.BUILD, DependencyType.RUNTIME));
+			expected.put(new Artifact("com.example", "api", "1.5"),
+				EnumSet.of(DependencyType.BUILD));
+			expected.put(new Artifact("com.example", "driver", "1.0"),
+				EnumSet.of(DependencyType.RUNTIME));
+			Assert.assertEquals(repository.getDependencies(new Artifact("com.example", "app",
+				"1.0")), expected);
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test(expectedExceptions = NoSuchFileException.class)
+	public void getDependenciesMissingArtifact() throws IOException
+	{
+		Path root = createRepository();
+		try
+		{
+			MavenRepository repository = new MavenRepository(root.toUri());
+			repository.getDependencies(new Artifact("com.example", "missing", "1.0"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	/**
+	 * A missing artifact is reported as NoSuchFileException when the server responds with HTTP
+	 * 404.
+	 */
+	@Test(expectedExceptions = NoSuchFileException.class)
+	public void getDependenciesMissingArtifactOverHttp() throws IOException
+	{
+		Path root = createRepository();
+		try (TestHttpServer server = startServer(root))
+		{
+			MavenRepository repository = new MavenRepository(server.getUri("/"));
+			repository.getDependencies(new Artifact("com.example", "missing", "1.0"));
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test
+	public void download() throws IOException
+	{
+		Path root = createRepository();
+		Path directory = Files.createTempDirectory(null);
+		try
+		{
+			MavenRepository repository = new MavenRepository(root.toUri());
+			Path file = repository.download(new Artifact("com.example", "app", "1.0"), directory);
+			Assert.assertEquals(file, directory.resolve("app-1.0.jar"));
+			Assert.assertEquals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+				"app");
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void downloadChecksumMismatch() throws IOException
+	{
+		Path root = createRepository();
+		Path directory = Files.createTempDirectory(null);
+		try
+		{
+			Files.write(root.resolve("com/example/app/1.0/app-1.0.jar"),
+				"corrupt".getBytes(StandardCharsets.UTF_8));
+			MavenRepository repository = new MavenRepository(root.toUri());
+			repository.download(new Artifact("com.example", "app", "1.0"), directory);
+		}
+		finally
+		{
+			Paths.deleteRecursively(directory);
+			Paths.deleteRecursively(root);
+		}
+	}
+
+	@Test
+	public void matchesRange()
+	{
+		Assert.assertTrue(MavenRepository.matchesRange("1.0", "[1.0,2.0)"));
+		Assert.assertTrue(MavenRepository.matchesRange("1.10", "[1.9,2.0)"));
+		Assert.assertFalse(MavenRepository.matchesRange("2.0", "[1.0,2.0)"));
+		Assert.assertFalse(MavenRepository.matchesRange("1.0", "(1.0,)"));
+		Assert.assertTrue(MavenRepository.matchesRange("1.0", "[1.0]"));
+		Assert.assertTrue(MavenRepository.matchesRange("3.0", "(,1.0],[1.2,)"));
+		Assert.assertFalse(MavenRepository.matchesRange("1.1", "(,1.0],[1.2,)"));
+	}
+
+	/**
+	 * Artifacts from different groups that share an artifactId and version are imported with their
+	 * own contents.
+	 */
+	@Test
+	public void importSameFilename() throws IOException
+	{
+		Path root = Files.createTempDirectory(null);
+		try
+		{
+			write(root, "c/app/1.0/app-1.0.pom", "<project>"
+				+ "<groupId>c</groupId><artifactId>app</artifactId><version>1.0</version>"
+				+ "<packaging>pom</packaging>"
+				+ "<dependencies>"
+				+ "<dependency><groupId>a</groupId><artifactId>core</artifactId>"
+				+ "<version>1.0</version></dependency>"
+				+ "<dependency><groupId>b</groupId><artifactId>core</artifactId>"
+				+ "<version>1.0</version></dependency>"
+				+ "</dependencies>"
+				+ "</project>");
+			for (String groupId: Arrays.asList("a", "b"))
+			{
+				write(root, groupId + "/core/1.0/core-1.0.pom", "<project><groupId>" + groupId
+					+ "</groupId><artifactId>core</artifactId><version>1.0</version></project>");
+				write(root, groupId + "/core/1.0/core-1.0.jar", groupId);
+			}
+			MavenRepository repository = new MavenRepository(root.toUri());
+			StubRepository target = new StubRepository();
+			Release release = repository.importRelease(target.proxy, new Artifact("c", "app",
+				"1.0"));
+			Assert.assertEquals(release.getModule().getName(), "c:app");
+			Assert.assertEquals(target.contents.get("a:core"), "a");
+			Assert.assertEquals(target.contents.get("b:core"), "b");
+		}
+		finally
+		{
+			Paths.deleteRecursively(root);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package org.pill.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.pill.Metrics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests InstrumentedConnection.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class InstrumentedConnectionTest
+{
+	/**
+	 * A connection or statement that returns default values. Statements fail to execute SQL that
+	 * starts with {@code "FAIL"}.
+	 */
+	private static class Stub implements InvocationHandler
+	{
+		private final String sql;
+
+		/**
+		 * Creates a new Stub.
+		 * <p/>
+		 * @param sql the SQL of the statement, or null if this is a connection
+		 */
+		Stub(String sql)
+		{
+			this.sql = sql;
+		}
+
+		/**
+		 * @param <T> the type of the stub
+		 * @param type the interface to implement
+		 * @param sql the SQL of the statement, or null if this is a connection
+		 * @return a new stub
+		 */
+		public static <T> T newInstance(Class<T> type, String sql)
+		{
+			return type.cast(Proxy.newProxyInstance(Stub.class.getClassLoader(), new Class<?>[]
+			{
+				type
+			}, new Stub(sql)));
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+		{
+			switch (method.getName())
+			{
+				case "createStatement":
+					return newInstance(Statement.class, null);
+				case "prepareStatement":
+					return newInstance(PreparedStatement.class, (String) args[0]);
+				case "execute":
+				{
+					String executed = sql;
+					if (executed == null)
+						executed = (String) args[0];
+					if (executed.startsWith("FAIL"))
+						throw new SQLException("Expected failure");
+					return true;
+				}
+				case "executeUpdate":
+					return 1;
+				case "getAutoCommit":
+					return true;
+				case "commit":
+				case "rollback":
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * Statements, commits and rollbacks are timed. Other methods are not.
+	 */
+	@Test
+	public void timedMethods() throws SQLException
+	{
+		Metrics metrics = new Metrics(false);
+		Connection connection = InstrumentedConnection.wrap(Stub.newInstance(Connection.class,
+			null), metrics);
+		try (PreparedStatement statement = connection.prepareStatement("UPDATE"))
+		{
+			Assert.assertEquals(statement.executeUpdate(), 1);
+			Assert.assertEquals(statement.executeUpdate(), 1);
+		}
+		try (Statement statement = connection.createStatement())
+		{
+			Assert.assertTrue(statement.execute("SELECT"));
+		}
+		connection.commit();
+		connection.rollback();
+		Assert.assertTrue(connection.getAutoCommit());
+
+		Assert.assertEquals(metrics.getLatencies().keySet().toString(),
+			"[Session.commit, Session.execute, Session.executeUpdate, Session.rollback]");
+		Assert.assertEquals(metrics.getLatencies().get("Session.executeUpdate").getCount(), 2);
+		Assert.assertTrue(metrics.getCounters().isEmpty());
+	}
+
+	/**
+	 * Failed statements are timed and counted, and their exception is rethrown as is.
+	 */
+	@Test
+	public void failures() throws SQLException
+	{
+		Metrics metrics = new Metrics(false);
+		Connection connection = InstrumentedConnection.wrap(Stub.newInstance(Connection.class,
+			null), metrics);
+		try (PreparedStatement statement = connection.prepareStatement("FAIL"))
+		{
+			statement.execute();
+			Assert.fail("Expected an SQLException");
+		}
+		catch (SQLException e)
+		{
+			Assert.assertEquals(e.getMessage(), "Expected failure");
+		}
+		Assert.assertEquals(metrics.getLatencies().get("Session.execute").getCount(), 1);
+		Assert.assertEquals(metrics.getCounters().get("Session.execute.failures"),
+			Long.valueOf(1));
+	}
+
+	/**
+	 * A proxy is only equal to itself.
+	 */
+	@Test
+	public void equality()
+	{
+		Connection connection = InstrumentedConnection.wrap(Stub.newInstance(Connection.class,
+			null), new Metrics(false));
+		Assert.assertTrue(connection.equals(connection));
+		Assert.assertFalse(connection.equals(InstrumentedConnection.wrap(connection,
+			new Metrics(false))));
+	}
+}
@@ -0,0 +1,318 @@
+package org.pill.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests PooledDataSource.
+ * <p/>
+ * @author Gili Tzabari
+ */
+public class PooledDataSourceTest
+{
+	/**
+	 * A DataSource that records the connections it opens.
+	 */
+	private static class StubDataSource implements InvocationHandler
+	{
+		public final List<StubConnection> connections = new ArrayList<>();
+		public final DataSource proxy = (DataSource) Proxy.newProxyInstance(
+			PooledDataSourceTest.class.getClassLoader(), new Class<?>[]
+			{
+				DataSource.class
+			}, this);
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName())
+			{
+				case "getConnection":
+				{
+					StubConnection result = new StubConnection();
+					connections.add(result);
+					return result.proxy;
+				}
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * A connection that records its state and the statements it prepares.
+	 */
+	private static class StubConnection implements InvocationHandler
+	{
+		public final List<StubStatement> statements = new ArrayList<>();
+		public final Connection proxy = (Connection) Proxy.newProxyInstance(
+			PooledDataSourceTest.class.getClassLoader(), new Class<?>[]
+			{
+				Connection.class
+			}, this);
+		public boolean autoCommit = true;
+		public boolean readOnly;
+		public int transactionIsolation = Connection.TRANSACTION_READ_COMMITTED;
+		public int rollbacks;
+		public boolean closed;
+
+		/**
+		 * @param sql an SQL statement
+		 * @return the statements that were prepared for {@code sql}
+		 */
+		public List<StubStatement> getStatements(String sql)
+		{
+			List<StubStatement> result = new ArrayList<>();
+			for (StubStatement statement: statements)
+			{
+				if (statement.sql.equals(sql))
+					result.add(statement);
+			}
+			return result;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName())
+			{
+				case "prepareStatement":
+				{
+					StubStatement result = new StubStatement((String) args[0]);
+					statements.add(result);
+					return result.proxy;
+				}
+				case "getAutoCommit":
+					return autoCommit;
+				case "setAutoCommit":
+					autoCommit = (Boolean) args[0];
+					return null;
+				case "isReadOnly":
+					return readOnly;
+				case "setReadOnly":
+					readOnly = (Boolean) args[0];
+					return null;
+				case "getTransactionIsolation":
+					return transactionIsolation;
+				case "setTransactionIsolation":
+					transactionIsolation = (Integer) args[0];
+					return null;
+				case "rollback":
+					++rollbacks;
+					return null;
+				case "clearWarnings":
+					return null;
+				case "close":
+					closed = true;
+					return null;
+				case "toString":
+					return "StubConnection";
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * A prepared statement that records its state.
+	 */
+	private static class StubStatement implements InvocationHandler
+	{
+		public final String sql;
+		public final PreparedStatement proxy = (PreparedStatement) Proxy.newProxyInstance(
+			PooledDataSourceTest.class.getClassLoader(), new Class<?>[]
+			{
+				PreparedStatement.class
+			}, this);
+		public int parameterResets;
+		public boolean closed;
+
+		/**
+		 * Creates a new StubStatement.
+		 * <p/>
+		 * @param sql the SQL statement
+		 */
+		StubStatement(String sql)
+		{
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName())
+			{
+				case "clearParameters":
+					++parameterResets;
+					return null;
+				case "clearBatch":
+				case "setInt":
+					return null;
+				case "close":
+					closed = true;
+					return null;
+				case "isClosed":
+					return closed;
+				case "toString":
+					return sql;
+				default:
+					throw new UnsupportedOperationException(method.toString());
+			}
+		}
+	}
+
+	/**
+	 * Closed statements are reused, with their parameters cleared.
+	 */
+	@Test
+	public void statementCache() throws SQLException
+	{
+		StubDataSource stub = new StubDataSource();
+		try (PooledDataSource dataSource = new PooledDataSource(stub.proxy))
+		{
+			try (Connection connection = dataSource.getConnection())
+			{
+				PreparedStatement statement = connection.prepareStatement("SELECT 1");
+				statement.setInt(1, 5);
+				statement.close();
+				Assert.assertTrue(statement.isClosed());
+
+				PreparedStatement reused = connection.prepareStatement("SELECT 1");
+				Assert.assertSame(reused, statement);
+				Assert.assertFalse(reused.isClosed());
+				Assert.assertSame(reused.getConnection(), connection);
+				connection.prepareStatement("SELECT 2").close();
+				reused.close();
+
+				StubConnection physical = stub.connections.get(0);
+				Assert.assertEquals(physical.getStatements("SELECT 1").size(), 1);
+				Assert.assertEquals(physical.getStatements("SELECT 2").size(), 1);
+				StubStatement cached = physical.getStatements("SELECT 1").get(0);
+				Assert.assertEquals(cached.parameterResets, 2);
+				Assert.assertFalse(cached.closed);
+			}
+		}
+	}
+
+	/**
+	 * A statement that is in use is not shared. Instead, an uncached statement is returned.
+	 */
+	@Test
+	public void statementInUse() throws SQLException
+	{
+		StubDataSource stub = new StubDataSource();
+		try (PooledDataSource dataSource = new PooledDataSource(stub.proxy))
+		{
+			try (Connection connection = dataSource.getConnection())
+			{
+				PreparedStatement cached = connection.prepareStatement("SELECT 1");
+				PreparedStatement uncached = connection.prepareStatement("SELECT 1");
+				Assert.assertNotSame(uncached, cached);
+
+				List<StubStatement> statements =
+					stub.connections.get(0).getStatements("SELECT 1");
+				Assert.assertEquals(statements.size(), 2);
+				uncached.close();
+				Assert.assertTrue(statements.get(1).closed);
+				cached.close();
+				Assert.assertFalse(statements.get(0).closed);
+
+				Assert.assertSame(connection.prepareStatement("SELECT 1"), cached);
+			}
+		}
+	}
+
+	/**
+	 * The least recently used statement is evicted, unless it is in use.
+	 */
+	@Test
+	public void evictLeastRecentlyUsed() throws SQLException
+	{
+		StubDataSource stub = new StubDataSource();
+		try (PooledDataSource dataSource = new PooledDataSource(stub.proxy, 1, 2))
+		{
+			try (Connection connection = dataSource.getConnection())
+			{
+				PreparedStatement inUse = connection.prepareStatement("SELECT 1");
+				connection.prepareStatement("SELECT 2").close();
+				connection.prepareStatement("SELECT 3").close();
+				StubConnection physical = stub.connections.get(0);
+				StubStatement first = physical.getStatements("SELECT 1").get(0);
+				Assert.assertFalse(first.closed);
+
+				inUse.close();
+				connection.prepareStatement("SELECT 4").close();
+				Assert.assertTrue(first.closed);
+				Assert.assertFalse(physical.getStatements("SELECT 2").get(0).closed);
+
+				// SELECT 2 is now the least recently used statement
+				connection.prepareStatement("SELECT 3").close();
+				connection.prepareStatement("SELECT 5").close();
+				Assert.assertTrue(physical.getStatements("SELECT 2").get(0).closed);
+				Assert.assertFalse(physical.getStatements("SELECT 3").get(0).closed);
+				Assert.assertEquals(physical.getStatements("SELECT 3").size(), 1);
+			}
+		}
+	}
+
+	/**
+	 * Returning a connection to the pool rolls back its transaction, restores its settings and
+	 * releases its statements.
+	 */
+	@Test
+	public void resetOnCheckIn() throws SQLException
+	{
+		StubDataSource stub = new StubDataSource();
+		try (PooledDataSource dataSource = new PooledDataSource(stub.proxy))
+		{
+			PreparedStatement statement;
+			try (Connection connection = dataSource.getConnection())
+			{
+				connection.setAutoCommit(false);
+				connection.setReadOnly(true);
+				connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+				statement = connection.prepareStatement("SELECT 1");
+			}
+			StubConnection physical = stub.connections.get(0);
+			Assert.assertEquals(physical.rollbacks, 1);
+			Assert.assertTrue(physical.autoCommit);
+			Assert.assertFalse(physical.readOnly);
+			Assert.assertEquals(physical.transactionIsolation,
+				Connection.TRANSACTION_READ_COMMITTED);
+			Assert.assertFalse(physical.closed);
+			Assert.assertTrue(statement.isClosed());
+
+			try (Connection connection = dataSource.getConnection())
+			{
+				Assert.assertEquals(stub.connections.size(), 1);
+				Assert.assertSame(connection.prepareStatement("SELECT 1"), statement);
+			}
+			Assert.assertEquals(physical.rollbacks, 1);
+		}
+		Assert.assertTrue(stub.connections.get(0).closed);
+	}
+
+	/**
+	 * A connection may not be used once it is returned to the pool.
+	 */
+	@Test(expectedExceptions = SQLException.class)
+	public void useAfterClose() throws SQLException
+	{
+		StubDataSource stub = new StubDataSource();
+		try (PooledDataSource dataSource = new PooledDataSource(stub.proxy))
+		{
+			Connection connection = dataSource.getConnection();
+			connection.close();
+			connection.prepareStatement("SELECT 1");
+		}
+	}
+}